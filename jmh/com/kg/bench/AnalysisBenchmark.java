@@ -0,0 +1,62 @@
+package com.kg.bench;
+
+import com.echonest.api.v4.Segment;
+import com.kg.fft.FFT;
+import com.kg.synth.Output;
+import com.kg.wub.system.Audio;
+import com.kg.wub.system.SamplingGraph;
+import com.kg.wub.system.WaveformPeaks;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spectrum of the visualizer and the waveform of a track, drawn from the
+ * samples and from its peaks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisBenchmark {
+
+    private static final double SECONDS = 180;
+
+    @Param({"1000"})
+    public int width;
+
+    private final FFT fft = new FFT(Output.BUFFER_SIZE / 2, (float) Output.SAMPLE_RATE);
+    private final float[] spectrumInput = Signals.floats(Output.BUFFER_SIZE / 2);
+    private final SamplingGraph graph = new SamplingGraph();
+    private byte[] track;
+    private WaveformPeaks peaks;
+    private List<Segment> segments;
+
+    @Setup
+    public void setup() {
+        track = Signals.stereo(SECONDS);
+        peaks = new WaveformPeaks(track, Audio.audioFormat);
+        segments = Signals.segments(SECONDS, .25);
+    }
+
+    @Benchmark
+    public FFT forward() {
+        fft.forward(spectrumInput);
+        return fft;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BufferedImage createWaveFormFromSamples() {
+        return graph.createWaveForm(segments, SECONDS, track, Audio.audioFormat, width, 200);
+    }
+
+    @Benchmark
+    public BufferedImage createWaveFormFromPeaks() {
+        return graph.createWaveForm(segments, SECONDS, peaks, width, 200);
+    }
+}
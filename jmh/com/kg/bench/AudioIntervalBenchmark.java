@@ -0,0 +1,53 @@
+package com.kg.bench;
+
+import com.kg.wub.system.AudioInterval;
+import com.kg.wub.system.AudioUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting, joining and stretching one segment of audio as the remixing code does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioIntervalBenchmark {
+
+    // seconds of audio, about a beat
+    @Param({".5"})
+    public double seconds;
+
+    private AudioInterval stereo;
+    private AudioInterval[] mono;
+
+    @Setup
+    public void setup() {
+        stereo = new AudioInterval(Signals.stereo(seconds));
+        mono = stereo.getMono();
+    }
+
+    @Benchmark
+    public AudioInterval[] getMono() {
+        return stereo.getMono();
+    }
+
+    @Benchmark
+    public byte[] makeStereo() {
+        AudioInterval ai = new AudioInterval(new byte[0]);
+        ai.makeStereo(mono);
+        return ai.data;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] timeStretch1() {
+        // timeStretch1 replaces the data of its argument
+        AudioInterval ai = new AudioInterval(mono[0].data);
+        AudioUtils.timeStretch1(ai, 1.1);
+        return ai.data;
+    }
+}
@@ -0,0 +1,55 @@
+package com.kg.bench;
+
+import com.echonest.api.v4.TimedEvent;
+import com.kg.TheHorde;
+import com.kg.synth.Output;
+import com.kg.wub.AudioObject;
+import com.kg.wub.system.Interval;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling one output block from a loaded track, playing through a queue of
+ * short intervals as the pads do, once through or looping.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioObjectBenchmark {
+
+    @Param({"false", "true"})
+    public boolean loop;
+
+    // seconds per interval; a block is about .09 s
+    @Param({".025", ".5"})
+    public double interval;
+
+    private AudioObject au;
+    private final byte[] buffer = new byte[Output.BUFFER_SIZE];
+
+    @Setup
+    public void setup() throws IOException {
+        TheHorde.output = Output.headless();
+        au = new AudioObject(Signals.wav(Signals.stereo(30)), null, null);
+        au.queue = new LinkedList<>();
+        au.loop = loop;
+    }
+
+    @Benchmark
+    public byte[] tick() {
+        // played once through, the queue drains: top it up, rarely enough not to show
+        if (au.queue.size() < 64) {
+            for (double start = 0; start < 10; start += interval) {
+                au.queue.add(new Interval(new TimedEvent(start, interval, 1), 0));
+            }
+        }
+        au.tick(buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,66 @@
+package com.kg.bench;
+
+import com.kg.synth.BasslineFilter2;
+import com.kg.synth.Delay;
+import com.kg.synth.Output;
+import com.kg.synth.Reverb;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-sample effects of a synthesizer part, run over one block of frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EffectsBenchmark {
+
+    private static final int FRAMES = Output.BUFFER_SIZE / 4;
+
+    private final double[] input = Signals.doubles(FRAMES);
+    private Reverb reverb;
+    private Delay delay;
+    private BasslineFilter2 filter;
+
+    @Setup
+    public void setup() {
+        reverb = new Reverb();
+        delay = new Delay();
+        filter = new BasslineFilter2(1000, .5);
+        filter.setSamplingFrequency(Output.SAMPLE_RATE);
+        filter.setCoefficients(1000, .5);
+    }
+
+    @Benchmark
+    public double reverb() {
+        double sum = 0;
+        for (double sample : input) {
+            reverb.input(sample);
+            sum += reverb.process()[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double delay() {
+        double sum = 0;
+        for (double sample : input) {
+            delay.input(sample);
+            sum += delay.output()[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double filter() {
+        double sum = 0;
+        for (double sample : input) {
+            sum += filter.filter(sample);
+        }
+        return sum;
+    }
+}
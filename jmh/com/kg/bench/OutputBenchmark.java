@@ -0,0 +1,60 @@
+package com.kg.bench;
+
+import com.kg.TheHorde;
+import com.kg.synth.Output;
+import com.myronmarston.util.MixingAudioInputStream;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block of the engine: all sequencers and synthesizers through the mixer,
+ * and the mixer on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputBenchmark {
+
+    @Param({"4", "16"})
+    public int streams;
+
+    private Output output;
+    private MixingAudioInputStream mixer;
+    private final List<InputStream> pins = new ArrayList<>();
+    private final byte[] block = new byte[Output.BUFFER_SIZE];
+
+    @Setup
+    public void setup() {
+        output = Output.headless();
+        TheHorde.output = output;
+        byte[] data = Signals.stereo(Output.BUFFER_SIZE / 4 / Output.SAMPLE_RATE);
+        for (int i = 0; i < streams; i++) {
+            pins.add(new ByteArrayInputStream(data));
+        }
+        mixer = new MixingAudioInputStream(output.mixingAudioInputStream.getFormat(), pins);
+        mixer.activeInputStreams = streams;
+    }
+
+    @Benchmark
+    public byte[] renderBlock() {
+        return output.renderBlock();
+    }
+
+    @Benchmark
+    public byte[] mix() throws IOException {
+        for (InputStream pin : pins) {
+            pin.reset();
+        }
+        mixer.read(block);
+        return block;
+    }
+}
@@ -0,0 +1,99 @@
+package com.kg.bench;
+
+import com.echonest.api.v4.Segment;
+import com.kg.wub.system.Audio;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic test audio for the benchmarks, so runs are comparable.
+ */
+final class Signals {
+
+    private Signals() {
+    }
+
+    /**
+     * @return seconds of 16 bit little endian stereo: a chord on the left, noise on the right
+     */
+    static byte[] stereo(double seconds) {
+        int frames = (int) (seconds * Audio.sampleRate);
+        byte[] data = new byte[frames * Audio.frameSize];
+        Random random = new Random(42);
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / Audio.sampleRate;
+            int left = (int) (8000 * (Math.sin(2 * Math.PI * 220 * t) + Math.sin(2 * Math.PI * 277 * t) + Math.sin(2 * Math.PI * 330 * t)));
+            int right = random.nextInt(16384) - 8192;
+            data[i * 4] = (byte) left;
+            data[i * 4 + 1] = (byte) (left >> 8);
+            data[i * 4 + 2] = (byte) right;
+            data[i * 4 + 3] = (byte) (right >> 8);
+        }
+        return data;
+    }
+
+    static float[] floats(int length) {
+        float[] f = new float[length];
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            f[i] = (float) (Math.sin(2 * Math.PI * 440 * i / Audio.sampleRate) * .5 + random.nextGaussian() * .1);
+        }
+        return f;
+    }
+
+    static double[] doubles(int length) {
+        double[] d = new double[length];
+        float[] f = floats(length);
+        for (int i = 0; i < length; i++) {
+            d[i] = f[i];
+        }
+        return d;
+    }
+
+    /**
+     * @return segments of length seconds each covering duration seconds, with random timbres
+     */
+    static List<Segment> segments(double duration, double length) {
+        List<Segment> segments = new ArrayList<>();
+        Random random = new Random(42);
+        for (double start = 0; start < duration; start += length) {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("start", start);
+            map.put("duration", length);
+            map.put("confidence", 1d);
+            map.put("loudness_start", -20d);
+            map.put("loudness_max_time", 0d);
+            map.put("loudness_max", -10d);
+            List<Double> pitches = new ArrayList<>();
+            List<Double> timbre = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                pitches.add(random.nextDouble());
+                timbre.add(random.nextDouble() * 100);
+            }
+            map.put("pitches", pitches);
+            map.put("timbre", timbre);
+            segments.add(new Segment(map));
+        }
+        return segments;
+    }
+
+    /**
+     * Writes data as a wav file deleted on exit.
+     */
+    static File wav(byte[] data) throws IOException {
+        File file = File.createTempFile("bench", ".wav");
+        file.deleteOnExit();
+        AudioInputStream ais = new AudioInputStream(new ByteArrayInputStream(data), Audio.audioFormat, data.length / Audio.frameSize);
+        AudioSystem.write(ais, AudioFileFormat.Type.WAVE, file);
+        return file;
+    }
+}
@@ -0,0 +1,52 @@
+package com.echonest.api.v4;
+
+import java.util.List;
+
+/**
+ * An immutable, time-indexed snapshot of a {@link TrackAnalysis}, one
+ * {@link EventTimeline} per level. Obtain it through
+ * {@link TrackAnalysis#getIndex()}, which rebuilds it when the analysis
+ * has changed.
+ */
+public class AnalysisIndex {
+
+    public final EventTimeline sections;
+    public final EventTimeline bars;
+    public final EventTimeline beats;
+    public final EventTimeline tatums;
+    public final SegmentTimeline segments;
+    public final double duration;
+
+    AnalysisIndex(TrackAnalysis analysis) {
+        sections = new EventTimeline(analysis.getSections());
+        bars = new EventTimeline(analysis.getBars());
+        beats = new EventTimeline(analysis.getBeats());
+        tatums = new EventTimeline(analysis.getTatums());
+        segments = new SegmentTimeline(analysis.getSegments());
+        duration = analysis.getDuration();
+    }
+
+    /**
+     * Returns the event of {@code events} covering {@code t}, the
+     * latest-starting one if several do, or null. {@code events} must be the
+     * level of the analysis that {@code timeline} was built from.
+     */
+    public static <T extends TimedEvent> T eventAt(EventTimeline timeline, List<T> events, double t) {
+        int i = timeline.indexAt(t);
+        return i < 0 ? null : events.get(timeline.getSourceIndex(i));
+    }
+
+    /**
+     * Cheap staleness check: events added to or removed from any level, or a
+     * new duration, invalidate the snapshot. Changes made to events in place
+     * must be followed by {@link TrackAnalysis#invalidateIndex()}.
+     */
+    boolean matches(TrackAnalysis analysis) {
+        return sections.size() == analysis.getSections().size()
+                && bars.size() == analysis.getBars().size()
+                && beats.size() == analysis.getBeats().size()
+                && tatums.size() == analysis.getTatums().size()
+                && segments.size() == analysis.getSegments().size()
+                && duration == analysis.getDuration();
+    }
+}
@@ -0,0 +1,172 @@
+package com.echonest.api.v4;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable, columnar view of one level of a track analysis (sections,
+ * bars, beats, tatums or segments). Events are held as primitive start and
+ * duration arrays sorted by start time, so that the event at a given time
+ * and the events overlapping a time range are found by binary search
+ * instead of a scan over the whole level.
+ * <p>
+ * Positions passed to and returned by this class are in start order;
+ * {@link #getSourceIndex(int)} maps them back to the list the timeline was
+ * built from.
+ */
+public class EventTimeline implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[] starts;
+    private final double[] durations;
+    /**
+     * The latest end time of the events up to and including each position;
+     * never decreases, which lets overlap queries binary search on it even
+     * when events overlap each other.
+     */
+    private final double[] reach;
+    private final int[] sourceIndex;
+
+    public EventTimeline(List<? extends TimedEvent> events) {
+        int n = events.size();
+        sourceIndex = sortedOrder(events);
+        starts = new double[n];
+        durations = new double[n];
+        reach = new double[n];
+        double latest = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            TimedEvent te = events.get(sourceIndex[i]);
+            starts[i] = te.start;
+            durations[i] = te.duration;
+            latest = Math.max(latest, te.start + te.duration);
+            reach[i] = latest;
+        }
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public double getStart(int i) {
+        return starts[i];
+    }
+
+    public double getDuration(int i) {
+        return durations[i];
+    }
+
+    public double getEnd(int i) {
+        return starts[i] + durations[i];
+    }
+
+    /**
+     * @return the index, in the list this timeline was built from, of the
+     * event at position {@code i}
+     */
+    public int getSourceIndex(int i) {
+        return sourceIndex[i];
+    }
+
+    /**
+     * Returns the position of the latest-starting event with
+     * {@code start <= t <= start + duration}, or -1 if no event covers
+     * {@code t}.
+     */
+    public int indexAt(double t) {
+        for (int i = lastStartingAtOrBefore(t); i >= 0 && reach[i] >= t; i--) {
+            if (getEnd(i) >= t) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the positions, in start order, of the events which overlap the
+     * open interval ({@code t0}, {@code t1}); events that merely touch it at
+     * either end are excluded.
+     */
+    public int[] overlapping(double t0, double t1) {
+        int from = firstReachingPast(t0);
+        int to = lastStartingAtOrBefore(Math.nextDown(t1)) + 1;
+        int[] found = new int[Math.max(0, to - from)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (getEnd(i) > t0) {
+                found[count++] = i;
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return the last position whose start is {@code <= t}, or -1
+     */
+    private int lastStartingAtOrBefore(double t) {
+        int lo = 0;
+        int hi = starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * @return the first position at or after which some event ends after {@code t}
+     */
+    private int firstReachingPast(double t) {
+        int lo = 0;
+        int hi = reach.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (reach[mid] > t) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Orders the events by start time; events with equal starts keep their
+     * order in the list. Already sorted lists, the usual case, are detected
+     * without sorting.
+     */
+    private static int[] sortedOrder(final List<? extends TimedEvent> events) {
+        int n = events.size();
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) {
+            sorted = events.get(i - 1).start <= events.get(i).start;
+        }
+        int[] order = new int[n];
+        if (sorted) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            return order;
+        }
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(events.get(o1).start, events.get(o2).start);
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+}
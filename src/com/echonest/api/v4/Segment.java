@@ -36,6 +36,28 @@ public class Segment extends TimedEvent {
 		}
 	}
 	
+	/**
+	 * Copies another segment, including its pitch and timbre vectors.
+	 */
+	protected Segment(Segment s) {
+		super(s);
+		loudnessStart = s.loudnessStart;
+		loudnessMaxTime = s.loudnessMaxTime;
+		loudnessMax = s.loudnessMax;
+		pitches = s.pitches == null ? null : s.pitches.clone();
+		timbre = s.timbre == null ? null : s.timbre.clone();
+	}
+
+	@Override
+	public Segment copy() {
+		return new Segment(this);
+	}
+
+	@Override
+	public Segment copy(double start, double duration) {
+		return (Segment) super.copy(start, duration);
+	}
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,88 @@
+package com.echonest.api.v4;
+
+import java.util.List;
+
+/**
+ * The segments of a track analysis as an {@link EventTimeline}, with the
+ * loudness values in primitive columns and the pitch and timbre vectors in
+ * contiguous row-major {@code float[size() * DIMS]} matrices, ready to be
+ * fed to feature extraction without touching the {@link Segment} objects.
+ * <p>
+ * Vectors shorter than {@link #DIMS} are padded with zeros.
+ */
+public class SegmentTimeline extends EventTimeline {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of pitch (chroma) and timbre coefficients per segment.
+     */
+    public static final int DIMS = 12;
+
+    private final float[] loudnessStart;
+    private final float[] loudnessMax;
+    private final float[] loudnessMaxTime;
+    private final float[] pitches;
+    private final float[] timbre;
+
+    public SegmentTimeline(List<Segment> segments) {
+        super(segments);
+        int n = size();
+        loudnessStart = new float[n];
+        loudnessMax = new float[n];
+        loudnessMaxTime = new float[n];
+        pitches = new float[n * DIMS];
+        timbre = new float[n * DIMS];
+        for (int i = 0; i < n; i++) {
+            Segment s = segments.get(getSourceIndex(i));
+            loudnessStart[i] = (float) s.getLoudnessStart();
+            loudnessMax[i] = (float) s.getLoudnessMax();
+            loudnessMaxTime[i] = (float) s.getLoudnessMaxTime();
+            copy(s.getPitches(), pitches, i * DIMS);
+            copy(s.getTimbre(), timbre, i * DIMS);
+        }
+    }
+
+    public float getLoudnessStart(int i) {
+        return loudnessStart[i];
+    }
+
+    public float getLoudnessMax(int i) {
+        return loudnessMax[i];
+    }
+
+    public float getLoudnessMaxTime(int i) {
+        return loudnessMaxTime[i];
+    }
+
+    public float getPitch(int i, int k) {
+        return pitches[i * DIMS + k];
+    }
+
+    public float getTimbre(int i, int k) {
+        return timbre[i * DIMS + k];
+    }
+
+    /**
+     * @return the pitch matrix, row {@code i} holding the {@link #DIMS}
+     * pitches of the segment at position {@code i}; shared, not to be modified
+     */
+    public float[] getPitchMatrix() {
+        return pitches;
+    }
+
+    /**
+     * @return the timbre matrix, laid out like {@link #getPitchMatrix()};
+     * shared, not to be modified
+     */
+    public float[] getTimbreMatrix() {
+        return timbre;
+    }
+
+    private static void copy(double[] from, float[] to, int offset) {
+        int n = from == null ? 0 : Math.min(from.length, DIMS);
+        for (int k = 0; k < n; k++) {
+            to[offset + k] = (float) from[k];
+        }
+    }
+}
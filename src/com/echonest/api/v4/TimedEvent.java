@@ -31,6 +31,32 @@ public class TimedEvent implements Serializable {
         this.confidence = 1f;
     }
 
+    /**
+     * Copies the fields of another event; see {@link #copy()}.
+     */
+    protected TimedEvent(TimedEvent te) {
+        this.start = te.start;
+        this.duration = te.duration;
+        this.confidence = te.confidence;
+    }
+
+    /**
+     * @return an independent copy of this event
+     */
+    public TimedEvent copy() {
+        return new TimedEvent(this);
+    }
+
+    /**
+     * @return a copy of this event moved to the given start and duration
+     */
+    public TimedEvent copy(double start, double duration) {
+        TimedEvent te = copy();
+        te.start = start;
+        te.duration = duration;
+        return te;
+    }
+
     /**
      * @return the start
      */
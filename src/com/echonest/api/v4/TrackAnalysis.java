@@ -20,6 +20,7 @@ public class TrackAnalysis implements Serializable {
     private ArrayList<Segment> segments=new ArrayList<>();;
     private double tempo= Sequencer.bpm;
     private double duration=1;
+    private transient AnalysisIndex index;
 
 
     public TrackAnalysis(Map map) {
@@ -76,6 +77,39 @@ public class TrackAnalysis implements Serializable {
         this.duration=mq.getDouble("track.duration");
     }
 
+    /**
+     * Deep copy; see {@link #copy()}.
+     */
+    private TrackAnalysis(TrackAnalysis ta) {
+        sections = copyEvents(ta.sections);
+        bars = copyEvents(ta.bars);
+        beats = copyEvents(ta.beats);
+        tatums = copyEvents(ta.tatums);
+        segments = new ArrayList<Segment>(ta.segments.size());
+        for (Segment s : ta.segments) {
+            segments.add(s.copy());
+        }
+        tempo = ta.tempo;
+        duration = ta.duration;
+    }
+
+    /**
+     * Returns a copy of this analysis whose events can be changed (by
+     * {@link #timeStretch(double)}, for instance) without affecting this one.
+     * Unlike a serialization round trip, this only copies fields and arrays.
+     */
+    public TrackAnalysis copy() {
+        return new TrackAnalysis(this);
+    }
+
+    private static ArrayList<TimedEvent> copyEvents(List<TimedEvent> events) {
+        ArrayList<TimedEvent> copy = new ArrayList<TimedEvent>(events.size());
+        for (TimedEvent te : events) {
+            copy.add(te.copy());
+        }
+        return copy;
+    }
+
     public void timeStretch(double bpmFactor){
         this.tempo*=bpmFactor;
         this.duration/=bpmFactor;
@@ -100,7 +134,24 @@ public class TrackAnalysis implements Serializable {
             te.duration/=bpmFactor;
             te.start/=bpmFactor;
         }
+        invalidateIndex();
+    }
+
+    /**
+     * Returns a columnar, time-indexed snapshot of this analysis for event
+     * lookups by time. It is rebuilt on demand when events have been added
+     * or removed; callers that move events in place must call
+     * {@link #invalidateIndex()}.
+     */
+    public synchronized AnalysisIndex getIndex() {
+        if (index == null || !index.matches(this)) {
+            index = new AnalysisIndex(this);
+        }
+        return index;
+    }
 
+    public synchronized void invalidateIndex() {
+        index = null;
     }
 
     public List<TimedEvent> getSections() {
@@ -0,0 +1,231 @@
+package com.kg;
+
+import com.echonest.api.v4.TimedEvent;
+import com.kg.synth.Clock;
+import com.kg.synth.Output;
+import com.kg.synth.PatternBank;
+import com.kg.synth.Sequencer;
+import com.kg.synth.Sink;
+import com.kg.wub.AudioObject;
+import com.kg.wub.system.CentralCommandNode;
+import com.kg.wub.system.ClipLine;
+import com.kg.wub.system.Interval;
+import com.kg.wub.system.PlayingField;
+import com.kg.wub.system.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the engine without JavaFX or an audio device: arrangements (.play),
+ * tracks (.wub) and tracker patterns (.pat) are loaded into a headless
+ * {@link Output}, which renders into a {@link Sink} at the pace of a
+ * {@link Clock}, by default as fast as the machine allows.
+ * <p>
+ * From the command line:
+ * <pre>
+ * RenderServer [-o out.wav | -o - | -port n | -null] [-seconds s | -forever]
+ *              [-speed x] [-bpm n] [-loop] [-volume v] files...
+ * </pre>
+ * {@code -o -} writes raw 16 bit stereo to stdout, {@code -port} streams it to
+ * the first client to connect. Without {@code -seconds} the longest file
+ * loaded is rendered once, or a minute of patterns.
+ */
+public class RenderServer {
+
+    private static volatile boolean stopped = false;
+
+    public final Output output;
+    // seconds of the longest audio loaded
+    private double length = 0;
+
+    public RenderServer(Sink sink, Clock clock) {
+        output = Output.headless(sink, clock);
+        TheHorde.output = output;
+    }
+
+    /**
+     * Sets the tempo of the sequencers; tracks loaded afterwards are stretched to it.
+     */
+    public void setTempo(double bpm) {
+        for (Sequencer s : output.getSequencers()) {
+            s.setBpm(bpm);
+        }
+    }
+
+    /**
+     * Mixes down the arrangement in file and plays it from the start.
+     */
+    public ClipLine loadPlay(File file, boolean loop) throws IOException, ClassNotFoundException {
+        CentralCommandNode ccn = (CentralCommandNode) Serializer.load(file);
+        ClipLine line = new ClipLine(PlayingField.mixdown(ccn.nodes, output.mixingAudioInputStream.getFormat().getFrameSize()), loop);
+        output.addLine(line);
+        length = Math.max(length, seconds(line.length()));
+        return line;
+    }
+
+    /**
+     * Loads the track in file and plays it whole from the start; further
+     * intervals can be queued on the returned object.
+     */
+    public AudioObject loadWub(File file, boolean loop) throws IOException, ClassNotFoundException {
+        AudioObject au = AudioObject.open(file, output);
+        double duration = seconds(au.data.length);
+        au.loop = loop;
+        au.play(new Interval(new TimedEvent(0, duration, 1), 0));
+        length = Math.max(length, duration);
+        return au;
+    }
+
+    /**
+     * Loads the tracker patterns in file and starts every sequencer that has
+     * some on its chain, at volume (0 to 1).
+     */
+    public PatternBank loadPatterns(File file, double volume) throws IOException, ClassNotFoundException {
+        PatternBank patterns = PatternBank.load(file);
+        Sequencer[] sequencers = output.getSequencers();
+        patterns.cueChains(sequencers);
+        for (int i = 0; i < sequencers.length && i < patterns.size(); i++) {
+            if (patterns.size(i) > 0) {
+                sequencers[i].setVolume(volume);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * @return the length in seconds of the longest arrangement or track loaded, or 0
+     */
+    public double getLength() {
+        return length;
+    }
+
+    public void render(double seconds) throws IOException, InterruptedException {
+        output.render(seconds);
+    }
+
+    /**
+     * Closes the sink.
+     */
+    public void close() {
+        output.dispose();
+    }
+
+    private double seconds(int bytes) {
+        return bytes / output.mixingAudioInputStream.getFormat().getFrameSize() / Output.SAMPLE_RATE;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        String out = "render.wav";
+        int port = -1;
+        double seconds = -1;
+        boolean forever = false;
+        double speed = 0;
+        double bpm = 0;
+        boolean loop = false;
+        double volume = .8;
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o":
+                    out = args[++i];
+                    break;
+                case "-null":
+                    out = null;
+                    break;
+                case "-port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-seconds":
+                    seconds = Double.parseDouble(args[++i]);
+                    break;
+                case "-forever":
+                    forever = true;
+                    break;
+                case "-speed":
+                    speed = Double.parseDouble(args[++i]);
+                    break;
+                case "-bpm":
+                    bpm = Double.parseDouble(args[++i]);
+                    break;
+                case "-loop":
+                    loop = true;
+                    break;
+                case "-volume":
+                    volume = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    files.add(new File(args[i]));
+                    break;
+            }
+        }
+
+        Sink sink;
+        if (port >= 0) {
+            System.err.println("waiting for a listener on port " + port);
+            ServerSocket server = new ServerSocket(port);
+            Socket socket = server.accept();
+            server.close();
+            sink = Sink.stream(socket.getOutputStream());
+        } else if (out == null) {
+            sink = Sink.discard();
+        } else if (out.equals("-")) {
+            // keep the engine's messages out of the audio
+            sink = Sink.stream(System.out);
+            System.setOut(System.err);
+        } else {
+            sink = Sink.wav(new File(out));
+        }
+        RenderServer server = new RenderServer(sink, speed > 0 ? Clock.speed(speed) : Clock.virtual());
+        if (bpm > 0) {
+            server.setTempo(bpm);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".play")) {
+                server.loadPlay(file, loop);
+            } else if (name.endsWith(".wub")) {
+                server.loadWub(file, loop);
+            } else if (name.endsWith(".pat")) {
+                server.loadPatterns(file, volume);
+            } else {
+                System.err.println("skipping " + file + ": not a .play, .wub or .pat file");
+            }
+        }
+        if (Sequencer.bpm < 1) {
+            server.setTempo(120);
+        }
+
+        if (forever) {
+            final Thread main = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                stopped = true;
+                try {
+                    main.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }));
+            while (!stopped) {
+                server.render(1);
+            }
+        } else {
+            if (seconds < 0) {
+                seconds = server.getLength() > 0 ? server.getLength() : 60;
+            }
+            long start = System.nanoTime();
+            server.render(seconds);
+            System.err.println(String.format("rendered %.1f s in %.1f s", server.output.getSeconds(), (System.nanoTime() - start) / 1e9));
+        }
+        server.close();
+        if (!stopped) {
+            // exiting from within the shutdown hook's wait would hang
+            System.exit(0);
+        }
+    }
+}
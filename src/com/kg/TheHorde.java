@@ -8,6 +8,7 @@ import com.kg.wub.system.CentralCommand;
 import com.myronmarston.music.Instrument;
 import eu.hansolo.fx.regulators.GradientLookup;
 import eu.hansolo.fx.regulators.Regulator;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -32,7 +33,6 @@ import javafx.scene.text.Font;
 import javafx.scene.transform.Scale;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import javafx.util.Callback;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiDevice;
@@ -40,6 +40,7 @@ import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.ShortMessage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -65,8 +66,12 @@ public class TheHorde extends Application {
     private GradientLookup gradientLookup;
     private static double main_vol;
     private static final double SCALE_FACTOR = 0.80;
-    private boolean drawSequencerPosition = true;
-    ArrayList<SequencerData>[] sd = new ArrayList[16];
+    private static final int THUMB_WIDTH = 72;
+    private static final int THUMB_HEIGHT = 48;
+    private static final int THUMB_MARGIN = 2;
+    // the tracker's patterns, kept between sessions; RenderServer can play them
+    private static final File PATTERN_FILE = new File("patterns.pat");
+    private PatternBank patterns = new PatternBank(Output.PARTS);
     public static Regulator bpm;
 
     //    FFT fft = new FFT(Output.BUFFER_SIZE, (float) Output.SAMPLE_RATE);
@@ -85,6 +90,13 @@ public class TheHorde extends Application {
 
         gradientLookup = new GradientLookup(stops);
         output = new Output(this);
+        if (PATTERN_FILE.exists()) {
+            try {
+                patterns = PatternBank.load(PATTERN_FILE);
+            } catch (IOException | ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
         Parent root = null;
         FXMLLoader loader = new FXMLLoader(new File("data/gui.fxml").toURL());
         try {
@@ -116,6 +128,11 @@ public class TheHorde extends Application {
             @Override
             public void handle(WindowEvent t) {
                 output.dispose();
+                try {
+                    patterns.store(PATTERN_FILE);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
                 Platform.exit();
                 System.exit(0);
             }
@@ -345,38 +362,11 @@ public class TheHorde extends Application {
 
         final Button trackSave = (Button) scene.lookup("#track-save");
         trackSave.setOnAction(new EventHandler<ActionEvent>() {
-            int width = 72;
-            int height = 48;
-            int margin = 2;
-
             @Override
             public void handle(ActionEvent event) {
-                drawSequencerPosition = false;
-                drawSequencer();
                 System.out.println("track save clicked");
-                SnapshotParameters sp = new SnapshotParameters();
-                sequencerCanvas.snapshot(new Callback<SnapshotResult, Void>() {
-                    @Override
-                    public Void call(SnapshotResult param) {
-                        drawSequencerPosition = true;
-                        if (sd[selectedSequencer] == null) {
-                            sd[selectedSequencer] = new ArrayList<SequencerData>();
-                        }
-                        GraphicsContext gc = trackerCanvas.getGraphicsContext2D();
-                        gc.drawImage(param.getImage(), (width + margin) * (sd[selectedSequencer].size()) + margin / 2, (height + margin) * (selectedSequencer) + margin / 2 + 20, width, height);
-                        sd[selectedSequencer].add(new SequencerData(param.getImage(), output.getSequencers()[selectedSequencer]));
-                        System.out.println("got image!");
-//                        JDialog dialog = new JDialog();
-////                dialog.setUndecorated(true);
-//                        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-//                        JLabel label = new JLabel(new ImageIcon(image));
-//                        dialog.add(label);
-//                        dialog.pack();
-//                        dialog.setVisible(true);
-                        return null;
-                    }
-                }, sp, null);
-
+                patterns.save(selectedSequencer, Pattern.of(output.getSequencers()[selectedSequencer]));
+                drawTracker();
             }
         });
 
@@ -577,6 +567,7 @@ public class TheHorde extends Application {
         sequencerCanvas = (Canvas) scene.lookup("#sequencer");
         visualizerCanvas = (Canvas) scene.lookup("#vis");
         trackerCanvas = (Canvas) scene.lookup("#tracker");
+        drawTracker();
 
         sequencerCanvas.setOnMousePressed(new EventHandler<MouseEvent>() {
             private int state;
@@ -665,24 +656,24 @@ public class TheHorde extends Application {
         });
 
         trackerCanvas.setOnMousePressed(new EventHandler<MouseEvent>() {
-            private int state;
-            int width = 72;
-            int height = 48;
-            int margin = 2;
-//(x-margin/2)/(width+margin)=(xloc)
-
-            //(y-margin/2+20)/(height+margin)=(yloc)
             @Override
             public void handle(MouseEvent e) {
                 if (!trackerCanvas.contains(e.getX(), e.getY())) {
                     return;
                 }
-                int xLoc = (int) ((e.getX() - (margin / 2)) / (width + margin));
-                int yLoc = (int) ((e.getY() - (margin / 2 + 20)) / (height + margin));
+                int xLoc = (int) ((e.getX() - (THUMB_MARGIN / 2)) / (THUMB_WIDTH + THUMB_MARGIN));
+                int yLoc = (int) ((e.getY() - (THUMB_MARGIN / 2 + 20)) / (THUMB_HEIGHT + THUMB_MARGIN));
                 System.out.println("Clicked on tracker canvas " + xLoc + "\t" + yLoc);
-                if (sd[yLoc] != null) {
-                    if (xLoc < sd[yLoc].size() && sd[yLoc].get(xLoc) != null) {
-                        output.getSequencers()[selectedSequencer].setSequence(sd[yLoc].get(xLoc));
+                if (yLoc < 0 || yLoc >= Output.PARTS) {
+                    return;
+                }
+                if (e.getButton() == MouseButton.SECONDARY) {
+                    // loop the whole row on its own sequencer
+                    patterns.playChain(output.getSequencers(), yLoc);
+                } else {
+                    Pattern pattern = patterns.get(yLoc, xLoc);
+                    if (pattern != null) {
+                        output.getSequencers()[selectedSequencer].queuePattern(pattern);
                     }
                 }
             }
@@ -698,6 +689,12 @@ public class TheHorde extends Application {
         });
 
         drawSequencer();
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drawFrame();
+            }
+        }.start();
         primaryStage.setScene(scene);
         primaryStage.show();
         Scale scale = new Scale(SCALE_FACTOR, SCALE_FACTOR);
@@ -711,156 +708,215 @@ public class TheHorde extends Application {
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                //draw tracker here
+                GraphicsContext gc = trackerCanvas.getGraphicsContext2D();
+                gc.clearRect(0, 0, trackerCanvas.getWidth(), trackerCanvas.getHeight());
+                for (int row = 0; row < Output.PARTS; row++) {
+                    int slot = 0;
+                    for (Pattern pattern : patterns.get(row)) {
+                        drawThumbnail(gc, pattern, row, (THUMB_WIDTH + THUMB_MARGIN) * slot + THUMB_MARGIN / 2, (THUMB_HEIGHT + THUMB_MARGIN) * row + THUMB_MARGIN / 2 + 20);
+                        slot++;
+                    }
+                }
             }
         });
     }
 
-    boolean seqLock = false;
-
-    public void drawSequencer() {
-        if (seqLock) {
-            return;
-        }
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                seqLock = true;
-                BasslinePattern bassline = output.getSequencers()[selectedSequencer].getBassline();
-                if (sequencerCanvas == null) return;
-                int step = output.getSequencers()[selectedSequencer].step;
-                double width = sequencerCanvas.getWidth();
-                double height = sequencerCanvas.getHeight();
-                double widthDist = width / 16d;
-                if (output.getSequencers()[selectedSequencer] instanceof RhythmSequencer) {
-                    canvasYoffset = 0;
-                    canvasYHeight = 7;
-                } else {
-                    canvasYHeight = 96;
-                    canvasYoffset = 23;
+    /**
+     * Draws a saved pattern of sequencer the way the sequencer canvas shows it, scaled down to a tracker cell.
+     */
+    private void drawThumbnail(GraphicsContext gc, Pattern pattern, int sequencer, double x, double y) {
+        Color gl = gradientLookup.getColorAt(sequencer / 16d).darker().darker().darker();
+        gc.setFill(gl.darker());
+        gc.fillRect(x, y, THUMB_WIDTH, THUMB_HEIGHT);
+        double widthDist = THUMB_WIDTH / (double) Math.max(1, pattern.length());
+        if (pattern.hasBassline()) {
+            double heightDist = THUMB_HEIGHT / 96d;
+            for (int i = 0; i < pattern.length(); i++) {
+                if (!pattern.isPaused(i)) {
+                    int pitch = pattern.getNote(i) + 23;
+                    gc.setFill(pattern.isAccented(i) ? ACCENT : NOTE);
+                    gc.fillRect(x + i * widthDist, y + THUMB_HEIGHT - pitch * heightDist, widthDist, Math.max(1, heightDist));
                 }
-
-                double heightDist = height / canvasYHeight;
-                GraphicsContext gc = sequencerCanvas.getGraphicsContext2D();
-                Color gl = gradientLookup.getColorAt(selectedSequencer / 16d).darker().darker().darker();
-                gc.setFill(gl.darker());
-                gc.fillRect(0, 0, sequencerCanvas.getWidth(), sequencerCanvas.getHeight());
-
-                gc.setStroke(gl);
-                gc.setLineWidth(2);
-                for (int i = 0; i < 17; i++) {
-                    if (i % 4 == 0) {
-                        gc.setStroke(gl.brighter());
-                    } else {
-                        gc.setStroke(gl);
+            }
+        } else if (pattern.hasRhythm()) {
+            double heightDist = THUMB_HEIGHT / 7d;
+            for (int j = 0; j < pattern.rows(); j++) {
+                for (int i = 0; i < pattern.length(); i++) {
+                    if (pattern.getRhythm(j, i) > 0) {
+                        gc.setFill(pattern.getRhythm(j, i) == 1 ? SLIDE : ACCENT);
+                        gc.fillRect(x + i * widthDist, y + THUMB_HEIGHT - (j + 1) * heightDist, widthDist, heightDist);
                     }
-                    gc.strokeLine(i * widthDist, 0, i * widthDist, height);
-
                 }
+            }
+        }
+    }
 
+    private static final Color NOTE = new Color(.0d, 1d, .0d, 1d);
+    private static final Color ACCENT = new Color(1d, .7d, .0d, 1d);
+    private static final Color SLIDE = new Color(1d, 1d, .0d, 1d);
+
+    // what the sequencer canvas shows, touched on the FX thread only
+    private volatile boolean sequencerInvalid = true;
+    private int drawnSequencer = -1;
+    private int drawnStep = -1;
+    private double drawnWidth;
+    private double drawnHeight;
+    private final long[] drawnColumns = new long[16];
+    private final long[] columns = new long[16];
+    private Color gridColor;
+    private Color gridBright;
+    private Color gridFill;
+
+    /**
+     * Redraws the whole sequencer on the next frame.
+     */
+    public void drawSequencer() {
+        sequencerInvalid = true;
+    }
 
-                gc.setStroke(gl);
-                gc.setLineWidth(1);
-                for (int i = 0; i < canvasYHeight + 1; i++) {
-                    if (i % 12 == 0) {
-                        gc.setStroke(gl.brighter());
-                    } else {
-                        gc.setStroke(gl);
-                    }
-                    gc.strokeLine(0, i * heightDist, width, i * heightDist);
-
-                }
+    /**
+     * Called once per frame: redraws the sequencer columns whose notes or playhead changed,
+     * and the visualizer if the output has produced a new block.
+     */
+    private void drawFrame() {
+        UiBus.Steps steps = output.bus.getSteps();
+        int step = steps == null ? output.getSequencers()[selectedSequencer].step : steps.get(selectedSequencer);
+        renderSequencer(step);
+        byte[] block = output.bus.takeBlock();
+        if (block != null) {
+            renderVisualizer(block);
+        }
+    }
 
+    /**
+     * @param step the step to draw the playhead at, or -1 for none
+     */
+    private void renderSequencer(int step) {
+        if (sequencerCanvas == null) return;
+        Sequencer sequencer = output.getSequencers()[selectedSequencer];
+        BasslinePattern bassline = sequencer.getBassline();
+        int[][] rhythm = bassline == null ? sequencer.getRhythm() : null;
+        if (sequencer instanceof RhythmSequencer) {
+            canvasYoffset = 0;
+            canvasYHeight = 7;
+        } else {
+            canvasYHeight = 96;
+            canvasYoffset = 23;
+        }
+        double width = sequencerCanvas.getWidth();
+        double height = sequencerCanvas.getHeight();
+        boolean full = sequencerInvalid || drawnSequencer != selectedSequencer || width != drawnWidth || height != drawnHeight;
+        if (full) {
+            sequencerInvalid = false;
+            drawnSequencer = selectedSequencer;
+            drawnWidth = width;
+            drawnHeight = height;
+            gridColor = gradientLookup.getColorAt(selectedSequencer / 16d).darker().darker().darker();
+            gridBright = gridColor.brighter();
+            gridFill = gridColor.darker();
+        }
+        for (int i = 0; i < 16; i++) {
+            columns[i] = bassline != null ? columnState(bassline, i) : columnState(rhythm, i);
+        }
+        GraphicsContext gc = sequencerCanvas.getGraphicsContext2D();
+        for (int i = 0; i < 16; i++) {
+            // notes and slides overlap the neighbouring columns by their stroke width
+            boolean changed = columns[i] != drawnColumns[i]
+                    || i > 0 && columns[i - 1] != drawnColumns[i - 1]
+                    || i < 15 && columns[i + 1] != drawnColumns[i + 1]
+                    || i == 0 && columns[15] != drawnColumns[15];
+            if (full || changed || playheadIn(i, step) != playheadIn(i, drawnStep)) {
+                paintSequencerColumn(gc, i, step, bassline, rhythm, width, height);
+            }
+        }
+        System.arraycopy(columns, 0, drawnColumns, 0, 16);
+        drawnStep = step;
+    }
 
-                if (drawSequencerPosition) {
-                    gc.setStroke(Color.WHITE);
-                    gc.strokeLine(step * widthDist, 0, step * widthDist, height);
+    /**
+     * @return where the playhead line at step crosses column i: 1 on its left edge, 2 on its right edge, else 0
+     */
+    private static int playheadIn(int i, int step) {
+        return step < 0 ? 0 : step == i ? 1 : step == i + 1 ? 2 : 0;
+    }
 
-//                    gc.setStroke(Color.BLACK);
-//                    gc.setLineWidth(1);
-//                    gc.strokeLine(0, sequencerCanvas.getHeight() - output.getSequencers()[selectedSequencer].pitch_offset * heightDist, width, sequencerCanvas.getHeight() - output.getSequencers()[selectedSequencer].pitch_offset * heightDist);
+    private static long columnState(BasslinePattern bassline, int i) {
+        return (bassline.note[i] & 255) | (bassline.pause[i] ? 1 << 8 : 0) | (bassline.accent[i] ? 1 << 9 : 0) | (bassline.slide[i] ? 1 << 10 : 0);
+    }
 
-                }
-                gc.setLineWidth(2);
-                if (bassline != null) {
-                    for (int i = 0; i < 16; i++) {
-                        int note = bassline.getNote(i);
-                        int pitch = bassline.note[i] + canvasYoffset;
-
-                        if (!bassline.pause[i]) {
-                            gc.setFill(new Color(.0d, 1d, .0d, 1d));
-                            gc.setStroke(new Color(.0d, 1d, .0d, 1d));
-                            gc.setLineWidth(3);
-                            int vel = (bassline.accent[i] ? 127 : 80);
-
-                            if (!bassline.accent[i]) {
-                                gc.setStroke(new Color(.0d, 1d, .0d, 1d));
-                                gc.setFill(new Color(.0d, 1d, .0d, 1d));
-                            } else {
-                                gc.setStroke(new Color(1d, .7d, 0d, 1d));
-                                gc.setFill(new Color(1d, .7d, .0d, 1d));
-                            }
-                            gc.fillRoundRect(i * widthDist, height - pitch * heightDist, widthDist, heightDist, 10, 10);
-                            gc.strokeRoundRect(i * widthDist, height - pitch * heightDist, widthDist, heightDist, 10, 10);
+    private static long columnState(int[][] rhythm, int i) {
+        long state = 0;
+        for (int j = 0; j < rhythm.length; j++) {
+            state = state << 2 ^ state >>> 62 ^ rhythm[j][i];
+        }
+        return state;
+    }
 
-//                    gc.strokeRoundRect(i * widthDist, height - pitch * heightDist, widthDist, heightDist, 10, 10);
-                        }
-                    }
-                    for (int i = 0; i < 16; i++) {
-                        if (bassline.slide[i]) {
-                            int pitch = bassline.note[i] + canvasYoffset;
-                            int nextpitch = bassline.note[(i + 1) % 16] + canvasYoffset;
-                            gc.setLineWidth(5);
-                            gc.setStroke(new Color(1d, 1d, .0d, 1d));
-                            gc.strokeLine(((i + 1) % 16) * widthDist, height - (pitch * heightDist) + heightDist / 2, ((i + 1) % 16) * widthDist, height - (nextpitch * heightDist) + heightDist / 2);
-                        }
-                    }
-                } else {
-                    int[][] rhythm = output.getSequencers()[selectedSequencer].getRhythm();
-                    for (int j = 0; j < rhythm.length; j++) {
-                        for (int i = 0; i < rhythm[j].length; i++) {
-                            if (rhythm[j][i] > 0) {
-//                if (!bassline.accent[i]) {
-//                    gc.setStroke(new Color(.0d, 1d, .0d, 1d));
-//                    gc.setFill(new Color(.0d, 1d, .0d, 1d));
-//                } else {
-                                if (rhythm[j][i] == 1) {
-                                    gc.setStroke(new Color(1d, 1d, 0d, 1d));
-                                    gc.setFill(new Color(1d, 1d, .0d, 1d));
-                                }
-                                if (rhythm[j][i] == 2) {
-                                    gc.setStroke(new Color(1d, .7d, 0d, 1d));
-                                    gc.setFill(new Color(1d, .7d, .0d, 1d));
-                                }
-//                }
+    /**
+     * Repaints column i of the sequencer, clipped to it: the grid, the playhead and the notes and slides of it and its neighbours.
+     */
+    private void paintSequencerColumn(GraphicsContext gc, int i, int step, BasslinePattern bassline, int[][] rhythm, double width, double height) {
+        double widthDist = width / 16d;
+        double heightDist = height / canvasYHeight;
+        gc.save();
+        gc.beginPath();
+        gc.rect(i * widthDist, 0, widthDist, height);
+        gc.clip();
+        gc.setFill(gridFill);
+        gc.fillRect(i * widthDist, 0, widthDist, height);
+
+        gc.setLineWidth(2);
+        for (int k = i; k <= i + 1; k++) {
+            gc.setStroke(k % 4 == 0 ? gridBright : gridColor);
+            gc.strokeLine(k * widthDist, 0, k * widthDist, height);
+        }
+        gc.setLineWidth(1);
+        for (int k = 0; k < canvasYHeight + 1; k++) {
+            gc.setStroke(k % 12 == 0 ? gridBright : gridColor);
+            gc.strokeLine(i * widthDist, k * heightDist, (i + 1) * widthDist, k * heightDist);
+        }
+        if (playheadIn(i, step) != 0) {
+            gc.setStroke(Color.WHITE);
+            gc.strokeLine(step * widthDist, 0, step * widthDist, height);
+        }
 
-                                gc.fillRoundRect(i * widthDist, height - (j + 1) * heightDist, widthDist, heightDist, 10, 10);
-                                gc.strokeRoundRect(i * widthDist, height - (j + 1) * heightDist, widthDist, heightDist, 10, 10);
-                            }
-                        }
+        gc.setLineWidth(2);
+        if (bassline != null) {
+            gc.setLineWidth(3);
+            for (int n = Math.max(0, i - 1); n <= Math.min(15, i + 1); n++) {
+                if (!bassline.pause[n]) {
+                    int pitch = bassline.note[n] + canvasYoffset;
+                    Color c = bassline.accent[n] ? ACCENT : NOTE;
+                    gc.setStroke(c);
+                    gc.setFill(c);
+                    gc.fillRoundRect(n * widthDist, height - pitch * heightDist, widthDist, heightDist, 10, 10);
+                    gc.strokeRoundRect(n * widthDist, height - pitch * heightDist, widthDist, heightDist, 10, 10);
+                }
+            }
+            gc.setLineWidth(5);
+            gc.setStroke(SLIDE);
+            // the slides drawn on this column's left and right edges
+            for (int n : new int[]{(i + 15) % 16, i}) {
+                if (bassline.slide[n]) {
+                    int pitch = bassline.note[n] + canvasYoffset;
+                    int nextpitch = bassline.note[(n + 1) % 16] + canvasYoffset;
+                    gc.strokeLine(((n + 1) % 16) * widthDist, height - (pitch * heightDist) + heightDist / 2, ((n + 1) % 16) * widthDist, height - (nextpitch * heightDist) + heightDist / 2);
+                }
+            }
+        } else {
+            for (int j = 0; j < rhythm.length; j++) {
+                for (int n = Math.max(0, i - 1); n <= Math.min(rhythm[j].length - 1, i + 1); n++) {
+                    if (rhythm[j][n] > 0) {
+                        Color c = rhythm[j][n] == 1 ? SLIDE : ACCENT;
+                        gc.setStroke(c);
+                        gc.setFill(c);
+                        gc.fillRoundRect(n * widthDist, height - (j + 1) * heightDist, widthDist, heightDist, 10, 10);
+                        gc.strokeRoundRect(n * widthDist, height - (j + 1) * heightDist, widthDist, heightDist, 10, 10);
                     }
                 }
-                seqLock = false;
             }
-        });
-//        gc.setLineWidth(5);
-//        gc.strokeLine(40, 10, 10, 40);
-//        gc.fillOval(10, 60, 30, 30);
-//        gc.strokeOval(60, 60, 30, 30);
-//        gc.fillRoundRect(110, 60, 30, 30, 10, 10);
-//        gc.strokeRoundRect(160, 60, 30, 30, 10, 10);
-//        gc.fillArc(10, 110, 30, 30, 45, 240, ArcType.OPEN);
-//        gc.fillArc(60, 110, 30, 30, 45, 240, ArcType.CHORD);
-//        gc.fillArc(110, 110, 30, 30, 45, 240, ArcType.ROUND);
-//        gc.strokeArc(10, 160, 30, 30, 45, 240, ArcType.OPEN);
-//        gc.strokeArc(60, 160, 30, 30, 45, 240, ArcType.CHORD);
-//        gc.strokeArc(110, 160, 30, 30, 45, 240, ArcType.ROUND);
-//        gc.fillPolygon(new double[]{10, 40, 10, 40},
-//                new double[]{210, 210, 240, 240}, 4);
-//        gc.strokePolygon(new double[]{60, 90, 60, 90},
-//                new double[]{210, 210, 240, 240}, 4);
-//        gc.strokePolyline(new double[]{110, 140, 110, 140},
-//                new double[]{210, 210, 240, 240}, 4);
+        }
+        gc.restore();
     }
 
 
@@ -941,57 +997,50 @@ public class TheHorde extends Application {
     private double[] lastBytes = new double[256];
     private double[] accel = new double[256];
 
-    boolean visLock = false;
     float[] fftf = new float[256];
+    private Color[] spectrumColors;
 
-    public void drawVisualizer(final byte[] buffer5) {
-        if (visLock) {
+    /**
+     * Draws the spectrum of buffer5, on the FX thread.
+     */
+    private void renderVisualizer(final byte[] buffer5) {
+        if (visualizerCanvas == null) {
             return;
         }
-        Platform.runLater(new Runnable() {
-            @Override
-            public void run() {
-                visLock = true;
-                if (visualizerCanvas != null) {
-                    double width = visualizerCanvas.getWidth();
-                    double height = visualizerCanvas.getHeight();
-                    fftf = calculateFFT(buffer5, 256);
-                    GraphicsContext gc = visualizerCanvas.getGraphicsContext2D();
-                    gc.setFill(Color.BLACK);
-                    gc.fillRect(0, 0, width, height);
-                    gc.setStroke(new Color(1d, 1d, 1d, 1d));
-                    double dw = width / 256d;
-                    gc.setLineWidth(dw + .03f);
-                    for (int i = 0; i < 256; i++) {
-                        double perc = (double) i / width;
-                        int l = (int) (perc * fftf.length);
-                        double mag = fftf[l];
-                        Color co = gradientLookup.getColorAt(Math.min(1, mag / 2));
-//                Color co1=new Color(co.getRed(),co.getGreen(),co.getBlue(),1d);
-                        Color lastco = gradientLookup.getColorAt(Math.min(1, lastBytes[l] / 2));
-//                gc.setStroke(Color.WHITE);
-
-                        gc.setStroke(lastco);
-
-//                gc.strokeLine(i * dw-dw/2, height - lastBytes[l] / 3 * height, i * dw + dw/2, height - lastBytes[l] / 3 * height);
-                        gc.strokeLine(i * dw, 1 + height - lastBytes[l] / 3 * height, i * dw, height - lastBytes[l] / 3 * height);
-                        if (mag > lastBytes[l]) {
-                            lastBytes[l] = mag;
-                            accel[l] = 0;
-                        } else {
-                            lastBytes[l] -= accel[l];
-                            accel[l] += .001d;
-                        }
-//                lastBytes[l] /= 100d;
-                        gc.setStroke(co);
-
-                        gc.strokeLine(i * dw, height, i * dw, height - mag / 3 * height);
-                    }
-                    visLock = false;
-                }
-
+        if (spectrumColors == null) {
+            spectrumColors = new Color[256];
+            for (int i = 0; i < spectrumColors.length; i++) {
+                spectrumColors[i] = gradientLookup.getColorAt(i / 255d);
             }
-        });
+        }
+        double width = visualizerCanvas.getWidth();
+        double height = visualizerCanvas.getHeight();
+        fftf = calculateFFT(buffer5, 256);
+        GraphicsContext gc = visualizerCanvas.getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, width, height);
+        double dw = width / 256d;
+        gc.setLineWidth(dw + .03f);
+        for (int i = 0; i < 256; i++) {
+            double perc = (double) i / width;
+            int l = (int) (perc * fftf.length);
+            double mag = fftf[l];
+            gc.setStroke(spectrumColor(lastBytes[l]));
+            gc.strokeLine(i * dw, 1 + height - lastBytes[l] / 3 * height, i * dw, height - lastBytes[l] / 3 * height);
+            if (mag > lastBytes[l]) {
+                lastBytes[l] = mag;
+                accel[l] = 0;
+            } else {
+                lastBytes[l] -= accel[l];
+                accel[l] += .001d;
+            }
+            gc.setStroke(spectrumColor(mag));
+            gc.strokeLine(i * dw, height, i * dw, height - mag / 3 * height);
+        }
+    }
+
+    private Color spectrumColor(double mag) {
+        return spectrumColors[(int) (Math.max(0, Math.min(1, mag / 2)) * 255)];
     }
 
     FFT fft = new FFT(Output.BUFFER_SIZE / 2, (float) Output.SAMPLE_RATE);
@@ -10,11 +10,36 @@ public class PythonPIP {
         installPIP();
     }
 
+    /**
+     * The interpreter every tool is run with; the horde.python system property
+     * replaces it, e.g. with a stand-in script that fakes spotdl and spleeter.
+     */
+    public static String python = System.getProperty("horde.python", "python");
+
+    private static boolean installed;
+
     public static void installPIP() {
+        run(builder("-c \"" + setup + "\""));
+    }
+
+    /**
+     * Installs the tools the first time it is called in this process only.
+     */
+    public static synchronized void installOnce() {
+        if (!installed) {
+            installPIP();
+            installed = true;
+        }
+    }
+
+    /**
+     * @return a builder running python with the given arguments through the shell, in the working directory
+     */
+    public static ProcessBuilder builder(String arguments) {
         boolean isWindows = System.getProperty("os.name")
                 .toLowerCase().startsWith("windows");
         ProcessBuilder builder = new ProcessBuilder();
-        String pro = "python -c \"" + setup + "\"";
+        String pro = python + " " + arguments;
         if (isWindows) {
             builder.command("cmd.exe", "/c", pro);
         } else {
@@ -22,6 +47,10 @@ public class PythonPIP {
         }
         builder.directory(new File(System.getProperty("user.dir")));
         builder.inheritIO();
+        return builder;
+    }
+
+    public static void run(ProcessBuilder builder) {
         Process process = null;
         try {
             for (String c : builder.command()) {
@@ -3,7 +3,6 @@ package com.kg.python;//import org.gradle.tooling.BuildLauncher;
 //import org.gradle.tooling.ProjectConnection;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.concurrent.Executors;
 
 public class SpleeterTest {
@@ -25,30 +24,18 @@ public class SpleeterTest {
     }
 
     public static void spleet(File file,int stem) {
-        boolean isWindows = System.getProperty("os.name")
-                .toLowerCase().startsWith("windows");
-        ProcessBuilder builder = new ProcessBuilder();
-        String pro = "python -m spleeter separate -p spleeter:"+stem+"stems -i " + file.getAbsolutePath() + " -o spleeter";
-        if (isWindows) {
-            builder.command("cmd.exe", "/c", pro);
-        } else {
-            builder.command("sh", "-c", pro);
-        }
-        builder.directory(new File(System.getProperty("user.dir")));
-        builder.inheritIO();
-        Process process = null;
-        try {
-            for (String c : builder.command()) {
-                System.out.print(c + " ");
-            }
-            System.out.println();
-            process = builder.start();
-            process.waitFor();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        spleet(file, stem, new File("spleeter"));
+    }
+
+    /**
+     * Separates file into stem stems, written to outputDirectory/(file name without extension)/.
+     */
+    public static void spleet(File file, int stem, File outputDirectory) {
+        PythonPIP.run(PythonPIP.builder(arguments(file, stem, outputDirectory)));
+    }
+
+    public static String arguments(File file, int stem, File outputDirectory) {
+        return "-m spleeter separate -p spleeter:" + stem + "stems -i " + file.getAbsolutePath() + " -o " + outputDirectory.getPath();
     }
 
 }
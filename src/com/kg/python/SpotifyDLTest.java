@@ -57,71 +57,51 @@ public class SpotifyDLTest {
     }
 
     public static void spotify(String trackurl, File outputFile) {
-        boolean isWindows = System.getProperty("os.name")
-                .toLowerCase().startsWith("windows");
-        ProcessBuilder builder = new ProcessBuilder();
         outputFile.delete();
-        String pro = "python -m spotdl.command_line.__main__ --overwrite force --song " + trackurl + " -f " + outputFile.getAbsolutePath();
-        if (isWindows) {
-            builder.command("cmd.exe", "/c", pro);
-        } else {
-            builder.command("sh", "-c", pro);
-        }
-        builder.directory(new File(System.getProperty("user.dir")));
+        PythonPIP.run(PythonPIP.builder(spotifyArguments(trackurl, outputFile)));
+    }
+
+    public static String spotifyArguments(String trackurl, File outputFile) {
+        return "-m spotdl.command_line.__main__ --overwrite force --song " + trackurl + " -f " + outputFile.getAbsolutePath();
+    }
 
-        builder.inheritIO();
+    public static enum STEMS {
+        STEM0(),
+        STEM2("vocals", "accompaniment"),
+        STEM4("vocals", "bass", "other", "drums"),
+        STEM5("vocals", "piano", "bass", "other", "drums");
 
-        Process process = null;
-        try {
-            for (String c : builder.command()) {
-                System.out.print(c + " ");
-            }
-            System.out.println();
-            process = builder.start();
-            process.waitFor();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        /**
+         * The files spleeter writes for this mode, without the .wav extension.
+         */
+        public final String[] names;
+
+        STEMS(String... names) {
+            this.names = names;
         }
     }
 
-    public static enum STEMS {
-        STEM0, STEM2, STEM4, STEM5;
+    /**
+     * @return the stem files spleeter writes for input into outputDirectory
+     */
+    public static List<File> stemFiles(File input, File outputDirectory, STEMS stem) {
+        String base = input.getName().replaceAll("^.*?(([^/\\\\\\.]+))\\.[^\\.]+$", "$1");
+        List<File> files = new ArrayList<>();
+        for (String name : stem.names) {
+            files.add(new File(new File(outputDirectory, base), name + ".wav"));
+        }
+        return files;
     }
 
     public static List<File> spotifyAndSpleeter(String trackURL, File outputFile, STEMS stem) {
-        PythonPIP.installPIP();
-        ArrayList<File> outfiles = new ArrayList<>();
+        PythonPIP.installOnce();
         SpotifyDLTest.spotify(trackURL, outputFile);
-        outfiles = new ArrayList<>();
+        ArrayList<File> outfiles = new ArrayList<>();
         outfiles.add(outputFile);
-        String base = System.getProperty("user.dir") + File.separator + "spleeter" + File.separator + outputFile.getName().replaceAll("^.*?(([^/\\\\\\.]+))\\.[^\\.]+$", "$1") + File.separator;
-        switch (stem) {
-            case STEM0:
-                break;
-            case STEM2:
-                SpleeterTest.spleet(outputFile, 2);
-                outfiles.add(new File(base + "vocals.wav"));
-                outfiles.add(new File(base + "accompaniment.wav"));
-                break;
-            case STEM4:
-                SpleeterTest.spleet(outputFile, 4);
-                outfiles.add(new File(base + "vocals.wav"));
-                outfiles.add(new File(base + "bass.wav"));
-                outfiles.add(new File(base + "other.wav"));
-                outfiles.add(new File(base + "drums.wav"));
-                break;
-            case STEM5:
-                SpleeterTest.spleet(outputFile, 5);
-                outfiles.add(new File(base + "vocals.wav"));
-                outfiles.add(new File(base + "piano.wav"));
-                outfiles.add(new File(base + "bass.wav"));
-                outfiles.add(new File(base + "other.wav"));
-                outfiles.add(new File(base + "drums.wav"));
-                break;
-            default:
-                throw new IllegalStateException("Unexpected value: stem " + stem);
+        if (stem != STEM0) {
+            File outputDirectory = new File(System.getProperty("user.dir"), "spleeter");
+            SpleeterTest.spleet(outputFile, stem.names.length, outputDirectory);
+            outfiles.addAll(stemFiles(outputFile, outputDirectory, stem));
         }
         for (File f : outfiles) {
             System.out.println(f.exists() + "\t" + f.getAbsolutePath());
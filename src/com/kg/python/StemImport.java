@@ -0,0 +1,251 @@
+package com.kg.python;
+
+import com.echonest.api.v4.TrackAnalysis;
+import com.kg.wub.AudioObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static com.kg.python.SpotifyDLTest.STEMS.STEM0;
+
+/**
+ * Imports a track and its spleeter stems as a small graph of jobs on a bounded
+ * pool: download, then separation and, alongside it, the decode of the full
+ * mix, then the decode and time stretch of every stem in parallel. A five
+ * stem import takes about as long as download + separation + its slowest
+ * stem, instead of the sum of all stages.
+ * <p>
+ * Downloads are kept, and stems are written to spleeter/(stem mode)/(track
+ * file name)/, which holds the track id; either is reused when it is already
+ * there. The tools write under partial_ names, which are renamed into place
+ * only when they exit cleanly and deleted otherwise, so an interrupted import
+ * never leaves output that looks finished. Tool setup runs once per process, see {@link PythonPIP#installOnce()},
+ * and {@link PythonPIP#python} can point at a stand-in for the real tools.
+ * <p>
+ * The AudioObjects are returned in the order spotifyAndSpleeter always
+ * produced them, the full mix first, but are not yet added to the editor.
+ * They are all stretched to the tempo resolved by start, on the caller's
+ * thread, before any of them is decoded.
+ */
+public class StemImport {
+
+    /**
+     * Receives progress of each task of an import, from the pool's threads.
+     * Tasks are "download", "separate" and the name of each decoded file.
+     */
+    public interface Listener {
+        void progress(String task, double fraction);
+    }
+
+    private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "StemImport");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final String trackURL;
+    private final File outputFile;
+    private final File stemDirectory;
+    private final TrackAnalysis ta;
+    private final SpotifyDLTest.STEMS stem;
+    private final Listener listener;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final CompletableFuture<List<AudioObject>> result;
+    private final double bpm;
+    private volatile boolean cancelled;
+
+    private StemImport(String trackURL, File outputFile, TrackAnalysis ta, SpotifyDLTest.STEMS stem, Listener listener) {
+        this.trackURL = trackURL;
+        this.outputFile = outputFile;
+        this.stemDirectory = new File(new File(System.getProperty("user.dir"), "spleeter"), stem.name());
+        this.ta = ta;
+        this.stem = stem;
+        this.listener = listener;
+        this.bpm = AudioObject.resolveTempo(ta);
+        this.result = schedule();
+    }
+
+    /**
+     * Starts importing trackURL, downloaded to outputFile, and its stems.
+     *
+     * @param listener may be null
+     */
+    public static StemImport start(String trackURL, File outputFile, TrackAnalysis ta, SpotifyDLTest.STEMS stem, Listener listener) {
+        return new StemImport(trackURL, outputFile, ta, stem, listener);
+    }
+
+    /**
+     * @return the loaded full mix and stems; completes exceptionally if a stage fails or the import is cancelled
+     */
+    public CompletableFuture<List<AudioObject>> result() {
+        return result;
+    }
+
+    /**
+     * Stops the import: running tools are killed, decodes stop at their next block and nothing further is started.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Process p : processes) {
+            p.destroy();
+        }
+        result.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private CompletableFuture<List<AudioObject>> schedule() {
+        final List<File> stems = SpotifyDLTest.stemFiles(outputFile, stemDirectory, stem);
+        CompletableFuture<Void> downloaded = CompletableFuture.runAsync(() -> download(), pool);
+        CompletableFuture<Void> separated = downloaded.thenRunAsync(() -> separate(stems), pool);
+
+        List<CompletableFuture<AudioObject>> loads = new ArrayList<>();
+        loads.add(downloaded.thenApplyAsync(v -> load(outputFile), pool));
+        for (final File f : stems) {
+            loads.add(separated.thenApplyAsync(v -> load(f), pool));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<AudioObject> objects = new ArrayList<>();
+            for (CompletableFuture<AudioObject> l : loads) {
+                objects.add(l.join());
+            }
+            return objects;
+        });
+    }
+
+    private void download() {
+        if (cached(outputFile)) {
+            progress("download", 1d);
+            return;
+        }
+        PythonPIP.installOnce();
+        File partial = new File(outputFile.getAbsoluteFile().getParentFile(), "partial_" + outputFile.getName());
+        try {
+            partial.delete();
+            run("download", PythonPIP.builder(SpotifyDLTest.spotifyArguments(trackURL, partial)));
+            if (!cached(partial)) {
+                throw new IOException("download failed: " + trackURL);
+            }
+            Files.move(partial.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            partial.delete();
+        }
+    }
+
+    /**
+     * Separates into a partial_ directory beside the stems of other tracks and
+     * renames the track's directory out of it once spleeter has succeeded.
+     */
+    private void separate(List<File> stems) {
+        if (stem == STEM0 || allCached(stems)) {
+            progress("separate", 1d);
+            return;
+        }
+        PythonPIP.installOnce();
+        File partial = new File(stemDirectory, "partial_" + stems.get(0).getParentFile().getName());
+        try {
+            delete(partial);
+            run("separate", PythonPIP.builder(SpleeterTest.arguments(outputFile, stem.names.length, partial)));
+            if (!allCached(SpotifyDLTest.stemFiles(outputFile, partial, stem))) {
+                throw new IOException("separation failed: " + outputFile);
+            }
+            // a directory without all stems is left from before imports were renamed into place
+            File target = stems.get(0).getParentFile();
+            delete(target);
+            Files.move(new File(partial, target.getName()).toPath(), target.toPath());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            delete(partial);
+        }
+    }
+
+    private AudioObject load(final File file) {
+        checkCancelled();
+        return AudioObject.load(file, ta, bpm, (f, fraction) -> {
+            // thrown out of the decode loop
+            checkCancelled();
+            progress(f.getName(), fraction);
+        });
+    }
+
+    private void run(String task, ProcessBuilder builder) {
+        checkCancelled();
+        progress(task, 0d);
+        Process process = null;
+        try {
+            process = builder.start();
+            processes.add(process);
+            if (cancelled) {
+                process.destroy();
+            }
+            int exit = process.waitFor();
+            checkCancelled();
+            if (exit != 0) {
+                throw new CompletionException(new IOException(task + " failed with exit code " + exit));
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(task + " interrupted");
+        } finally {
+            if (process != null) {
+                processes.remove(process);
+            }
+        }
+        progress(task, 1d);
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    private void progress(String task, double fraction) {
+        if (listener != null) {
+            listener.progress(task, fraction);
+        }
+    }
+
+    private static boolean cached(File f) {
+        return f.isFile() && f.length() > 0;
+    }
+
+    /**
+     * Deletes f, and everything in it if it is a directory.
+     */
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    private static boolean allCached(List<File> files) {
+        for (File f : files) {
+            if (!cached(f)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
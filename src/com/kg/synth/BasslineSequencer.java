@@ -71,8 +71,10 @@ public class BasslineSequencer extends Sequencer {
         this.tick += 1;
         if (this.tick >= this.samplesPerSequencerUpdate) {
             this.tick = 0;
-            if (this.step == 16)
+            if (this.step == 16) {
                 this.step = 0;
+                nextBar();
+            }
         }
     }
 
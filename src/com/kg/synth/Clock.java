@@ -0,0 +1,44 @@
+package com.kg.synth;
+
+/**
+ * Paces a headless {@link Output}. The engine's time is the number of frames
+ * it has rendered, so it does not depend on the clock; the clock only decides
+ * how long rendering waits for the wall clock.
+ */
+public interface Clock {
+
+    /**
+     * Called after each block with the number of frames rendered so far.
+     */
+    void waitFor(long frames) throws InterruptedException;
+
+    /**
+     * @return a clock that never waits: renders as fast as the machine allows
+     */
+    static Clock virtual() {
+        return frames -> {
+        };
+    }
+
+    /**
+     * @return a clock keeping rendering to speed times realtime, e.g. 1 for
+     * streaming to listeners or 4 to check a set quickly
+     */
+    static Clock speed(final double speed) {
+        return new Clock() {
+            private long start = -1;
+
+            @Override
+            public void waitFor(long frames) throws InterruptedException {
+                long now = System.nanoTime();
+                if (start < 0) {
+                    start = now;
+                }
+                long due = start + (long) (frames / Output.SAMPLE_RATE / speed * 1e9);
+                if (due > now) {
+                    Thread.sleep((due - now) / 1000000, (int) ((due - now) % 1000000));
+                }
+            }
+        };
+    }
+}
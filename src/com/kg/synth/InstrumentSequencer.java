@@ -1,25 +1,26 @@
 package com.kg.synth;
 
 import com.kg.wub.system.CentralCommand;
-import com.myronmarston.music.AudioFileCreator;
 import com.myronmarston.music.Instrument;
+import com.myronmarston.music.SynthesizerPool;
 import com.sun.media.sound.AudioSynthesizer;
 
 import javax.sound.midi.*;
-import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 public class InstrumentSequencer extends Sequencer {
     public String instrument;
     AudioInputStream audioInputStream;
     private final ArrayList<Integer> noteOn = new ArrayList<Integer>();
     private AudioSynthesizer audioSynthesizer = null;
+    private Receiver receiver = null;
 
     public int channel = 0;
     private static final String[] channels = new String[16];
     private final boolean drum;
+    // notes trigger the intervals mapped to them in the editor; off without the editor
+    boolean padTriggers = true;
 
     InstrumentSequencer(int channel, boolean drum) {
         this(Instrument.AVAILABLE_INSTRUMENTS.get((int) (Instrument.AVAILABLE_INSTRUMENTS.size() * Math.random())), channel, drum);
@@ -34,13 +35,10 @@ public class InstrumentSequencer extends Sequencer {
         randomizeSequence();
         this.channel = channel;
         try {
-            audioSynthesizer = AudioFileCreator.getAudioSynthesizer();
-            int resolution = 16;
-            int channels = 2;
-            int frameSize = channels * resolution / 8;
-            int sampleRate = 44100;
-            AudioFormat audioFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, resolution, channels, frameSize, sampleRate, false);
-            audioInputStream = audioSynthesizer.openStream(audioFormat, new HashMap<String, Object>());
+            //all instrument sequencers play through one synthesizer, each on its own channel
+            audioSynthesizer = SynthesizerPool.getShared();
+            audioInputStream = SynthesizerPool.getSharedStream();
+            receiver = audioSynthesizer.getReceiver();
         } catch (MidiUnavailableException e) {
             e.printStackTrace();
         }
@@ -96,10 +94,9 @@ public class InstrumentSequencer extends Sequencer {
                             int vel = (int) ((this.getBassline().accent[this.step] ? 127 : 80) * vol);
                             setChannel(channel);
                             noteOn.add(pitch);
-                            audioSynthesizer.getReceiver().send(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, vel), -1);
-                            CentralCommand.midi("midi-" + String.format("%02d", channel) + "-" + String.format("%03d", (pitch - 23)));
-                        } catch (MidiUnavailableException e) {
-                            e.printStackTrace();
+                            receiver.send(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, vel), -1);
+                            if (padTriggers)
+                                CentralCommand.midi("midi-" + String.format("%02d", channel) + "-" + String.format("%03d", (pitch - 23)));
                         } catch (InvalidMidiDataException e) {
                             e.printStackTrace();
                         }
@@ -125,8 +122,8 @@ public class InstrumentSequencer extends Sequencer {
                             noteOn.add(pitch);
 //                        System.out.println(pitch + "\t" + vel);
                             try {
-                                audioSynthesizer.getReceiver().send(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, (int) (vol1 * vol)), -1);
-                            } catch (MidiUnavailableException | InvalidMidiDataException e) {
+                                receiver.send(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, (int) (vol1 * vol)), -1);
+                            } catch (InvalidMidiDataException e) {
                                 e.printStackTrace();
                             }
 //                            this.drums.noteOn(ch + 32, vol);
@@ -139,8 +136,8 @@ public class InstrumentSequencer extends Sequencer {
                 if (drum || !this.getBassline().slide[this.step]) {
                     for (int n : noteOn) {
                         try {
-                            audioSynthesizer.getReceiver().send(new ShortMessage(ShortMessage.NOTE_OFF, channel, n, 0), -1);
-                        } catch (MidiUnavailableException | InvalidMidiDataException e) {
+                            receiver.send(new ShortMessage(ShortMessage.NOTE_OFF, channel, n, 0), -1);
+                        } catch (InvalidMidiDataException e) {
                             e.printStackTrace();
                         }
                     }
@@ -156,8 +153,10 @@ public class InstrumentSequencer extends Sequencer {
 
         if (this.tick >= this.samplesPerSequencerUpdate) {
             this.tick = 0;
-            if (this.step == 16)
+            if (this.step == 16) {
                 this.step = 0;
+                nextBar();
+            }
         }
     }
 
@@ -178,11 +177,7 @@ public class InstrumentSequencer extends Sequencer {
             Instrument instrument = Instrument.getInstrument(this.instrument);
             if (instrument != null) {
                 MidiEvent programChangeMidiEvent = instrument.getProgramChangeMidiEvent(channel);
-                try {
-                    audioSynthesizer.getReceiver().send(programChangeMidiEvent.getMessage(), -1);
-                } catch (MidiUnavailableException e) {
-                    e.printStackTrace();
-                }
+                receiver.send(programChangeMidiEvent.getMessage(), -1);
             }
         }
     }
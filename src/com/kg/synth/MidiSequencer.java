@@ -197,8 +197,10 @@ public class MidiSequencer extends Sequencer {
 
         if (this.tick >= this.samplesPerSequencerUpdate) {
             this.tick = 0;
-            if (this.step == 16)
+            if (this.step == 16) {
                 this.step = 0;
+                nextBar();
+            }
         }
     }
 
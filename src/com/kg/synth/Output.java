@@ -30,11 +30,17 @@ public class Output implements Runnable {
     private final static int audioLines = 30;
     private byte[][] buffers = new byte[audioLines][BUFFER_SIZE];
     private InputStream[] pins = new InputStream[buffers.length];
+    // number of instrument synthesizer streams mixed in ahead of the pins
+    private int instrumentStreams = 0;
     private boolean running = false;
 
     private boolean paused = false;
     private MySourceDataLine sourceLine = null;
     private OutputStream audioWriter = null;
+    // headless only
+    private Sink sink = null;
+    private Clock clock = null;
+    private volatile long frames = 0;
 
     double right1 = 0.0D;
     double left1 = 0.0D;
@@ -50,16 +56,31 @@ public class Output implements Runnable {
     private final List<Tickable> lines = new ArrayList<>();
     private final byte[] bufferOut = new byte[BUFFER_SIZE];
     private final byte[] lasBufferOut = new byte[BUFFER_SIZE];
+    /**
+     * Steps and output blocks for the UI; the audio thread only publishes here.
+     */
+    public final UiBus bus = new UiBus(BUFFER_SIZE);
 
     public Output(TheHorde horde) {
+        this(horde, true);
+    }
+
+    /**
+     * @param live false to open no audio line, recording or MIDI device: all
+     *             sequencers play through the software synthesizer and blocks
+     *             go to the sink, or are only produced by {@link #renderBlock()}
+     */
+    private Output(TheHorde horde, boolean live) {
         instance = this;
         this.horde = horde;
 //        soundSystem();
-        sourceLine = new MySourceDataLine(AudioFileCreator.getSourceDataLine());
-        try {
-            audioWriter = new BufferedOutputStream(new FileOutputStream("test.wav"));
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+        if (live) {
+            sourceLine = new MySourceDataLine(AudioFileCreator.getSourceDataLine());
+            try {
+                audioWriter = new BufferedOutputStream(new FileOutputStream("test.wav"));
+            } catch (FileNotFoundException e) {
+                e.printStackTrace();
+            }
         }
         synthesizers = new Synthesizer[4];
         delay = new Delay[PARTS];
@@ -70,10 +91,12 @@ public class Output implements Runnable {
             reverb[i] = new Reverb();
         }
         ArrayList<InputStream> streams = new ArrayList<InputStream>();
+        // the sequencers playing into each instrument stream, which mute it at volume 0
+        ArrayList<List<Sequencer>> streamSequencers = new ArrayList<List<Sequencer>>();
         this.sequencer = new Sequencer[PARTS];
         for (int it = 0; it < this.sequencer.length - 4; it++) {
             Sequencer its = null;
-            if (it < 8) {
+            if (live && it < 8) {
                 its = new MidiSequencer(it, false);
             } else {
                 its = new InstrumentSequencer(it, it == 9);
@@ -86,18 +109,36 @@ public class Output implements Runnable {
 //            its= (it<8)?new MidiSequencer(it, it == 9):new InstrumentSequencer(it, it == 9);
             this.sequencer[it] = its;
             if (its instanceof InstrumentSequencer) {
-                streams.add(((InstrumentSequencer) its).audioInputStream);
+                ((InstrumentSequencer) its).padTriggers = live;
+                //instrument sequencers share one synthesizer stream, so mix it in only once
+                InputStream stream = ((InstrumentSequencer) its).audioInputStream;
+                if (stream != null) {
+                    int index = streams.indexOf(stream);
+                    if (index < 0) {
+                        index = streams.size();
+                        streams.add(stream);
+                        streamSequencers.add(new ArrayList<Sequencer>());
+                    }
+                    streamSequencers.get(index).add(its);
+                }
             }
         }
+        List<Sequencer[]> gates = new ArrayList<Sequencer[]>();
+        for (List<Sequencer> sequencers : streamSequencers) {
+            gates.add(sequencers.toArray(new Sequencer[0]));
+        }
+        instrumentStreams = streams.size();
         int cc = 0;
         for (byte[] buffer : buffers) {
             buffers[cc] = new byte[BUFFER_SIZE];
             InputStream pin = new ByteArrayInputStream(buffers[cc]);
             pins[cc++] = pin;
             streams.add(pin);
+            // the synth buffers are scaled by their sequencer's volume as they are filled
+            gates.add(null);
         }
         AudioFormat audioFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
-        mixingAudioInputStream = new MixingAudioInputStream(audioFormat, streams);
+        mixingAudioInputStream = new MixingAudioInputStream(audioFormat, streams, gates);
         BasslineSynthesizer tb1 = new BasslineSynthesizer();
         BasslineSynthesizer tb2 = new BasslineSynthesizer();
         RhythmSynthesizer tr1 = new RhythmSynthesizer();
@@ -120,6 +161,25 @@ public class Output implements Runnable {
         thread.setPriority(10);
     }
 
+    /**
+     * @return an Output without audio hardware or JavaFX, for rendering blocks
+     * off-line with {@link #renderBlock()}
+     */
+    public static Output headless() {
+        return headless(Sink.discard(), Clock.virtual());
+    }
+
+    /**
+     * @return an Output without audio hardware or JavaFX, writing its blocks to
+     * sink at the pace of clock, once started or asked to {@link #render(double)}
+     */
+    public static Output headless(Sink sink, Clock clock) {
+        Output output = new Output(null, false);
+        output.sink = sink;
+        output.clock = clock;
+        return output;
+    }
+
     public void start() {
         running = true;
         thread.start();
@@ -147,6 +207,76 @@ public class Output implements Runnable {
     }
 
     public void run() {
+        while (running) {
+            if (paused) {
+                try {
+                    Thread.sleep(25L);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            try {
+                playBlock();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+        dispose();
+    }
+
+    /**
+     * Renders seconds of audio into the sink on the calling thread, for batch
+     * rendering with a headless Output that has not been started.
+     */
+    public void render(double seconds) throws IOException, InterruptedException {
+        long end = frames + (long) (seconds * SAMPLE_RATE);
+        while (frames < end) {
+            playBlock();
+        }
+    }
+
+    private void playBlock() throws IOException, InterruptedException {
+        if (sequencer[0].step != lastStep) {
+            bus.publishSteps(sequencer);
+        }
+        lastStep = sequencer[0].step;
+//        horde.drawVisualizer(buffer1);
+        byte[] block = renderBlock();
+        if (audioWriter != null) {
+            audioWriter.write(block);
+        }
+        bus.publishBlock(block);
+        if (sourceLine != null) {
+            sourceLine.waitFor(block);
+        }
+//        sourceLine.write(bufferOut, 0, BUFFER_SIZE);
+        if (sink != null) {
+            sink.write(block);
+            clock.waitFor(frames);
+        }
+    }
+
+    /**
+     * @return the frames rendered so far: the engine's clock, which runs at
+     * {@link #SAMPLE_RATE} whatever the pace of rendering
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getSeconds() {
+        return frames / SAMPLE_RATE;
+    }
+
+    /**
+     * Advances the sequencers by one block and mixes the synthesizers and lines into it.
+     *
+     * @return the mixed block, overwritten by the next call
+     */
+    public byte[] renderBlock() {
         double[] tmp = null;
         double[] del = null;
         double[] rev = null;
@@ -159,157 +289,145 @@ public class Output implements Runnable {
         int sample_left_int4 = 0;
         int sample_right_int4 = 0;
 
-        while (running) {
-            if (paused) {
-                try {
-                    Thread.sleep(25L);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                continue;
-            }
-            if (sequencer[0].step != lastStep) {
-                horde.drawSequencer();
+        for (int i = 0; i < Output.BUFFER_SIZE; i += 4) {
+            for (Sequencer sequencer : sequencer) {
+                sequencer.tick();
             }
-            lastStep = sequencer[0].step;
-//            horde.drawVisualizer(buffer1);
-            for (int i = 0; i < Output.BUFFER_SIZE; i += 4) {
-                for (Sequencer sequencer : sequencer) {
-                    sequencer.tick();
-                }
-                left1 = right1 = 0;
-                left2 = right2 = 0;
-                left3 = right3 = 0;
-                left4 = right4 = 0;
-
-                tmp = synthesizers[0].stereoOutput();
-                int col = PARTS - 1;
-                delay[col].input(tmp[2]);
-                reverb[col].input(tmp[3]);
-                left1 += tmp[0];
-                right1 += tmp[1];
-                del = delay[col].output();
-                left1 += del[0];
-                right1 += del[1];
-                rev = reverb[col].process();
-                left1 += rev[0];
-                right1 += rev[1];
-                panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
-                panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
-                left1 *= panl;
-                right1 *= panr;
-                sample_left_int1 = (int) (left1 * 32767.0D * sequencer[sequencer.length - 1].getVolume());
-                sample_right_int1 = (int) (right1 * 32767.0D * sequencer[sequencer.length - 1].getVolume());
-                buffers[0][i] = ((byte) (sample_left_int1 & 0xFF));
-                buffers[0][(i + 1)] = ((byte) (sample_left_int1 >> 8 & 0xFF));
-                buffers[0][(i + 2)] = ((byte) (sample_right_int1 & 0xFF));
-                buffers[0][(i + 3)] = ((byte) (sample_right_int1 >> 8 & 0xFF));
-
-                tmp = synthesizers[1].stereoOutput();
-                col = PARTS - 2;
-                delay[col].input(tmp[2]);
-                reverb[col].input(tmp[3]);
-                left2 += tmp[0];
-                right2 += tmp[1];
-                del = delay[col].output();
-                left2 += del[0];
-                right2 += del[1];
-                rev = reverb[col].process();
-                left2 += rev[0];
-                right2 += rev[1];
-                panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
-                panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
-                left2 *= panl;
-                right2 *= panr;
-                sample_left_int2 = (int) (left2 * 32767.0D * sequencer[sequencer.length - 2].getVolume());
-                sample_right_int2 = (int) (right2 * 32767.0D * sequencer[sequencer.length - 2].getVolume());
-                buffers[1][i] = ((byte) (sample_left_int2 & 0xFF));
-                buffers[1][(i + 1)] = ((byte) (sample_left_int2 >> 8 & 0xFF));
-                buffers[1][(i + 2)] = ((byte) (sample_right_int2 & 0xFF));
-                buffers[1][(i + 3)] = ((byte) (sample_right_int2 >> 8 & 0xFF));
-
-
-                tmp = synthesizers[2].stereoOutput();
-                col = PARTS - 3;
-                delay[col].input(tmp[2]);
-                reverb[col].input(tmp[3]);
-                left3 += tmp[0];
-                right3 += tmp[1];
-                del = delay[col].output();
-                left3 += del[0];
-                right3 += del[1];
-                rev = reverb[col].process();
-                left3 += rev[0];
-                right3 += rev[1];
-                panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
-                panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
-                left3 *= panl;
-                right3 *= panr;
-                sample_left_int3 = (int) (left3 * 32767.0D * sequencer[sequencer.length - 3].getVolume());
-                sample_right_int3 = (int) (right3 * 32767.0D * sequencer[sequencer.length - 3].getVolume());
-                buffers[2][i] = ((byte) (sample_left_int3 & 0xFF));
-                buffers[2][(i + 1)] = ((byte) (sample_left_int3 >> 8 & 0xFF));
-                buffers[2][(i + 2)] = ((byte) (sample_right_int3 & 0xFF));
-                buffers[2][(i + 3)] = ((byte) (sample_right_int3 >> 8 & 0xFF));
-
-
-                tmp = synthesizers[3].stereoOutput();
-                col = PARTS - 4;
-                delay[col].input(tmp[2]);
-                reverb[col].input(tmp[3]);
-                left4 += tmp[0];
-                right4 += tmp[1];
-                del = delay[col].output();
-                left4 += del[0];
-                right4 += del[1];
-                rev = reverb[col].process();
-                left4 += rev[0];
-                right4 += rev[1];
-                panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
-                panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
-                left4 *= panl;
-                right4 *= panr;
-                sample_left_int4 = (int) (left4 * 32767.0D * sequencer[sequencer.length - 4].getVolume());
-                sample_right_int4 = (int) (right4 * 32767.0D * sequencer[sequencer.length - 4].getVolume());
-                buffers[3][i] = ((byte) (sample_left_int4 & 0xFF));
-                buffers[3][(i + 1)] = ((byte) (sample_left_int4 >> 8 & 0xFF));
-                buffers[3][(i + 2)] = ((byte) (sample_right_int4 & 0xFF));
-                buffers[3][(i + 3)] = ((byte) (sample_right_int4 >> 8 & 0xFF));
-            }
-            int bb = 0;
-            Iterator<Tickable> it = lines.iterator();
-            while (it.hasNext()) {
-                Tickable au = it.next();
-                if (bb < buffers.length - 4) {
-                    if (au.tick(buffers[bb + 4])) {
-                        bb++;
-                    }
+            left1 = right1 = 0;
+            left2 = right2 = 0;
+            left3 = right3 = 0;
+            left4 = right4 = 0;
+
+            tmp = synthesizers[0].stereoOutput();
+            int col = PARTS - 1;
+            delay[col].input(tmp[2]);
+            reverb[col].input(tmp[3]);
+            left1 += tmp[0];
+            right1 += tmp[1];
+            del = delay[col].output();
+            left1 += del[0];
+            right1 += del[1];
+            rev = reverb[col].process();
+            left1 += rev[0];
+            right1 += rev[1];
+            panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
+            panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
+            left1 *= panl;
+            right1 *= panr;
+            sample_left_int1 = (int) (left1 * 32767.0D * sequencer[sequencer.length - 1].getVolume());
+            sample_right_int1 = (int) (right1 * 32767.0D * sequencer[sequencer.length - 1].getVolume());
+            buffers[0][i] = ((byte) (sample_left_int1 & 0xFF));
+            buffers[0][(i + 1)] = ((byte) (sample_left_int1 >> 8 & 0xFF));
+            buffers[0][(i + 2)] = ((byte) (sample_right_int1 & 0xFF));
+            buffers[0][(i + 3)] = ((byte) (sample_right_int1 >> 8 & 0xFF));
+
+            tmp = synthesizers[1].stereoOutput();
+            col = PARTS - 2;
+            delay[col].input(tmp[2]);
+            reverb[col].input(tmp[3]);
+            left2 += tmp[0];
+            right2 += tmp[1];
+            del = delay[col].output();
+            left2 += del[0];
+            right2 += del[1];
+            rev = reverb[col].process();
+            left2 += rev[0];
+            right2 += rev[1];
+            panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
+            panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
+            left2 *= panl;
+            right2 *= panr;
+            sample_left_int2 = (int) (left2 * 32767.0D * sequencer[sequencer.length - 2].getVolume());
+            sample_right_int2 = (int) (right2 * 32767.0D * sequencer[sequencer.length - 2].getVolume());
+            buffers[1][i] = ((byte) (sample_left_int2 & 0xFF));
+            buffers[1][(i + 1)] = ((byte) (sample_left_int2 >> 8 & 0xFF));
+            buffers[1][(i + 2)] = ((byte) (sample_right_int2 & 0xFF));
+            buffers[1][(i + 3)] = ((byte) (sample_right_int2 >> 8 & 0xFF));
+
+
+            tmp = synthesizers[2].stereoOutput();
+            col = PARTS - 3;
+            delay[col].input(tmp[2]);
+            reverb[col].input(tmp[3]);
+            left3 += tmp[0];
+            right3 += tmp[1];
+            del = delay[col].output();
+            left3 += del[0];
+            right3 += del[1];
+            rev = reverb[col].process();
+            left3 += rev[0];
+            right3 += rev[1];
+            panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
+            panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
+            left3 *= panl;
+            right3 *= panr;
+            sample_left_int3 = (int) (left3 * 32767.0D * sequencer[sequencer.length - 3].getVolume());
+            sample_right_int3 = (int) (right3 * 32767.0D * sequencer[sequencer.length - 3].getVolume());
+            buffers[2][i] = ((byte) (sample_left_int3 & 0xFF));
+            buffers[2][(i + 1)] = ((byte) (sample_left_int3 >> 8 & 0xFF));
+            buffers[2][(i + 2)] = ((byte) (sample_right_int3 & 0xFF));
+            buffers[2][(i + 3)] = ((byte) (sample_right_int3 >> 8 & 0xFF));
+
+
+            tmp = synthesizers[3].stereoOutput();
+            col = PARTS - 4;
+            delay[col].input(tmp[2]);
+            reverb[col].input(tmp[3]);
+            left4 += tmp[0];
+            right4 += tmp[1];
+            del = delay[col].output();
+            left4 += del[0];
+            right4 += del[1];
+            rev = reverb[col].process();
+            left4 += rev[0];
+            right4 += rev[1];
+            panl = 2f * Math.min(.5f, (127f - (pan[col] + 63.5f)) / 127f);
+            panr = 2f * Math.min(.5f, (pan[col] + 63.5f) / 127f);
+            left4 *= panl;
+            right4 *= panr;
+            sample_left_int4 = (int) (left4 * 32767.0D * sequencer[sequencer.length - 4].getVolume());
+            sample_right_int4 = (int) (right4 * 32767.0D * sequencer[sequencer.length - 4].getVolume());
+            buffers[3][i] = ((byte) (sample_left_int4 & 0xFF));
+            buffers[3][(i + 1)] = ((byte) (sample_left_int4 >> 8 & 0xFF));
+            buffers[3][(i + 2)] = ((byte) (sample_right_int4 & 0xFF));
+            buffers[3][(i + 3)] = ((byte) (sample_right_int4 >> 8 & 0xFF));
+        }
+        int bb = 0;
+        Iterator<Tickable> it = lines.iterator();
+        while (it.hasNext()) {
+            Tickable au = it.next();
+            if (bb < buffers.length - 4) {
+                if (au.tick(buffers[bb + 4])) {
+                    bb++;
                 }
             }
+        }
 
 
-            try {
-                for (InputStream pin : pins) {
-                    pin.reset();
-                }
-                mixingAudioInputStream.activeInputStreams = bb + 15;
-                mixingAudioInputStream.read(bufferOut);
-                audioWriter.write(bufferOut);
-                horde.drawVisualizer(bufferOut);
-                sourceLine.waitFor(bufferOut);
-//                sourceLine.write(bufferOut, 0, BUFFER_SIZE);
-            } catch (IOException e) {
-                e.printStackTrace();
+        try {
+            for (InputStream pin : pins) {
+                pin.reset();
             }
+            //the instrument streams, the four synth buffers and the lines that played
+            mixingAudioInputStream.activeInputStreams = instrumentStreams + 4 + bb;
+            mixingAudioInputStream.read(bufferOut);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        dispose();
+        frames += BUFFER_SIZE / mixingAudioInputStream.getFormat().getFrameSize();
+        return bufferOut;
     }
 
     public void dispose() {
         running = false;
         try {
-            rawToWave(new File("test.wav"), new File("testconv.wav"));
-            audioWriter.close();
+            if (audioWriter != null) {
+                rawToWave(new File("test.wav"), new File("testconv.wav"));
+                audioWriter.close();
+            }
+            if (sink != null) {
+                sink.close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,154 @@
+package com.kg.synth;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable copy of a sequencer's pattern: the bassline steps packed one
+ * short per step (note, pause, accent, slide) and the rhythm one byte per cell.
+ * Patterns are taken with {@link #of(Sequencer)} and put back with
+ * {@link Sequencer#queuePattern(Pattern)}, and saved with their
+ * {@link PatternBank}.
+ */
+public final class Pattern implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int PAUSE = 1 << 8;
+    private static final int ACCENT = 1 << 9;
+    private static final int SLIDE = 1 << 10;
+
+    private final int length;
+    // note & 255 | flags per step, or null if the sequencer had no bassline
+    private final short[] steps;
+    // row-major rows * length, or null if the sequencer had no rhythm
+    private final byte[] rhythm;
+    private final int rows;
+
+    private Pattern(int length, short[] steps, byte[] rhythm, int rows) {
+        this.length = length;
+        this.steps = steps;
+        this.rhythm = rhythm;
+        this.rows = rows;
+    }
+
+    /**
+     * @return a copy of the pattern sequencer is playing now
+     */
+    public static Pattern of(Sequencer sequencer) {
+        BasslinePattern bassline = sequencer.getBassline();
+        int[][] r = sequencer.getRhythm();
+        int length = bassline != null ? bassline.note.length : r != null && r.length > 0 ? r[0].length : 0;
+        short[] steps = null;
+        if (bassline != null) {
+            steps = new short[length];
+            for (int i = 0; i < length; i++) {
+                steps[i] = (short) ((bassline.note[i] & 255)
+                        | (bassline.pause[i] ? PAUSE : 0)
+                        | (bassline.accent[i] ? ACCENT : 0)
+                        | (bassline.slide[i] ? SLIDE : 0));
+            }
+        }
+        byte[] rhythm = null;
+        int rows = 0;
+        if (r != null) {
+            rows = r.length;
+            rhythm = new byte[rows * length];
+            for (int j = 0; j < rows; j++) {
+                for (int i = 0; i < length && i < r[j].length; i++) {
+                    rhythm[j * length + i] = (byte) r[j][i];
+                }
+            }
+        }
+        return new Pattern(length, steps, rhythm, rows);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean hasBassline() {
+        return steps != null;
+    }
+
+    public boolean hasRhythm() {
+        return rhythm != null;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public byte getNote(int step) {
+        return (byte) steps[step];
+    }
+
+    public boolean isPaused(int step) {
+        return (steps[step] & PAUSE) != 0;
+    }
+
+    public boolean isAccented(int step) {
+        return (steps[step] & ACCENT) != 0;
+    }
+
+    public boolean isSlided(int step) {
+        return (steps[step] & SLIDE) != 0;
+    }
+
+    public int getRhythm(int row, int step) {
+        return rhythm[row * length + step];
+    }
+
+    /**
+     * Makes sequencer play this pattern: rhythm sequencers take the rhythm, the
+     * others the bassline. The sequencer's arrays are overwritten in place when
+     * they have the right shape, so this allocates nothing on the audio thread.
+     */
+    void copyInto(Sequencer sequencer) {
+        if (sequencer instanceof RhythmSequencer) {
+            if (rhythm == null) {
+                return;
+            }
+            int[][] r = sequencer.getRhythm();
+            if (r == null || r.length != rows || rows > 0 && r[0].length != length) {
+                r = new int[rows][length];
+            }
+            for (int j = 0; j < rows; j++) {
+                for (int i = 0; i < length; i++) {
+                    r[j][i] = rhythm[j * length + i];
+                }
+            }
+            sequencer.setRhythm(r);
+        } else {
+            if (steps == null) {
+                return;
+            }
+            BasslinePattern bassline = sequencer.getBassline();
+            if (bassline == null || bassline.note.length != length) {
+                bassline = new BasslinePattern(length);
+                bassline.note = new byte[length];
+            }
+            for (int i = 0; i < length; i++) {
+                bassline.note[i] = getNote(i);
+                bassline.pause[i] = isPaused(i);
+                bassline.accent[i] = isAccented(i);
+                bassline.slide[i] = isSlided(i);
+            }
+            sequencer.setBassline(bassline);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Pattern)) {
+            return false;
+        }
+        Pattern p = (Pattern) o;
+        return length == p.length && rows == p.rows && Arrays.equals(steps, p.steps) && Arrays.equals(rhythm, p.rhythm);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(steps) + Arrays.hashCode(rhythm);
+    }
+}
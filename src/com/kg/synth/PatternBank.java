@@ -0,0 +1,133 @@
+package com.kg.synth;
+
+import com.kg.wub.system.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Saved patterns, one list per sequencer, and the songs built from them. Every
+ * switch goes through the sequencers' queues, so it is heard from the next bar.
+ */
+public class PatternBank {
+
+    private final List<List<Pattern>> banks = new ArrayList<>();
+
+    public PatternBank(int sequencers) {
+        for (int i = 0; i < sequencers; i++) {
+            banks.add(new CopyOnWriteArrayList<Pattern>());
+        }
+    }
+
+    /**
+     * @return the slot pattern was saved to
+     */
+    public int save(int sequencer, Pattern pattern) {
+        List<Pattern> bank = banks.get(sequencer);
+        synchronized (bank) {
+            bank.add(pattern);
+            return bank.size() - 1;
+        }
+    }
+
+    /**
+     * @return the pattern in slot of sequencer's bank, or null if there is none
+     */
+    public Pattern get(int sequencer, int slot) {
+        List<Pattern> bank = banks.get(sequencer);
+        return slot >= 0 && slot < bank.size() ? bank.get(slot) : null;
+    }
+
+    public List<Pattern> get(int sequencer) {
+        return Collections.unmodifiableList(banks.get(sequencer));
+    }
+
+    public int size(int sequencer) {
+        return banks.get(sequencer).size();
+    }
+
+    /**
+     * @return the number of sequencers with a bank
+     */
+    public int size() {
+        return banks.size();
+    }
+
+    /**
+     * Saves every bank to file, to be read back with {@link #load(File)}.
+     */
+    public void store(File file) throws IOException {
+        ArrayList<ArrayList<Pattern>> copy = new ArrayList<>();
+        for (List<Pattern> bank : banks) {
+            copy.add(new ArrayList<>(bank));
+        }
+        Serializer.store(copy, file);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static PatternBank load(File file) throws IOException, ClassNotFoundException {
+        List<List<Pattern>> stored = (List<List<Pattern>>) Serializer.load(file);
+        PatternBank patterns = new PatternBank(stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            patterns.banks.get(i).addAll(stored.get(i));
+        }
+        return patterns;
+    }
+
+    /**
+     * Makes sequencers[sequencer] loop through all patterns saved for it, one per bar.
+     */
+    public void playChain(Sequencer[] sequencers, int sequencer) {
+        List<Pattern> bank = banks.get(sequencer);
+        if (!bank.isEmpty()) {
+            sequencers[sequencer].queueChain(PatternChain.of(bank));
+        }
+    }
+
+    /**
+     * Like {@link #playChain} for every sequencer with saved patterns, but the
+     * first pattern is put in place now instead of at the next bar; only for
+     * sequencers that have not started playing, as before a headless render.
+     */
+    public void cueChains(Sequencer[] sequencers) {
+        for (int i = 0; i < sequencers.length && i < banks.size(); i++) {
+            List<Pattern> bank = new ArrayList<>(banks.get(i));
+            if (!bank.isEmpty()) {
+                bank.get(0).copyInto(sequencers[i]);
+                Collections.rotate(bank, -1);
+                sequencers[i].queueChain(PatternChain.of(bank));
+            }
+        }
+    }
+
+    /**
+     * Plays song on all sequencers, looping: {@code song[bar][i]} is the slot of
+     * sequencer i's bank to play in that bar, or -1 to keep its pattern. All
+     * sequencers start the song on the same, next, bar.
+     */
+    public void playSong(Sequencer[] sequencers, int[][] song) {
+        Song chains = new Song();
+        for (int i = 0; i < sequencers.length && i < banks.size(); i++) {
+            List<Pattern> bars = new ArrayList<>();
+            for (int[] bar : song) {
+                bars.add(i < bar.length ? get(i, bar[i]) : null);
+            }
+            chains.put(sequencers[i], bars.isEmpty() ? PatternChain.NONE : PatternChain.of(bars));
+        }
+        Sequencer.queueSong(chains);
+    }
+
+    /**
+     * Stops chain and song playback on all sequencers at the next bar.
+     */
+    public void stop(Sequencer[] sequencers) {
+        Sequencer.queueSong(null);
+        for (Sequencer s : sequencers) {
+            s.queueChain(PatternChain.NONE);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.kg.synth;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A looping list of patterns, one per bar, for a sequencer to play through
+ * (see {@link Sequencer#queueChain(PatternChain)}). A null entry keeps the
+ * pattern of the bar before.
+ */
+public final class PatternChain {
+
+    /**
+     * Queued to stop chain playback; the current pattern keeps playing.
+     */
+    public static final PatternChain NONE = new PatternChain(new Pattern[]{null});
+
+    private final Pattern[] bars;
+
+    private PatternChain(Pattern[] bars) {
+        this.bars = bars;
+    }
+
+    public static PatternChain of(List<Pattern> bars) {
+        if (bars.isEmpty()) {
+            throw new IllegalArgumentException("empty chain");
+        }
+        return new PatternChain(bars.toArray(new Pattern[0]));
+    }
+
+    public static PatternChain of(Pattern... bars) {
+        return of(Arrays.asList(bars));
+    }
+
+    public int length() {
+        return bars.length;
+    }
+
+    /**
+     * @return the pattern of bar, counted from the start of the chain, or null to keep the current one
+     */
+    public Pattern get(int bar) {
+        return bars[bar % bars.length];
+    }
+}
@@ -1,8 +1,6 @@
 package com.kg.synth;
 
-import com.kg.SequencerData;
-
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class Sequencer {
     public static double bpm = 0.0D;
@@ -16,6 +14,15 @@ public abstract class Sequencer {
     public boolean sixteenth_note = true;
     public int patternLength = 16;
     public int pitch_offset;
+    private final AtomicReference<Pattern> queuedPattern = new AtomicReference<>();
+    private final AtomicReference<PatternChain> queuedChain = new AtomicReference<>();
+    private static final AtomicReference<Song> queuedSong = new AtomicReference<>();
+    // when a sequencer last reached a bar, for telling the first to reach it from the rest
+    private static volatile long lastBarNanos;
+    // audio thread only
+    private PatternChain chain;
+    private int bar;
+    private Song song;
 
 
     public BasslinePattern getBassline() {
@@ -58,23 +65,72 @@ public abstract class Sequencer {
 
     public abstract void randomizeRhythm();
 
-    public void setSequence(SequencerData sd) {
-        if (this instanceof RhythmSequencer){
-            if (sd.rhythm!=null){
-                this.setRhythm(Arrays.stream(sd.rhythm).map(int[]::clone).toArray(int[][]::new));
+    /**
+     * Plays pattern from the next bar on; may be called from any thread. If a
+     * chain is playing, pattern replaces its next bar only.
+     */
+    public void queuePattern(Pattern pattern) {
+        queuedPattern.set(pattern);
+    }
+
+    /**
+     * Starts chain from its first bar at the next bar, or stops chain playback
+     * if it is {@link PatternChain#NONE}; may be called from any thread.
+     */
+    public void queueChain(PatternChain chain) {
+        queuedChain.set(chain);
+    }
+
+    /**
+     * Starts the chains of song on all of its sequencers at the same, next,
+     * bar, replacing chains queued on them before; null leaves the song
+     * playing only as far as the sequencers have already joined it. May be
+     * called from any thread.
+     */
+    static void queueSong(Song song) {
+        if (song != null) {
+            for (Sequencer s : song.sequencers()) {
+                s.queuedChain.set(null);
+            }
+        }
+        queuedSong.set(song);
+    }
+
+    /**
+     * Called by tick() on the audio thread as the step wraps to 0: switches to
+     * the queued pattern, or the chain's next one, before the first step of
+     * the bar is played.
+     */
+    protected void nextBar() {
+        // the sequencers reach a bar within a few audio blocks of each other,
+        // and the next one at least a beat later
+        long now = System.nanoTime();
+        boolean firstOfBar = bpm <= 0 || now - lastBarNanos > (long) (60e9 / bpm);
+        lastBarNanos = now;
+        Song s = queuedSong.get();
+        if (s != null && s != song && s.start(firstOfBar)) {
+            song = s;
+            PatternChain c = s.get(this);
+            if (c != null) {
+                chain = c == PatternChain.NONE ? null : c;
+                bar = 0;
             }
         }
-        else {
-            if (sd.note!=null){
-            BasslinePattern bp = new BasslinePattern(sd.note.length);
-            bp.accent = sd.accent.clone();
-            bp.note = sd.note.clone();
-            bp.pause = sd.pause.clone();
-            bp.slide = sd.slide.clone();
-            this.setBassline(bp);
+        PatternChain c = queuedChain.getAndSet(null);
+        if (c != null) {
+            chain = c == PatternChain.NONE ? null : c;
+            bar = 0;
+        }
+        Pattern p = queuedPattern.getAndSet(null);
+        if (chain != null) {
+            Pattern next = chain.get(bar++);
+            if (p == null) {
+                p = next;
             }
         }
-
+        if (p != null) {
+            p.copyInto(this);
+        }
     }
 }
 
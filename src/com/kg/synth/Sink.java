@@ -0,0 +1,58 @@
+package com.kg.synth;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Where a headless {@link Output} writes its blocks: 16 bit little endian
+ * stereo at {@link Output#SAMPLE_RATE}, {@link Output#BUFFER_SIZE} bytes each.
+ */
+public interface Sink {
+
+    /**
+     * Called on the audio thread for every block; block is reused afterwards.
+     */
+    void write(byte[] block) throws IOException;
+
+    void close() throws IOException;
+
+    /**
+     * @return a sink dropping every block, for benchmarks and dry runs
+     */
+    static Sink discard() {
+        return new Sink() {
+            @Override
+            public void write(byte[] block) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * @return a sink writing raw samples to out, e.g. a pipe or a socket's output stream
+     */
+    static Sink stream(final OutputStream out) {
+        return new Sink() {
+            @Override
+            public void write(byte[] block) throws IOException {
+                out.write(block);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * @return a sink writing a wav file, complete once the sink is closed
+     */
+    static Sink wav(File file) throws IOException {
+        return new WavSink(file);
+    }
+}
@@ -0,0 +1,43 @@
+package com.kg.synth;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Chains for several sequencers that start on the same bar (see
+ * {@link Sequencer#queueSong(Song)}): the first of them to reach a bar after
+ * the song is queued starts it, and the others join it as they reach the same
+ * bar.
+ */
+final class Song {
+
+    private final Map<Sequencer, PatternChain> chains = new IdentityHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    void put(Sequencer sequencer, PatternChain chain) {
+        chains.put(sequencer, chain);
+    }
+
+    /**
+     * @return the chain of sequencer, or null if it has no part in the song
+     */
+    PatternChain get(Sequencer sequencer) {
+        return chains.get(sequencer);
+    }
+
+    Iterable<Sequencer> sequencers() {
+        return chains.keySet();
+    }
+
+    /**
+     * @param firstOfBar whether the calling sequencer is the first to reach this bar
+     * @return whether the song has started, now or at an earlier bar
+     */
+    boolean start(boolean firstOfBar) {
+        if (firstOfBar) {
+            started.compareAndSet(false, true);
+        }
+        return started.get();
+    }
+}
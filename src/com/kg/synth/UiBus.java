@@ -0,0 +1,84 @@
+package com.kg.synth;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands state from the audio thread to the UI without locks: the audio thread
+ * publishes into single-value slots and never waits, the UI polls the latest
+ * values once per frame and skips whatever it has already drawn.
+ * <p>
+ * Steps are small immutable snapshots. Audio blocks go through a triple buffer,
+ * so the UI reads the most recent complete block while the next one is written,
+ * without a copy being allocated per block.
+ */
+public class UiBus {
+
+    /**
+     * The step of every sequencer at one moment.
+     */
+    public static final class Steps {
+        private final int[] step;
+
+        Steps(Sequencer[] sequencers) {
+            step = new int[sequencers.length];
+            for (int i = 0; i < step.length; i++) {
+                step[i] = sequencers[i].step;
+            }
+        }
+
+        public int get(int sequencer) {
+            return step[sequencer];
+        }
+    }
+
+    private static final int FRESH = 4;
+
+    private final AtomicReference<Steps> steps = new AtomicReference<>();
+    private final byte[][] blocks;
+    // index of the shared block, or'ed with FRESH while the UI has not taken it
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // owned by the audio thread
+    private int back = 0;
+    // owned by the UI thread
+    private int front = 2;
+
+    public UiBus(int blockSize) {
+        blocks = new byte[3][blockSize];
+    }
+
+    /**
+     * Audio thread: publishes the current steps of sequencers.
+     */
+    public void publishSteps(Sequencer[] sequencers) {
+        steps.set(new Steps(sequencers));
+    }
+
+    /**
+     * Audio thread: copies block and makes it the latest one.
+     */
+    public void publishBlock(byte[] block) {
+        byte[] b = blocks[back];
+        System.arraycopy(block, 0, b, 0, Math.min(block.length, b.length));
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /**
+     * @return the latest steps, or null if none were published yet
+     */
+    public Steps getSteps() {
+        return steps.get();
+    }
+
+    /**
+     * UI thread: returns the latest block if one was published since the last
+     * call, or null. The array is valid until the next call.
+     */
+    public byte[] takeBlock() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & 3;
+        return blocks[front];
+    }
+}
@@ -0,0 +1,81 @@
+package com.kg.synth;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Streams blocks into a wav file: the header is written with empty sizes and
+ * patched on close, so the samples are never held in memory or copied.
+ */
+class WavSink implements Sink {
+
+    private static final int HEADER = 44;
+
+    private final File file;
+    private final BufferedOutputStream out;
+    private long length = 0;
+
+    WavSink(File file) throws IOException {
+        this.file = file;
+        out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        out.write(header(0));
+    }
+
+    @Override
+    public void write(byte[] block) throws IOException {
+        out.write(block);
+        length += block.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(header(length));
+        }
+    }
+
+    private static byte[] header(long length) {
+        int channels = 2;
+        int bitspersample = 16;
+        int samplerate = (int) Output.SAMPLE_RATE;
+        // sizes past 4 GB do not fit; players read to the end of the file anyway
+        int data = (int) Math.min(length, 0xffffffffL - 36);
+        byte[] h = new byte[HEADER];
+        writeString(h, 0, "RIFF");
+        writeInt(h, 4, 36 + data);
+        writeString(h, 8, "WAVE");
+        writeString(h, 12, "fmt ");
+        writeInt(h, 16, 16);
+        writeShort(h, 20, 1);
+        writeShort(h, 22, channels);
+        writeInt(h, 24, samplerate);
+        writeInt(h, 28, samplerate * channels * bitspersample / 8);
+        writeShort(h, 32, channels * bitspersample / 8);
+        writeShort(h, 34, bitspersample);
+        writeString(h, 36, "data");
+        writeInt(h, 40, data);
+        return h;
+    }
+
+    private static void writeInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+        b[offset + 2] = (byte) (value >> 16);
+        b[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void writeShort(byte[] b, int offset, int value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeString(byte[] b, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            b[offset + i] = (byte) value.charAt(i);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.kg.wub;
 
+import com.echonest.api.v4.AnalysisIndex;
+import com.echonest.api.v4.EventTimeline;
 import com.echonest.api.v4.Segment;
 import com.echonest.api.v4.TimedEvent;
 import com.echonest.api.v4.TrackAnalysis;
 import com.kg.TheHorde;
-import com.kg.python.SpotifyDLTest;
+import com.kg.python.StemImport;
 import com.kg.synth.ByteRingBuffer;
 import com.kg.synth.Output;
 import com.kg.synth.Sequencer;
@@ -34,6 +36,10 @@ public class AudioObject implements Serializable, Tickable {
     public byte[] data;
     public File file;
     public TrackAnalysis analysis;
+    /**
+     * Waveform summary of data, saved with it so reopened .wub files are drawn without a pass over the samples.
+     */
+    private WaveformPeaks peaks;
     public static String spotifyId;
 
     public transient int position;
@@ -127,11 +133,20 @@ public class AudioObject implements Serializable, Tickable {
 //                    return null;
 //                }
             File spotifyFile = new File(System.getProperty("user.dir") + File.separator + "spotify" + String.format("_%.1f", ta.getTempo()).replace('.', '-') + "bpm_" + URLEncoder.encode(spotifyId) + ".mp3");
-            List<File> spleets = SpotifyDLTest.spotifyAndSpleeter(fileName, spotifyFile, TheHorde.stem);
-            for (File f : spleets) {
-                factory(f.getAbsolutePath(), ta);
-            }
-            CentralCommand.pf.makeData();
+            StemImport.start(fileName, spotifyFile, ta, TheHorde.stem, (task, fraction) -> {
+                if (fraction == 0d || fraction == 1d) {
+                    System.out.println(task + (fraction == 0d ? " started" : " done"));
+                }
+            }).result().whenComplete((objects, e) -> {
+                if (e != null) {
+                    e.printStackTrace();
+                    return;
+                }
+                for (AudioObject au : objects) {
+                    au.init(true);
+                }
+                CentralCommand.pf.makeData();
+            });
             return null;
         }
 //        }
@@ -154,25 +169,7 @@ public class AudioObject implements Serializable, Tickable {
         if (extension.equals("wub")) {
             try {
                 AudioObject au = (AudioObject) Serializer.load(newFile);
-                double bpm = 120;
-                if (TheHorde.output != null) {
-                    bpm = Sequencer.bpm;
-                    if (bpm < 1) {
-                        bpm = Math.floor(au.analysis.getTempo() * 10f) / 10f;
-                        TheHorde.bpm.setTargetValue(bpm);
-                    }
-
-                    //Timestretch
-                    AudioInterval ad = new AudioInterval(au.data);
-                    AudioInterval[] ai = ad.getMono();
-                    double bpmFactor = bpm / au.analysis.getTempo();
-                    AudioUtils.timeStretch1(ai[0], bpmFactor);
-                    AudioUtils.timeStretch1(ai[1], bpmFactor);
-                    ad.makeStereo(ai);
-                    au.data = ad.data;
-                    au.analysis.timeStretch(bpmFactor);
-                    //Timestretch
-                }
+                stretchToTempo(au);
                 au.init(true);
                 return au;
             } catch (ClassNotFoundException e) {
@@ -183,16 +180,73 @@ public class AudioObject implements Serializable, Tickable {
         }
 
         AudioObject au = new AudioObject(file, ta);
-        double bpm = 120;
-        if (TheHorde.output != null) {
-            bpm = Sequencer.bpm;
-            if (bpm < 1) {
-                bpm = Math.floor(ta.getTempo() * 10f) / 10f;
+        stretchToTempo(au);
+        au.init(true);
+        if (!extension.equals("wub")) {
+            newFile = new File(filePrefix + ".wub");
+        }
+        store(au, newFile);
+        CentralCommand.pf.makeData();
+        return au;
+    }
+
+    /**
+     * Decodes file without a dialog and stretches it to bpm, from resolveTempo, saving it as .wub next to file.
+     * The result is not added to the editor until init is called; several files can be loaded at once from
+     * different threads.
+     */
+    public static AudioObject load(File file, TrackAnalysis ta, double bpm, AudioImporter.Progress progress) {
+        AudioObject au = new AudioObject(file, ta, progress);
+        stretchToTempo(au, bpm);
+        String name = file.getAbsolutePath();
+        int i = name.lastIndexOf('.');
+        store(au, new File((i > 0 ? name.substring(0, i) : name) + ".wub"));
+        return au;
+    }
+
+    /**
+     * Loads a .wub file without the editor, stretched to the sequencer's tempo like factory, and adds it to the
+     * lines of output: intervals given to play are heard from the next block.
+     */
+    public static AudioObject open(File wub, Output output) throws IOException, ClassNotFoundException {
+        AudioObject au = (AudioObject) Serializer.load(wub);
+        stretchToTempo(au);
+        au.midiMap = new HashMap<String, Interval>();
+        au.queue = new LinkedList<Interval>();
+        output.addLine(au);
+        return au;
+    }
+
+    /**
+     * Returns the tempo tracks are stretched to: the sequencer's tempo, which is first set to the tempo of
+     * analysis if it is not set yet, on the FX thread when TheHorde runs. 0 if there is no output, in which case tracks
+     * are not stretched.
+     */
+    public static double resolveTempo(TrackAnalysis analysis) {
+        if (TheHorde.output == null) {
+            return 0;
+        }
+        double bpm = Sequencer.bpm;
+        if (bpm < 1) {
+            bpm = Math.floor(analysis.getTempo() * 10f) / 10f;
+            if (TheHorde.bpm != null) {
                 TheHorde.bpm.setTargetValue(bpm);
+            } else {
+                for (Sequencer s : TheHorde.output.getSequencers()) {
+                    s.setBpm(bpm);
+                }
             }
-            System.out.println("newest tempo=" + bpm);
+        }
+        System.out.println("newest tempo=" + bpm);
+        return bpm;
+    }
 
+    private static void stretchToTempo(AudioObject au) {
+        stretchToTempo(au, resolveTempo(au.analysis));
+    }
 
+    private static void stretchToTempo(AudioObject au, double bpm) {
+        if (bpm > 0) {
             //Timestretch
             AudioInterval ad = new AudioInterval(au.data);
             AudioInterval[] ai = ad.getMono();
@@ -201,37 +255,30 @@ public class AudioObject implements Serializable, Tickable {
             AudioUtils.timeStretch1(ai[1], bpmFactor);
             ad.makeStereo(ai);
             au.data = ad.data;
-//            au.analysis = new TrackAnalysis(au.analysis);
+            // the decoded peaks no longer line up, so summarize the stretched audio while it is at hand
+            au.peaks = new WaveformPeaks(au.data, TheHorde.output.mixingAudioInputStream.getFormat());
             au.analysis.timeStretch(bpmFactor);
             //Timestretch
         }
-        au.init(true);
-        try {
-            if (!extension.equals("wub")) {
-                newFile = new File(filePrefix + ".wub");
-                System.out.println("saving to:" + newFile.getAbsolutePath());
-            }
+    }
 
-            Serializer.store(au, newFile);
-        } catch (
-                IOException e) {
-            // TODO Auto-generated catch block
+    private static void store(AudioObject au, File wubFile) {
+        try {
+            System.out.println("saving to:" + wubFile.getAbsolutePath());
+            Serializer.store(au, wubFile);
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        CentralCommand.pf.makeData();
-        return au;
     }
 
     public AudioObject(final File file, TrackAnalysis ta) {
         this.file = file;
-        convert(file);
         JTextArea msgLabel;
         JProgressBar progressBar;
         final int MAXIMUM = 100;
         JPanel panel;
 
         progressBar = new JProgressBar(0, MAXIMUM);
-        progressBar.setIndeterminate(true);
         msgLabel = new JTextArea(file.getName());
         msgLabel.setEditable(false);
 
@@ -251,18 +298,21 @@ public class AudioObject implements Serializable, Tickable {
         dialog.setAlwaysOnTop(false);
         dialog.setVisible(true);
         msgLabel.setBackground(panel.getBackground());
+        convert(file, (f, fraction) -> SwingUtilities.invokeLater(() -> progressBar.setValue((int) (fraction * MAXIMUM))));
         if (ta != null) {
-            try {
-                analysis = (TrackAnalysis) Serializer.deepclone(ta);
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+            analysis = ta.copy();
         }
         dialog.dispose();
     }
 
+    public AudioObject(File file, TrackAnalysis ta, AudioImporter.Progress progress) {
+        this.file = file;
+        convert(file, progress);
+        if (ta != null) {
+            analysis = ta.copy();
+        }
+    }
+
     public AudioObject(byte[] by, TrackAnalysis fa, File file) {
         this.file = file;
         analysis = fa;
@@ -270,6 +320,16 @@ public class AudioObject implements Serializable, Tickable {
         init(true);
     }
 
+    /**
+     * Returns the waveform peak pyramid of data, rebuilding it if data has been replaced by audio of another length.
+     */
+    public synchronized WaveformPeaks getPeaks() {
+        if (peaks == null || !peaks.matches(data)) {
+            peaks = new WaveformPeaks(data, TheHorde.output.mixingAudioInputStream.getFormat());
+        }
+        return peaks;
+    }
+
     public void init(boolean addtoCentral) {
         midiMap = new HashMap<String, Interval>();
         queue = new LinkedList<Interval>();
@@ -482,51 +542,23 @@ public class AudioObject implements Serializable, Tickable {
 	}*/
 
     public void convert(File soundFile) {
-        AudioInputStream mp3InputStream = null;
-        try {
-            System.out.println(soundFile.getAbsolutePath());
-            mp3InputStream = AudioSystem.getAudioInputStream(soundFile.getAbsoluteFile());
-        } catch (UnsupportedAudioFileException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        File temp = new File("temp.wav");
-        mp3InputStream = AudioSystem.getAudioInputStream(new AudioFormat(mp3InputStream.getFormat().getSampleRate(), TheHorde.output.mixingAudioInputStream.getFormat().getSampleSizeInBits(), TheHorde.output.mixingAudioInputStream.getFormat().getChannels(), true, false), mp3InputStream);
-        try {
-            AudioSystem.write(mp3InputStream, AudioFileFormat.Type.WAVE, temp);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        // try {
-        // data = Files.readAllBytes(temp.toPath());
-        try {
-            mp3InputStream = AudioSystem.getAudioInputStream(temp);
-        } catch (UnsupportedAudioFileException e1) {
-            // TODO Auto-generated catch block
-            e1.printStackTrace();
-        } catch (IOException e1) {
-            // TODO Auto-generated catch block
-            e1.printStackTrace();
-        }
-
-        mp3InputStream = AudioSystem.getAudioInputStream(TheHorde.output.mixingAudioInputStream.getFormat(), mp3InputStream);
+        convert(soundFile, null);
+    }
 
-        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+    /**
+     * Decodes soundFile into data in the mixer's format, and its waveform peaks, in a single pass.
+     */
+    public void convert(File soundFile, AudioImporter.Progress progress) {
+        System.out.println(soundFile.getAbsolutePath());
         try {
-            AudioSystem.write(mp3InputStream, AudioFileFormat.Type.WAVE, bo);
-        } catch (IOException e) {
+            AudioImporter.Result result = AudioImporter.decode(soundFile.getAbsoluteFile(), TheHorde.output.mixingAudioInputStream.getFormat(), progress);
+            data = result.data;
+            peaks = result.peaks;
+        } catch (UnsupportedAudioFileException e) {
             e.printStackTrace();
-        }
-        data = bo.toByteArray();
-
-        try {
-            mp3InputStream.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        temp.delete();
     }
 
     public String getFileName() {
@@ -670,65 +702,35 @@ public class AudioObject implements Serializable, Tickable {
 
 //        fa.getSections().add(new TimedEvent(0d, fa.getDuration(), 1d));
 
+        AnalysisIndex index = analysis.getIndex();
         for (Interval i : ll) {
-            for (Segment e : analysis.getSegments()) {
+            double t0 = i.te.start;
+            double t1 = i.te.start + i.te.duration;
+            for (int k : index.segments.overlapping(t0, t1)) {
+                Segment e = analysis.getSegments().get(index.segments.getSourceIndex(k));
                 TimedEvent nt = intersects(i.te, e, i.newbytestart);
                 if (nt != null) {
-                    Segment f = null;
-                    try {
-                        f = (Segment) Serializer.deepclone(e);
-                    } catch (ClassNotFoundException e1) {
-                        e1.printStackTrace();
-                    } catch (IOException e1) {
-                        e1.printStackTrace();
-                    }
-                    f.start = nt.start;
-                    f.duration = nt.duration;
-                    fa.getSegments().add(f);
-                }
-            }
-
-            for (TimedEvent e : analysis.getSections()) {
-                TimedEvent nt = intersects(i.te, e, i.newbytestart);
-                if (nt != null) {
-                    fa.getSections().add(nt);
-                }
-            }
-
-            for (TimedEvent e : analysis.getBars()) {
-                TimedEvent nt = intersects(i.te, e, i.newbytestart);
-                if (nt != null) {
-                    fa.getBars().add(nt);
-                }
-            }
-
-            for (TimedEvent e : analysis.getBeats()) {
-                TimedEvent nt = intersects(i.te, e, i.newbytestart);
-                if (nt != null) {
-                    fa.getBeats().add(nt);
+                    fa.getSegments().add(e.copy(nt.start, nt.duration));
                 }
             }
+            slice(i, index.sections, analysis.getSections(), fa.getSections());
+            slice(i, index.bars, analysis.getBars(), fa.getBars());
+            slice(i, index.beats, analysis.getBeats(), fa.getBeats());
+            slice(i, index.tatums, analysis.getTatums(), fa.getTatums());
+        }
 
-            for (TimedEvent e : analysis.getTatums()) {
-                TimedEvent nt = intersects(i.te, e, i.newbytestart);
-                if (nt != null) {
-                    fa.getTatums().add(nt);
-                }
+        Comparator<TimedEvent> compare = new Comparator<TimedEvent>() {
+            @Override
+            public int compare(TimedEvent o1, TimedEvent o2) {
+                return Double.compare(o1.getStart(), o2.getStart());
             }
 
-            Comparator<TimedEvent> compare = new Comparator<TimedEvent>() {
-                @Override
-                public int compare(TimedEvent o1, TimedEvent o2) {
-                    return Double.compare(o1.getStart(), o2.getStart());
-                }
-
-            };
-            Collections.sort(fa.getSegments(), compare);
-            Collections.sort(fa.getSections(), compare);
-            Collections.sort(fa.getBars(), compare);
-            Collections.sort(fa.getBeats(), compare);
-            Collections.sort(fa.getTatums(), compare);
-        }
+        };
+        Collections.sort(fa.getSegments(), compare);
+        Collections.sort(fa.getSections(), compare);
+        Collections.sort(fa.getBars(), compare);
+        Collections.sort(fa.getBeats(), compare);
+        Collections.sort(fa.getTatums(), compare);
 
         if (file == null) file = new File(UUID.randomUUID().toString() + ".wav");
         String fileName = file.getAbsolutePath();
@@ -787,6 +789,19 @@ public class AudioObject implements Serializable, Tickable {
         return c;
     }
 
+    /**
+     * Adds the parts of the events of one analysis level that fall inside interval i,
+     * moved to the interval's position in the new audio, to out.
+     */
+    private void slice(Interval i, EventTimeline timeline, List<TimedEvent> events, List<TimedEvent> out) {
+        for (int k : timeline.overlapping(i.te.start, i.te.start + i.te.duration)) {
+            TimedEvent nt = intersects(i.te, events.get(timeline.getSourceIndex(k)), i.newbytestart);
+            if (nt != null) {
+                out.add(nt);
+            }
+        }
+    }
+
     public TimedEvent intersects(TimedEvent i, TimedEvent e, int newbytestart) {
         if (e.start + e.duration <= i.start) {
             return null;
@@ -1,6 +1,5 @@
 package com.kg.wub;
 
-import com.echonest.api.v4.Segment;
 import com.kg.wub.system.*;
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
@@ -17,14 +16,14 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.File;
+import java.io.IOException;
 import java.util.*;
 
 public class BeautifulKMGSRandReduce {
 
 
     //    static String directory = "e:\\wub\\";
-    private static final File[] list;
+    private static final SegmentCorpus corpus = SongManager.getCorpus();
 
     static final int attLength = 28;
     public static Attribute[] attlist;
@@ -61,17 +60,6 @@ public class BeautifulKMGSRandReduce {
     //    public static HashMap<String,Integer> hm;
 
 
-    static {
-        //        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        File[] list1 = new File(SongManager.directory).listFiles();
-        ArrayList<File> al = new ArrayList<>();
-        for (File f : list1) {
-            if (f.getAbsolutePath().endsWith(".au")) al.add(f);
-        }
-        list = al.toArray(new File[]{});
-
-    }
-
 
     public static void main(String[] args) {
         new Thread(new Runnable() {
@@ -88,9 +76,9 @@ public class BeautifulKMGSRandReduce {
                     jframe.setAlwaysOnTop(true);
                 }
 
-                Song song1 = null;
+                int song1 = -1;
                 for (int v : playback) {
-                    song1 = SongManager.getRandom(v);
+                    song1 = v;
 //                        JSONObject js = (JSONObject) song1.analysis.getMap().get("meta");
 //                        String title = null;
 //                        String artist = null;
@@ -126,7 +114,7 @@ public class BeautifulKMGSRandReduce {
 //                        if (seconds == null || seconds == 0) seconds = new Long(-61);
 //
 
-                    int segm = song1.analysis.getSegments().size();
+                    int segm = corpus.getSongOffset(v + 1) - corpus.getSongOffset(v);
                     totsegm += segm;
                     // float scale = (int) (((float) numClusters / (float) song1.analysis.getSegments().size()) * 1000) / 10f;
                     System.out.println("------------------------------");
@@ -185,7 +173,7 @@ public class BeautifulKMGSRandReduce {
                 //        sb.setQuality(0);
                 viewer.enableAutoLayout(sb);
                 View view = viewer.addDefaultView(false);
-                final AudioInterval[] startNode = {song1.getAudioIntervalForSegment(0)};
+                final AudioInterval[] startNode = {getAudioInterval(corpus.getSongOffset(song1))};
 
                 //        for (int cnt=0;cnt<5000;cnt++){
                 //            graph.addNode(cnt+"");
@@ -197,10 +185,8 @@ public class BeautifulKMGSRandReduce {
                 //        HashSet<String> edges = new HashSet<>();
                 int cnt2 = 0;
                 for (int songToPlay : playback) {
-                    Song song = SongManager.getRandom(songToPlay);
-
-                    for (int cnt = 0; cnt < song.analysis.getSegments().size(); cnt++) {
-                        AudioInterval pp = song.getAudioIntervalForSegment(cnt);
+                    for (int cnt = corpus.getSongOffset(songToPlay); cnt < corpus.getSongOffset(songToPlay + 1); cnt++) {
+                        AudioInterval pp = getAudioInterval(cnt);
                         AudioInterval play = map1.get(pp);
                         //            }
                         if (play == null) {
@@ -252,7 +238,7 @@ public class BeautifulKMGSRandReduce {
 
                 HashMap<String, Integer> hm = new HashMap<>();
 
-                startNode[0] = song1.getAudioIntervalForSegment(0);
+                startNode[0] = getAudioInterval(corpus.getSongOffset(song1));
 
                 try {
                     Thread.sleep(3000);
@@ -387,11 +373,10 @@ public class BeautifulKMGSRandReduce {
 
             //            datasets[songIter] = dataset;
 
-            Song song = LoadFromFile.loadSong(list[songIter]);
-            int cnt = 0;
-            for (Segment s : song.analysis.getSegments()) {
-                Instance inst = getInstance(attlist, s);
-                coll.add(song.getAudioIntervalForSegment(cnt++));
+            // features come from the corpus columns; only the PCM of each segment is read from the song
+            for (int i = corpus.getSongOffset(songIter); i < corpus.getSongOffset(songIter + 1); i++) {
+                Instance inst = getInstance(attlist, corpus, i);
+                coll.add(getAudioInterval(i));
                 inst.setDataset(dataset);
                 dataset.add(inst);
             }
@@ -451,41 +436,32 @@ public class BeautifulKMGSRandReduce {
         return tot;
     }
 
-    protected static Instance getInstance(Attribute[] attlist, Segment s) {
+    protected static Instance getInstance(Attribute[] attlist, SegmentCorpus corpus, int i) {
 
         int cnt = 0;
         Instance inst = new Instance(attLength);
-        inst.setValue(attlist[cnt++], s.getDuration() * Settings.durationFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessMax() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessStart() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessMaxTime() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[0]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[1]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[2]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[3]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[4]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[5]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[6]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[7]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[8]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[9]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[10]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[11]);
-        inst.setValue(attlist[cnt++], s.getPitches()[0] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[1] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[2] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[3] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[4] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[5] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[6] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[7] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[8] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[9] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[10] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[11] * Settings.pitchFactor);
+        inst.setValue(attlist[cnt++], corpus.getDuration(i) * Settings.durationFactor);
+        inst.setValue(attlist[cnt++], corpus.getLoudnessMax(i) * Settings.loudFactor);
+        inst.setValue(attlist[cnt++], corpus.getLoudnessStart(i) * Settings.loudFactor);
+        inst.setValue(attlist[cnt++], corpus.getLoudnessMaxTime(i) * Settings.loudFactor);
+        for (int k = 0; k < SegmentCorpus.DIMS; k++) {
+            inst.setValue(attlist[cnt++], Settings.timbreFactor * corpus.getTimbre(i, k));
+        }
+        for (int k = 0; k < SegmentCorpus.DIMS; k++) {
+            inst.setValue(attlist[cnt++], corpus.getPitch(i, k) * Settings.pitchFactor);
+        }
         return inst;
     }
 
+    private static AudioInterval getAudioInterval(int segment) {
+        try {
+            return corpus.getAudioInterval(segment);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new AudioInterval(new byte[0]);
+        }
+    }
+
 
 }
 
@@ -0,0 +1,161 @@
+package com.kg.wub.system;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Imports audio files as PCM in the mixer's format in one streaming pass:
+ * decode, channel and sample size conversion, resampling if the rates differ,
+ * straight into the array that becomes the AudioObject's data. The waveform
+ * peak pyramid is built from the same blocks as they arrive, and further
+ * {@link Listener}s can be attached to compute other per-block features.
+ * <p>
+ * Nothing is written to disk, so any number of imports can run at once.
+ */
+public class AudioImporter {
+
+    /**
+     * Receives each block of converted PCM, whole frames only, in order.
+     */
+    public interface Listener {
+        void pcm(byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * Receives the fraction of the file decoded so far, at most once per percent.
+     */
+    public interface Progress {
+        void progress(File file, double fraction);
+    }
+
+    public static class Result {
+        public final byte[] data;
+        public final WaveformPeaks peaks;
+
+        Result(byte[] data, WaveformPeaks peaks) {
+            this.data = data;
+            this.peaks = peaks;
+        }
+    }
+
+    private static final int BLOCK = 1 << 16;
+
+    /**
+     * Imports file on the calling thread.
+     *
+     * @param progress may be null
+     */
+    public static Result decode(File file, AudioFormat target, Progress progress, Listener... listeners) throws IOException, UnsupportedAudioFileException {
+        long fileLength = Math.max(1, file.length());
+        CountingInputStream counter = new CountingInputStream(new FileInputStream(file));
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(counter, BLOCK))) {
+            AudioInputStream pcm = toFormat(source, target);
+            int frameSize = target.getFrameSize();
+            int block = BLOCK - BLOCK % frameSize;
+            byte[] data = new byte[initialCapacity(source, target, fileLength)];
+            byte[] probe = new byte[block];
+            int size = 0;
+            int reported = -1;
+            WaveformPeaks.Builder peaks = new WaveformPeaks.Builder(target);
+            while (true) {
+                int n;
+                if (size == data.length) {
+                    // only grow once there turns out to be more
+                    n = pcm.read(probe, 0, block);
+                    if (n < 0) {
+                        break;
+                    }
+                    data = Arrays.copyOf(data, Math.max(2 * data.length, size + block));
+                    System.arraycopy(probe, 0, data, size, n);
+                } else {
+                    n = pcm.read(data, size, Math.min(block, data.length - size));
+                    if (n < 0) {
+                        break;
+                    }
+                }
+                n -= n % frameSize;
+                peaks.add(data, size, n);
+                for (Listener l : listeners) {
+                    l.pcm(data, size, n);
+                }
+                size += n;
+                int percent = (int) (100 * counter.count / fileLength);
+                if (progress != null && percent != reported) {
+                    reported = percent;
+                    progress.progress(file, Math.min(1d, percent / 100d));
+                }
+            }
+            if (progress != null) {
+                progress.progress(file, 1d);
+            }
+            return new Result(size == data.length ? data : Arrays.copyOf(data, size), peaks.build());
+        }
+    }
+
+    /**
+     * Decodes to signed PCM at the source's rate with the target's sample size and
+     * channels, then converts the rate and byte order if they still differ; the
+     * two steps the old import did through a temporary wave file.
+     */
+    private static AudioInputStream toFormat(AudioInputStream source, AudioFormat target) {
+        AudioFormat f = source.getFormat();
+        AudioFormat decoded = new AudioFormat(f.getSampleRate(), target.getSampleSizeInBits(), target.getChannels(), true, false);
+        AudioInputStream s = f.matches(decoded) ? source : AudioSystem.getAudioInputStream(decoded, source);
+        return s.getFormat().matches(target) ? s : AudioSystem.getAudioInputStream(target, s);
+    }
+
+    /**
+     * @return the size of the decoded audio if the source knows its length,
+     * otherwise a guess from the file size that is grown as needed
+     */
+    private static int initialCapacity(AudioInputStream source, AudioFormat target, long fileLength) {
+        long frames = source.getFrameLength();
+        AudioFormat f = source.getFormat();
+        long bytes;
+        if (frames != AudioSystem.NOT_SPECIFIED && f.getFrameRate() > 0) {
+            bytes = Math.round(frames / f.getFrameRate() * target.getFrameRate()) * target.getFrameSize();
+        } else {
+            // compressed audio typically decodes to around ten times its size
+            bytes = 10 * fileLength;
+        }
+        bytes = Math.max(target.getFrameSize(), Math.min(Integer.MAX_VALUE - 8, bytes));
+        return (int) (bytes - bytes % target.getFrameSize());
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
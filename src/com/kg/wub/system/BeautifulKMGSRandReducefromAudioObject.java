@@ -1,6 +1,6 @@
 package com.kg.wub.system;
 
-import com.echonest.api.v4.Segment;
+import com.echonest.api.v4.SegmentTimeline;
 import org.graphstream.graph.Edge;
 import org.graphstream.graph.Node;
 import org.graphstream.graph.implementations.MultiGraph;
@@ -321,10 +321,10 @@ public class BeautifulKMGSRandReducefromAudioObject {
         Instances dataset = new Instances("my_dataset", attrs, 0);
         AudioInterval[] lastSeen = new AudioInterval[numClusters];
 
-        int cnt = 0;
-        for (Segment s : song1.analysis.getSegments()) {
-            Instance inst = getInstance(attlist, s);
-            coll.add(song1.getAudioIntervalForSegment(cnt++));
+        SegmentTimeline segs = song1.analysis.getIndex().segments;
+        for (int i = 0; i < segs.size(); i++) {
+            Instance inst = getInstance(attlist, segs, i);
+            coll.add(song1.getAudioIntervalForSegment(segs.getSourceIndex(i)));
             inst.setDataset(dataset);
             dataset.add(inst);
         }
@@ -384,38 +384,20 @@ public class BeautifulKMGSRandReducefromAudioObject {
         return tot;
     }
 
-    protected static Instance getInstance(Attribute[] attlist, Segment s) {
+    protected static Instance getInstance(Attribute[] attlist, SegmentTimeline segs, int i) {
 
         int cnt = 0;
         Instance inst = new Instance(attLength);
-        inst.setValue(attlist[cnt++], s.getDuration() * Settings.durationFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessMax() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessStart() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], s.getLoudnessMaxTime() * Settings.loudFactor);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[0]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[1]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[2]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[3]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[4]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[5]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[6]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[7]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[8]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[9]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[10]);
-        inst.setValue(attlist[cnt++], Settings.timbreFactor * s.getTimbre()[11]);
-        inst.setValue(attlist[cnt++], s.getPitches()[0] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[1] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[2] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[3] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[4] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[5] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[6] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[7] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[8] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[9] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[10] * Settings.pitchFactor);
-        inst.setValue(attlist[cnt++], s.getPitches()[11] * Settings.pitchFactor);
+        inst.setValue(attlist[cnt++], segs.getDuration(i) * Settings.durationFactor);
+        inst.setValue(attlist[cnt++], segs.getLoudnessMax(i) * Settings.loudFactor);
+        inst.setValue(attlist[cnt++], segs.getLoudnessStart(i) * Settings.loudFactor);
+        inst.setValue(attlist[cnt++], segs.getLoudnessMaxTime(i) * Settings.loudFactor);
+        for (int k = 0; k < SegmentTimeline.DIMS; k++) {
+            inst.setValue(attlist[cnt++], Settings.timbreFactor * segs.getTimbre(i, k));
+        }
+        for (int k = 0; k < SegmentTimeline.DIMS; k++) {
+            inst.setValue(attlist[cnt++], segs.getPitch(i, k) * Settings.pitchFactor);
+        }
         return inst;
     }
 
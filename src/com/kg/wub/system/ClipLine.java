@@ -0,0 +1,51 @@
+package com.kg.wub.system;
+
+import java.util.Arrays;
+
+/**
+ * A line of {@link com.kg.synth.Output} playing one piece of audio from its
+ * start, once or looping, for playback without the editor.
+ */
+public class ClipLine implements Tickable {
+
+    private final byte[] data;
+    public boolean loop;
+    private int position = 0;
+
+    public ClipLine(byte[] data, boolean loop) {
+        this.data = data;
+        this.loop = loop;
+    }
+
+    @Override
+    public boolean tick(byte[] buffer) {
+        if (isDone()) {
+            return false;
+        }
+        for (int hh = 0; hh < buffer.length; ) {
+            if (position >= data.length) {
+                if (!loop) {
+                    Arrays.fill(buffer, hh, buffer.length, (byte) 0);
+                    break;
+                }
+                position = 0;
+            }
+            int canCopy = Math.min(buffer.length - hh, data.length - position);
+            System.arraycopy(data, position, buffer, hh, canCopy);
+            hh += canCopy;
+            position += canCopy;
+        }
+        return true;
+    }
+
+    public boolean isDone() {
+        return data.length == 0 || !loop && position >= data.length;
+    }
+
+    /**
+     * @return the length of the audio, in bytes
+     */
+    public int length() {
+        return data.length;
+    }
+}
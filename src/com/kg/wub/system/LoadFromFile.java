@@ -2,8 +2,9 @@ package com.kg.wub.system;
 
 import com.echonest.api.v4.TrackAnalysis;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.nio.file.Files;
@@ -11,11 +12,11 @@ import java.nio.file.Path;
 
 public class LoadFromFile {
 
-	public synchronized  static Song loadSong(String file){
+	public static Song loadSong(String file){
 		return loadSong(new File(file));
 	}
 
-	public synchronized static Song loadSong(File file1){
+	public static Song loadSong(File file1){
 		String file=file1.getAbsolutePath();
 		byte[] data;
 		TrackAnalysis ta;
@@ -33,7 +34,7 @@ public class LoadFromFile {
 		return null;
 	}
 
-	public synchronized static byte[] loadData(String file) {
+	public static byte[] loadData(String file) {
 		Path path = new File(file).toPath();
 		try {
 			byte[] data = Files.readAllBytes(path);
@@ -45,16 +46,17 @@ public class LoadFromFile {
 		return null;
 	}
 
-	public synchronized static TrackAnalysis loadAnalysis(String file) {
-		Path path = new File(file).toPath();
-		System.out.println("path="+path);
-		try {
-			byte[] data = Files.readAllBytes(path);
-			ByteArrayInputStream bas = new ByteArrayInputStream(data);
-			ObjectInputStream in = new ObjectInputStream(bas);
-			Object pp=in.readObject();
-			System.out.println("pp="+pp.getClass());
-			return (TrackAnalysis)pp ;
+	public static TrackAnalysis loadAnalysis(String file) {
+		System.out.println("path="+file);
+		return readAnalysis(new File(file));
+	}
+
+	/**
+	 * Deserializes an analysis without logging, safe to call from several indexing threads.
+	 */
+	public static TrackAnalysis readAnalysis(File file) {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			return (TrackAnalysis) in.readObject();
 		} catch (IOException | ClassNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,145 @@
+package com.kg.wub.system;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Variable-order Markov model over integer cluster labels.
+ * <p>
+ * Sequences are added with {@link #add(int[])}, then {@link #compile()} turns the
+ * counts into alias tables so that picking the next label is O(1). Lookup backs off
+ * from the longest context seen to shorter ones, and finally to the unigram table.
+ * Labels must be in [0, 65535] and the order is limited to 3 so a context packs into a long.
+ */
+public class MarkovChain {
+
+    public static final int MAX_ORDER = 3;
+    private static final int LABEL_BITS = 16;
+    private static final long LABEL_MASK = (1L << LABEL_BITS) - 1;
+
+    private final int order;
+    private final HashMap<Long, HashMap<Integer, Integer>> counts = new HashMap<>();
+    private HashMap<Long, AliasTable> tables = new HashMap<>();
+    private int numLabels = 0;
+
+    public MarkovChain(int order) {
+        if (order < 1 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("order must be between 1 and " + MAX_ORDER + ": " + order);
+        }
+        this.order = order;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public int getNumLabels() {
+        return numLabels;
+    }
+
+    /**
+     * Counts every transition of the sequence for all context lengths 0..order.
+     */
+    public void add(int[] sequence) {
+        for (int i = 0; i < sequence.length; i++) {
+            int label = sequence[i];
+            if (label < 0 || label > LABEL_MASK) {
+                throw new IllegalArgumentException("label out of range: " + label);
+            }
+            numLabels = Math.max(numLabels, label + 1);
+            for (int k = 0; k <= order && k <= i; k++) {
+                long key = key(sequence, i, k);
+                HashMap<Integer, Integer> next = counts.get(key);
+                if (next == null) {
+                    next = new HashMap<>();
+                    counts.put(key, next);
+                }
+                Integer c = next.get(label);
+                next.put(label, c == null ? 1 : c + 1);
+            }
+        }
+    }
+
+    /**
+     * Precomputes the alias tables. Must be called after the last {@link #add(int[])}.
+     */
+    public void compile() {
+        HashMap<Long, AliasTable> t = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<Long, HashMap<Integer, Integer>> e : counts.entrySet()) {
+            t.put(e.getKey(), new AliasTable(e.getValue()));
+        }
+        tables = t;
+    }
+
+    /**
+     * Picks the label following history[0..length), using the longest known context.
+     */
+    public int next(int[] history, int length, Random random) {
+        for (int k = Math.min(order, length); k >= 0; k--) {
+            AliasTable table = tables.get(key(history, length, k));
+            if (table != null) {
+                return table.sample(random);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Packs the k labels before position end, plus k itself, into one key.
+     */
+    private static long key(int[] seq, int end, int k) {
+        long key = 0;
+        for (int j = end - k; j < end; j++) {
+            key = (key << LABEL_BITS) | (seq[j] & LABEL_MASK);
+        }
+        return key | ((long) k << 62);
+    }
+
+    /**
+     * Walker/Vose alias table for constant time weighted sampling.
+     */
+    private static class AliasTable {
+        private final int[] labels;
+        private final int[] alias;
+        private final double[] prob;
+
+        AliasTable(HashMap<Integer, Integer> weights) {
+            int n = weights.size();
+            labels = new int[n];
+            alias = new int[n];
+            prob = new double[n];
+            double total = 0;
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : weights.entrySet()) {
+                labels[i] = e.getKey();
+                prob[i] = e.getValue();
+                total += e.getValue();
+                i++;
+            }
+            ArrayList<Integer> small = new ArrayList<>();
+            ArrayList<Integer> large = new ArrayList<>();
+            for (i = 0; i < n; i++) {
+                prob[i] = prob[i] * n / total;
+                if (prob[i] < 1d) small.add(i);
+                else large.add(i);
+            }
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int s = small.remove(small.size() - 1);
+                int l = large.remove(large.size() - 1);
+                alias[s] = l;
+                prob[l] = prob[l] + prob[s] - 1d;
+                if (prob[l] < 1d) small.add(l);
+                else large.add(l);
+            }
+            for (int l : large) prob[l] = 1d;
+            for (int s : small) prob[s] = 1d;
+        }
+
+        int sample(Random random) {
+            int i = random.nextInt(labels.length);
+            return labels[random.nextDouble() < prob[i] ? i : alias[i]];
+        }
+    }
+}
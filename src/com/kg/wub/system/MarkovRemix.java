@@ -0,0 +1,212 @@
+package com.kg.wub.system;
+
+import com.kg.synth.Output;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Endless remix playback driven by a {@link MarkovChain} over clustered segments.
+ * <p>
+ * A generator thread walks the chain and fills a bounded lookahead queue with the
+ * segments to play. The audio thread only polls that queue from {@link #tick(byte[])},
+ * so a slow generator produces silence rather than stalling {@link Output}.
+ * Segment lengths are optionally snapped to the beat grid so the remix keeps a steady
+ * pulse. Each segment starts exactly on the grid, crossfaded over a fraction of a beat
+ * with the tail of the segment before it.
+ */
+public class MarkovRemix implements Tickable, Runnable {
+
+    public static final int DEFAULT_LOOKAHEAD = 32;
+
+    private final MarkovChain chain;
+    private final AudioInterval[] alphabet;
+    private final ArrayBlockingQueue<AudioInterval> lookahead;
+    private final Random random = new Random();
+    private final int[] history;
+    private int historyLength = 0;
+
+    private final int fadeBytes;
+    private final int gridBytes;
+    public volatile boolean quantize = true;
+    public volatile boolean pause = false;
+    private volatile boolean running = false;
+    // set by stop(); the audio thread drops its segments on its next tick
+    private volatile boolean dropPlaying = false;
+    private Thread thread;
+
+    private AudioInterval current;
+    private int currentLength;
+    private int position;
+    private AudioInterval next;
+    private int nextLength;
+    private int nextPosition;
+    // length of the crossfade from current into next, frame aligned
+    private int fade;
+
+    /**
+     * @param chain       compiled chain whose labels index into alphabet
+     * @param alphabet    representative interval for each label
+     * @param beatSeconds length of one beat, e.g. 60 / analysis.getTempo()
+     * @param lookahead   number of segments generated ahead of playback
+     */
+    public MarkovRemix(MarkovChain chain, AudioInterval[] alphabet, double beatSeconds, int lookahead) {
+        this.chain = chain;
+        this.alphabet = alphabet;
+        this.lookahead = new ArrayBlockingQueue<>(lookahead);
+        this.history = new int[chain.getOrder()];
+        int beatBytes = (int) (beatSeconds * Audio.sampleRate) * Audio.frameSize;
+        this.gridBytes = Math.max(Audio.frameSize, beatBytes / 4 - (beatBytes / 4) % Audio.frameSize);
+        this.fadeBytes = Math.max(Audio.frameSize, beatBytes / 16 - (beatBytes / 16) % Audio.frameSize);
+    }
+
+    /**
+     * Builds a remix from one or more songs already reduced to cluster representatives,
+     * e.g. the values of the map made by BeautifulKMGSRandReduce or Custom.
+     */
+    public static MarkovRemix fromSequences(List<List<AudioInterval>> songs, int order, double beatSeconds) {
+        HashMap<AudioInterval, Integer> labels = new HashMap<>();
+        ArrayList<AudioInterval> alphabet = new ArrayList<>();
+        MarkovChain chain = new MarkovChain(order);
+        for (List<AudioInterval> song : songs) {
+            int[] seq = new int[song.size()];
+            for (int i = 0; i < seq.length; i++) {
+                AudioInterval ai = song.get(i);
+                Integer label = labels.get(ai);
+                if (label == null) {
+                    label = alphabet.size();
+                    labels.put(ai, label);
+                    alphabet.add(ai);
+                }
+                seq[i] = label;
+            }
+            chain.add(seq);
+        }
+        chain.compile();
+        return new MarkovRemix(chain, alphabet.toArray(new AudioInterval[0]), beatSeconds, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * Starts the generator and adds this remix as a line of the running {@link Output}.
+     */
+    public void play() {
+        start();
+        Output.instance.addLine(this);
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "markov-remix");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the generator. Playback state belongs to the audio thread, so the
+     * segments playing are only dropped on its next {@link #tick(byte[])}.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) thread.interrupt();
+        lookahead.clear();
+        dropPlaying = true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                int label = chain.next(history, historyLength, random);
+                if (label < 0) {
+                    historyLength = 0;
+                    label = random.nextInt(alphabet.length);
+                }
+                if (historyLength == history.length) {
+                    if (historyLength > 0) System.arraycopy(history, 1, history, 0, historyLength - 1);
+                    historyLength--;
+                }
+                if (history.length > 0) history[historyLength++] = label;
+                lookahead.put(alphabet[label]);
+            }
+        } catch (InterruptedException e) {
+            //stopped
+        }
+    }
+
+    @Override
+    public boolean tick(byte[] buffer) {
+        if (dropPlaying) {
+            dropPlaying = false;
+            current = null;
+            next = null;
+        }
+        if (pause) return false;
+        if (current == null && !advance()) return false;
+        for (int i = 0; i < buffer.length; i += 4) {
+            if (current == null) {
+                buffer[i] = buffer[i + 1] = buffer[i + 2] = buffer[i + 3] = 0;
+                if (advance()) i -= 4;
+                continue;
+            }
+            // the crossfade starts on the grid, where next begins, and runs fade bytes into current's tail
+            if (next == null && position >= currentLength) {
+                next = lookahead.poll();
+                if (next == null) {
+                    current = null;
+                    i -= 4;
+                    continue;
+                }
+                nextLength = length(next);
+                nextPosition = 0;
+                fade = Math.min(fadeBytes, Math.min(currentLength, nextLength) / 2);
+                fade -= fade % Audio.frameSize;
+            }
+            int left = sample(current, position);
+            int right = sample(current, position + 2);
+            if (next != null) {
+                double g = fade == 0 ? 0 : 1d - (double) (position - currentLength) / fade;
+                left = (int) (left * g + sample(next, nextPosition) * (1d - g));
+                right = (int) (right * g + sample(next, nextPosition + 2) * (1d - g));
+                nextPosition += 4;
+            }
+            buffer[i] = (byte) (left & 0xFF);
+            buffer[i + 1] = (byte) (left >> 8 & 0xFF);
+            buffer[i + 2] = (byte) (right & 0xFF);
+            buffer[i + 3] = (byte) (right >> 8 & 0xFF);
+            position += 4;
+            if (next != null && position >= currentLength + fade) {
+                current = next;
+                currentLength = nextLength;
+                position = nextPosition;
+                next = null;
+            }
+        }
+        return true;
+    }
+
+    private boolean advance() {
+        current = lookahead.poll();
+        if (current == null) return false;
+        currentLength = length(current);
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Played length of an interval, rounded to the nearest grid step when quantizing.
+     */
+    private int length(AudioInterval ai) {
+        if (!quantize) return ai.data.length - ai.data.length % Audio.frameSize;
+        int steps = Math.max(1, Math.round((float) ai.data.length / gridBytes));
+        return steps * gridBytes;
+    }
+
+    private static int sample(AudioInterval ai, int pos) {
+        if (pos + 1 >= ai.data.length) return 0;
+        return (short) ((ai.data[pos + 1] << 8) | (ai.data[pos] & 0xFF));
+    }
+}
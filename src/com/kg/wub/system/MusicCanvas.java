@@ -1,5 +1,6 @@
 package com.kg.wub.system;
 
+import com.echonest.api.v4.AnalysisIndex;
 import com.echonest.api.v4.Segment;
 import com.echonest.api.v4.TimedEvent;
 import com.echonest.api.v4.TrackAnalysis;
@@ -13,7 +14,6 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
 import java.util.List;
 import java.util.*;
 import java.util.Queue;
@@ -24,7 +24,6 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
     private AudioObject au;
     TrackAnalysis analysis;
     BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
-    BufferedImage bufferedimage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
     public Interval tempTimedEvent;
     public Interval hovering;
     public double selectedStart;
@@ -48,25 +47,36 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         this.addComponentListener(this);
         this.addKeyListener(this);
         this.addMouseWheelListener(this);
-        startPosition();
+        RepaintScheduler.get().register(this, this::frameSignature);
         makeCanvas();
         // makeImage();
     }
 
-    private void startPosition() {
-        new Thread(new Runnable() {
-            public void run() {
-                while (true) {
-                    repaint();
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }).start();
-
+    /**
+     * What the canvas would draw over its cached image, for {@link RepaintScheduler}.
+     */
+    private long frameSignature() {
+        int w = getWidth();
+        long s = System.identityHashCode(image);
+        s = 31 * s + w;
+        s = 31 * s + currPos;
+        s = 31 * s + (int) ((w * (double) au.position / (double) au.data.length) + .5d);
+        s = 31 * s + (hovering == null ? 0 : 31 * System.identityHashCode(hovering.te) + hovering.y);
+        for (Interval i : au.queue) {
+            s = 31 * s + System.identityHashCode(i);
+        }
+        for (Interval i : tempQueue) {
+            s = 31 * s + System.identityHashCode(i);
+        }
+        // the map's order is not the order the keys were bound in, so combine its entries without it
+        long keys = 0;
+        for (Entry<String, Interval> e : au.midiMap.entrySet()) {
+            keys += e.getKey().hashCode() * 31L + System.identityHashCode(e.getValue());
+        }
+        s = 31 * s + keys;
+        s = 31 * s + (selectedPress ? selectedStartX : -1);
+        s = 31 * s + (au.loop ? 1 : 0) + (au.pause ? 2 : 0);
+        return s;
     }
 
     void makeImage() {
@@ -84,7 +94,9 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
 
     @Override
     public void paint(Graphics g) {
-        Graphics g1 = bufferedimage.getGraphics();
+        // Swing double buffers and clips this to the visible part of the canvas,
+        // so only that part of the cached image is copied
+        Graphics g1 = g;
         g1.drawImage(image, 0, 0, null);
 
         int c = 1;
@@ -179,8 +191,6 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         else
             g1.setColor(Color.cyan);
         g1.drawLine(currPos, 0, currPos, getHeight());
-        bufferedimage.getGraphics().setClip(js.getVisibleRect());
-        g.drawImage(bufferedimage, 0, 0, null);
 
     }
 
@@ -193,7 +203,7 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         int y = this.getHeight();
         g.setColor(Color.black);
         g.fillRect(0, 0, x, y);
-        g.drawImage(samplingGraph.createWaveForm(au.analysis.getSegments(), au.analysis.getDuration(), au.data, TheHorde.output.mixingAudioInputStream.getFormat(), getWidth(), 200), 0, 100, null);
+        g.drawImage(samplingGraph.createWaveForm(au.analysis.getSegments(), au.analysis.getDuration(), au.getPeaks(), getWidth(), 200), 0, 100, null);
         g.setColor(Color.white);
         g.drawLine(0, 200, getWidth(), 200);
 
@@ -245,19 +255,10 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         g.setColor(Color.red);
         List<Segment> list1 = new ArrayList<Segment>(au.analysis.getSegments());
         if (list1.size() > 0) {
-            try {
-                Segment end = (Segment) Serializer.deepclone(list1.get(list1.size() - 1));
-
-                end.start = list1.get(list1.size() - 1).start + list1.get(list1.size() - 1).getDuration();
-                // end.duration = duration - end.start - .2d;
-                list1.add(end);
-            } catch (ClassNotFoundException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+            Segment last = list1.get(list1.size() - 1);
+            Segment end = last.copy(last.start + last.getDuration(), last.getDuration());
+            // end.duration = duration - end.start - .2d;
+            list1.add(end);
         }
 
         double[] min = new double[12];
@@ -321,9 +322,6 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
             // g.drawLine(x3, (int)(70-loudmax), x2, (int)(70-loudend));
         }*/
         image = bi;
-        bufferedimage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics g1 = bufferedimage.getGraphics();
-        g1.drawImage(image, 0, 0, null);
     }
 
     public Dimension getPreferredSize() {
@@ -369,57 +367,11 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
             return;
         }
 
-        if (y >= 0 && y < 20) {
-            List<TimedEvent> list = au.analysis.getSections();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    tempTimedEvent = new Interval(list.get(i), 0);
-                    // au.play(list.get(i), 0);
-                    tempQueue.add(tempTimedEvent);
-                    break;
-                }
-
-            }
-        }
-        if (y >= 20 && y < 40) {
-            List<TimedEvent> list = au.analysis.getBars();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    tempTimedEvent = new Interval(list.get(i), 20);
-                    // au.play(list.get(i), 20);
-                    tempQueue.add(tempTimedEvent);
-                    break;
-                }
-
-            }
-        }
-        if (y >= 40 && y < 60) {
-            List<TimedEvent> list = au.analysis.getBeats();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    tempTimedEvent = new Interval(list.get(i), 40);
-                    // au.play(list.get(i), 40);
-                    tempQueue.add(tempTimedEvent);
-                    break;
-                }
-
-            }
-        }
-
-        if (y >= 60 && y < 80) {
-            List<TimedEvent> list = au.analysis.getTatums();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    tempTimedEvent = new Interval(list.get(i), 60);
-                    // au.play(list.get(i), 60);
-                    tempQueue.add(tempTimedEvent);
-                    break;
-                }
-
+        if (y >= 0 && y < 80) {
+            TimedEvent te = eventAt(y, loc);
+            if (te != null) {
+                tempTimedEvent = new Interval(te, y / 20 * 20);
+                tempQueue.add(tempTimedEvent);
             }
         }
         if (y > 80) {
@@ -520,66 +472,14 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         currPos = x;
         double loc = ((double) x / (double) this.getWidth()) * au.analysis.getDuration();
 
-        if (y >= 0 && y < 20) {
-            List<TimedEvent> list = au.analysis.getSections();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 0);
-                    if (tempTimedEvent == null || tempTimedEvent.te.getStart() != list.get(i).getStart()) {
-                        tempTimedEvent = new Interval(list.get(i), 0);
-                        tempQueue.add(tempTimedEvent);
-                    }
-                    break;
-
-                }
-
-            }
-        }
-        if (y >= 20 && y < 40) {
-            List<TimedEvent> list = au.analysis.getBars();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 20);
-                    if (tempTimedEvent == null || tempTimedEvent.te.getStart() != list.get(i).getStart()) {
-                        tempTimedEvent = new Interval(list.get(i), 20);
-                        tempQueue.add(tempTimedEvent);
-                    }
-                    break;
-                }
-
-            }
-        }
-        if (y >= 40 && y < 60) {
-            List<TimedEvent> list = au.analysis.getBeats();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 40);
-                    if (tempTimedEvent == null || tempTimedEvent.te.getStart() != list.get(i).getStart()) {
-                        tempTimedEvent = new Interval(list.get(i), 40);
-                        tempQueue.add(tempTimedEvent);
-                    }
-                    break;
-                }
-
-            }
-        }
-
-        if (y >= 60 && y < 80) {
-            List<TimedEvent> list = au.analysis.getTatums();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 60);
-                    if (tempTimedEvent == null || tempTimedEvent.te.getStart() != list.get(i).getStart()) {
-                        tempTimedEvent = new Interval(list.get(i), 60);
-                        tempQueue.add(tempTimedEvent);
-                    }
-                    break;
+        if (y >= 0 && y < 80) {
+            TimedEvent te = eventAt(y, loc);
+            if (te != null) {
+                hovering = new Interval(te, y / 20 * 20);
+                if (tempTimedEvent == null || tempTimedEvent.te.getStart() != te.getStart()) {
+                    tempTimedEvent = new Interval(te, y / 20 * 20);
+                    tempQueue.add(tempTimedEvent);
                 }
-
             }
         }
 
@@ -601,54 +501,9 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
             }
         }
         double loc = ((double) x / (double) this.getWidth()) * au.analysis.getDuration();
-        if (y >= 0 && y < 20) {
-            hovering = null;
-            List<TimedEvent> list = au.analysis.getSections();
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 0);
-                    break;
-
-                }
-
-            }
-        }
-        if (y >= 20 && y < 40) {
-            List<TimedEvent> list = au.analysis.getBars();
-            hovering = null;
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 20);
-                    break;
-                }
-
-            }
-        }
-        if (y >= 40 && y < 60) {
-            List<TimedEvent> list = au.analysis.getBeats();
-            hovering = null;
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 40);
-                    break;
-                }
-
-            }
-        }
-
-        if (y >= 60 && y < 80) {
-            List<TimedEvent> list = au.analysis.getTatums();
-            hovering = null;
-            Collections.reverse(list);
-            for (int i = 0; i < list.size(); i++) {
-                if (list.get(i).getStart() <= loc && list.get(i).getStart() + list.get(i).getDuration() >= loc) {
-                    hovering = new Interval(list.get(i), 60);
-                    break;
-                }
-            }
+        if (y >= 0 && y < 80) {
+            TimedEvent te = eventAt(y, loc);
+            hovering = te == null ? null : new Interval(te, y / 20 * 20);
         }
 
         if (y >= 80 && y < 100) {
@@ -667,6 +522,27 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
         }
     }
 
+    /**
+     * Returns the event of the analysis row at height y (sections, bars,
+     * beats and tatums, 20 pixels each from the top) covering time loc, or null.
+     */
+    private TimedEvent eventAt(int y, double loc) {
+        TrackAnalysis ta = au.analysis;
+        AnalysisIndex index = ta.getIndex();
+        switch (y / 20) {
+            case 0:
+                return AnalysisIndex.eventAt(index.sections, ta.getSections(), loc);
+            case 1:
+                return AnalysisIndex.eventAt(index.bars, ta.getBars(), loc);
+            case 2:
+                return AnalysisIndex.eventAt(index.beats, ta.getBeats(), loc);
+            case 3:
+                return AnalysisIndex.eventAt(index.tatums, ta.getTatums(), loc);
+            default:
+                return null;
+        }
+    }
+
     public void makeCanvas() {
         frame = new JFrame(au.getFileName());
         oldWidth = 800;
@@ -705,6 +581,12 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
             public void windowClosing(WindowEvent e) {
                 au.pause = true;
             }
+
+            @Override
+            public void windowClosed(WindowEvent e) {
+                // disposed with its track, so the scheduler can let go of both
+                RepaintScheduler.get().unregister(MusicCanvas.this);
+            }
         });
 
         frame.getContentPane().add(jbar, "East");
@@ -797,7 +679,7 @@ public class MusicCanvas extends JComponent implements MouseListener, MouseMotio
                 ao.data = ad.data;
                 ao.analysis.timeStretch(bpmFactor);
 //                try {
-//                    ao.analysis = (TrackAnalysis) Serializer.deepclone(au.analysis);
+//                    ao.analysis = au.analysis.copy();
 //                } catch (IOException | ClassNotFoundException ioException) {
 //                    ioException.printStackTrace();
 //                }
@@ -16,6 +16,9 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class PlayingField extends Canvas implements MouseListener, MouseMotionListener, KeyListener, ComponentListener, MouseWheelListener, Tickable {
 
@@ -53,45 +56,50 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
 
     @Override
     public void paint(Graphics g) {
+        Node[] nodes = snapshotNodes();
+        int width = getWidth();
+        int height = getHeight();
+        long layout = layoutSignature(nodes);
+        if (layout != tilesSignature || height != tileHeight) {
+            tiles.clear();
+            tilesSignature = layout;
+            tileHeight = height;
+        }
+
         Graphics g1 = bufferedImage.getGraphics();
-        g1.setColor(Color.black);
-        g1.fillRect(0, 0, getWidth(), getHeight());
+        int left = (int) offset;
+        for (int t = Math.floorDiv(left, TILE_WIDTH); t * TILE_WIDTH < left + width; t++) {
+            BufferedImage tile = tiles.get(t);
+            if (tile == null) {
+                tile = renderTile(t, nodes, height);
+                tiles.put(t, tile);
+            }
+            g1.drawImage(tile, t * TILE_WIDTH - left, 0, null);
+        }
 
         hue += .01f;
         final float saturation = 1.0f;// 1.0 for brilliant, 0.0 for dull
         final float luminance = 1f; // 1.0 for brighter, 0.0 for black
         Color nowColor = Color.getHSBColor(hue, saturation, luminance);
-        for (Node node : new ArrayList<>(CentralCommand.ccn.nodes)) {
-            if (node != null) {
-                g1.drawImage(node.image, (int) (node.rect.x - offset + .5d), (int) (node.rect.y + .5d), null);
-                if (node.isMute()) {
-                    nowColor = Color.GRAY;
-                    g1.setColor(new Color(nowColor.getRed(), nowColor.getGreen(), nowColor.getBlue(), 150));
-                    int w = (int) (node.rect.width + .5d);
-                    if (w == 0) {
-                        w = 1;
-                    }
-                    g1.fillRect((int) (node.rect.x - offset + .5d), (int) (node.rect.y + .5d), w, CentralCommand.yOffset);
-                } else {
-                    nowColor = Color.getHSBColor(hue, saturation, luminance);
-                }
-                g1.setColor(nowColor);
-                int w = (int) (node.rect.width + .5d);
-                if (w == 0)
-                    w = 1;
-                g1.drawRect((int) (node.rect.x - offset + .5d), (int) (node.rect.y + .5d), w, CentralCommand.yOffset - 1);
-                // if (w > 2)
-                // g1.drawRect((int) (node.rect.x - offset + .5d) + 1, (int)
-                // (node.rect.y + .5d) + 1, w - 2, (int) CentralCommand.yOffset -
-                // 3);
-                g1.drawString(node.ao.file.getName(), (int) (node.rect.x + 5), (int) (node.rect.y + .4d * CentralCommand.yOffset));
-            }
+        for (Node node : nodes) {
+            if (node == null)
+                break;
+            int x = (int) (node.rect.x - offset + .5d);
+            int w = (int) (node.rect.width + .5d);
+            if (w == 0)
+                w = 1;
+            if (x + w < 0 || x > width)
+                continue;
+            g1.setColor(node.isMute() ? Color.GRAY : nowColor);
+            g1.drawRect(x, (int) (node.rect.y + .5d), w, CentralCommand.yOffset - 1);
+            // if (w > 2)
+            // g1.drawRect((int) (node.rect.x - offset + .5d) + 1, (int)
+            // (node.rect.y + .5d) + 1, w - 2, (int) CentralCommand.yOffset -
+            // 3);
         }
         if (mover != null) {
             if (mover.isMute()) {
                 nowColor = Color.WHITE;
-            } else {
-                nowColor = Color.getHSBColor(hue, saturation, luminance);
             }
             g1.setColor(new Color(nowColor.getRed(), nowColor.getGreen(), nowColor.getBlue(), 150));
             int w = (int) (mover.rect.width + .5d);
@@ -102,11 +110,109 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
         g1.setColor(Color.red);
         g1.drawLine(currPos, 0, currPos, getHeight());
         g1.setColor(Color.white);
-        playPos = (int) (((double) (playByte) / (double) lengthInBytes) * lengthInPixels - offset + .5d);
+        playPos = playPixel();
         g1.drawLine(playPos, 0, playPos, getHeight());
+        g1.dispose();
         g.drawImage(bufferedImage, 0, 0, null);
     }
 
+    /**
+     * Width of the cached tiles of the static layer, in pixels.
+     */
+    private static final int TILE_WIDTH = 256;
+    private static final int MAX_TILES = 32;
+    private static final Color MUTE_SHADE = new Color(Color.GRAY.getRed(), Color.GRAY.getGreen(), Color.GRAY.getBlue(), 150);
+
+    /**
+     * The static layer (the nodes' waveforms, mute shading and names) in tiles
+     * of TILE_WIDTH field pixels, by tile column; dropped whenever a node is
+     * moved, resized, muted, added or removed. Only touched from paint.
+     */
+    private final LinkedHashMap<Integer, BufferedImage> tiles = new LinkedHashMap<Integer, BufferedImage>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private long tilesSignature;
+    private int tileHeight;
+    private Node[] nodeBuffer = new Node[16];
+
+    private BufferedImage renderTile(int t, Node[] nodes, int height) {
+        BufferedImage tile = new BufferedImage(TILE_WIDTH, Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        int x0 = t * TILE_WIDTH;
+        // draw in field coordinates
+        g.translate(-x0, 0);
+        FontMetrics metrics = g.getFontMetrics();
+        for (Node node : nodes) {
+            if (node == null)
+                break;
+            String name = node.ao.file.getName();
+            int x = (int) (node.rect.x + .5d);
+            int y = (int) (node.rect.y + .5d);
+            int w = (int) (node.rect.width + .5d);
+            if (w == 0)
+                w = 1;
+            if (x + Math.max(w, 5 + metrics.stringWidth(name)) < x0 || x > x0 + TILE_WIDTH)
+                continue;
+            g.drawImage(node.image, x, y, null);
+            if (node.isMute()) {
+                g.setColor(MUTE_SHADE);
+                g.fillRect(x, y, w, CentralCommand.yOffset);
+            }
+            g.setColor(node.isMute() ? Color.GRAY : Color.WHITE);
+            g.drawString(name, x + 5, (int) (node.rect.y + .4d * CentralCommand.yOffset));
+        }
+        g.dispose();
+        return tile;
+    }
+
+    /**
+     * @return the current nodes, null terminated if the buffer is longer; copied
+     * into an array reused by paint since the list is changed from other threads
+     */
+    private Node[] snapshotNodes() {
+        Node[] nodes = CentralCommand.ccn.nodes.toArray(nodeBuffer);
+        if (nodes != nodeBuffer) {
+            nodeBuffer = nodes;
+        }
+        return nodes;
+    }
+
+    private static long layoutSignature(Node[] nodes) {
+        long s = 17;
+        for (Node node : nodes) {
+            if (node == null)
+                break;
+            s = 31 * s + Double.hashCode(node.rect.x);
+            s = 31 * s + Double.hashCode(node.rect.y);
+            s = 31 * s + Double.hashCode(node.rect.width);
+            s = 31 * s + (node.isMute() ? 1 : 0);
+            s = 31 * s + System.identityHashCode(node.image);
+        }
+        return s;
+    }
+
+    private int playPixel() {
+        return (int) (((double) (playByte) / (double) lengthInBytes) * lengthInPixels - offset + .5d);
+    }
+
+    /**
+     * What the field would draw, for {@link RepaintScheduler}: the node layout,
+     * scroll position, size, cursor, playhead and selected node.
+     */
+    private long frameSignature() {
+        long s = layoutSignature(CentralCommand.ccn.nodes.toArray(new Node[0]));
+        s = 31 * s + Double.hashCode(offset);
+        s = 31 * s + getWidth();
+        s = 31 * s + getHeight();
+        s = 31 * s + currPos;
+        s = 31 * s + playPixel();
+        s = 31 * s + System.identityHashCode(mover);
+        return s;
+    }
+
     public PlayingField() {
         oldWidth = 800;
         setSize(new Dimension(oldWidth, 760));
@@ -174,18 +280,7 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
         // makeImageResize();
         // makeData();
 
-        new Thread(new Runnable() {
-            public void run() {
-                while (true) {
-                    repaint();
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }).start();
+        RepaintScheduler.get().register(this, this::frameSignature);
         while (true) {
             try {
                 TheHorde.output.addLine(this);
@@ -278,7 +373,7 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
                 Iterator<Node> ii = CentralCommand.ccn.nodes.iterator();
                 while (ii.hasNext()) {
                     Node node = ii.next();
-                    node.image = new SamplingGraph().createWaveForm(node.ao.analysis.getSegments(), node.ao.analysis.getDuration(), node.ao.data, TheHorde.output.mixingAudioInputStream.getFormat(), (int) (node.ao.data.length * (double) oldWidth / lengthInBytes), CentralCommand.yOffset - 1);
+                    node.image = new SamplingGraph().createWaveForm(node.ao.analysis.getSegments(), node.ao.analysis.getDuration(), node.ao.getPeaks(), (int) (node.ao.data.length * (double) oldWidth / lengthInBytes), CentralCommand.yOffset - 1);
                     double oldbb = node.rect.width;
                     node.rect.width = (node.ao.data.length * (double) oldWidth / lengthInBytes);
                     if (node.rect.width < 1)
@@ -309,27 +404,7 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
                     node.rect.x -= minx;
                     int start = (int) (node.rect.x / lengthInPixels * (double) lengthInBytes);
                     start -= start % TheHorde.output.mixingAudioInputStream.getFormat().getFrameSize();
-                    short g, h;
-                    for (int i = 0; i < node.ao.data.length; i += 2) {
-                        g = data[i + start];
-                        h = data[i + start + 1];
-                        g += node.ao.data[i];
-                        if (g > 127) {
-                            g = 127;
-                            h += 1;
-                        } else if (g < -128) {
-                            g = -128;
-                            h -= 1;
-                        }
-                        h += node.ao.data[i + 1];
-                        if (h > 127) {
-                            h = 127;
-                        } else if (h < -128) {
-                            h = -128;
-                        }
-                        data[i + start] = (byte) g;
-                        data[i + start + 1] = (byte) h;
-                    }
+                    mixInto(data, node.ao.data, start);
 
                 }
             }
@@ -337,6 +412,62 @@ public class PlayingField extends Canvas implements MouseListener, MouseMotionLi
         makeDataThread.start();
     }
 
+    /**
+     * Mixes the unmuted nodes of an arrangement into one clip, as makeData does
+     * but without the editor: nodes keep their places relative to the leftmost
+     * one, and their rectangles are not changed.
+     */
+    public static byte[] mixdown(List<Node> nodes, int frameSize) {
+        if (nodes.isEmpty()) {
+            return new byte[0];
+        }
+        double minx = Double.MAX_VALUE;
+        for (Node node : nodes) {
+            if (node.rect.x < minx)
+                minx = node.rect.x;
+        }
+        double bytesPerPixel = nodes.get(0).ao.data.length / nodes.get(0).rect.width;
+        int[] starts = new int[nodes.size()];
+        int length = 0;
+        for (int i = 0; i < starts.length; i++) {
+            Node node = nodes.get(i);
+            starts[i] = (int) ((node.rect.x - minx) * bytesPerPixel);
+            starts[i] -= starts[i] % frameSize;
+            length = Math.max(length, starts[i] + node.ao.data.length);
+        }
+        byte[] mix = new byte[length];
+        for (int i = 0; i < starts.length; i++) {
+            if (!nodes.get(i).isMute()) {
+                mixInto(mix, nodes.get(i).ao.data, starts[i]);
+            }
+        }
+        return mix;
+    }
+
+    private static void mixInto(byte[] data, byte[] clip, int start) {
+        short g, h;
+        for (int i = 0; i < clip.length; i += 2) {
+            g = data[i + start];
+            h = data[i + start + 1];
+            g += clip[i];
+            if (g > 127) {
+                g = 127;
+                h += 1;
+            } else if (g < -128) {
+                g = -128;
+                h -= 1;
+            }
+            h += clip[i + 1];
+            if (h > 127) {
+                h = 127;
+            } else if (h < -128) {
+                h = -128;
+            }
+            data[i + start] = (byte) g;
+            data[i + start + 1] = (byte) h;
+        }
+    }
+
 
     @Override
     public void keyTyped(KeyEvent e) {
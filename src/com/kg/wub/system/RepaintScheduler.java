@@ -0,0 +1,110 @@
+package com.kg.wub.system;
+
+import java.awt.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * One frame clock for all of the editor's canvases, replacing a repaint thread
+ * per canvas. Once per display refresh it asks each registered component that is
+ * showing for a signature of what it would draw, and repaints only those whose
+ * signature changed since the last frame; hidden or idle canvases cost nothing.
+ * <p>
+ * Signatures should be cheap to compute: a hash of the pixel positions and the
+ * state the component paints from.
+ */
+public class RepaintScheduler {
+
+    private static final RepaintScheduler instance = new RepaintScheduler();
+
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+
+    private static class Client {
+        final Component component;
+        final LongSupplier signature;
+        long last;
+
+        Client(Component component, LongSupplier signature) {
+            this.component = component;
+            this.signature = signature;
+        }
+    }
+
+    private RepaintScheduler() {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "RepaintScheduler");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static RepaintScheduler get() {
+        return instance;
+    }
+
+    public void register(Component component, LongSupplier signature) {
+        clients.add(new Client(component, signature));
+    }
+
+    public void unregister(Component component) {
+        for (Client c : clients) {
+            if (c.component == component) {
+                clients.remove(c);
+            }
+        }
+    }
+
+    private void loop() {
+        long period = 1000000000L / refreshRate();
+        long next = System.nanoTime();
+        while (true) {
+            boolean painted = false;
+            for (Client c : clients) {
+                if (!c.component.isShowing()) {
+                    continue;
+                }
+                long s;
+                try {
+                    s = c.signature.getAsLong();
+                } catch (RuntimeException e) {
+                    // state changing under us; try again next frame
+                    continue;
+                }
+                if (s != c.last) {
+                    c.last = s;
+                    c.component.repaint();
+                    painted = true;
+                }
+            }
+            if (painted) {
+                Toolkit.getDefaultToolkit().sync();
+            }
+            next += period;
+            long now = System.nanoTime();
+            if (next < now) {
+                next = now;
+            }
+            LockSupport.parkNanos(next - now);
+        }
+    }
+
+    /**
+     * @return the refresh rate of the default screen, or 60 if it is unknown
+     */
+    private static int refreshRate() {
+        try {
+            if (!GraphicsEnvironment.isHeadless()) {
+                int hz = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+                if (hz != DisplayMode.REFRESH_RATE_UNKNOWN && hz > 0) {
+                    return hz;
+                }
+            }
+        } catch (RuntimeException e) {
+            // no usable display mode
+        }
+        return 60;
+    }
+}
@@ -0,0 +1,349 @@
+package com.kg.wub.system;
+
+import com.echonest.api.v4.Segment;
+import com.echonest.api.v4.SegmentTimeline;
+import com.echonest.api.v4.TrackAnalysis;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Columnar feature store over a directory of .au/.an song pairs.
+ * <p>
+ * {@link #index(File, File)} reads every analysis once, in parallel, and writes one
+ * little-endian file per feature column, covering all segments of all songs back to back.
+ * The columns are written to a .partial directory which replaces the store only once
+ * complete, with the song list written last, so an interrupted run is rebuilt next time.
+ * {@link #open(File)} memory-maps those columns, so corpus-wide queries (clustering,
+ * nearest neighbours, statistics) only touch the features they read. PCM is never loaded
+ * up front; {@link #getAudioInterval(int)} maps the song's .au file and copies just the
+ * bytes of one segment.
+ */
+public class SegmentCorpus {
+
+    public static final String STORE_DIR = "corpus";
+    public static final int DIMS = 12;
+
+    private static final String SONGS = "songs.txt";
+    private static final String OFFSETS = "offsets.i32";
+    private static final String[] SCALARS = {"start", "duration", "loudnessStart", "loudnessMax", "loudnessMaxTime"};
+    private static final String PITCHES = "pitches.f32";
+    private static final String TIMBRE = "timbre.f32";
+
+    private final File[] songs;
+    private final IntBuffer offsets;
+    private final FloatBuffer start, duration, loudnessStart, loudnessMax, loudnessMaxTime;
+    private final FloatBuffer pitches, timbre;
+    private final MappedByteBuffer[] pcm;
+
+    private SegmentCorpus(File store) throws IOException {
+        List<String> paths = Files.readAllLines(new File(store, SONGS).toPath(), StandardCharsets.UTF_8);
+        songs = new File[paths.size()];
+        for (int i = 0; i < songs.length; i++) songs[i] = new File(paths.get(i));
+        pcm = new MappedByteBuffer[songs.length];
+        offsets = map(new File(store, OFFSETS)).asIntBuffer();
+        start = map(new File(store, SCALARS[0] + ".f32")).asFloatBuffer();
+        duration = map(new File(store, SCALARS[1] + ".f32")).asFloatBuffer();
+        loudnessStart = map(new File(store, SCALARS[2] + ".f32")).asFloatBuffer();
+        loudnessMax = map(new File(store, SCALARS[3] + ".f32")).asFloatBuffer();
+        loudnessMaxTime = map(new File(store, SCALARS[4] + ".f32")).asFloatBuffer();
+        pitches = map(new File(store, PITCHES)).asFloatBuffer();
+        timbre = map(new File(store, TIMBRE)).asFloatBuffer();
+        if (offsets.limit() != songs.length + 1) throw new IOException("incomplete store " + store);
+        int segments = offsets.get(songs.length);
+        for (FloatBuffer column : new FloatBuffer[]{start, duration, loudnessStart, loudnessMax, loudnessMaxTime}) {
+            if (column.limit() != segments) throw new IOException("incomplete store " + store);
+        }
+        if (pitches.limit() != segments * DIMS || timbre.limit() != segments * DIMS) throw new IOException("incomplete store " + store);
+    }
+
+    /**
+     * Opens the store under root, building it first if it is missing, unreadable, lists other
+     * songs than root holds or is older than any of them.
+     */
+    public static SegmentCorpus openOrIndex(File root) throws IOException {
+        File store = new File(root, STORE_DIR);
+        File songsFile = new File(store, SONGS);
+        File[] files = listSongs(root);
+        if (songsFile.exists() && songsFile.lastModified() >= newestSong(files) && isListed(songsFile, files)) {
+            try {
+                return open(store);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        index(root, store);
+        return open(store);
+    }
+
+    public static SegmentCorpus open(File store) throws IOException {
+        return new SegmentCorpus(store);
+    }
+
+    /**
+     * Reads every .an under root on a pool of threads and writes the columns in song order.
+     * Only a bounded window of songs is held in memory at any time.
+     */
+    public static void index(File root, File store) throws IOException {
+        File[] files = listSongs(root);
+        File partial = new File(store.getAbsoluteFile().getParentFile(), store.getName() + ".partial");
+        delete(partial);
+        partial.mkdirs();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long time = System.currentTimeMillis();
+        FileChannel[] scalarOut = new FileChannel[SCALARS.length];
+        try (FileChannel offsetsOut = create(new File(partial, OFFSETS));
+             FileChannel pitchesOut = create(new File(partial, PITCHES));
+             FileChannel timbreOut = create(new File(partial, TIMBRE))) {
+            for (int c = 0; c < SCALARS.length; c++) scalarOut[c] = create(new File(partial, SCALARS[c] + ".f32"));
+            ArrayDeque<Future<float[][]>> window = new ArrayDeque<>();
+            int next = 0;
+            int total = 0;
+            for (int i = 0; i < files.length; i++) {
+                while (next < files.length && window.size() < threads * 2) {
+                    final File f = files[next++];
+                    window.add(pool.submit(() -> features(f)));
+                }
+                float[][] cols;
+                try {
+                    cols = window.poll().get();
+                } catch (Exception e) {
+                    throw new IOException("indexing " + files[i], e);
+                }
+                writeInts(offsetsOut, total);
+                for (int c = 0; c < SCALARS.length; c++) writeFloats(scalarOut[c], cols[c]);
+                writeFloats(pitchesOut, cols[SCALARS.length]);
+                writeFloats(timbreOut, cols[SCALARS.length + 1]);
+                total += cols[0].length;
+            }
+            writeInts(offsetsOut, total);
+            for (FileChannel fc : scalarOut) fc.force(false);
+            offsetsOut.force(false);
+            pitchesOut.force(false);
+            timbreOut.force(false);
+            System.out.println("indexed " + files.length + " songs, " + total + " segments in " + (System.currentTimeMillis() - time) + " ms");
+        } finally {
+            for (FileChannel fc : scalarOut) if (fc != null) fc.close();
+            pool.shutdown();
+        }
+        // the song list marks the columns complete
+        try (PrintWriter songsOut = new PrintWriter(new File(partial, SONGS), "UTF-8")) {
+            for (File f : files) songsOut.println(f.getAbsolutePath());
+        }
+        delete(store);
+        Files.move(partial.toPath(), store.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static float[][] features(File au) {
+        TrackAnalysis ta = LoadFromFile.readAnalysis(new File(au.getAbsolutePath().replace(".au", ".an")));
+        SegmentTimeline segs = new SegmentTimeline(ta == null ? Collections.<Segment>emptyList() : ta.getSegments());
+        int n = segs.size();
+        float[][] cols = new float[SCALARS.length + 2][];
+        for (int c = 0; c < SCALARS.length; c++) cols[c] = new float[n];
+        cols[SCALARS.length] = new float[n * DIMS];
+        cols[SCALARS.length + 1] = new float[n * DIMS];
+        float[] pitches = segs.getPitchMatrix();
+        float[] timbre = segs.getTimbreMatrix();
+        // rows stay in analysis order, which is what segment numbers refer to
+        for (int i = 0; i < n; i++) {
+            int row = segs.getSourceIndex(i);
+            cols[0][row] = (float) segs.getStart(i);
+            cols[1][row] = (float) segs.getDuration(i);
+            cols[2][row] = segs.getLoudnessStart(i);
+            cols[3][row] = segs.getLoudnessMax(i);
+            cols[4][row] = segs.getLoudnessMaxTime(i);
+            System.arraycopy(pitches, i * DIMS, cols[SCALARS.length], row * DIMS, DIMS);
+            System.arraycopy(timbre, i * DIMS, cols[SCALARS.length + 1], row * DIMS, DIMS);
+        }
+        return cols;
+    }
+
+    public static File[] listSongs(File root) {
+        File[] all = root.listFiles();
+        ArrayList<File> al = new ArrayList<>();
+        if (all != null) {
+            for (File f : all) {
+                if (f.getName().endsWith(".au")) al.add(f);
+            }
+        }
+        File[] files = al.toArray(new File[0]);
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long newestSong(File[] files) {
+        long newest = 0;
+        for (File f : files) {
+            newest = Math.max(newest, f.lastModified());
+            newest = Math.max(newest, new File(f.getAbsolutePath().replace(".au", ".an")).lastModified());
+        }
+        return newest;
+    }
+
+    /**
+     * Whether songsFile lists exactly files, in order, so that deleted, added and renamed songs are noticed.
+     */
+    private static boolean isListed(File songsFile, File[] files) throws IOException {
+        List<String> paths = Files.readAllLines(songsFile.toPath(), StandardCharsets.UTF_8);
+        if (paths.size() != files.length) return false;
+        for (int i = 0; i < files.length; i++) {
+            if (!paths.get(i).equals(files[i].getAbsolutePath())) return false;
+        }
+        return true;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        f.delete();
+    }
+
+    public int getSongCount() {
+        return songs.length;
+    }
+
+    public int getSegmentCount() {
+        return offsets.get(songs.length);
+    }
+
+    public File getSongFile(int song) {
+        return songs[song];
+    }
+
+    /**
+     * Index of the first segment of song; its segments run up to getSongOffset(song + 1).
+     */
+    public int getSongOffset(int song) {
+        return offsets.get(song);
+    }
+
+    /**
+     * Song containing a corpus-wide segment index, by binary search over the offsets.
+     */
+    public int getSong(int segment) {
+        int lo = 0, hi = songs.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets.get(mid) <= segment) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public float getStart(int segment) {
+        return start.get(segment);
+    }
+
+    public float getDuration(int segment) {
+        return duration.get(segment);
+    }
+
+    public float getLoudnessStart(int segment) {
+        return loudnessStart.get(segment);
+    }
+
+    public float getLoudnessMax(int segment) {
+        return loudnessMax.get(segment);
+    }
+
+    public float getLoudnessMaxTime(int segment) {
+        return loudnessMaxTime.get(segment);
+    }
+
+    public float getPitch(int segment, int k) {
+        return pitches.get(segment * DIMS + k);
+    }
+
+    public float getTimbre(int segment, int k) {
+        return timbre.get(segment * DIMS + k);
+    }
+
+    /**
+     * Rebuilds an echonest Segment from the stored columns.
+     */
+    public Segment getSegment(int segment) {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("start", (double) getStart(segment));
+        map.put("duration", (double) getDuration(segment));
+        map.put("confidence", 1d);
+        map.put("loudness_start", (double) getLoudnessStart(segment));
+        map.put("loudness_max", (double) getLoudnessMax(segment));
+        map.put("loudness_max_time", (double) getLoudnessMaxTime(segment));
+        ArrayList<Double> p = new ArrayList<>();
+        ArrayList<Double> t = new ArrayList<>();
+        for (int k = 0; k < DIMS; k++) {
+            p.add((double) getPitch(segment, k));
+            t.add((double) getTimbre(segment, k));
+        }
+        map.put("pitches", p);
+        map.put("timbre", t);
+        return new Segment(map);
+    }
+
+    /**
+     * Copies only this segment's PCM out of the memory-mapped .au file.
+     */
+    public AudioInterval getAudioInterval(int segment) throws IOException {
+        int song = getSong(segment);
+        ByteBuffer data = getPcm(song).duplicate();
+        double start1 = getStart(segment);
+        double lengthInFrames = getDuration(segment) * Audio.sampleRate;
+        int startBytes = (int) (start1 * Audio.sampleRate * Audio.frameSize) - (int) (start1 * Audio.sampleRate * Audio.frameSize) % Audio.frameSize;
+        int lengthBytes = (int) (lengthInFrames * Audio.frameSize) - (int) (lengthInFrames * Audio.frameSize) % Audio.frameSize;
+        byte[] bytes = new byte[lengthBytes];
+        int available = Math.max(0, Math.min(lengthBytes, data.limit() - startBytes));
+        if (available > 0) {
+            data.position(startBytes);
+            data.get(bytes, 0, available);
+        }
+        AudioInterval ai = new AudioInterval(bytes);
+        ai.te = getSegment(segment);
+        ai.segment = segment - getSongOffset(song);
+        return ai;
+    }
+
+    public synchronized MappedByteBuffer getPcm(int song) throws IOException {
+        if (pcm[song] == null) pcm[song] = map(songs[song]);
+        return pcm[song];
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        try (FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            mb.order(ByteOrder.LITTLE_ENDIAN);
+            return mb;
+        }
+    }
+
+    private static FileChannel create(File f) throws IOException {
+        return FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void writeFloats(FileChannel fc, float[] values) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bb.asFloatBuffer().put(values);
+        while (bb.hasRemaining()) fc.write(bb);
+    }
+
+    private static void writeInts(FileChannel fc, int value) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(value).flip();
+        while (bb.hasRemaining()) fc.write(bb);
+    }
+}
@@ -53,35 +53,14 @@ public class Serializer {
 	 * differs from the clone() method of an object which is usually implemented
 	 * to produce a "shallow" clone that copies references to other objects,
 	 * instead of copying all referenced objects.
+	 * <p>
+	 * TimedEvent, Segment and TrackAnalysis have copy() methods that avoid
+	 * serialization altogether.
 	 */
 	public static Object deepclone(final Serializable o) throws IOException, ClassNotFoundException {
-		// Create a connected pair of "piped" streams.
-		// We'll write bytes to one, and them from the other one.
-		final PipedOutputStream pipeout = new PipedOutputStream();
-		PipedInputStream pipein = new PipedInputStream(pipeout);
-
-		// Now define an independent thread to serialize the object and write
-		// its bytes to the PipedOutputStream
-		Thread writer = new Thread() {
-			public void run() {
-				ObjectOutputStream out = null;
-				try {
-					out = new ObjectOutputStream(pipeout);
-					out.writeObject(o);
-				} catch (IOException e) {
-				} finally {
-					try {
-						out.close();
-					} catch (Exception e) {
-					}
-				}
-			}
-		};
-		writer.start(); // Make the thread start serializing and writing
-
-		// Meanwhile, in this thread, read and deserialize from the piped
-		// input stream. The resulting object is a deep clone of the original.
-		ObjectInputStream in = new ObjectInputStream(pipein);
+		// Serialize into memory and read the bytes straight back; no thread or
+		// pipe is needed for that.
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(toByteArray(o)));
 		return in.readObject();
 	}
 
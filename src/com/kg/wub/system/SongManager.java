@@ -5,7 +5,7 @@ import weka.core.Attribute;
 import weka.core.Instance;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 
 
 //933  good bassy dubstep
@@ -26,7 +26,8 @@ public class SongManager {
     public static String directory;
 
     static {
-        for (int i = 0; i < 26; i++) {
+        directory = System.getProperty("wub.directory");
+        for (int i = 0; i < 26 && directory == null; i++) {
             String s = (char) ('a' + i) + ":\\wubdata\\";
             File f = new File(s);
             if (f.isDirectory()) {
@@ -38,6 +39,7 @@ public class SongManager {
     }
 
     private static final File[] list;
+    private static SegmentCorpus corpus;
 
     static final int attLength = 28;
     public static Attribute[] attlist;
@@ -54,13 +56,23 @@ public class SongManager {
 
 
     static {
-        File[] list1 = new File(directory).listFiles();
-        ArrayList<File> al = new ArrayList<>();
-        for (File f : list1) {
-            if (f.getAbsolutePath().endsWith(".au")) al.add(f);
-        }
-        list = al.toArray(new File[]{});
+        list = directory == null ? new File[0] : SegmentCorpus.listSongs(new File(directory));
+
+    }
 
+    /**
+     * The feature columns of every song in directory, indexed on first use. Song numbers are
+     * the same as getRandom's, so scans can read features here and load only the songs they play.
+     */
+    public static synchronized SegmentCorpus getCorpus() {
+        if (corpus == null && directory != null) {
+            try {
+                corpus = SegmentCorpus.openOrIndex(new File(directory));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return corpus;
     }
 
     public static Song getRandom(int i) {
@@ -0,0 +1,219 @@
+package com.kg.wub.system;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A min/max/RMS peak pyramid of a piece of audio, for drawing its waveform at
+ * any zoom level without going back to the samples.
+ * <p>
+ * Level 0 summarizes every {@link #BASE_FRAMES} frames of the audio (all
+ * channels together) into one bucket; each further level halves the
+ * resolution of the one below, down to a single bucket. Values are stored as
+ * signed bytes on the 8 bit scale SamplingGraph has always drawn with, so the
+ * whole pyramid takes about 6 bytes per {@link #BASE_FRAMES} frames.
+ * <p>
+ * Instances are immutable and are serialized with the AudioObject they
+ * belong to.
+ */
+public class WaveformPeaks implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Frames per bucket at level 0.
+	 */
+	public static final int BASE_FRAMES = 32;
+
+	private static final int BUCKETS_PER_COLUMN = 4;
+
+	private final int frames;
+	private final int byteLength;
+	private final byte[][] min;
+	private final byte[][] max;
+	private final byte[][] rms;
+
+	public WaveformPeaks(byte[] audioBytes, AudioFormat format) {
+		this(new Builder(format).add(audioBytes, 0, audioBytes.length));
+	}
+
+	private WaveformPeaks(Builder b) {
+		this.byteLength = b.byteLength;
+		this.frames = b.byteLength / b.frameSize;
+		b.flush();
+		byte[] mn = Arrays.copyOf(b.min, Math.max(1, b.buckets));
+		byte[] mx = Arrays.copyOf(b.max, mn.length);
+		byte[] rm = Arrays.copyOf(b.rms, mn.length);
+
+		int levels = 1;
+		for (int n = mn.length; n > 1; n = (n + 1) / 2) {
+			levels++;
+		}
+		min = new byte[levels][];
+		max = new byte[levels][];
+		rms = new byte[levels][];
+		min[0] = mn;
+		max[0] = mx;
+		rms[0] = rm;
+
+		for (int level = 1; level < levels; level++) {
+			byte[] pmn = min[level - 1];
+			byte[] pmx = max[level - 1];
+			byte[] prm = rms[level - 1];
+			int n = (pmn.length + 1) / 2;
+			mn = new byte[n];
+			mx = new byte[n];
+			rm = new byte[n];
+			for (int k = 0; k < n; k++) {
+				int l = 2 * k;
+				int r = Math.min(l + 1, pmn.length - 1);
+				mn[k] = (byte) Math.min(pmn[l], pmn[r]);
+				mx[k] = (byte) Math.max(pmx[l], pmx[r]);
+				rm[k] = (byte) Math.round(Math.sqrt((prm[l] * prm[l] + prm[r] * prm[r]) / 2d));
+			}
+			min[level] = mn;
+			max[level] = mx;
+			rms[level] = rm;
+		}
+	}
+
+	/**
+	 * Builds the level 0 buckets of a pyramid from audio handed over in
+	 * blocks as it is decoded, so a pyramid can be had without a second pass
+	 * over the samples. Blocks must hold whole frames.
+	 */
+	public static class Builder {
+		private final int frameSize;
+		private final int channels;
+		private final int bits;
+		private final boolean bigEndian;
+		private final boolean signed;
+		private int byteLength;
+		private byte[] min = new byte[1024];
+		private byte[] max = new byte[1024];
+		private byte[] rms = new byte[1024];
+		private int buckets;
+		// the bucket being filled
+		private int lo = Byte.MAX_VALUE;
+		private int hi = Byte.MIN_VALUE;
+		private long squares;
+		private int count;
+
+		public Builder(AudioFormat format) {
+			frameSize = format.getFrameSize();
+			channels = format.getChannels();
+			bits = format.getSampleSizeInBits();
+			bigEndian = format.isBigEndian();
+			signed = format.getEncoding().toString().startsWith("PCM_SIGN");
+		}
+
+		public Builder add(byte[] audioBytes, int offset, int length) {
+			length -= length % frameSize;
+			int samplesPerBucket = BASE_FRAMES * channels;
+			int step = bits == 16 ? 2 : 1;
+			for (int i = offset, end = offset + length; i < end; i += step) {
+				int v;
+				if (bits == 16) {
+					int msb = bigEndian ? audioBytes[i] : audioBytes[i + 1];
+					int lsb = bigEndian ? audioBytes[i + 1] : audioBytes[i];
+					v = (msb << 8 | (255 & lsb)) / 256;
+				} else {
+					v = signed ? audioBytes[i] : (audioBytes[i] & 255) - 128;
+				}
+				lo = Math.min(lo, v);
+				hi = Math.max(hi, v);
+				squares += v * v;
+				if (++count == samplesPerBucket) {
+					flush();
+				}
+			}
+			byteLength += length;
+			return this;
+		}
+
+		public WaveformPeaks build() {
+			return new WaveformPeaks(this);
+		}
+
+		/**
+		 * Closes the bucket being filled, if it has any samples.
+		 */
+		private void flush() {
+			if (count == 0) {
+				return;
+			}
+			if (buckets == min.length) {
+				min = Arrays.copyOf(min, 2 * buckets);
+				max = Arrays.copyOf(max, 2 * buckets);
+				rms = Arrays.copyOf(rms, 2 * buckets);
+			}
+			min[buckets] = (byte) lo;
+			max[buckets] = (byte) hi;
+			rms[buckets] = (byte) Math.min(Byte.MAX_VALUE, Math.round(Math.sqrt((double) squares / count)));
+			buckets++;
+			lo = Byte.MAX_VALUE;
+			hi = Byte.MIN_VALUE;
+			squares = 0;
+			count = 0;
+		}
+	}
+
+	/**
+	 * @return the number of frames of audio summarized
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return whether this pyramid (still) describes audio of the given length,
+	 * which is all that can be checked once it has been serialized
+	 */
+	public boolean matches(byte[] audioBytes) {
+		return audioBytes != null && audioBytes.length == byteLength;
+	}
+
+	/**
+	 * Summarizes the frames [fromFrame, toFrame) into w columns: on return,
+	 * {@code outMin[x]}, {@code outMax[x]} and {@code outRms[x]} describe
+	 * column x. Columns are read from the coarsest level with at least
+	 * {@link #BUCKETS_PER_COLUMN} buckets per column, so the cost depends on
+	 * w, not on the number of frames; buckets straddling a column boundary
+	 * count towards both columns.
+	 */
+	public void summarize(double fromFrame, double toFrame, int w, byte[] outMin, byte[] outMax, byte[] outRms) {
+		double framesPerColumn = (toFrame - fromFrame) / w;
+		int level = 0;
+		while (level + 1 < min.length && ((long) BASE_FRAMES << (level + 1)) * BUCKETS_PER_COLUMN <= framesPerColumn) {
+			level++;
+		}
+		byte[] mn = min[level];
+		byte[] mx = max[level];
+		byte[] rm = rms[level];
+		double bucketFrames = (double) BASE_FRAMES * (1 << level);
+		for (int x = 0; x < w; x++) {
+			double start = fromFrame + x * framesPerColumn;
+			int b0 = Math.max(0, (int) (start / bucketFrames));
+			int b1 = Math.min(mn.length, (int) Math.ceil((start + framesPerColumn) / bucketFrames));
+			if (b1 <= b0) {
+				b1 = b0 + 1;
+			}
+			if (b0 >= mn.length) {
+				outMin[x] = outMax[x] = outRms[x] = 0;
+				continue;
+			}
+			int lo = Byte.MAX_VALUE;
+			int hi = Byte.MIN_VALUE;
+			double squares = 0;
+			for (int b = b0; b < b1; b++) {
+				lo = Math.min(lo, mn[b]);
+				hi = Math.max(hi, mx[b]);
+				squares += rm[b] * rm[b];
+			}
+			outMin[x] = (byte) lo;
+			outMax[x] = (byte) hi;
+			outRms[x] = (byte) Math.round(Math.sqrt(squares / (b1 - b0)));
+		}
+	}
+}
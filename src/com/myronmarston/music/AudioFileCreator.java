@@ -24,16 +24,10 @@ import com.myronmarston.util.FileHelper;
 import com.sun.media.sound.AudioSynthesizer;
 import org.tritonus.share.sampled.*;
 
-import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiDevice;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.MidiMessage;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
-import javax.sound.midi.Receiver;
-import javax.sound.midi.Sequence;
 import javax.sound.midi.Synthesizer;
-import javax.sound.midi.Track;
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -43,7 +37,7 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 
@@ -57,7 +51,6 @@ public class AudioFileCreator {
     private final OutputManager outputManager;
     private static final AudioFormat.Encoding MPEG1L3 = Encodings.getEncoding("MPEG1L3");
     private static final AudioFileFormat.Type MP3 = AudioFileTypes.getType("MP3", "mp3");
-    private static final double MICROSECONDS_PER_SECOND = 1000000.0;
 
     /**
      * Constructor.
@@ -106,44 +99,25 @@ public class AudioFileCreator {
     }
 
     public void playAudio() throws MidiUnavailableException, IOException {
-
         SourceDataLine res = getSourceDataLine();
+        byte[] pcm = this.renderPcm();
+        res.write(pcm, 0, pcm.length);
+    }
 
-        AudioSynthesizer synth = null;
-        AudioInputStream stream1 = null;
-        AudioInputStream stream2 = null;
-        try {
-            synth = AudioFileCreator.getAudioSynthesizer();
-            synth.loadAllInstruments(MidiSoundbank.getCurrent().getSoundbank());
-
-            // Open AudioStream from AudioSynthesizer with default values
-            stream1 = synth.openStream(null, null);
-
-            // Play Sequence into AudioSynthesizer Receiver.
-            double totalLength = this.sendOutputSequenceMidiEvents(synth.getReceiver());
-
-            // give it an extra 2 seconds, to the reverb to fade out--otherwise it sounds unnatural
-            totalLength += 2;
-            // Calculate how long the WAVE file needs to be.
-            long len = (long) (stream1.getFormat().getFrameRate() * totalLength);
-            stream2 = new AudioInputStream(stream1, stream1.getFormat(), len);
-
-            // Write the wave file to disk
-//            AudioSystem.write(stream2, AudioFileFormat.Type.WAVE, new File(wavFileName));
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[8192];
-            while ((stream2.read(buffer)) != -1) {
-                baos.write(buffer);
-                res.write(buffer, 0, buffer.length);
-            }
-//            res.write(baos.toByteArray(), 0, baos.size());
-            baos.close();
-        } finally {
-            if (stream1 != null) stream1.close();
-            if (stream2 != null) stream2.close();
-            if (synth != null) synth.close();
-        }
+    /**
+     * Renders the output to 16 bit stereo PCM in SynthesizerPool.FORMAT,
+     * faster than realtime, using a pooled synthesizer.
+     *
+     * @return the PCM data
+     * @throws MidiUnavailableException if there is a midi
+     *                                  error
+     * @throws IOException              if there is an I/O error
+     */
+    public byte[] renderPcm() throws MidiUnavailableException, IOException {
+        int microsecondsPerQtrNote = Tempo.convertToMicrosecondsPerQuarterNote(this.outputManager.getFractalPiece().getTempo());
 
+        // give it an extra 2 seconds, to the reverb to fade out--otherwise it sounds unnatural
+        return SynthesizerPool.renderPcm(this.outputManager.getSequence(), microsecondsPerQtrNote, 2);
     }
 
     /**
@@ -155,31 +129,12 @@ public class AudioFileCreator {
      * @throws IOException              if there is an I/O error
      */
     protected void saveWavFile(final String wavFileName) throws MidiUnavailableException, IOException {
-        AudioSynthesizer synth = null;
-        AudioInputStream stream1 = null;
-        AudioInputStream stream2 = null;
+        byte[] pcm = this.renderPcm();
+        AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(pcm), SynthesizerPool.FORMAT, pcm.length / SynthesizerPool.FORMAT.getFrameSize());
         try {
-            synth = AudioFileCreator.getAudioSynthesizer();
-            synth.loadAllInstruments(MidiSoundbank.getCurrent().getSoundbank());
-
-            // Open AudioStream from AudioSynthesizer with default values
-            stream1 = synth.openStream(null, null);
-
-            // Play Sequence into AudioSynthesizer Receiver.
-            double totalLength = this.sendOutputSequenceMidiEvents(synth.getReceiver());
-
-            // give it an extra 2 seconds, to the reverb to fade out--otherwise it sounds unnatural
-            totalLength += 2;
-            // Calculate how long the WAVE file needs to be.
-            long len = (long) (stream1.getFormat().getFrameRate() * totalLength);
-            stream2 = new AudioInputStream(stream1, stream1.getFormat(), len);
-
-            // Write the wave file to disk
-            AudioSystem.write(stream2, AudioFileFormat.Type.WAVE, new File(wavFileName));
+            AudioSystem.write(stream, AudioFileFormat.Type.WAVE, new File(wavFileName));
         } finally {
-            if (stream1 != null) stream1.close();
-            if (stream2 != null) stream2.close();
-            if (synth != null) synth.close();
+            stream.close();
         }
     }
 
@@ -313,41 +268,4 @@ public class AudioFileCreator {
         }
         return out;
     }
-
-    /**
-     * Sends the outputManager's midi sequence events to the given receiver.
-     *
-     * @param receiver the receiver
-     * @return the length of the audio, in seconds
-     */
-    private double sendOutputSequenceMidiEvents(Receiver receiver) {
-        Sequence sequence = this.outputManager.getSequence();
-        // this method is only designed to handle the PPQ division type.
-        assert sequence.getDivisionType() == Sequence.PPQ : sequence.getDivisionType();
-
-        int microsecondsPerQtrNote = Tempo.convertToMicrosecondsPerQuarterNote(this.outputManager.getFractalPiece().getTempo());
-        int seqRes = sequence.getResolution();
-        long totalTime = 0;
-
-        for (Track track : sequence.getTracks()) {
-            long lastTick = 0;
-            long curTime = 0;
-
-            for (int i = 0; i < track.size(); i++) {
-                MidiEvent event = track.get(i);
-                long tick = event.getTick();
-                curTime += ((tick - lastTick) * microsecondsPerQtrNote) / seqRes;
-                lastTick = tick;
-                MidiMessage msg = event.getMessage();
-                if (!(msg instanceof MetaMessage)) {
-                    receiver.send(msg, curTime);
-                }
-            }
-
-            // make the total time be the time of the langest track
-            totalTime = Math.max(curTime, totalTime);
-        }
-
-        return totalTime / MICROSECONDS_PER_SECOND;
-    }
 }
@@ -656,6 +656,12 @@ public class Note implements Cloneable {
      * @return the number of ticks
      */
     private static long convertWholeNotesToTicks(Fraction wholeNotes, int midiTickResolution) {
+        // the resolution is normally a multiple of the denominator, so we can
+        // skip the gcd reduction that Fraction.times would do...
+        if (midiTickResolution % wholeNotes.denominator() == 0) {
+            return wholeNotes.numerator() * (midiTickResolution / wholeNotes.denominator());
+        }
+        
         Fraction converted = wholeNotes.times(midiTickResolution);        
         
         // converting to midi ticks should result in an integral number of ticks
@@ -734,10 +740,27 @@ public class Note implements Cloneable {
      * @return the MidiNote
      */
     public MidiNote convertToMidiNote(Fraction startTime, int midiTickResolution, int channel, boolean keepExactPitch) {        
+        return convertToMidiNote(convertWholeNotesToTicks(startTime, midiTickResolution), midiTickResolution, channel, keepExactPitch);
+    }      
+    
+    /**
+     * Converts the note to a Midi Note, given a start time that is already in
+     * midi ticks.
+     *      
+     * @param startTick the time this note should be played, in ticks
+     * @param midiTickResolution the number of ticks per whole note for the
+     *        midi sequence
+     * @param channel the midi channel for this note, 0-15
+     * @param keepExactPitch true to keep the exact pitch specified by the note
+     *        parameters; false to allow the chromaticAdjustment to be changed
+     *        if it would create a note that is already found in the scale
+     * @return the MidiNote
+     */
+    public MidiNote convertToMidiNote(long startTick, int midiTickResolution, int channel, boolean keepExactPitch) {        
         MidiNote midiNote = new MidiNote();       
             
         midiNote.setDuration(convertWholeNotesToTicks(this.getDuration(), midiTickResolution));
-        midiNote.setStartTime(convertWholeNotesToTicks(startTime, midiTickResolution) + MidiNote.MIDI_SEQUENCE_START_SILENCE_TICK_OFFSET);
+        midiNote.setStartTime(startTick + MidiNote.MIDI_SEQUENCE_START_SILENCE_TICK_OFFSET);
         midiNote.setVelocity(this.getVolume());        
         midiNote.setPitch(this.getMidiPitchNumber(keepExactPitch));
         midiNote.setChannel(channel);
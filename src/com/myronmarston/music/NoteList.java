@@ -22,6 +22,7 @@ package com.myronmarston.music;
 import com.myronmarston.music.scales.Scale;
 import com.myronmarston.music.settings.VoiceSection;
 import com.myronmarston.util.Fraction;
+import com.myronmarston.util.MathHelper;
 import org.simpleframework.xml.*;
 import org.simpleframework.xml.core.Commit;
 import org.simpleframework.xml.core.Complete;
@@ -33,7 +34,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 
@@ -180,9 +183,19 @@ public class NoteList extends AbstractList<Note> implements Cloneable {
      * @return the duration of the note list
      */
     public Fraction getDuration() {
-        Fraction duration = new Fraction(0, 1);
-        for (Note n : this) duration = duration.plus(n.getDuration());        
-        return duration;        
+        // sum over a common denominator so no intermediate Fractions are created
+        long numerator = 0L;
+        long denominator = 1L;
+        for (int i = 0; i < this.size(); i++) {
+            Fraction d = this.get(i).getDuration();
+            if (denominator % d.denominator() != 0) {
+                long lcm = MathHelper.leastCommonMultiple(denominator, d.denominator());
+                numerator *= lcm / denominator;
+                denominator = lcm;
+            }
+            numerator += d.numerator() * (denominator / d.denominator());
+        }
+        return new Fraction(numerator, denominator);        
     }
     
     /**
@@ -296,6 +309,54 @@ public class NoteList extends AbstractList<Note> implements Cloneable {
         newList.add(rest);
     }
     
+    /**
+     * Combines adjacent rests the same way getListWithNormalizedRests() does, 
+     * but as the notes are iterated over, so the notes never have to be held
+     * in a list.
+     * 
+     * @param notes the notes to normalize
+     * @return the notes with normalized rests
+     */
+    public static Iterable<Note> getNotesWithNormalizedRests(final Iterable<Note> notes) {
+        return new Iterable<Note>() {
+            public Iterator<Note> iterator() {
+                final Iterator<Note> source = notes.iterator();
+                return new Iterator<Note>() {
+                    private Note lookahead = (source.hasNext() ? source.next() : null);
+                    
+                    public boolean hasNext() {
+                        return lookahead != null;
+                    }
+
+                    public Note next() {
+                        if (lookahead == null) throw new NoSuchElementException();
+                        
+                        Note thisNote = lookahead;
+                        lookahead = (source.hasNext() ? source.next() : null);
+                        if (!thisNote.isRest() || lookahead == null || !lookahead.isRest() || lookahead.getSourceVoiceSection() != thisNote.getSourceVoiceSection()) {
+                            return thisNote;
+                        }
+                        
+                        // collapse the following rests of the same voice section into this one
+                        Fraction currentRestDuration = thisNote.getDuration();
+                        while (lookahead != null && lookahead.isRest() && lookahead.getSourceVoiceSection() == thisNote.getSourceVoiceSection()) {
+                            currentRestDuration = currentRestDuration.plus(lookahead.getDuration());
+                            lookahead = (source.hasNext() ? source.next() : null);
+                        }
+                        
+                        Note rest = Note.createRest(currentRestDuration);
+                        rest.setSourceVoiceSection(thisNote.getSourceVoiceSection());
+                        return rest;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+    
     /**
      * Updates the scale on all the notes.  This should only be called when you
      * know that all the notes of this note list have the same note list.
@@ -33,7 +33,6 @@ import javax.sound.midi.Track;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -210,7 +209,7 @@ public class OutputManager {
         // next, use the first track to set key signature, time signature and tempo...
         Track track1 = sequence.createTrack();        
         track1.add(this.fractalPiece.getScale().getKeySignature().getKeySignatureMidiEvent(0));                  
-        addSectionKeySigEventsToTrack(track1, sequence.getResolution());
+        if (generateKeySignaturesForSections) addSectionKeySigEventsToTrack(this.fractalPiece, track1, sequence.getResolution());
         track1.add(this.fractalPiece.getTimeSignature().getMidiTimeSignatureEvent());
         track1.add(Tempo.getMidiTempoEvent(this.getTempo()));
 
@@ -220,19 +219,62 @@ public class OutputManager {
         }        
     }
     
+    /**
+     * Creates a midi sequence straight from the notes of each voice, without
+     * the notation or the note lists an OutputManager keeps.  Each voice is 
+     * iterated over twice, once for the tick resolution and once for its 
+     * track, so notes that are generated lazily never have to be held in
+     * memory all at once.  The sequence is the same as the one an 
+     * OutputManager constructs for the same notes.
+     * 
+     * @param fractalPiece the fractal piece
+     * @param voices the notes of each voice, in track order
+     * @param instruments the instrument for each voice, or null for the 
+     *        default instrument
+     * @return the midi sequence
+     * @throws com.myronmarston.music.GermIsEmptyException if the germ is empty
+     */
+    public static Sequence createMidiSequence(FractalPiece fractalPiece, List<? extends Iterable<Note>> voices, List<Instrument> instruments) throws GermIsEmptyException {
+        assert voices.size() == instruments.size() : instruments;
+        
+        // We can't create any midi sequence if we don't have a germ from which to "grow" our piece...
+        if (fractalPiece.getGerm() == null || fractalPiece.getGerm().size() == 0) throw new GermIsEmptyException();
+        
+        Sequence sequence;
+        try {
+            sequence = new Sequence(Sequence.PPQ, getMidiTickResolution(voices));
+        } catch (InvalidMidiDataException ex) {
+            // our logic should prevent this exception from ever occurring, 
+            // so we transform this to an unchecked exception instead of 
+            // having to declare it on our method.
+            throw new UndeclaredThrowableException(ex, "Error while creating sequence.  This indicates a programming error of some sort.");                
+        }
+        
+        // use the first track to set key signature, time signature and tempo...
+        Track track1 = sequence.createTrack();        
+        track1.add(fractalPiece.getScale().getKeySignature().getKeySignatureMidiEvent(0));                  
+        addSectionKeySigEventsToTrack(fractalPiece, track1, sequence.getResolution());
+        track1.add(fractalPiece.getTimeSignature().getMidiTimeSignatureEvent());
+        track1.add(Tempo.getMidiTempoEvent(fractalPiece.getTempo()));
+        
+        for (int i = 0; i < voices.size(); i++) {
+            constructStreamedMidiTrack(sequence, voices.get(i), instruments.get(i));
+        }
+        return sequence;
+    }
+    
     /**
      * Adds key signature events to the given track for each section, as needed.
      * 
+     * @param fractalPiece the fractal piece
      * @param track the track to add the events to 
      * @param sequenceResolution the midi sequence resolution
      */
-    private void addSectionKeySigEventsToTrack(Track track, int sequenceResolution) {
-        if (!generateKeySignaturesForSections) return;
-        
+    private static void addSectionKeySigEventsToTrack(FractalPiece fractalPiece, Track track, int sequenceResolution) {
         Fraction durationSoFar = new Fraction(0, 1);
-        KeySignature lastKeySignature = this.fractalPiece.getScale().getKeySignature();
+        KeySignature lastKeySignature = fractalPiece.getScale().getKeySignature();
         KeySignature sectionKeySignature;
-        for (Section s : this.fractalPiece.getSections()) { 
+        for (Section s : fractalPiece.getSections()) { 
             sectionKeySignature = s.getSectionKeySignature();
             if (!lastKeySignature.equals(sectionKeySignature)) {
                 Fraction tickCount = durationSoFar.times(sequenceResolution);
@@ -255,7 +297,7 @@ public class OutputManager {
     protected void constructMidiTrack(NoteList noteList) {
         MidiNote thisMidiNote, lastMidiNote = null;
         Note lastNote = null;
-        Fraction startTime = new Fraction(0, 1);        
+        long startTick = 0L, lastStartTick = 0L;
         
         // get a default instrument if we we're not passed one...
         Instrument instrument = (noteList.getInstrument() == null ? Instrument.DEFAULT : noteList.getInstrument());
@@ -277,7 +319,7 @@ public class OutputManager {
         // in Midi, the tick resolution is based on quarter notes, but we use whole notes...
         int midiTicksPerWholeNote = convertMidiTickUnitFromQuarterNotesToWholeNotesInt(sequence.getResolution());
         
-        for (Note thisNote : noteList.getListWithNormalizedRests()) {                        
+        for (Note thisNote : noteList.getListWithNormalizedRests()) {
             // update our part section if necessary...
             if (partSection == null) {
                 partSection = new PartSection(part, thisNote.getSourceVoiceSection());
@@ -285,7 +327,7 @@ public class OutputManager {
                 partSection = new PartSection(part, lastNote.getSourceVoiceSection());
             }
             
-            thisMidiNote = thisNote.convertToMidiNote(startTime, midiTicksPerWholeNote, midiChannel, true);                        
+            thisMidiNote = thisNote.convertToMidiNote(startTick, midiTicksPerWholeNote, midiChannel, true);                        
             
             if (lastMidiNote != null) {
                 assert lastNote != null;
@@ -295,9 +337,9 @@ public class OutputManager {
                     // This can happen with notes like B# and C in the key of C.
 
                     if (lastNote.getChromaticAdjustment() != 0) {
-                        lastMidiNote = lastNote.convertToMidiNote(startTime.minus(thisNote.getDuration()), midiTicksPerWholeNote, midiChannel, false);
+                        lastMidiNote = lastNote.convertToMidiNote(lastStartTick, midiTicksPerWholeNote, midiChannel, false);
                     } else if (thisNote.getChromaticAdjustment() != 0) {
-                        thisMidiNote = thisNote.convertToMidiNote(startTime, midiTicksPerWholeNote, midiChannel, false);
+                        thisMidiNote = thisNote.convertToMidiNote(startTick, midiTicksPerWholeNote, midiChannel, false);
                     } else {
                         // one of these notes should always have a chromatic 
                         // adjustment--otherwise, how do they have the same pitches
@@ -310,8 +352,9 @@ public class OutputManager {
                 timeLeftInBar = addMidiNoteEventsToTrack(track, partSection, lastMidiNote, lastNote, timeLeftInBar);                
             }                                      
             
-            //The next note start time will be the end of this note...
-            startTime = startTime.plus(thisNote.getDuration());
+            //The next note start tick will be the end of this note...
+            lastStartTick = startTick;
+            startTick += thisMidiNote.getDuration();
             
             lastMidiNote = thisMidiNote;
             lastNote = thisNote;
@@ -319,6 +362,63 @@ public class OutputManager {
         timeLeftInBar = addMidiNoteEventsToTrack(track, partSection, lastMidiNote, lastNote, timeLeftInBar);                
     }        
   
+    /**
+     * Constructs a midi track from the given notes as they are iterated over.
+     * This produces the same events as constructMidiTrack(), but no notation.
+     * 
+     * @param sequence the sequence to add the track to
+     * @param notes the notes
+     * @param instrument the instrument, or null for the default instrument
+     */
+    private static void constructStreamedMidiTrack(Sequence sequence, Iterable<Note> notes, Instrument instrument) {
+        MidiNote thisMidiNote, lastMidiNote = null;
+        Note lastNote = null;
+        long startTick = 0L, lastStartTick = 0L;
+        
+        // get a default instrument if we we're not passed one...
+        if (instrument == null) instrument = Instrument.DEFAULT;
+        
+        // make each track be on a different channel, but make sure we don't go over our total number of channels...
+        int numTracks = sequence.getTracks().length;
+        // The 1st track should be the tempo/key sig/time sig track        
+        assert numTracks > 0 : numTracks; 
+        int midiChannel = numTracks - 1;
+        assert midiChannel < MidiNote.MAX_CHANNEL;
+        
+        Track track = sequence.createTrack();
+        track.add(instrument.getProgramChangeMidiEvent(midiChannel));        
+        
+        // in Midi, the tick resolution is based on quarter notes, but we use whole notes...
+        int midiTicksPerWholeNote = convertMidiTickUnitFromQuarterNotesToWholeNotesInt(sequence.getResolution());
+        
+        for (Note thisNote : NoteList.getNotesWithNormalizedRests(notes)) {
+            thisMidiNote = thisNote.convertToMidiNote(startTick, midiTicksPerWholeNote, midiChannel, true);
+            
+            if (lastMidiNote != null) {
+                if (thisMidiNote.getPitch() == lastMidiNote.getPitch() && lastNote.getNormalizedNote().getScaleStep() != thisNote.getNormalizedNote().getScaleStep()) {               
+                    // the notes are different scale steps and should have different pitches.
+                    // This can happen with notes like B# and C in the key of C.
+                    if (lastNote.getChromaticAdjustment() != 0) {
+                        lastMidiNote = lastNote.convertToMidiNote(lastStartTick, midiTicksPerWholeNote, midiChannel, false);
+                    } else if (thisNote.getChromaticAdjustment() != 0) {
+                        thisMidiNote = thisNote.convertToMidiNote(startTick, midiTicksPerWholeNote, midiChannel, false);
+                    } else {
+                        assert false : "Neither last note '" + lastNote.toString() + "' nor this note '" + thisNote.toString() + "' have a chromatic adjustment.";
+                    }
+                    
+                    assert thisMidiNote.getPitch() != lastMidiNote.getPitch() : "The midi notes have the same pitch and should not: " + thisMidiNote.getPitch();
+                }
+                addMidiNoteEventsToTrack(track, lastMidiNote);
+            }
+            
+            lastMidiNote = thisMidiNote;
+            lastNote = thisNote;
+            lastStartTick = startTick;
+            startTick += thisMidiNote.getDuration();
+        }
+        if (lastMidiNote != null) addMidiNoteEventsToTrack(track, lastMidiNote);
+    }
+    
     /**
      * Adds the midi note on and note off events to a track.  Also adds the 
      * Notation note to the part.
@@ -331,6 +431,24 @@ public class OutputManager {
      * @return the new timeLeftInBar
      */
     private Fraction addMidiNoteEventsToTrack(Track track, PartSection partSection, MidiNote midiNote, Note note, Fraction timeLeftInBar) {
+        addMidiNoteEventsToTrack(track, midiNote);
+          
+        // add the NotationNote to our partSection...        
+        partSection.getNotationElements().add(note.toNotationNote(partSection, midiNote, timeLeftInBar));
+        
+        // calculate and return the new timeLeftInBar
+        timeLeftInBar = timeLeftInBar.minus(note.getDuration());
+        while (timeLeftInBar.compareTo(0L) <= 0) timeLeftInBar = timeLeftInBar.plus(this.timeSignatureFraction);
+        return timeLeftInBar;
+    }
+
+    /**
+     * Adds the midi note on and note off events to a track.
+     * 
+     * @param track the midi track
+     * @param midiNote the midi note
+     */
+    private static void addMidiNoteEventsToTrack(Track track, MidiNote midiNote) {
         try {
             track.add(midiNote.getNoteOnEvent());
             track.add(midiNote.getNoteOffEvent());
@@ -340,14 +458,6 @@ public class OutputManager {
             // having to declare it on our method.
             throw new UndeclaredThrowableException(ex, "MidiNote's note on and note off events could not be created.  This indicates a programming error of some sort.");                
         }        
-          
-        // add the NotationNote to our partSection...        
-        partSection.getNotationElements().add(note.toNotationNote(partSection, midiNote, timeLeftInBar));
-        
-        // calculate and return the new timeLeftInBar
-        timeLeftInBar = timeLeftInBar.minus(note.getDuration());
-        while (timeLeftInBar.compareTo(0L) <= 0) timeLeftInBar = timeLeftInBar.plus(this.timeSignatureFraction);
-        return timeLeftInBar;
     }
 
     /**
@@ -357,17 +467,31 @@ public class OutputManager {
      * @return the midi tick resolution
      */
     protected int getMidiTickResolution() {        
+        return getMidiTickResolution(noteLists);
+    }
+    
+    /**
+     * Calculates the optimal midi tick resolution for the given notes, based 
+     * on their durations.
+     * 
+     * @param noteLists the notes of each voice
+     * @return the midi tick resolution
+     */
+    private static int getMidiTickResolution(List<? extends Iterable<Note>> noteLists) {        
         // next, figure out the resolution of our Midi sequence...
-        ArrayList<Long> uniqueDurationDenominators = new ArrayList<Long>();
-        for (NoteList nl : noteLists) {
+        long resolution = 0L;
+        for (Iterable<Note> nl : noteLists) {
             for (Note n : nl) {
-                if (!uniqueDurationDenominators.contains(n.getDuration().denominator())) {
-                    uniqueDurationDenominators.add(n.getDuration().denominator());
+                long denominator = n.getDuration().denominator();
+                if (resolution == 0L) {
+                    resolution = denominator;
+                } else if (resolution % denominator != 0) {
+                    resolution = MathHelper.leastCommonMultiple(resolution, denominator);
                 }                
             }
         }        
         
-        long resolution = MathHelper.leastCommonMultiple(uniqueDurationDenominators);
+        if (resolution == 0L) throw new IllegalArgumentException("There are no notes to get a midi tick resolution for.");
         assert resolution < Integer.MAX_VALUE;
         return (int) resolution;
     }
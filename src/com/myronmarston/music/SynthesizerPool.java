@@ -0,0 +1,338 @@
+/*
+ * Copyright 2008, Myron Marston <myron DOT marston AT gmail DOT com>
+ * 
+ * This file is part of Fractal Composer.
+ * 
+ * Fractal Composer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option any later version.
+ * 
+ * Fractal Composer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Fractal Composer.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package com.myronmarston.music;
+
+import com.sun.media.sound.AudioSynthesizer;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps opened audio synthesizers around so that rendering midi does not 
+ * have to create a synthesizer and load a soundbank each time.  Every 
+ * synthesizer is opened in stream (pull) mode with the same format as the
+ * Output mixer, so audio is produced as fast as it is read.
+ * 
+ * Offline rendering takes a synthesizer from the pool, feeds it the events
+ * of a sequence in time order while reading exactly the number of frames 
+ * between them, and gives it back.  Live sequencers share one 
+ * synthesizer, each on its own midi channel, so the mixer reads a single
+ * stream for all of them.
+ * 
+ * @author Myron
+ */
+public class SynthesizerPool {
+    /**
+     * The format all pooled synthesizers render: 44.1kHz, 16 bit, stereo, 
+     * little endian.
+     */
+    public static final AudioFormat FORMAT = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+    
+    private static final double MICROSECONDS_PER_SECOND = 1000000.0;
+    private static final int READ_BUFFER_FRAMES = 4096;
+    private static final double MAX_EFFECT_TAIL_SECONDS = 10;
+    
+    private static final ArrayDeque<PooledSynthesizer> idle = new ArrayDeque<PooledSynthesizer>();
+    private static final Map<AudioSynthesizer, PooledSynthesizer> open = new IdentityHashMap<AudioSynthesizer, PooledSynthesizer>();
+    private static PooledSynthesizer shared;
+    
+    private SynthesizerPool() {}
+    
+    /**
+     * An opened synthesizer and the stream it renders to.
+     */
+    private static class PooledSynthesizer {
+        private final AudioSynthesizer synth;
+        private final AudioInputStream stream;
+        private final Receiver receiver;
+        private Soundbank loadedSoundbank;
+        
+        PooledSynthesizer() throws MidiUnavailableException {
+            this.synth = AudioFileCreator.getAudioSynthesizer();
+            this.stream = this.synth.openStream(FORMAT, new HashMap<String, Object>());
+            this.receiver = this.synth.getReceiver();
+        }
+        
+        /**
+         * Loads the current soundbank, unless it is already loaded.  Channels
+         * keep their programs, bound to the instruments of the new soundbank.
+         */
+        void loadCurrentSoundbank() {
+            Soundbank soundbank = MidiSoundbank.getCurrent().getSoundbank();
+            if (soundbank == this.loadedSoundbank) return;
+            if (this.loadedSoundbank != null) this.synth.unloadAllInstruments(this.loadedSoundbank);
+            this.synth.loadAllInstruments(soundbank);
+            this.loadedSoundbank = soundbank;
+            
+            // a channel looks its instrument up again only when its program changes
+            for (MidiChannel channel : this.synth.getChannels()) {
+                if (channel == null) continue;
+                int program = channel.getProgram();
+                channel.programChange((program + 1) % 128);
+                channel.programChange(program);
+            }
+        }
+        
+        /**
+         * Silences every channel and puts its controllers and program back to
+         * the defaults, then renders until the reverb and chorus have died 
+         * out, so the next user starts from a clean state.
+         */
+        void reset() throws IOException {
+            for (MidiChannel channel : this.synth.getChannels()) {
+                if (channel == null) continue;
+                channel.allSoundOff();
+                channel.resetAllControllers();
+                channel.programChange(0);
+            }
+            
+            // the effects have no reset of their own, but stop once their input is silent
+            byte[] block = new byte[READ_BUFFER_FRAMES * FORMAT.getFrameSize()];
+            long maxBytes = (long) (MAX_EFFECT_TAIL_SECONDS * FORMAT.getFrameRate()) * FORMAT.getFrameSize();
+            for (long drained = 0; drained < maxBytes; drained += block.length) {
+                read(this.stream, block, 0, block.length);
+                if (isSilent(block)) break;
+            }
+        }
+    }
+    
+    /**
+     * Takes an idle synthesizer from the pool, opening a new one if there is
+     * none.  The current soundbank is loaded on it.  Give it back with 
+     * release() when done.
+     * 
+     * @return an opened synthesizer
+     * @throws MidiUnavailableException if no synthesizer can be opened
+     */
+    public static AudioSynthesizer acquire() throws MidiUnavailableException {
+        PooledSynthesizer ps;
+        synchronized (SynthesizerPool.class) {
+            ps = idle.poll();
+        }
+        
+        if (ps == null) {
+            ps = new PooledSynthesizer();
+            synchronized (SynthesizerPool.class) {
+                open.put(ps.synth, ps);
+            }
+        }
+        
+        ps.loadCurrentSoundbank();
+        return ps.synth;
+    }
+    
+    /**
+     * Returns a synthesizer taken with acquire() to the pool.
+     * 
+     * @param synth the synthesizer
+     */
+    public static void release(AudioSynthesizer synth) {
+        PooledSynthesizer ps;
+        synchronized (SynthesizerPool.class) {
+            ps = open.get(synth);
+        }
+        if (ps == null) throw new IllegalArgumentException("The synthesizer was not acquired from this pool.");
+        
+        try {
+            ps.reset();
+        } catch (IOException e) {
+            // a synthesizer whose stream fails is not put back
+            e.printStackTrace();
+            synchronized (SynthesizerPool.class) {
+                open.remove(synth);
+            }
+            synth.close();
+            return;
+        }
+        synchronized (SynthesizerPool.class) {
+            idle.push(ps);
+        }
+    }
+    
+    /**
+     * Gets the stream a pooled synthesizer renders to.
+     * 
+     * @param synth a synthesizer taken with acquire()
+     * @return the stream, in FORMAT
+     */
+    public static AudioInputStream getStream(AudioSynthesizer synth) {
+        PooledSynthesizer ps;
+        synchronized (SynthesizerPool.class) {
+            ps = open.get(synth);
+        }
+        if (ps == null) throw new IllegalArgumentException("The synthesizer was not acquired from this pool.");
+        return ps.stream;
+    }
+    
+    /**
+     * Gets the synthesizer shared by the live sequencers.  It is never 
+     * returned to the pool; callers should use distinct channels.  If the 
+     * current soundbank has changed since it was last loaded, the new one is
+     * loaded on it, so the stream the mixer reads stays the same.
+     * 
+     * @return the shared synthesizer
+     * @throws MidiUnavailableException if no synthesizer can be opened
+     */
+    public static synchronized AudioSynthesizer getShared() throws MidiUnavailableException {
+        if (shared == null) {
+            shared = new PooledSynthesizer();
+        }
+        shared.loadCurrentSoundbank();
+        return shared.synth;
+    }
+    
+    /**
+     * Gets the stream of the shared synthesizer.  Read it once per mix, 
+     * since it carries every channel.
+     * 
+     * @return the shared stream, in FORMAT
+     * @throws MidiUnavailableException if no synthesizer can be opened
+     */
+    public static synchronized AudioInputStream getSharedStream() throws MidiUnavailableException {
+        getShared();
+        return shared.stream;
+    }
+    
+    /**
+     * Renders a midi sequence to 16 bit PCM in FORMAT.  Tempo meta events 
+     * are ignored; the whole sequence is played at the given tempo.
+     * 
+     * @param sequence the sequence, with PPQ division
+     * @param microsecondsPerQuarterNote the tempo
+     * @param tailSeconds extra time to render after the last event, so the 
+     *        reverb can fade out
+     * @return the PCM data
+     * @throws MidiUnavailableException if no synthesizer can be opened
+     * @throws IOException if the synthesizer stream cannot be read
+     */
+    public static byte[] renderPcm(Sequence sequence, int microsecondsPerQuarterNote, double tailSeconds) throws MidiUnavailableException, IOException {
+        // this method is only designed to handle the PPQ division type.
+        assert sequence.getDivisionType() == Sequence.PPQ : sequence.getDivisionType();
+        
+        double framesPerTick = (double) microsecondsPerQuarterNote / sequence.getResolution() * FORMAT.getFrameRate() / MICROSECONDS_PER_SECOND;
+        Track[] tracks = sequence.getTracks();
+        long lastTick = 0;
+        for (Track track : tracks) {
+            if (track.size() > 0) lastTick = Math.max(lastTick, track.get(track.size() - 1).getTick());
+        }
+        
+        long totalFrames = (long) (lastTick * framesPerTick) + (long) (tailSeconds * FORMAT.getFrameRate());
+        assert totalFrames * FORMAT.getFrameSize() < Integer.MAX_VALUE : totalFrames;
+        byte[] pcm = new byte[(int) totalFrames * FORMAT.getFrameSize()];
+        
+        AudioSynthesizer synth = acquire();
+        try {
+            AudioInputStream stream = getStream(synth);
+            Receiver receiver = synth.getReceiver();
+            
+            // merge the tracks, which are each sorted by tick...
+            int[] next = new int[tracks.length];
+            int position = 0;
+            while (true) {
+                int trackIndex = -1;
+                long tick = Long.MAX_VALUE;
+                for (int t = 0; t < tracks.length; t++) {
+                    if (next[t] < tracks[t].size() && tracks[t].get(next[t]).getTick() < tick) {
+                        tick = tracks[t].get(next[t]).getTick();
+                        trackIndex = t;
+                    }
+                }
+                if (trackIndex < 0) break;
+                
+                MidiEvent event = tracks[trackIndex].get(next[trackIndex]++);
+                position = read(stream, pcm, position, (int) (event.getTick() * framesPerTick) * FORMAT.getFrameSize());
+                
+                MidiMessage msg = event.getMessage();
+                if (!(msg instanceof MetaMessage)) receiver.send(msg, -1);
+            }
+            read(stream, pcm, position, pcm.length);
+        } finally {
+            release(synth);
+        }
+        
+        return pcm;
+    }
+    
+    /**
+     * Renders a midi sequence to interleaved stereo floats in the range -1 
+     * to 1.
+     * 
+     * @param sequence the sequence, with PPQ division
+     * @param microsecondsPerQuarterNote the tempo
+     * @param tailSeconds extra time to render after the last event
+     * @return left and right samples, interleaved
+     * @throws MidiUnavailableException if no synthesizer can be opened
+     * @throws IOException if the synthesizer stream cannot be read
+     */
+    public static float[] render(Sequence sequence, int microsecondsPerQuarterNote, double tailSeconds) throws MidiUnavailableException, IOException {
+        return toFloats(renderPcm(sequence, microsecondsPerQuarterNote, tailSeconds));
+    }
+    
+    /**
+     * Converts 16 bit little endian PCM to floats in the range -1 to 1.
+     * 
+     * @param pcm the PCM data
+     * @return one float per sample
+     */
+    public static float[] toFloats(byte[] pcm) {
+        float[] samples = new float[pcm.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((pcm[2 * i + 1] << 8) | (pcm[2 * i] & 0xFF)) / 32768f;
+        }
+        return samples;
+    }
+    
+    /**
+     * @return whether every sample of the PCM data is 0
+     */
+    private static boolean isSilent(byte[] pcm) {
+        for (byte b : pcm) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Reads from the stream into pcm until the given end offset.
+     */
+    private static int read(AudioInputStream stream, byte[] pcm, int position, int end) throws IOException {
+        end = Math.min(end, pcm.length);
+        while (position < end) {
+            int read = stream.read(pcm, position, Math.min(end - position, READ_BUFFER_FRAMES * FORMAT.getFrameSize()));
+            if (read < 0) throw new IOException("The synthesizer stream ended unexpectedly.");
+            position += read;
+        }
+        return position;
+    }
+}
@@ -20,6 +20,8 @@
 package com.myronmarston.music.settings;
 
 import com.myronmarston.music.GermIsEmptyException;
+import com.myronmarston.music.Instrument;
+import com.myronmarston.music.Note;
 import com.myronmarston.music.NoteList;
 import com.myronmarston.music.NoteStringParseException;
 import com.myronmarston.music.OutputManager;
@@ -30,6 +32,7 @@ import org.simpleframework.xml.*;
 import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.strategy.CycleStrategy;
 
+import javax.sound.midi.Sequence;
 import java.io.StringWriter;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
@@ -512,6 +515,12 @@ public class FractalPiece {
             // create our intro and outro...
             this.createIntroSections();
             this.createOutroSections();
+            
+            // generate the voice section results up front, concurrently, 
+            // rather than one at a time as each voice asks for them...
+            List<VoiceSection> allVoiceSections = new ArrayList<VoiceSection>();
+            for (Section s : this.getSections()) allVoiceSections.addAll(s.getVoiceSections());
+            VoiceSection.generateVoiceSectionResults(allVoiceSections);
                         
             ArrayList<NoteList> voiceResults = new ArrayList<NoteList>();
             for (Voice v : this.getVoices()) voiceResults.add(v.getEntireVoice());
@@ -522,6 +531,39 @@ public class FractalPiece {
         }         
     }
     
+    /**
+     * Creates the midi sequence for the whole piece.  Unlike 
+     * createPieceResultOutputManager(), no sheet music is produced, and the 
+     * notes of each voice are generated as they are written to the sequence 
+     * rather than held in memory, so this can render pieces with many more
+     * self-similarity iterations.
+     * 
+     * @return the midi sequence
+     * @throws com.myronmarston.music.GermIsEmptyException if the germ is empty
+     * @throws UnsupportedOperationException if there are no voices or sections
+     */
+    public Sequence createPieceResultSequence() throws GermIsEmptyException, UnsupportedOperationException {
+        if (this.voices.isEmpty() || this.sections.isEmpty()) throw new UnsupportedOperationException("You must have at least one voice and one section to generate a fractal piece.");
+        int originalSectionUniqueIndex = this.sections.getLastUniqueIndex();
+        try {
+            // create our intro and outro...
+            this.createIntroSections();
+            this.createOutroSections();
+            
+            List<Iterable<Note>> voiceNotes = new ArrayList<Iterable<Note>>();
+            List<Instrument> instruments = new ArrayList<Instrument>();
+            for (Voice v : this.getVoices()) {
+                voiceNotes.add(v.getEntireVoiceNotes());
+                instruments.add(Instrument.getInstrument(v.getInstrumentName()));
+            }
+            
+            // the notes must be consumed before the intro and outro are cleared...
+            return OutputManager.createMidiSequence(this, voiceNotes, instruments);
+        } finally {
+            this.clearTempIntroOutroSections(originalSectionUniqueIndex);
+        }         
+    }
+    
     /**
      * Creates the output manager for the germ.
      * 
@@ -306,13 +306,14 @@ public class Section extends AbstractVoiceOrSection<Section, Voice> {
         ArrayList<Fraction> voiceSectionDurations = new ArrayList<Fraction>(this.getListOfOtherType().size());
         
         for (VoiceSection vs : this.getVoiceSections()) {
-            voiceSectionDurations.add(vs.getVoiceSectionResult().getDuration());
+            voiceSectionDurations.add(vs.getVoiceSectionResultDuration());
         }
         
         return Collections.max(voiceSectionDurations);
     }    
     
     public OutputManager createOutputManager() throws GermIsEmptyException {                
+        VoiceSection.generateVoiceSectionResults(this.getVoiceSections());
         Fraction sectionDuration = this.getDuration();
                     
         List<NoteList> voiceSectionResults = new ArrayList<NoteList>(this.getVoiceSections().size());
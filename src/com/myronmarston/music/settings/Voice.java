@@ -21,13 +21,18 @@ package com.myronmarston.music.settings;
 
 import com.myronmarston.music.GermIsEmptyException;
 import com.myronmarston.music.Instrument;
+import com.myronmarston.music.Note;
 import com.myronmarston.music.NoteList;
 import com.myronmarston.music.OutputManager;
 import com.myronmarston.util.Fraction;
 import com.myronmarston.util.Publisher;
 import org.simpleframework.xml.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * A FractalPiece is composed of several voices.  A Voice is analogous to 
@@ -118,6 +123,45 @@ public class Voice extends AbstractVoiceOrSection<Voice, Section> {
         return entireVoice;
     }   
     
+    /**
+     * Gets the notes for all sections of this voice, like getEntireVoice(), 
+     * but generates them as they are iterated over.  See 
+     * VoiceSection.getLengthenedVoiceSectionNotes().
+     * 
+     * @return the notes of the entire voice
+     */
+    public Iterable<Note> getEntireVoiceNotes() {
+        final List<Iterable<Note>> sections = new ArrayList<Iterable<Note>>();
+        for (VoiceSection vs : this.getVoiceSections()) {
+            sections.add(vs.getLengthenedVoiceSectionNotes(vs.getSection().getDuration()));
+        }
+        
+        return new Iterable<Note>() {
+            public Iterator<Note> iterator() {
+                final Iterator<Iterable<Note>> sectionIterator = sections.iterator();
+                return new Iterator<Note>() {
+                    private Iterator<Note> section;
+                    
+                    public boolean hasNext() {
+                        while ((section == null || !section.hasNext()) && sectionIterator.hasNext()) {
+                            section = sectionIterator.next().iterator();
+                        }
+                        return section != null && section.hasNext();
+                    }
+
+                    public Note next() {
+                        if (!this.hasNext()) throw new NoSuchElementException();
+                        return section.next();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+    
     /**
      * Creates the output manager for this voice.
      * 
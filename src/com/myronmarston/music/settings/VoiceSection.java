@@ -25,12 +25,24 @@ import com.myronmarston.music.Note;
 import com.myronmarston.music.NoteList;
 import com.myronmarston.music.OutputManager;
 import com.myronmarston.music.scales.Scale;
+import com.myronmarston.music.transformers.SelfSimilarityTransformer;
 import com.myronmarston.util.Fraction;
 import com.myronmarston.util.Publisher;
 import com.myronmarston.util.Subscriber;
 import org.simpleframework.xml.*;
 
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Represents the smallest unit of the fractal piece for which the user can
@@ -41,6 +53,12 @@ import java.util.Arrays;
  */
 @Root
 public class VoiceSection implements Subscriber, Cloneable {
+    
+    /**
+     * How many results generated from earlier settings are kept, so that 
+     * undoing an edit does not regenerate the voice section.
+     */
+    private static final int MAX_REMEMBERED_RESULTS = 8;
 
     @Attribute
     private boolean rest = false;
@@ -64,6 +82,8 @@ public class VoiceSection implements Subscriber, Cloneable {
     private Section section;
     
     private NoteList voiceSectionResult;
+    
+    private Map<ResultKey, NoteList> resultsBySettings;
 
     /**
      * Constructor.
@@ -248,7 +268,11 @@ public class VoiceSection implements Subscriber, Cloneable {
      *         germ
      */
     public NoteList getVoiceSectionResult() {
-        if (voiceSectionResult == null) voiceSectionResult = this.generateVoiceSectionResult();
+        if (voiceSectionResult == null) {
+            ResultKey key = this.createResultKey();
+            voiceSectionResult = this.getRememberedResult(key);
+            if (voiceSectionResult == null) this.rememberResult(key, this.generateVoiceSectionResult(key));
+        }
         voiceSectionResult.setInstrument(Instrument.getInstrument(this.getVoice().getInstrumentName()));
         return voiceSectionResult;
     }
@@ -281,23 +305,144 @@ public class VoiceSection implements Subscriber, Cloneable {
             throw new IllegalArgumentException(String.format("The voice section length (%f) is longer than the passed argument (%f).  The passed argument must be greater than or equal to the voice section length.", originalVoiceSectionLength.asDouble(), length.asDouble()));
         }
                         
-        if (temp.getDuration().compareTo(0) > 0) { // only do this if we have something...
+        Fraction tempDuration = originalVoiceSectionLength; // kept in step with temp, rather than re-summed each time
+        if (tempDuration.compareTo(0) > 0) { // only do this if we have something...
             // pad the length with additional copies of the entire voice section 
             // while there is space left...
-            while (temp.getDuration().plus(originalVoiceSectionLength).compareTo(length) <= 0) {
+            while (tempDuration.plus(originalVoiceSectionLength).compareTo(length) <= 0) {
                 temp.addAll(this.getVoiceSectionResult());
+                tempDuration = tempDuration.plus(originalVoiceSectionLength);
             }
         }        
         
         // fill in the rest of the length with a rest...
-        if (temp.getDuration().compareTo(length) < 0) {
-            temp.add(Note.createRest(length.minus(temp.getDuration())));
+        if (tempDuration.compareTo(length) < 0) {
+            temp.add(Note.createRest(length.minus(tempDuration)));
         }
         
         assert temp.getDuration().equals(length) : temp;
         return temp;
     }
     
+    /**
+     * Gets the duration of the voice section result.  Unlike 
+     * getVoiceSectionResult().getDuration(), this does not generate the
+     * result if it has not been generated yet.
+     * 
+     * @return the duration of the voice section result
+     */
+    public Fraction getVoiceSectionResultDuration() {
+        if (voiceSectionResult != null) return voiceSectionResult.getDuration();
+        
+        ResultKey key = this.createResultKey();
+        NoteList remembered = this.getRememberedResult(key);
+        if (remembered != null) return remembered.getDuration();
+        
+        NoteList germ = this.generateSelfSimilarityGerm(key);
+        return (key.rest ? germ.getDuration() : this.createSelfSimilarityTransformer(key).getTransformedDuration(germ));
+    }
+    
+    /**
+     * Returns the same notes as getLengthenedVoiceSectionResult(), but 
+     * generates them as they are iterated over rather than holding them all
+     * in memory.  If the result has already been generated it is reused; 
+     * otherwise each iteration walks the self-similarity tree again.  The 
+     * settings are read when this is called, not when the notes are iterated.
+     * 
+     * @param length the length to set the voice section to
+     * @return the notes of the voice section result, set to the given length
+     */
+    public Iterable<Note> getLengthenedVoiceSectionNotes(Fraction length) {
+        final Iterable<Note> result;
+        final Fraction resultDuration;
+        NoteList generated = this.voiceSectionResult;
+        ResultKey key = null;
+        if (generated == null) {
+            key = this.createResultKey();
+            generated = this.getRememberedResult(key);
+        }
+        
+        if (generated != null) {
+            result = generated;
+            resultDuration = generated.getDuration();
+        } else if (key.rest) {
+            NoteList rest = this.generateSelfSimilarityGerm(key);
+            result = rest;
+            resultDuration = rest.getDuration();
+        } else {
+            NoteList germ = this.generateSelfSimilarityGerm(key);
+            SelfSimilarityTransformer selfSimilarityT = this.createSelfSimilarityTransformer(key);
+            result = selfSimilarityT.transformLazily(germ);
+            resultDuration = selfSimilarityT.getTransformedDuration(germ);
+        }
+        
+        if (resultDuration.compareTo(length) > 0) {
+            throw new IllegalArgumentException(String.format("The voice section length (%f) is longer than the passed argument (%f).  The passed argument must be greater than or equal to the voice section length.", resultDuration.asDouble(), length.asDouble()));
+        }
+        
+        // the same number of copies getLengthenedVoiceSectionResult() would use...
+        int copies = 1;
+        Fraction copiesDuration = resultDuration;
+        if (resultDuration.compareTo(0) > 0) {
+            while (copiesDuration.plus(resultDuration).compareTo(length) <= 0) {
+                copies++;
+                copiesDuration = copiesDuration.plus(resultDuration);
+            }
+        }
+        
+        final int copyCount = copies;
+        final Fraction restDuration = (copiesDuration.compareTo(length) < 0 ? length.minus(copiesDuration) : null);
+        return new Iterable<Note>() {
+            public Iterator<Note> iterator() {
+                return new LengthenedNoteIterator(result, copyCount, restDuration);
+            }
+        };
+    }
+    
+    /**
+     * Iterates over the given number of copies of a voice section result, 
+     * followed by the padding rest, if there is one.
+     */
+    private class LengthenedNoteIterator implements Iterator<Note> {
+        private final Iterable<Note> result;
+        private int copiesLeft;
+        private Fraction restDuration;
+        private Iterator<Note> copy;
+        
+        LengthenedNoteIterator(Iterable<Note> result, int copies, Fraction restDuration) {
+            this.result = result;
+            this.copiesLeft = copies;
+            this.restDuration = restDuration;
+        }
+        
+        public boolean hasNext() {
+            while ((this.copy == null || !this.copy.hasNext()) && this.copiesLeft > 0) {
+                this.copy = this.result.iterator();
+                this.copiesLeft--;
+            }
+            return (this.copy != null && this.copy.hasNext()) || this.restDuration != null;
+        }
+
+        public Note next() {
+            if (!this.hasNext()) throw new NoSuchElementException();
+            
+            if (this.copy != null && this.copy.hasNext()) {
+                Note note = this.copy.next();
+                note.setSourceVoiceSection(VoiceSection.this);
+                return note;
+            }
+            
+            // like getLengthenedVoiceSectionResult(), the padding rest has no source voice section
+            Note rest = Note.createRest(this.restDuration);
+            this.restDuration = null;
+            return rest;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+    
     /**
      * Sets the voiceSectionResult field to null.  Should be called anytime a field
      * that affects the voiceSectionResult changes. 
@@ -306,36 +451,164 @@ public class VoiceSection implements Subscriber, Cloneable {
         this.voiceSectionResult = null;
     }
     
+    /**
+     * Generates the results of all of the given voice sections that do not 
+     * already have one.  The settings of each voice section are read on the
+     * calling thread, and the results are then generated concurrently on the 
+     * common fork-join pool, as each only depends on its own snapshot of 
+     * settings.
+     * 
+     * @param voiceSections the voice sections to generate results for
+     */
+    protected static void generateVoiceSectionResults(List<VoiceSection> voiceSections) {
+        final List<VoiceSection> pending = new ArrayList<VoiceSection>();
+        final List<ResultKey> keys = new ArrayList<ResultKey>();
+        for (VoiceSection vs : voiceSections) {
+            if (vs.voiceSectionResult != null) continue;
+            
+            ResultKey key = vs.createResultKey();
+            vs.voiceSectionResult = vs.getRememberedResult(key);
+            if (vs.voiceSectionResult == null) {
+                pending.add(vs);
+                keys.add(key);
+            }
+        }
+        
+        // a single voice section isn't worth handing off to another thread...
+        if (pending.size() < 2) {
+            for (int i = 0; i < pending.size(); i++) {
+                pending.get(i).rememberResult(keys.get(i), pending.get(i).generateVoiceSectionResult(keys.get(i)));
+            }
+            return;
+        }
+        
+        List<Callable<NoteList>> tasks = new ArrayList<Callable<NoteList>>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            final VoiceSection vs = pending.get(i);
+            final ResultKey key = keys.get(i);
+            tasks.add(new Callable<NoteList>() {
+                public NoteList call() {
+                    return vs.generateVoiceSectionResult(key);
+                }
+            });
+        }
+        
+        List<Future<NoteList>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                pending.get(i).rememberResult(keys.get(i), results.get(i).get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new UndeclaredThrowableException(ex, "Interrupted while generating the voice section results.");
+            } catch (ExecutionException ex) {
+                // generating a result throws no checked exceptions, so this
+                // is a runtime exception or an error; rethrow it as is
+                if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+                if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+                throw new UndeclaredThrowableException(ex.getCause());
+            }
+        }
+    }
+    
+    /**
+     * Takes a snapshot of everything the voice section result depends on.
+     * 
+     * @return the key for the voice section result
+     */
+    private ResultKey createResultKey() {
+        Scale sectionScale = this.getSection().getScale();
+        Scale scaleToUse = (sectionScale == null ? this.getSection().getFractalPiece().getScale() : sectionScale);
+        
+        // the getters already return read-only copies unless we override the settings...
+        VoiceSettings vSettings = (this.getOverrideVoiceSettings() ? this.getVoiceSettings().getReadOnlyCopy() : this.getVoiceSettings());
+        SectionSettings sSettings = (this.getOverrideSectionSettings() ? this.getSectionSettings().getReadOnlyCopy() : this.getSectionSettings());
+        return new ResultKey(this.getSection().getGermForSection(), scaleToUse, this.getRest(), vSettings, sSettings);
+    }
+    
+    /**
+     * Gets a result previously generated from the same settings.
+     * 
+     * @param key the settings snapshot
+     * @return the remembered result, or null if there is none
+     */
+    private NoteList getRememberedResult(ResultKey key) {
+        return (resultsBySettings == null ? null : resultsBySettings.get(key));
+    }
+    
+    /**
+     * Sets the voice section result and remembers it for the given settings.
+     * 
+     * @param key the settings snapshot the result was generated from
+     * @param result the generated result
+     */
+    private void rememberResult(ResultKey key, NoteList result) {
+        if (resultsBySettings == null) {
+            resultsBySettings = new LinkedHashMap<ResultKey, NoteList>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ResultKey, NoteList> eldest) {
+                    return this.size() > MAX_REMEMBERED_RESULTS;
+                }
+            };
+        }
+        resultsBySettings.put(key, result);
+        this.voiceSectionResult = result;
+    }
+    
     /**
      * Generates the NoteList containing the result of applying this 
-     * VoiceSection's settings to the germ.
+     * VoiceSection's settings to the germ.  Only reads the given snapshot of
+     * settings, so it is safe to call on a worker thread.
      * 
+     * @param key the settings snapshot to use
      * @return a NoteList containing the result of applying the settings to the 
      *         germ
      */
-    private NoteList generateVoiceSectionResult() {
-        NoteList clonedGerm = this.getSection().getGermForSection().clone(); 
-        Scale sectionScale = this.getSection().getScale();
-        Scale scaleToUse = (sectionScale == null ? this.getSection().getFractalPiece().getScale() : sectionScale);
-        clonedGerm.updateScale(scaleToUse);
-        NoteList temp = null;
+    private NoteList generateVoiceSectionResult(ResultKey key) {
+        NoteList temp = this.generateSelfSimilarityGerm(key);
+        if (!key.rest) temp = this.createSelfSimilarityTransformer(key).transform(temp);
+                
+        temp.setSourceVoiceSectionOnAllNotes(this);
+        return temp;
+    }        
+    
+    /**
+     * Applies every setting but self-similarity to the germ.  This is cheap,
+     * as the result is no longer than the germ.
+     * 
+     * @param key the settings snapshot to use
+     * @return the germ for the self-similarity transformer, or the entire 
+     *         result if this voice section is a rest
+     */
+    private NoteList generateSelfSimilarityGerm(ResultKey key) {
+        NoteList clonedGerm = key.germ.clone(); 
+        clonedGerm.updateScale(key.scale);
         
-        if (this.getRest()) {            
+        if (key.rest) {            
             // scale the duration according to the speed of this voice...
             Fraction duration = clonedGerm.getDuration();            
-            duration = duration.dividedBy(this.getVoiceSettings().getSpeedScaleFactor());
+            duration = duration.dividedBy(key.voiceSettings.getSpeedScaleFactor());
             
             // create a note list of a single rest, the duration of the germ            
-            temp = new NoteList();
+            NoteList temp = new NoteList();
             if (duration.compareTo(0L) > 0) temp.add(Note.createRest(duration));                                    
-        } else {
-            temp = this.getSectionSettings().applySettingsToNoteList(clonedGerm, scaleToUse);
-            temp = this.getVoiceSettings().applySettingsToNoteList(temp, scaleToUse);               
-        }
-                
-        temp.setSourceVoiceSectionOnAllNotes(this);
-        return temp;
-    }        
+            return temp;
+        } 
+        
+        NoteList temp = key.sectionSettings.applySettingsToNoteList(clonedGerm, key.scale);
+        return key.voiceSettings.applySettingsExceptSelfSimilarityToNoteList(temp, key.scale);
+    }
+    
+    /**
+     * Creates the self-similarity transformer for the given settings snapshot.
+     * 
+     * @param key the settings snapshot to use
+     * @return the self-similarity transformer
+     */
+    private SelfSimilarityTransformer createSelfSimilarityTransformer(ResultKey key) {
+        return new SelfSimilarityTransformer(key.voiceSettings.getSelfSimilaritySettings());
+    }
 
     public void publisherNotification(Publisher p, Object args) {   
         assert p == this.sectionSettings || p == this.voiceSettings : p;        
@@ -345,9 +618,56 @@ public class VoiceSection implements Subscriber, Cloneable {
     @Override
     public VoiceSection clone() throws CloneNotSupportedException {
         VoiceSection clone = (VoiceSection) super.clone();
+        clone.resultsBySettings = null;
         if (clone.getSectionSettings() != null) clone.setSectionSettings(clone.getSectionSettings().clone());
         if (clone.getVoiceSettings() != null) clone.setVoiceSettings(clone.getVoiceSettings().clone());
         return clone;
     }
    
+    
+    /**
+     * Snapshot of the settings a voice section result is generated from.  Two
+     * equal keys always generate equal results.
+     */
+    private static final class ResultKey {
+        private final NoteList germ;
+        private final Scale scale;
+        private final boolean rest;
+        private final VoiceSettings voiceSettings;
+        private final SectionSettings sectionSettings;
+        private final int hash;
+
+        private ResultKey(NoteList germ, Scale scale, boolean rest, VoiceSettings voiceSettings, SectionSettings sectionSettings) {
+            this.germ = germ;
+            this.scale = scale;
+            this.rest = rest;
+            this.voiceSettings = voiceSettings;
+            this.sectionSettings = sectionSettings;
+            
+            int h = 7;
+            h = 53 * h + germ.hashCode();
+            h = 53 * h + (scale != null ? scale.hashCode() : 0);
+            h = 53 * h + (rest ? 1 : 0);
+            h = 53 * h + voiceSettings.hashCode();
+            h = 53 * h + sectionSettings.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof ResultKey)) return false;
+            final ResultKey other = (ResultKey) obj;
+            return this.hash == other.hash && this.rest == other.rest &&
+                   (this.scale == null ? other.scale == null : this.scale.equals(other.scale)) &&
+                   this.voiceSettings.equals(other.voiceSettings) &&
+                   this.sectionSettings.equals(other.sectionSettings) &&
+                   this.germ.equals(other.germ);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
\ No newline at end of file
@@ -92,6 +92,20 @@ public class VoiceSettings extends AbstractVoiceOrSectionSettings implements Sub
         
         return selfSimilarityT.transform(super.applySettingsToNoteList(noteList, scale));        
     }
+    
+    /**
+     * Applies all of the settings except self-similarity to the given 
+     * NoteList.  The result is the germ for the SelfSimilarityTransformer, so
+     * callers can generate the self-similar notes lazily rather than through
+     * applySettingsToNoteList().
+     * 
+     * @param noteList the note list to apply the settings to
+     * @param scale the scale to use
+     * @return the note list, with every setting but self-similarity applied
+     */
+    public NoteList applySettingsExceptSelfSimilarityToNoteList(NoteList noteList, Scale scale) {
+        return super.applySettingsToNoteList(noteList, scale);
+    }
 
     public void publisherNotification(Publisher p, Object args) {        
         assert p == this.getSelfSimilaritySettings() : p;
@@ -24,6 +24,8 @@ import com.myronmarston.music.Note;
 import com.myronmarston.music.NoteList;
 import com.myronmarston.music.settings.SelfSimilaritySettings;
 import com.myronmarston.util.Fraction;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Transformer that applies the self-similarity algorithm to the given NoteList.
@@ -82,87 +84,237 @@ public class SelfSimilarityTransformer implements Transformer {
             return input.clone();            
         }            
              
-        NoteList tempList = input;
+        NoteList output = new NoteList();
+        for (Note n : this.transformLazily(input)) output.add(n);        
+        return output;
+    }
+    
+    /**
+     * Applies the self-similarity algorithm without building the intermediate
+     * NoteLists of each iteration.  The result is a walk over the tree of germ
+     * copies: each level picks one germ note, and each leaf is a note of the 
+     * input with the transformations of every level above it applied.  Notes
+     * are produced on demand, in time order, so memory use depends on the 
+     * number of iterations rather than on the length of the piece.  Each note
+     * returned is a new instance.
+     * 
+     * @param input the germ
+     * @return the transformed notes, in the same order transform() would 
+     *         return them
+     */
+    public Iterable<Note> transformLazily(final NoteList input) {
+        if (!this.getSettings().selfSimilarityShouldBeAppliedToSomething()) {
+            // there is no self-similarity, so just return a copy of the input
+            return input.clone();
+        }
+        
+        final int iterations = this.getSettings().getSelfSimilarityIterations();
+        final GermNoteTransform[] levels = this.createGermNoteTransforms(input);
+        final Fraction[] durations = getDurations(input, levels, iterations);
+        
+        return new Iterable<Note>() {
+            public Iterator<Note> iterator() {
+                return new FractalNoteIterator(input, levels, durations, iterations);
+            }
+        };
+    }
+    
+    /**
+     * Gets the duration of the result of transform(), without generating it.
+     * 
+     * @param input the germ
+     * @return the duration of the transformed notes
+     */
+    public Fraction getTransformedDuration(NoteList input) {
+        if (!this.getSettings().selfSimilarityShouldBeAppliedToSomething()) return input.getDuration();
         
-        for (int i = 0; i < this.getSettings().getSelfSimilarityIterations(); i++) {
-            tempList = transformOneLevel(input, tempList);
+        int iterations = this.getSettings().getSelfSimilarityIterations();
+        return getDurations(input, this.createGermNoteTransforms(input), iterations)[iterations];
+    }
+    
+    /**
+     * Creates the transformation of each note of the germ.
+     * 
+     * @param input the germ
+     * @return the transformation of each germ note, in germ order
+     */
+    private GermNoteTransform[] createGermNoteTransforms(NoteList input) {
+        Note firstGermNote = input.getFirstAudibleNote(); // the note we will compare against for the self-similarity
+        GermNoteTransform[] levels = new GermNoteTransform[input.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new GermNoteTransform(this.getSettings(), firstGermNote, input.get(i));
+        }
+        return levels;
+    }
+    
+    /**
+     * Gets the length of the piece after each iteration.  durations[k] is the
+     * length after k iterations; a rest in the germ stands in for one whole 
+     * copy of the previous iteration.
+     * 
+     * @param input the germ
+     * @param levels the transformation of each germ note
+     * @param iterations the number of iterations
+     * @return the durations, indexed from 0 to iterations
+     */
+    private static Fraction[] getDurations(NoteList input, GermNoteTransform[] levels, int iterations) {
+        Fraction durationFactor = new Fraction(0, 1);
+        for (GermNoteTransform level : levels) {
+            durationFactor = durationFactor.plus(level.rhythmScaleFactor == null ? new Fraction(1, 1) : level.rhythmScaleFactor.inverse());
         }
         
-        return tempList;
+        Fraction[] durations = new Fraction[iterations + 1];
+        durations[0] = input.getDuration();
+        for (int k = 1; k < durations.length; k++) durations[k] = durations[k - 1].times(durationFactor);
+        return durations;
     }
     
-    private NoteList transformOneLevel(NoteList germ, NoteList input) {           
-        Note firstGermNote = germ.getFirstAudibleNote(); // the note we will compare against for the self-similarity
-        NoteList transformedList; // used to store the temporary results of the transformations                
-        NoteList output = new NoteList(germ.size() * input.size()); // the final output
-                
-        for (Note germNote : germ) {                  
-            if (germNote.isRest()) {                
-                transformedList = new NoteList();
-                
-                // the rest one will be one complete copy of the germ, all enclosed in a rest,
-                // so we need to set the first note flag on it
-                Note restNote = Note.createRest(input.getDuration());
-                restNote.setIsFirstNoteOfGermCopy(true);
-                
-                transformedList.add(restNote);                
-                transformedList = transform_rhythm(transformedList, firstGermNote, germNote);
-            } else {                
-                transformedList = transform_pitch(input, firstGermNote, germNote);
-                transformedList = transform_rhythm(transformedList, firstGermNote, germNote);
-                transformedList = transform_volume(transformedList, firstGermNote, germNote);
+    /**
+     * The transformation a single germ note applies to one copy of the 
+     * previous iteration.
+     */
+    private static class GermNoteTransform {
+        private final boolean isRest;
+        private final boolean applyToPitch;
+        private final int octaveChange;
+        private final int transposeSteps;
+        private final int transposeLetterNumbers;
+        private final int segmentChromaticAdjustment;
+        private final Fraction rhythmScaleFactor; // null if the rhythm is not changed
+        private final Fraction volumeScaleFactor; // null if the volume is not changed
+        
+        GermNoteTransform(SelfSimilaritySettings settings, Note firstNote, Note germNote) {
+            this.isRest = germNote.isRest();
+            this.applyToPitch = settings.getApplyToPitch() && !this.isRest;
+            this.octaveChange = germNote.getOctave() - firstNote.getOctave();
+            this.transposeSteps = germNote.getScaleStep() - firstNote.getScaleStep();
+            this.transposeLetterNumbers = germNote.getLetterNumber() - firstNote.getLetterNumber();
+            this.segmentChromaticAdjustment = germNote.getChromaticAdjustment() - firstNote.getChromaticAdjustment();
+            
+            if (settings.getApplyToRhythm()) {
+                // scale the drums...
+                assert (germNote.getDuration().compareTo(0) > 0) : germNote.getDuration(); // we would get div-by-zero below if the duration is zero, and less than zero is nonsensical
+                this.rhythmScaleFactor = firstNote.getDuration().dividedBy(germNote.getDuration());
+                RhythmicDurationTransformer.checkScaleFactorValidity(this.rhythmScaleFactor);
+            } else {
+                this.rhythmScaleFactor = null;
             }
-            output.addAll(transformedList);            
+            
+            this.volumeScaleFactor = settings.getApplyToVolume() && !this.isRest ? getVolumeScaleFactor(firstNote, germNote) : null;
         }
         
-        return output;
-    }
-
-    private NoteList transform_pitch(NoteList input, Note firstNote, Note inputNote) {
-        if (!this.getSettings().getApplyToPitch()) return input;
-                                                   
-        // transpose the input to the correct octave...
-        OctaveTransformer octaveTransformer = new OctaveTransformer(inputNote.getOctave() - firstNote.getOctave());
-        NoteList octaveTransformedList = octaveTransformer.transform(input);
-
-        // transpose the input to the correct pitch level...        
-        TransposeTransformer transposer = new TransposeTransformer(inputNote.getScaleStep() - firstNote.getScaleStep(), inputNote.getLetterNumber() - firstNote.getLetterNumber());
-        NoteList transposedList = transposer.transform(octaveTransformedList);
-
-        // set the segment chromatic adjustment on this note as necessary...
-        int segmentChromaticAdjustment = inputNote.getChromaticAdjustment() - firstNote.getChromaticAdjustment();
-        for (Note n : transposedList) n.setSegmentChromaticAdjustment(segmentChromaticAdjustment);
+        private static Fraction getVolumeScaleFactor(Note firstNote, Note germNote) {
+            int remainingVolumeRange = // get the above or below volume range based on the volume of the current note relative to the first note
+                (germNote.getVolume() > firstNote.getVolume()) ? 
+                MidiNote.MAX_VELOCITY - firstNote.getVolume() :
+                firstNote.getVolume() - MidiNote.MIN_VELOCITY;
+            
+            // if there's no volume range left to use, we have no way to scale it...
+            if (remainingVolumeRange == 0) return null;
+            
+            // Our germ note volume should not be 0, or we will get a scale factor of -1,
+            // which our volume transformer does not allow.  
+            assert germNote.getVolume() != 0 : germNote.getVolume();
+            
+            Fraction scaleFactor = new Fraction(germNote.getVolume() - firstNote.getVolume(), remainingVolumeRange);
+            VolumeTransformer.checkVolumeScaleFactorValidity(scaleFactor);
+            return scaleFactor;
+        }
         
-        return transposedList;
-    }
-
-    private NoteList transform_rhythm(NoteList input, Note firstNote, Note inputNote) {
-        if (!this.getSettings().getApplyToRhythm()) return input;                
+        void applyPitch(Note note) {
+            if (!this.applyToPitch) return;
+            
+            if (!note.isRest()) { // rests have no pitch to transpose...
+                note.setOctave(note.getOctave() + this.octaveChange);
+                note.performTransformerAdjustment(this.transposeSteps, this.transposeLetterNumbers, 0);
+            }
+            note.setSegmentChromaticAdjustment(this.segmentChromaticAdjustment);
+        }
+        
+        void applyRhythm(Note note) {
+            if (this.rhythmScaleFactor != null) note.setDuration(note.getDuration().dividedBy(this.rhythmScaleFactor));
+        }
         
-        // scale the drums...
-        assert (inputNote.getDuration().compareTo(0) > 0) : inputNote.getDuration(); // we would get div-by-zero below if the duration is zero, and less than zero is nonsensical
-        RhythmicDurationTransformer rhythmScaler = new RhythmicDurationTransformer(firstNote.getDuration().dividedBy(inputNote.getDuration()));
-        return rhythmScaler.transform(input);
+        void applyVolume(Note note) {
+            if (this.volumeScaleFactor != null) VolumeTransformer.scaleVolume(note, this.volumeScaleFactor);
+        }
     }
     
-    private NoteList transform_volume(NoteList input, Note firstNote, Note inputNote) {
-        if (!this.getSettings().getApplyToVolume()) return input;
-                        
-        int remainingVolumeRange = // get the above or below volume range based on the volume of the current note relative to the first note
-            (inputNote.getVolume() > firstNote.getVolume()) ? 
-            MidiNote.MAX_VELOCITY - firstNote.getVolume() :
-            firstNote.getVolume() - MidiNote.MIN_VELOCITY;
+    /**
+     * Depth-first walk over the germ copies.  path[0] is the germ note of the
+     * outermost iteration and path[iterations] is the note of the input at 
+     * the leaf, so only one index per iteration is held at a time.
+     */
+    private static class FractalNoteIterator implements Iterator<Note> {
+        private final NoteList input;
+        private final GermNoteTransform[] levels;
+        private final Fraction[] durations;
+        private final int iterations;
+        private final int[] path;
+        private int depth; // depth of the next note: iterations for a leaf, less for a rest that replaces a whole germ copy
+        private boolean hasNext;
         
-        // if there's no volume range left to use, we have no way to scale it...
-        if (remainingVolumeRange == 0) return input;
+        FractalNoteIterator(NoteList input, GermNoteTransform[] levels, Fraction[] durations, int iterations) {
+            this.input = input;
+            this.levels = levels;
+            this.durations = durations;
+            this.iterations = iterations;
+            this.path = new int[iterations + 1];
+            this.hasNext = !input.isEmpty();
+            if (this.hasNext) this.descend(0);
+        }
         
-        // Our input note volume should not be 0, or we will get a scale factor of -1,
-        // which our volume transformer does not allow.  But the code that calls this
-        // method should check for this, so this should never occur...
-        assert inputNote.getVolume() != 0 : inputNote.getVolume();
+        private void descend(int d) {
+            while (d < this.iterations && !this.levels[this.path[d]].isRest) {
+                this.path[++d] = 0;
+            }
+            this.depth = d;
+        }
         
-        Fraction scaleFactor = new Fraction(inputNote.getVolume() - firstNote.getVolume(), remainingVolumeRange);
-        VolumeTransformer volumeScaler = new VolumeTransformer(scaleFactor);
-        return volumeScaler.transform(input);        
+        public boolean hasNext() {
+            return this.hasNext;
+        }
+
+        public Note next() {
+            if (!this.hasNext) throw new NoSuchElementException();
+            
+            Note note;
+            int d = this.depth;
+            if (d == this.iterations) {
+                note = this.input.get(this.path[d]).clone();
+            } else {
+                // the rest one will be one complete copy of the germ, all enclosed in a rest,
+                // so we need to set the first note flag on it
+                note = Note.createRest(this.durations[this.iterations - 1 - d]);
+                note.setIsFirstNoteOfGermCopy(true);
+                this.levels[this.path[d]].applyRhythm(note);
+            }
+            
+            // apply the enclosing iterations, innermost first
+            for (int k = d - 1; k >= 0; k--) {
+                GermNoteTransform level = this.levels[this.path[k]];
+                level.applyPitch(note);
+                level.applyRhythm(note);
+                level.applyVolume(note);
+            }
+            
+            this.advance();
+            return note;
+        }
+        
+        private void advance() {
+            int d = this.depth;
+            while (++this.path[d] == (d == this.iterations ? this.input.size() : this.levels.length)) {
+                if (--d < 0) {
+                    this.hasNext = false;
+                    return;
+                }
+            }
+            this.descend(d);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
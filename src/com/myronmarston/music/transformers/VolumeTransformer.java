@@ -73,28 +73,34 @@ public class VolumeTransformer implements Transformer {
     }
     
     public NoteList transform(NoteList input) {
-        int remainingVolumeRange = 0;
-        int volumeAdjustment = 0;
         Note newNote;
         NoteList output = new NoteList(input.size());
         
         for (Note inputNote : input) {
             newNote = inputNote.clone();
-            
-            if (!newNote.isRest()) { // don't change the volume of rests...                    
-                remainingVolumeRange = 
-                    (this.scaleFactor.compareTo(0L) < 0) ?
-                    newNote.getVolume() - MidiNote.MIN_VELOCITY :
-                    MidiNote.MAX_VELOCITY - newNote.getVolume();
-
-                volumeAdjustment = (int) Math.round(this.scaleFactor.times(remainingVolumeRange).asDouble());
-
-                newNote.setVolume(newNote.getVolume() + volumeAdjustment);
-            }
-            
+            scaleVolume(newNote, this.scaleFactor);
             output.add(newNote);
         }
         
         return output;
     }
+    
+    /**
+     * Scales the volume of the given note in place.  Rests are left alone.
+     * 
+     * @param note the note to change
+     * @param scaleFactor a valid volume scale factor
+     */
+    static void scaleVolume(Note note, Fraction scaleFactor) {
+        if (note.isRest()) return; // don't change the volume of rests...
+        
+        int remainingVolumeRange = 
+            (scaleFactor.compareTo(0L) < 0) ?
+            note.getVolume() - MidiNote.MIN_VELOCITY :
+            MidiNote.MAX_VELOCITY - note.getVolume();
+
+        int volumeAdjustment = (int) Math.round(scaleFactor.times(remainingVolumeRange).asDouble());
+
+        note.setVolume(note.getVolume() + volumeAdjustment);
+    }
 }
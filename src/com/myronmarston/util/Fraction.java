@@ -350,6 +350,7 @@ public class Fraction implements Cloneable, Comparable, java.io.Serializable {
     long ad = denominator();
     long bn = b.numerator();
     long bd = b.denominator();
+    if (ad == bd) return new Fraction(an+bn, ad); // common for durations; avoids growing the denominator
     return new Fraction(an*bd+bn*ad, ad*bd);
   }
 
@@ -368,6 +369,7 @@ public class Fraction implements Cloneable, Comparable, java.io.Serializable {
     long ad = denominator();
     long bn = b.numerator();
     long bd = b.denominator();
+    if (ad == bd) return new Fraction(an-bn, ad);
     return new Fraction(an*bd-bn*ad, ad*bd);
   }
 
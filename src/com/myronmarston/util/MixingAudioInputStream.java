@@ -57,8 +57,7 @@ import javax.sound.sampled.AudioSystem;
  * You need to have tritonus_share.jar in the classpath.
  * Get it from http://www.tritonus.org .
  */
-import com.kg.TheHorde;
-import com.kg.synth.Output;
+import com.kg.synth.Sequencer;
 import edu.uci.ics.jung.algorithms.scoring.util.ScoringUtils;
 import org.tritonus.share.sampled.TConversionTool;
 
@@ -76,9 +75,21 @@ public class MixingAudioInputStream
     private static final boolean DEBUG = false;
 
     private List m_audioInputStreamList;
+    // for each stream, the sequencers playing into it; muted when all of them are
+    private List<Sequencer[]> m_streamSequencerList;
+    // how many streams, from the first, are mixed
     public int activeInputStreams;
 
     public MixingAudioInputStream(AudioFormat audioFormat, Collection audioInputStreams) {
+        this(audioFormat, audioInputStreams, null);
+    }
+
+    /**
+     * @param streamSequencers for each stream, in the same order, the
+     *                         sequencers playing into it, or null (or no
+     *                         list at all) for a stream that is never muted
+     */
+    public MixingAudioInputStream(AudioFormat audioFormat, Collection audioInputStreams, List<Sequencer[]> streamSequencers) {
         super(new ByteArrayInputStream(new byte[0]),
                 audioFormat,
                 AudioSystem.NOT_SPECIFIED);
@@ -86,6 +97,11 @@ public class MixingAudioInputStream
             out("MixingAudioInputStream.<init>(): begin");
         }
         m_audioInputStreamList = new ArrayList(audioInputStreams);
+        m_streamSequencerList = new ArrayList<Sequencer[]>(audioInputStreams.size());
+        for (int i = 0; i < audioInputStreams.size(); i++) {
+            m_streamSequencerList.add(streamSequencers == null ? null : streamSequencers.get(i));
+        }
+        activeInputStreams = m_audioInputStreamList.size();
         if (DEBUG) {
             out("MixingAudioInputStream.<init>(): stream list:");
             for (int i = 0; i < m_audioInputStreamList.size(); i++) {
@@ -172,12 +188,11 @@ public class MixingAudioInputStream
             }
             int cnt = 0;
             Iterator streamIterator = m_audioInputStreamList.iterator();
-            while (cnt++ <= activeInputStreams && streamIterator.hasNext()) {
+            Iterator<Sequencer[]> sequencerIterator = m_streamSequencerList.iterator();
+            while (cnt++ < activeInputStreams && streamIterator.hasNext()) {
                 InputStream stream = (InputStream) streamIterator.next();
-                if ((cnt - 1) < Output.PARTS - 4) {
-                    if (TheHorde.output.getSequencers()[cnt - 1].getVolume() == 0) {
-                        continue;
-                    }
+                if (isMuted(sequencerIterator.next())) {
+                    continue;
                 }
 //                for (int ii=0;ii<Output.PARTS;ii++){
 //                    System.out.println(ii+"\t"+TheHorde.output.getSequencers()[ii].getClass());
@@ -198,6 +213,7 @@ public class MixingAudioInputStream
                      We remove it from the list of streams.
                      */
                     streamIterator.remove();
+                    sequencerIterator.remove();
                     continue;
                 }
                 for (int nChannel = 0; nChannel < nChannels; nChannel++) {
@@ -301,6 +317,18 @@ public class MixingAudioInputStream
         // TODO: return a useful value
         return nLength;
     }
+    private static boolean isMuted(Sequencer[] sequencers) {
+        if (sequencers == null) {
+            return false;
+        }
+        for (Sequencer sequencer : sequencers) {
+            if (sequencer.getVolume() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static long clamp(long val, long min, long max) {
         return Math.max(min, Math.min(max, val));
     }
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either "license.txt"
+ * or https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.algorithms.layout;
+
+import edu.uci.ics.jung.algorithms.layout.util.RandomLocationTransformer;
+import edu.uci.ics.jung.algorithms.util.IterativeContext;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+
+import com.google.common.base.Function;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The Fruchterman-Reingold algorithm of {@link FRLayout}, with the all-pairs
+ * repulsion replaced by a Barnes-Hut approximation so that each step costs
+ * O(n log n) rather than O(n<sup>2</sup>).
+ *
+ * <p>At the start of each step the vertex coordinates are copied into primitive
+ * arrays and a quadtree is built over them; a group of vertices whose cell is small
+ * compared to its distance from a vertex (cell width / distance &lt; theta) repels that
+ * vertex as a single body at its center of mass.  A theta of 0 gives the exact
+ * forces of <code>FRLayout</code>; larger values are faster and less accurate.
+ * Repulsion is computed in parallel on the common fork-join pool.
+ *
+ * <p>The layout follows changes to the graph between steps: when vertices are
+ * added, the existing vertices keep their positions, the new ones are placed by the
+ * initializer, and the temperature is raised in proportion to the number added so
+ * that the layout settles again.  Changes are detected by vertex and edge counts.
+ *
+ * <p>The attraction and repulsion multipliers and the maximum number of iterations
+ * have the same meaning and defaults as in <code>FRLayout</code>.
+ *
+ * @see FRLayout
+ * @see "Barnes and Hut, 'A hierarchical O(N log N) force-calculation algorithm'"
+ */
+public class BarnesHutFRLayout<V, E> extends AbstractLayout<V, E> implements IterativeContext {
+
+    private static final double EPSILON = 0.000001D;
+
+    /**
+     * Vertices per task below which repulsion is computed on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    private double forceConstant;
+
+    private double temperature;
+
+    private int currentIteration;
+
+    private int mMaxIterations = 700;
+
+    private double attraction_multiplier = 0.75;
+
+    private double attraction_constant;
+
+    private double repulsion_multiplier = 0.75;
+
+    private double repulsion_constant;
+
+    private double max_dimension;
+
+    private double theta = 0.5;
+
+    // the graph as of the last step, in id order
+    private Object[] vertices = new Object[0];
+    private Map<V, Integer> ids = new HashMap<V, Integer>();
+    private Point2D[] points = new Point2D[0];
+    private int[] edge_source = new int[0];
+    private int[] edge_dest = new int[0];
+    private boolean stale = true;
+
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private double[] disp_x = new double[0];
+    private double[] disp_y = new double[0];
+    private boolean[] locked = new boolean[0];
+
+    private final QuadTree tree = new QuadTree();
+
+    public BarnesHutFRLayout(Graph<V, E> g) {
+        super(g);
+    }
+
+    public BarnesHutFRLayout(Graph<V, E> g, Dimension d) {
+        super(g, new RandomLocationTransformer<V>(d), d);
+        initialize();
+        max_dimension = Math.max(d.height, d.width);
+    }
+
+    @Override
+    public void setSize(Dimension size) {
+        if(initialized == false) {
+            setInitializer(new RandomLocationTransformer<V>(size));
+        }
+        super.setSize(size);
+        max_dimension = Math.max(size.height, size.width);
+    }
+
+    @Override
+    public void setInitializer(Function<V, Point2D> initializer) {
+        super.setInitializer(initializer);
+        // the location cache has been replaced, so the points we hold are no longer used
+        stale = true;
+    }
+
+    public void setAttractionMultiplier(double attraction) {
+        this.attraction_multiplier = attraction;
+    }
+
+    public void setRepulsionMultiplier(double repulsion) {
+        this.repulsion_multiplier = repulsion;
+    }
+
+    /**
+     * Sets the Barnes-Hut opening criterion.  A cell is treated as a single body
+     * when its width divided by its distance from the vertex is below theta.
+     * Defaults to 0.5; 0 computes exact forces.
+     *
+     * @param theta the opening criterion, at least 0
+     */
+    public void setTheta(double theta) {
+        if (theta < 0)
+            throw new IllegalArgumentException("theta must be >= 0: " + theta);
+        this.theta = theta;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        mMaxIterations = maxIterations;
+    }
+
+    public void reset() {
+        doInit();
+    }
+
+    public void initialize() {
+        doInit();
+    }
+
+    private void doInit() {
+        Graph<V,E> graph = getGraph();
+        Dimension d = getSize();
+        if(graph != null && d != null) {
+            currentIteration = 0;
+            temperature = d.getWidth() / 10;
+
+            forceConstant =
+                Math
+                .sqrt(d.getHeight()
+                        * d.getWidth()
+                        / Math.max(1, graph.getVertexCount()));
+
+            attraction_constant = attraction_multiplier * forceConstant;
+            repulsion_constant = repulsion_multiplier * forceConstant;
+        }
+        stale = true;
+    }
+
+    /**
+     * Moves the iteration forward one notch, calculating attraction and
+     * repulsion between vertices and edges and cooling the temperature.
+     */
+    public synchronized void step() {
+        while(true) {
+            try {
+                sync();
+                break;
+            } catch(ConcurrentModificationException cme) {}
+        }
+        currentIteration++;
+
+        int n = vertices.length;
+        for (int i = 0; i < n; i++) {
+            x[i] = points[i].getX();
+            y[i] = points[i].getY();
+        }
+
+        calcRepulsion();
+        calcAttraction();
+        for (int i = 0; i < n; i++) {
+            if (!locked[i])
+                calcPosition(i);
+        }
+        cool();
+    }
+
+    /**
+     * Brings the id arrays up to date with the graph.  Vertices that were
+     * already laid out keep their positions; the temperature is raised for
+     * newly added ones.
+     */
+    @SuppressWarnings("unchecked")
+    private void sync() {
+        Graph<V,E> graph = getGraph();
+        int n = graph.getVertexCount();
+        int m = graph.getEdgeCount();
+        if (!stale && n == vertices.length && m == edge_source.length) {
+            for (int i = 0; i < n; i++)
+                locked[i] = isLocked((V) vertices[i]);
+            return;
+        }
+
+        int added = 0;
+        Object[] new_vertices = new Object[n];
+        Map<V, Integer> new_ids = new HashMap<V, Integer>(n * 2);
+        Point2D[] new_points = new Point2D[n];
+        int i = 0;
+        for (V v : graph.getVertices()) {
+            if (!ids.containsKey(v))
+                added++;
+            new_vertices[i] = v;
+            new_ids.put(v, i);
+            new_points[i] = apply(v);
+            i++;
+        }
+
+        int[] new_source = new int[m];
+        int[] new_dest = new int[m];
+        int j = 0;
+        for (E e : graph.getEdges()) {
+            Pair<V> endpoints = graph.getEndpoints(e);
+            new_source[j] = new_ids.get(endpoints.getFirst());
+            new_dest[j] = new_ids.get(endpoints.getSecond());
+            j++;
+        }
+
+        if (added > 0 && vertices.length > 0 && getSize() != null) {
+            // reheat enough for the newcomers to find their place, without
+            // undoing the layout of everything else
+            double reheat = getSize().getWidth() / 10 * Math.min(1.0, 2.0 * added / n);
+            if (reheat > temperature) {
+                temperature = reheat;
+                currentIteration = 0;
+            }
+        }
+        if (n != vertices.length) {
+            forceConstant = Math.sqrt(getSize().getHeight() * getSize().getWidth() / Math.max(1, n));
+            attraction_constant = attraction_multiplier * forceConstant;
+            repulsion_constant = repulsion_multiplier * forceConstant;
+        }
+
+        vertices = new_vertices;
+        ids = new_ids;
+        points = new_points;
+        edge_source = new_source;
+        edge_dest = new_dest;
+        x = new double[n];
+        y = new double[n];
+        disp_x = new double[n];
+        disp_y = new double[n];
+        locked = new boolean[n];
+        for (i = 0; i < n; i++)
+            locked[i] = isLocked((V) vertices[i]);
+        stale = false;
+    }
+
+    private void calcRepulsion() {
+        int n = vertices.length;
+        tree.build(x, y, n);
+        if (n < PARALLEL_THRESHOLD)
+            repel(0, n);
+        else
+            ForkJoinPool.commonPool().invoke(new RepulsionTask(0, n));
+    }
+
+    /**
+     * Sets the displacement of vertices [from, to) to their total repulsion.
+     */
+    private void repel(int from, int to) {
+        double k2 = repulsion_constant * repulsion_constant;
+        int[] stack = new int[tree.maxDepth() * 3 + 4];
+        for (int i = from; i < to; i++) {
+            double xi = x[i];
+            double yi = y[i];
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int count = tree.count[node];
+                if (count == 0 || (count == 1 && tree.point[node] == i))
+                    continue;
+                double xDelta = xi - tree.mass_x[node];
+                double yDelta = yi - tree.mass_y[node];
+                double deltaLength = Math.max(EPSILON, Math.sqrt((xDelta * xDelta) + (yDelta * yDelta)));
+                if (tree.isLeaf(node) || tree.width[node] < theta * deltaLength) {
+                    double force = count * k2 / deltaLength;
+                    fx += (xDelta / deltaLength) * force;
+                    fy += (yDelta / deltaLength) * force;
+                } else {
+                    int c = node * 4;
+                    for (int q = 0; q < 4; q++) {
+                        if (tree.child[c + q] > 0)
+                            stack[top++] = tree.child[c + q];
+                    }
+                }
+            }
+            if (Double.isNaN(fx) || Double.isNaN(fy)) { throw new RuntimeException(
+                "Unexpected mathematical result in BarnesHutFRLayout:calcRepulsion"); }
+            disp_x[i] = fx;
+            disp_y[i] = fy;
+        }
+    }
+
+    private void calcAttraction() {
+        for (int e = 0; e < edge_source.length; e++) {
+            int v1 = edge_source[e];
+            int v2 = edge_dest[e];
+            if (locked[v1] && locked[v2])
+                continue;
+            double xDelta = x[v1] - x[v2];
+            double yDelta = y[v1] - y[v2];
+
+            double deltaLength = Math.max(EPSILON, Math.sqrt((xDelta * xDelta)
+                    + (yDelta * yDelta)));
+
+            double force = (deltaLength * deltaLength) / attraction_constant;
+
+            if (Double.isNaN(force)) { throw new IllegalArgumentException(
+                    "Unexpected mathematical result in BarnesHutFRLayout:calcAttraction [force]"); }
+
+            double dx = (xDelta / deltaLength) * force;
+            double dy = (yDelta / deltaLength) * force;
+            disp_x[v1] -= dx;
+            disp_y[v1] -= dy;
+            disp_x[v2] += dx;
+            disp_y[v2] += dy;
+        }
+    }
+
+    private void calcPosition(int i) {
+        double deltaLength = Math.max(EPSILON,
+                Math.sqrt(disp_x[i] * disp_x[i] + disp_y[i] * disp_y[i]));
+
+        double newXDisp = disp_x[i] / deltaLength
+                * Math.min(deltaLength, temperature);
+
+        if (Double.isNaN(newXDisp)) {
+            throw new IllegalArgumentException(
+                "Unexpected mathematical result in BarnesHutFRLayout:calcPosition [xdisp]"); }
+
+        double newYDisp = disp_y[i] / deltaLength
+                * Math.min(deltaLength, temperature);
+
+        double borderWidth = getSize().getWidth() / 50.0;
+        double newXPos = x[i] + newXDisp;
+        if (newXPos < borderWidth) {
+            newXPos = borderWidth + Math.random() * borderWidth * 2.0;
+        } else if (newXPos > (getSize().getWidth() - borderWidth)) {
+            newXPos = getSize().getWidth() - borderWidth - Math.random()
+                    * borderWidth * 2.0;
+        }
+
+        double newYPos = y[i] + newYDisp;
+        if (newYPos < borderWidth) {
+            newYPos = borderWidth + Math.random() * borderWidth * 2.0;
+        } else if (newYPos > (getSize().getHeight() - borderWidth)) {
+            newYPos = getSize().getHeight() - borderWidth
+                    - Math.random() * borderWidth * 2.0;
+        }
+
+        points[i].setLocation(newXPos, newYPos);
+    }
+
+    private void cool() {
+        temperature *= (1.0 - currentIteration / (double) mMaxIterations);
+    }
+
+    /**
+     * @return true
+     */
+    public boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * @return true once the current iteration has passed the maximum count
+     * and the graph has not changed since the last step.
+     */
+    public boolean done() {
+        Graph<V,E> graph = getGraph();
+        if (graph.getVertexCount() != vertices.length || graph.getEdgeCount() != edge_source.length)
+            return false;
+        return currentIteration > mMaxIterations || temperature < 1.0 / max_dimension;
+    }
+
+    @SuppressWarnings("serial")
+    private class RepulsionTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        RepulsionTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                repel(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RepulsionTask(from, mid), new RepulsionTask(mid, to));
+        }
+    }
+
+    /**
+     * A point-region quadtree over the vertex coordinates, stored in parallel
+     * arrays and rebuilt (reusing its storage) every step.  Node 0 is the root;
+     * each node records how many vertices it holds and their center of mass.
+     */
+    private static class QuadTree {
+        /** depth at which coincident vertices share a leaf rather than splitting forever */
+        private static final int MAX_DEPTH = 48;
+
+        int size;
+        int depth;
+        int[] count = new int[0];
+        int[] point = new int[0];      // the vertex in a leaf holding exactly one, otherwise -1
+        int[] child = new int[0];      // 4 per node; 0 where a quadrant is empty
+        double[] min_x = new double[0];
+        double[] min_y = new double[0];
+        double[] width = new double[0];
+        double[] mass_x = new double[0];
+        double[] mass_y = new double[0];
+
+        int maxDepth() {
+            return depth;
+        }
+
+        boolean isLeaf(int node) {
+            int c = node * 4;
+            return child[c] == 0 && child[c + 1] == 0 && child[c + 2] == 0 && child[c + 3] == 0;
+        }
+
+        void build(double[] x, double[] y, int n) {
+            double lo_x = Double.POSITIVE_INFINITY, lo_y = Double.POSITIVE_INFINITY;
+            double hi_x = Double.NEGATIVE_INFINITY, hi_y = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                lo_x = Math.min(lo_x, x[i]);
+                lo_y = Math.min(lo_y, y[i]);
+                hi_x = Math.max(hi_x, x[i]);
+                hi_y = Math.max(hi_y, y[i]);
+            }
+            size = 0;
+            depth = 1;
+            ensureCapacity(Math.max(16, n * 2));
+            if (n == 0) {
+                newNode(0, 0, 1);
+                return;
+            }
+            newNode(lo_x, lo_y, Math.max(EPSILON, Math.max(hi_x - lo_x, hi_y - lo_y)) * 1.000001);
+            for (int i = 0; i < n; i++)
+                insert(i, x[i], y[i]);
+            for (int node = 0; node < size; node++) {
+                mass_x[node] /= count[node];
+                mass_y[node] /= count[node];
+            }
+        }
+
+        private void insert(int i, double px, double py) {
+            int node = 0;
+            int level = 1;
+            while (true) {
+                if (isLeaf(node)) {
+                    if (count[node] == 0 || level >= MAX_DEPTH) {
+                        if (count[node] == 0)
+                            point[node] = i;
+                        else
+                            point[node] = -1;
+                        add(node, px, py);
+                        depth = Math.max(depth, level);
+                        return;
+                    }
+                    // split: push the resident vertex down a level first
+                    int resident = point[node];
+                    point[node] = -1;
+                    double rx = mass_x[node] / count[node];
+                    double ry = mass_y[node] / count[node];
+                    int c = quadrantChild(node, rx, ry);
+                    point[c] = resident;
+                    add(c, rx, ry);
+                }
+                add(node, px, py);
+                node = quadrantChild(node, px, py);
+                level++;
+            }
+        }
+
+        private void add(int node, double px, double py) {
+            count[node]++;
+            mass_x[node] += px;
+            mass_y[node] += py;
+        }
+
+        /**
+         * Returns the child of node whose quadrant contains (px, py), creating it if needed.
+         */
+        private int quadrantChild(int node, double px, double py) {
+            double half = width[node] / 2;
+            int q = 0;
+            double cx = min_x[node];
+            double cy = min_y[node];
+            if (px >= cx + half) {
+                q += 1;
+                cx += half;
+            }
+            if (py >= cy + half) {
+                q += 2;
+                cy += half;
+            }
+            int slot = node * 4 + q;
+            if (child[slot] == 0) {
+                int created = newNode(cx, cy, half);
+                child[slot] = created;
+            }
+            return child[slot];
+        }
+
+        private int newNode(double x0, double y0, double w) {
+            if (size == count.length)
+                ensureCapacity(size * 2);
+            int node = size++;
+            count[node] = 0;
+            point[node] = -1;
+            child[node * 4] = child[node * 4 + 1] = child[node * 4 + 2] = child[node * 4 + 3] = 0;
+            min_x[node] = x0;
+            min_y[node] = y0;
+            width[node] = w;
+            mass_x[node] = 0;
+            mass_y[node] = 0;
+            return node;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= count.length)
+                return;
+            count = java.util.Arrays.copyOf(count, capacity);
+            point = java.util.Arrays.copyOf(point, capacity);
+            child = java.util.Arrays.copyOf(child, capacity * 4);
+            min_x = java.util.Arrays.copyOf(min_x, capacity);
+            min_y = java.util.Arrays.copyOf(min_y, capacity);
+            width = java.util.Arrays.copyOf(width, capacity);
+            mass_x = java.util.Arrays.copyOf(mass_x, capacity);
+            mass_y = java.util.Arrays.copyOf(mass_y, capacity);
+        }
+    }
+}
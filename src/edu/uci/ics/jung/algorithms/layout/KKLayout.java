@@ -14,9 +14,9 @@ package edu.uci.ics.jung.algorithms.layout;
  */
 
 import edu.uci.ics.jung.algorithms.layout.util.RandomLocationTransformer;
+import edu.uci.ics.jung.algorithms.shortestpath.AllPairsDistance;
 import edu.uci.ics.jung.algorithms.shortestpath.Distance;
 import edu.uci.ics.jung.algorithms.shortestpath.DistanceStatistics;
-import edu.uci.ics.jung.algorithms.shortestpath.UnweightedShortestPath;
 import edu.uci.ics.jung.algorithms.util.IterativeContext;
 import edu.uci.ics.jung.graph.Graph;
 
@@ -75,7 +75,7 @@ public class KKLayout<V,E> extends AbstractLayout<V,E> implements IterativeConte
     
 	public KKLayout(Graph<V,E> g) 
     {
-        this(g, new UnweightedShortestPath<V,E>(g));
+        this(g, new AllPairsDistance<V,E>(g));
 	}
 
 	/**
@@ -163,6 +163,11 @@ public class KKLayout<V,E> extends AbstractLayout<V,E> implements IterativeConte
     		L = (L0 / diameter) * length_factor;  // length_factor used to be hardcoded to 0.9
     		//L = 0.75 * Math.sqrt(height * width / n);
 
+    		if (distance instanceof AllPairsDistance && ((AllPairsDistance<?,?>) distance).getGraph() == graph
+    				&& fillDistances((AllPairsDistance<V,?>) distance)) {
+    			return;
+    		}
+
     		for (int i = 0; i < n - 1; i++) {
     			for (int j = i + 1; j < n; j++) {
     				Number d_ij = distance.getDistance(vertices[i], vertices[j]);
@@ -178,6 +183,31 @@ public class KKLayout<V,E> extends AbstractLayout<V,E> implements IterativeConte
     	}
 	}
 
+	/**
+	 * Fills the distance matrix by index from shared all-pairs distances, with the
+	 * same rules as for other distance metrics.
+	 * @return false, leaving the matrix alone, if the distances do not cover every vertex
+	 * (they were computed before vertices were added, for instance)
+	 */
+	private boolean fillDistances(AllPairsDistance<V,?> distances) {
+		int n = vertices.length;
+		int[] index = new int[n];
+		for (int i = 0; i < n; i++) {
+			index[i] = distances.indexOf(vertices[i]);
+			if (index[i] < 0)
+				return false;
+		}
+		for (int i = 0; i < n - 1; i++) {
+			for (int j = i + 1; j < n; j++) {
+				double dist = diameter * disconnected_multiplier;
+				dist = Math.min(distances.getDistanceByIndex(index[i], index[j]), dist);
+				dist = Math.min(distances.getDistanceByIndex(index[j], index[i]), dist);
+				dm[i][j] = dm[j][i] = dist;
+			}
+		}
+		return true;
+	}
+
 	public void step() {
 		try {
 			currentIteration++;
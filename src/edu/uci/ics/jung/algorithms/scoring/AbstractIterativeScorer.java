@@ -123,7 +123,7 @@ public abstract class AbstractIterativeScorer<V,E,T> implements IterativeContext
     }
     
     /**
-     * The largest change seen so far among all vertex scores.
+     * The largest change among all vertex scores in the most recent step.
      */
     protected double max_delta;
     
@@ -196,6 +196,7 @@ public abstract class AbstractIterativeScorer<V,E,T> implements IterativeContext
     public void step()
     {
         swapOutputForCurrent();
+        max_delta = 0;
         
         for (V v : graph.getVertices())
         {
@@ -14,10 +14,14 @@ package edu.uci.ics.jung.algorithms.scoring;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import edu.uci.ics.jung.algorithms.util.MapBinaryHeap;
+import edu.uci.ics.jung.graph.CompactGraph;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.UndirectedGraph;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Computes betweenness centrality for each vertex and edge in the graph.
@@ -40,7 +44,10 @@ public class BetweennessCentrality<V, E>
 	public BetweennessCentrality(Graph<V, E> graph) 
 	{
 		initialize(graph);
-		computeBetweenness(new LinkedList<V>(), Functions.constant(1));
+		if (graph instanceof CompactGraph)
+			computeBetweenness((CompactGraph<V,E>) graph);
+		else
+			computeBetweenness(new LinkedList<V>(), Functions.constant(1));
 	}
 
 	/**
@@ -236,6 +243,160 @@ public class BetweennessCentrality<V, E>
         vertex_data.clear();
 	}
 
+	/**
+	 * Unweighted betweenness over the adjacency rows of a compact graph.  Same
+	 * algorithm as the general case, with per-vertex data held in arrays indexed
+	 * by vertex id.  Sources are shared out among workers on the common fork-join
+	 * pool; each worker accumulates its own scores, and these are added together
+	 * at the end, so results may differ from the general case in the last bits.
+	 * @param graph the graph for which the scores are to be calculated
+	 */
+	protected void computeBetweenness(CompactGraph<V,E> graph)
+	{
+		int n = graph.getVertexCount();
+		int workers = n < SOURCES_PER_TASK * 2 ? 1 : 
+			Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), n / SOURCES_PER_TASK));
+		AtomicInteger next_source = new AtomicInteger();
+		List<BrandesWorker> tasks = new ArrayList<BrandesWorker>(workers);
+		for (int i = 0; i < workers; i++)
+			tasks.add(new BrandesWorker(graph, next_source));
+		
+		if (workers == 1)
+			tasks.get(0).compute();
+		else
+			ForkJoinPool.commonPool().invoke(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute()
+				{
+					invokeAll(tasks);
+				}
+			});
+		
+		double[] v_scores = tasks.get(0).v_scores;
+		double[] e_scores = tasks.get(0).e_scores;
+		for (int i = 1; i < workers; i++)
+		{
+			BrandesWorker task = tasks.get(i);
+			for (int v = 0; v < n; v++)
+				v_scores[v] += task.v_scores[v];
+			for (int e = 0; e < e_scores.length; e++)
+				e_scores[e] += task.e_scores[e];
+		}
+		
+		double scale = graph instanceof UndirectedGraph ? 2.0 : 1.0;
+		for (int v = 0; v < n; v++)
+			vertex_scores.put(graph.getVertex(v), v_scores[v] / scale);
+		for (int e = 0; e < e_scores.length; e++)
+			edge_scores.put(graph.getEdge(e), e_scores[e] / scale);
+	}
+
+	/**
+	 * Number of sources a worker claims at a time.
+	 */
+	private static final int SOURCES_PER_TASK = 16;
+	
+	/**
+	 * Runs the single-source stage of Brandes' algorithm for each source it claims,
+	 * adding the dependencies into its own score arrays.
+	 */
+	@SuppressWarnings("serial")
+	private static class BrandesWorker extends RecursiveAction
+	{
+		private final int[] out_offsets;
+		private final int[] out_targets;
+		private final int[] in_offsets;
+		private final int[] in_sources;
+		private final int[] in_edges;
+		private final AtomicInteger next_source;
+		
+		final double[] v_scores;
+		final double[] e_scores;
+		
+		BrandesWorker(CompactGraph<?,?> graph, AtomicInteger next_source)
+		{
+			this.out_offsets = graph.getOutOffsets();
+			this.out_targets = graph.getOutTargets();
+			this.in_offsets = graph.getInOffsets();
+			this.in_sources = graph.getInSources();
+			this.in_edges = graph.getInEdgeIds();
+			this.next_source = next_source;
+			this.v_scores = new double[graph.getVertexCount()];
+			this.e_scores = new double[graph.getEdgeCount()];
+		}
+		
+		@Override
+		protected void compute()
+		{
+			int n = v_scores.length;
+			int[] distance = new int[n];
+			double[] numSPs = new double[n];
+			double[] dependency = new double[n];
+			int[] order = new int[n];	// doubles as the BFS queue and, read backwards, the stack
+			
+			Arrays.fill(distance, -1);
+			for (int first = next_source.getAndAdd(SOURCES_PER_TASK); first < n; 
+					first = next_source.getAndAdd(SOURCES_PER_TASK))
+			{
+				int last = Math.min(n, first + SOURCES_PER_TASK);
+				for (int v = first; v < last; v++)
+				{
+					distance[v] = 0;
+					numSPs[v] = 1;
+					order[0] = v;
+					int tail = 1;
+					
+					for (int head = 0; head < tail; head++)
+					{
+						int w = order[head];
+						for (int k = out_offsets[w]; k < out_offsets[w + 1]; k++)
+						{
+							int x = out_targets[k];
+							if (x == w)
+								continue;
+							if (distance[x] < 0)
+							{
+								distance[x] = distance[w] + 1;
+								order[tail++] = x;
+							}
+							if (distance[x] == distance[w] + 1)
+								numSPs[x] += numSPs[w];
+						}
+					}
+					
+					// the incoming shortest-path edges of x are exactly the in-edges whose
+					// source is one step closer to v
+					for (int i = tail - 1; i >= 0; i--)
+					{
+						int x = order[i];
+						for (int k = in_offsets[x]; k < in_offsets[x + 1]; k++)
+						{
+							int w = in_sources[k];
+							if (w == x || distance[w] < 0 || distance[w] != distance[x] - 1)
+								continue;
+							double partialDependency = numSPs[w] / numSPs[x] * (1.0 + dependency[x]);
+							dependency[w] += partialDependency;
+							e_scores[in_edges[k]] += partialDependency;
+						}
+						if (x != v)
+							v_scores[x] += dependency[x];
+					}
+					
+					// only the vertices reached from v need resetting for the next source
+					for (int i = 0; i < tail; i++)
+					{
+						int x = order[i];
+						distance[x] = -1;
+						numSPs[x] = 0;
+						dependency[x] = 0;
+					}
+				}
+			}
+		}
+	}
+
 //	protected void computeWeightedBetweenness(Function<E, ? extends Number> edge_weights)
 //	{
 //		for (V v : graph.getVertices())
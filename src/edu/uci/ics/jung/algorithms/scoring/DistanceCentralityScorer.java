@@ -12,6 +12,7 @@
 package edu.uci.ics.jung.algorithms.scoring;
 
 import com.google.common.base.Function;
+import edu.uci.ics.jung.algorithms.shortestpath.AllPairsDistance;
 import edu.uci.ics.jung.algorithms.shortestpath.DijkstraDistance;
 import edu.uci.ics.jung.algorithms.shortestpath.Distance;
 import edu.uci.ics.jung.algorithms.shortestpath.UnweightedShortestPath;
@@ -200,6 +201,13 @@ public class DistanceCentralityScorer<V,E> implements VertexScorer<V, Double>
 	        return value;
 	    }
 	    
+	    if (distance instanceof AllPairsDistance && ((AllPairsDistance<?,?>) distance).getGraph() == graph)
+	    {
+	        value = scoreFromAllPairs(v, (AllPairsDistance<V,?>) distance);
+	        output.put(v, value == null ? -1.0 : value);
+	        return value;
+	    }
+	    
 	    Map<V, Number> v_distances = new HashMap<V, Number>(distance.getDistanceMap(v));
 	    if (ignore_self_distances)
 	        v_distances.remove(v);
@@ -245,4 +253,27 @@ public class DistanceCentralityScorer<V,E> implements VertexScorer<V, Double>
 		   
 		return score;
 	}
+
+	/**
+	 * Computes the same score as <code>getVertexScore</code> from the stored
+	 * distances of the scored graph, without building a map of them.  A vertex's distance to itself
+	 * is always 0, so ignoring self-distances only changes the count.
+	 */
+	private Double scoreFromAllPairs(V v, AllPairsDistance<V,?> distances)
+	{
+		int count = distances.getReachableCount(v) - (ignore_self_distances ? 1 : 0);
+		if (!ignore_missing)
+		{
+			int num_dests = graph.getVertexCount() - 
+			    (ignore_self_distances ? 1 : 0);
+			if (count != num_dests)
+				return null;
+		}
+		double value = distances.getDistanceSum(v);
+		if (averaging)
+			value /= count;
+		return value == 0 ? 
+			Double.POSITIVE_INFINITY : 
+			1.0 / value;
+	}
 }
@@ -13,6 +13,7 @@ package edu.uci.ics.jung.algorithms.scoring;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import edu.uci.ics.jung.graph.CompactGraph;
 import edu.uci.ics.jung.graph.Hypergraph;
 
 /**
@@ -33,6 +34,38 @@ public class HITSWithPriors<V, E>
      */
     protected HITS.Scores disappearing_potential;
 
+    /**
+     * For a <code>CompactGraph</code>, the graph while the current and output values 
+     * are held in the arrays below (indexed by vertex id) rather than in maps; 
+     * null otherwise.
+     */
+    private CompactGraph<V,E> compact;
+    private double[] compact_hub_current;
+    private double[] compact_auth_current;
+    private double[] compact_hub_output;
+    private double[] compact_auth_output;
+
+    /**
+     * The weight of each in-edge and out-edge row entry, read once from 
+     * <code>compact_weights_source</code>; self-loops have weight 0.
+     */
+    private double[] compact_in_weights;
+    private double[] compact_out_weights;
+    private Object compact_weights_source;
+
+    /**
+     * The hub and authority prior of each vertex, read once from <code>compact_priors_source</code>.
+     */
+    private double[] compact_hub_priors;
+    private double[] compact_auth_priors;
+    private Object compact_priors_source;
+
+    /**
+     * The ids of the vertices with no out-edges and with no in-edges, respectively.
+     */
+    private int[] compact_no_out;
+    private int[] compact_no_in;
+
     /**
      * Creates an instance for the specified graph, edge weights, vertex prior probabilities,
      * and random jump probability (alpha).
@@ -111,6 +144,281 @@ public class HITSWithPriors<V, E>
                         Math.abs(getCurrentValue(v).authority - v_auth));
     }
 
+    /**
+     * Returns true if <code>step</code> should update every vertex at once over the 
+     * rows of a <code>CompactGraph</code>, in parallel and with values held in arrays, 
+     * rather than calling <code>update</code> for each vertex in turn.  The result
+     * is the same either way.  Subclasses that change what <code>update</code> does 
+     * should return false from this method.
+     * @return true if the graph is a <code>CompactGraph</code> and hyperedges
+     * are not treated as self-loops
+     */
+    protected boolean usesCompactStep()
+    {
+    	return graph instanceof CompactGraph && !hyperedges_are_self_loops;
+    }
+
+    @Override
+    public void initialize()
+    {
+    	compact = null;
+    	super.initialize();
+    }
+
+    /**
+     * Performs one step of this algorithm.  If <code>usesCompactStep</code> is true,
+     * the authority and hub scores of each vertex are summed over its in-edge and 
+     * out-edge rows from arrays of the current values, with ranges of vertices 
+     * computed in parallel.
+     */
+    @Override
+    public void step()
+    {
+    	if (!usesCompactStep())
+    	{
+    		if (compact != null)
+    			leaveCompactStep();
+    		super.step();
+    		return;
+    	}
+    	if (compact == null)
+    		enterCompactStep();
+    	readCompactInputs();
+
+    	swapOutputForCurrent();
+    	double[] tmp = compact_hub_output;
+    	compact_hub_output = compact_hub_current;
+    	compact_hub_current = tmp;
+    	tmp = compact_auth_output;
+    	compact_auth_output = compact_auth_current;
+    	compact_auth_current = tmp;
+
+    	final int[] in_offsets = compact.getInOffsets();
+    	final int[] in_sources = compact.getInSources();
+    	final int[] out_offsets = compact.getOutOffsets();
+    	final int[] out_targets = compact.getOutTargets();
+    	final double[] in_weights = compact_in_weights;
+    	final double[] out_weights = compact_out_weights;
+    	final double[] hub_current = compact_hub_current;
+    	final double[] auth_current = compact_auth_current;
+    	final double[] hub_output = compact_hub_output;
+    	final double[] auth_output = compact_auth_output;
+    	final double[] hub_priors = compact_hub_priors;
+    	final double[] auth_priors = compact_auth_priors;
+    	max_delta = VertexRanges.max(hub_output.length, new VertexRanges.Body()
+    	{
+    		public double run(int from, int to)
+    		{
+    			double delta = 0;
+    			for (int i = from; i < to; i++)
+    			{
+    				double v_auth = 0;
+    				for (int k = in_offsets[i]; k < in_offsets[i + 1]; k++)
+    					v_auth += hub_current[in_sources[k]] * in_weights[k];
+    				double v_hub = 0;
+    				for (int k = out_offsets[i]; k < out_offsets[i + 1]; k++)
+    					v_hub += auth_current[out_targets[k]] * out_weights[k];
+    				if (alpha > 0)
+    				{
+    					v_auth = v_auth * (1 - alpha) + auth_priors[i] * alpha;
+    					v_hub = v_hub * (1 - alpha) + hub_priors[i] * alpha;
+    				}
+    				hub_output[i] = v_hub;
+    				auth_output[i] = v_auth;
+    				delta = Math.max(delta, Math.max(Math.abs(hub_current[i] - v_hub), 
+    						Math.abs(auth_current[i] - v_auth)));
+    			}
+    			return delta;
+    		}
+    	});
+
+    	for (int i : compact_no_out)
+    		disappearing_potential.hub += auth_current[i];
+    	for (int i : compact_no_in)
+    		disappearing_potential.authority += hub_current[i];
+    	if (disappearing_potential.hub > 0 || disappearing_potential.authority > 0)
+    	{
+    		final double hub_potential = disappearing_potential.hub;
+    		final double auth_potential = disappearing_potential.authority;
+    		VertexRanges.max(hub_output.length, new VertexRanges.Body()
+    		{
+    			public double run(int from, int to)
+    			{
+    				for (int i = from; i < to; i++)
+    				{
+    					hub_output[i] = hub_output[i] + (1 - alpha) * (hub_potential * hub_priors[i]);
+    					auth_output[i] = auth_output[i] + (1 - alpha) * (auth_potential * auth_priors[i]);
+    				}
+    				return 0;
+    			}
+    		});
+    		disappearing_potential.hub = 0;
+    		disappearing_potential.authority = 0;
+    	}
+
+    	total_iterations++;
+    	afterStep();
+    }
+
+    /**
+     * Moves the output values from the maps into arrays.
+     */
+    @SuppressWarnings("unchecked")
+    private void enterCompactStep()
+    {
+    	CompactGraph<V,E> graph = (CompactGraph<V,E>) this.graph;
+    	int n = graph.getVertexCount();
+    	compact_hub_output = new double[n];
+    	compact_auth_output = new double[n];
+    	compact_hub_current = new double[n];
+    	compact_auth_current = new double[n];
+    	for (int i = 0; i < n; i++)
+    	{
+    		HITS.Scores values = super.getOutputValue(graph.getVertex(i));
+    		compact_hub_output[i] = values.hub;
+    		compact_auth_output[i] = values.authority;
+    	}
+    	compact_no_out = emptyRows(graph, graph.getOutOffsets(), "Outdegree");
+    	compact_no_in = emptyRows(graph, graph.getInOffsets(), "Indegree");
+    	compact = graph;
+    }
+
+    private int[] emptyRows(CompactGraph<V,E> graph, int[] offsets, String degree)
+    {
+    	int n = graph.getVertexCount();
+    	int count = 0;
+    	for (int i = 0; i < n; i++)
+    		if (offsets[i + 1] == offsets[i])
+    			count++;
+    	int[] empty = new int[count];
+    	count = 0;
+    	for (int i = 0; i < n; i++)
+    	{
+    		if (offsets[i + 1] == offsets[i])
+    		{
+    			if (!isDisconnectedGraphOK())
+    				throw new IllegalArgumentException(degree + " of " + graph.getVertex(i) + " must be > 0");
+    			empty[count++] = i;
+    		}
+    	}
+    	return empty;
+    }
+
+    /**
+     * Moves the output values from the arrays back into the maps.
+     */
+    private void leaveCompactStep()
+    {
+    	CompactGraph<V,E> graph = compact;
+    	compact = null;
+    	for (int i = 0; i < compact_hub_output.length; i++)
+    		super.setOutputValue(graph.getVertex(i), 
+    				new HITS.Scores(compact_hub_output[i], compact_auth_output[i]));
+    	compact_hub_output = compact_auth_output = null;
+    	compact_hub_current = compact_auth_current = null;
+    }
+
+    /**
+     * Reads the edge weights and vertex priors into arrays the first time they are
+     * needed and again whenever they are replaced.
+     */
+    private void readCompactInputs()
+    {
+    	int n = compact.getVertexCount();
+    	if (compact_in_weights == null || compact_weights_source != edge_weights)
+    	{
+    		compact_in_weights = readWeights(compact.getInOffsets(), 
+    				compact.getInEdgeIds(), compact.getInSources());
+    		compact_out_weights = readWeights(compact.getOutOffsets(), 
+    				compact.getOutEdgeIds(), compact.getOutTargets());
+    		compact_weights_source = edge_weights;
+    	}
+    	if (compact_hub_priors == null || compact_priors_source != vertex_priors)
+    	{
+    		compact_hub_priors = new double[n];
+    		compact_auth_priors = new double[n];
+    		for (int i = 0; i < n; i++)
+    		{
+    			HITS.Scores prior = getVertexPrior(compact.getVertex(i));
+    			compact_hub_priors[i] = prior.hub;
+    			compact_auth_priors[i] = prior.authority;
+    		}
+    		compact_priors_source = vertex_priors;
+    	}
+    }
+
+    /**
+     * @return the weight of each entry of a row array, seen from the opposite vertex
+     */
+    private double[] readWeights(int[] offsets, int[] edges, int[] opposites)
+    {
+    	double[] weights = new double[edges.length];
+    	for (int i = 0; i < offsets.length - 1; i++)
+    	{
+    		for (int k = offsets[i]; k < offsets[i + 1]; k++)
+    		{
+    			if (opposites[k] != i)
+    				weights[k] = getEdgeWeight(compact.getVertex(opposites[k]), 
+    						compact.getEdge(edges[k])).doubleValue();
+    		}
+    	}
+    	return weights;
+    }
+
+    @Override
+    protected HITS.Scores getOutputValue(V v)
+    {
+    	if (compact == null)
+    		return super.getOutputValue(v);
+    	int i = compact.getVertexId(v);
+    	return new HITS.Scores(compact_hub_output[i], compact_auth_output[i]);
+    }
+
+    @Override
+    protected void setOutputValue(V v, HITS.Scores value)
+    {
+    	if (compact == null)
+    	{
+    		super.setOutputValue(v, value);
+    		return;
+    	}
+    	int i = compact.getVertexId(v);
+    	compact_hub_output[i] = value.hub;
+    	compact_auth_output[i] = value.authority;
+    }
+
+    @Override
+    protected HITS.Scores getCurrentValue(V v)
+    {
+    	if (compact == null)
+    		return super.getCurrentValue(v);
+    	int i = compact.getVertexId(v);
+    	return new HITS.Scores(compact_hub_current[i], compact_auth_current[i]);
+    }
+
+    @Override
+    protected void setCurrentValue(V v, HITS.Scores value)
+    {
+    	if (compact == null)
+    	{
+    		super.setCurrentValue(v, value);
+    		return;
+    	}
+    	int i = compact.getVertexId(v);
+    	compact_hub_current[i] = value.hub;
+    	compact_auth_current[i] = value.authority;
+    }
+
+    @Override
+    public HITS.Scores getVertexScore(V v)
+    {
+    	if (compact == null)
+    		return super.getVertexScore(v);
+        if (!graph.containsVertex(v))
+            throw new IllegalArgumentException("Vertex " + v + " not an element of this graph");
+    	return getOutputValue(v);
+    }
+
     /**
      * Code which is executed after each step.  In this case, deals with the
      * 'disappearing potential', normalizes the scores, and then calls
@@ -145,6 +453,11 @@ public class HITSWithPriors<V, E>
 	 * normalizations.
 	 */
 	protected void normalizeScores() {
+		if (compact != null)
+		{
+			normalizeCompactScores();
+			return;
+		}
     	double hub_ssum = 0;
     	double auth_ssum = 0;
     	for (V v : graph.getVertices())
@@ -167,6 +480,34 @@ public class HITSWithPriors<V, E>
     	}
 	}
     
+	private void normalizeCompactScores()
+	{
+    	final double[] hub_output = compact_hub_output;
+    	final double[] auth_output = compact_auth_output;
+    	double hub_ssum = 0;
+    	double auth_ssum = 0;
+    	for (int i = 0; i < hub_output.length; i++)
+    	{
+    		hub_ssum += (hub_output[i] * hub_output[i]);
+    		auth_ssum += (auth_output[i] * auth_output[i]);
+    	}
+
+    	final double hub_norm = Math.sqrt(hub_ssum);
+    	final double auth_norm = Math.sqrt(auth_ssum);
+		VertexRanges.max(hub_output.length, new VertexRanges.Body()
+		{
+			public double run(int from, int to)
+			{
+				for (int i = from; i < to; i++)
+				{
+					hub_output[i] = hub_output[i] / hub_norm;
+					auth_output[i] = auth_output[i] / auth_norm;
+				}
+				return 0;
+			}
+		});
+	}
+    
 	/**
 	 * Collects the "disappearing potential" associated with vertices that have either 
 	 * no incoming edges, no outgoing edges, or both.  Vertices that have no incoming edges
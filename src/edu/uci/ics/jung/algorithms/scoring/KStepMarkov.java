@@ -113,7 +113,16 @@ public class KStepMarkov<V,E> extends PageRankWithPriors<V,E>
 	{
 		this.cumulative = cumulative;
 	}
-	
+
+	/**
+	 * Cumulative scores are only computed by <code>update</code>.
+	 */
+	@Override
+	protected boolean usesCompactStep()
+	{
+		return !cumulative && super.usesCompactStep();
+	}
+
     /**
      * Updates the value for this vertex.  Called by <code>step()</code>.
      */
@@ -13,6 +13,7 @@ package edu.uci.ics.jung.algorithms.scoring;
 
 import com.google.common.base.Function;
 import edu.uci.ics.jung.algorithms.scoring.util.UniformDegreeWeight;
+import edu.uci.ics.jung.graph.CompactGraph;
 import edu.uci.ics.jung.graph.Hypergraph;
 
 /**
@@ -33,6 +34,33 @@ public class PageRankWithPriors<V, E>
      */
     protected double disappearing_potential = 0.0;
     
+    /**
+     * For a <code>CompactGraph</code>, the graph while the current and output values 
+     * are held in the arrays below (indexed by vertex id) rather than in maps; 
+     * null otherwise.
+     */
+    private CompactGraph<V,E> compact;
+    private double[] compact_current;
+    private double[] compact_output;
+    
+    /**
+     * The weight of each in-edge row entry, read once from <code>compact_weights_source</code>;
+     * self-loops have weight 0.
+     */
+    private double[] compact_weights;
+    private Object compact_weights_source;
+    
+    /**
+     * The prior of each vertex, read once from <code>compact_priors_source</code>.
+     */
+    private double[] compact_priors;
+    private Object compact_priors_source;
+    
+    /**
+     * The ids of the vertices with no out-edges.
+     */
+    private int[] compact_dangling;
+    
     /**
      * Creates an instance with the specified graph, edge weights, vertex priors, and 
      * 'random jump' probability (alpha).
@@ -97,6 +125,251 @@ public class PageRankWithPriors<V, E>
         return Math.abs(getCurrentValue(v) - new_value);
     }
 
+    /**
+     * Returns true if <code>step</code> should update every vertex at once over the 
+     * rows of a <code>CompactGraph</code>, in parallel and with values held in arrays, 
+     * rather than calling <code>update</code> for each vertex in turn.  The result
+     * is the same either way.  Subclasses that change what <code>update</code> does 
+     * should return false from this method.
+     * @return true if the graph is a <code>CompactGraph</code> and hyperedges
+     * are not treated as self-loops
+     */
+    protected boolean usesCompactStep()
+    {
+    	return graph instanceof CompactGraph && !hyperedges_are_self_loops;
+    }
+    
+    @Override
+    public void initialize()
+    {
+    	compact = null;
+    	super.initialize();
+    }
+    
+    /**
+     * Re-initializes this instance so that evaluation starts from the scores of 
+     * <code>previous</code> rather than from the priors.  This is intended for a 
+     * graph that is a slightly edited version of the one <code>previous</code> 
+     * scored: after a small change, far fewer iterations are needed than when 
+     * starting from scratch.  Vertices that <code>previous</code> did not score 
+     * start at their priors, and all starting values are scaled so that they sum
+     * to the same total as the priors.
+     * @param previous the instance whose scores are to be used as starting values
+     */
+    public void initializeFrom(PageRankWithPriors<V,?> previous)
+    {
+    	initialize();
+    	double prior_total = 0;
+    	double total = 0;
+    	for (V v : graph.getVertices())
+    	{
+    		double prior = getVertexPrior(v);
+    		double value = previous.graph.containsVertex(v) ? 
+    				previous.getVertexScore(v) : prior;
+    		prior_total += prior;
+    		total += value;
+    		setOutputValue(v, value);
+    	}
+    	if (total > 0)
+    	{
+    		for (V v : graph.getVertices())
+    			setOutputValue(v, getOutputValue(v) * prior_total / total);
+    	}
+    }
+    
+    /**
+     * Performs one step of this algorithm.  If <code>usesCompactStep</code> is true,
+     * the new value of each vertex is summed over its in-edge row from an array of 
+     * the current values, with ranges of vertices computed in parallel.
+     */
+    @Override
+    public void step()
+    {
+    	if (!usesCompactStep())
+    	{
+    		if (compact != null)
+    			leaveCompactStep();
+    		super.step();
+    		return;
+    	}
+    	if (compact == null)
+    		enterCompactStep();
+    	readCompactInputs();
+    	
+    	swapOutputForCurrent();
+    	double[] tmp = compact_output;
+    	compact_output = compact_current;
+    	compact_current = tmp;
+    	
+    	final int[] offsets = compact.getInOffsets();
+    	final int[] sources = compact.getInSources();
+    	final double[] current = compact_current;
+    	final double[] output = compact_output;
+    	final double[] weights = compact_weights;
+    	final double[] priors = compact_priors;
+    	max_delta = VertexRanges.max(output.length, new VertexRanges.Body()
+    	{
+    		public double run(int from, int to)
+    		{
+    			double delta = 0;
+    			for (int i = from; i < to; i++)
+    			{
+    				double v_input = 0;
+    				for (int k = offsets[i]; k < offsets[i + 1]; k++)
+    					v_input += current[sources[k]] * weights[k];
+    				double new_value = alpha > 0 ? 
+    						v_input * (1 - alpha) + priors[i] * alpha :
+    						v_input;
+    				output[i] = new_value;
+    				delta = Math.max(delta, Math.abs(current[i] - new_value));
+    			}
+    			return delta;
+    		}
+    	});
+    	
+    	for (int i : compact_dangling)
+    		disappearing_potential += current[i];
+    	if (disappearing_potential > 0)
+    	{
+    		final double potential = disappearing_potential;
+    		VertexRanges.max(output.length, new VertexRanges.Body()
+    		{
+    			public double run(int from, int to)
+    			{
+    				for (int i = from; i < to; i++)
+    					output[i] = output[i] + (1 - alpha) * (potential * priors[i]);
+    				return 0;
+    			}
+    		});
+    		disappearing_potential = 0;
+    	}
+    	
+    	total_iterations++;
+    	afterStep();
+    }
+    
+    /**
+     * Moves the output values from the maps into arrays.
+     */
+    @SuppressWarnings("unchecked")
+    private void enterCompactStep()
+    {
+    	CompactGraph<V,E> graph = (CompactGraph<V,E>) this.graph;
+    	int n = graph.getVertexCount();
+    	compact_output = new double[n];
+    	compact_current = new double[n];
+    	for (int i = 0; i < n; i++)
+    		compact_output[i] = super.getOutputValue(graph.getVertex(i));
+    	
+    	int[] offsets = graph.getOutOffsets();
+    	int dangling = 0;
+    	for (int i = 0; i < n; i++)
+    		if (offsets[i + 1] == offsets[i])
+    			dangling++;
+    	compact_dangling = new int[dangling];
+    	dangling = 0;
+    	for (int i = 0; i < n; i++)
+    	{
+    		if (offsets[i + 1] == offsets[i])
+    		{
+    			if (!isDisconnectedGraphOK())
+    				throw new IllegalArgumentException("Outdegree of " + graph.getVertex(i) + " must be > 0");
+    			compact_dangling[dangling++] = i;
+    		}
+    	}
+    	compact = graph;
+    }
+    
+    /**
+     * Moves the output values from the arrays back into the maps.
+     */
+    private void leaveCompactStep()
+    {
+    	CompactGraph<V,E> graph = compact;
+    	compact = null;
+    	for (int i = 0; i < compact_output.length; i++)
+    		super.setOutputValue(graph.getVertex(i), compact_output[i]);
+    	compact_output = null;
+    	compact_current = null;
+    }
+    
+    /**
+     * Reads the edge weights and vertex priors into arrays the first time they are
+     * needed and again whenever they are replaced.
+     */
+    private void readCompactInputs()
+    {
+    	int n = compact.getVertexCount();
+    	if (compact_weights == null || compact_weights_source != edge_weights)
+    	{
+    		int[] offsets = compact.getInOffsets();
+    		int[] edges = compact.getInEdgeIds();
+    		int[] sources = compact.getInSources();
+    		compact_weights = new double[edges.length];
+    		for (int i = 0; i < n; i++)
+    		{
+    			for (int k = offsets[i]; k < offsets[i + 1]; k++)
+    			{
+    				if (sources[k] != i)
+    					compact_weights[k] = getEdgeWeight(compact.getVertex(sources[k]), 
+    							compact.getEdge(edges[k])).doubleValue();
+    			}
+    		}
+    		compact_weights_source = edge_weights;
+    	}
+    	if (compact_priors == null || compact_priors_source != vertex_priors)
+    	{
+    		compact_priors = new double[n];
+    		for (int i = 0; i < n; i++)
+    			compact_priors[i] = getVertexPrior(compact.getVertex(i));
+    		compact_priors_source = vertex_priors;
+    	}
+    }
+    
+    @Override
+    protected Double getOutputValue(V v)
+    {
+    	if (compact == null)
+    		return super.getOutputValue(v);
+    	return compact_output[compact.getVertexId(v)];
+    }
+    
+    @Override
+    protected void setOutputValue(V v, Double value)
+    {
+    	if (compact == null)
+    		super.setOutputValue(v, value);
+    	else
+    		compact_output[compact.getVertexId(v)] = value;
+    }
+    
+    @Override
+    protected Double getCurrentValue(V v)
+    {
+    	if (compact == null)
+    		return super.getCurrentValue(v);
+    	return compact_current[compact.getVertexId(v)];
+    }
+    
+    @Override
+    protected void setCurrentValue(V v, Double value)
+    {
+    	if (compact == null)
+    		super.setCurrentValue(v, value);
+    	else
+    		compact_current[compact.getVertexId(v)] = value;
+    }
+    
+    @Override
+    public Double getVertexScore(V v)
+    {
+    	if (compact == null)
+    		return super.getVertexScore(v);
+        if (!graph.containsVertex(v))
+            throw new IllegalArgumentException("Vertex " + v + " not an element of this graph");
+    	return compact_output[compact.getVertexId(v)];
+    }
+    
     /**
      * Cleans up after each step.  In this case that involves allocating the disappearing
      * potential (thus maintaining normalization of the scores) according to the vertex 
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.algorithms.scoring;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a loop over the vertex ids [0, n) of a <code>CompactGraph</code> as
+ * contiguous ranges on the common fork-join pool, and combines the largest
+ * change reported by each range.  Each range must write only to the entries
+ * of its own ids.
+ */
+class VertexRanges
+{
+	/**
+	 * Vertices below which a loop runs on the calling thread.
+	 */
+	static final int PARALLEL_THRESHOLD = 4096;
+
+	interface Body
+	{
+		/**
+		 * Processes the vertices with ids in [from, to).
+		 * @return the largest change made to any of their values
+		 */
+		double run(int from, int to);
+	}
+
+	/**
+	 * @return the largest change reported over all of [0, n)
+	 */
+	static double max(int n, Body body)
+	{
+		if (n <= PARALLEL_THRESHOLD)
+			return body.run(0, n);
+		return ForkJoinPool.commonPool().invoke(new RangeTask(body, 0, n));
+	}
+
+	@SuppressWarnings("serial")
+	private static class RangeTask extends RecursiveTask<Double>
+	{
+		private final Body body;
+		private final int from;
+		private final int to;
+
+		RangeTask(Body body, int from, int to)
+		{
+			this.body = body;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Double compute()
+		{
+			if (to - from <= PARALLEL_THRESHOLD)
+				return body.run(from, to);
+			int mid = (from + to) >>> 1;
+			RangeTask right = new RangeTask(body, mid, to);
+			right.fork();
+			double left = new RangeTask(body, from, mid).compute();
+			return Math.max(left, right.join());
+		}
+	}
+}
@@ -0,0 +1,600 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.algorithms.shortestpath;
+
+import com.google.common.base.Function;
+import edu.uci.ics.jung.graph.CompactGraph;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.ObservableGraph;
+import edu.uci.ics.jung.graph.event.GraphEvent;
+import edu.uci.ics.jung.graph.event.GraphEventListener;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shortest-path distances between all pairs of vertices of a graph, computed once
+ * and shared by any number of algorithms.  Pass the same instance to
+ * <code>KKLayout</code>, <code>ClosenessCentrality</code>, <code>BarycenterScorer</code>,
+ * <code>DistanceStatistics.diameter</code> and so on, and the O(n&middot;m) work of
+ * finding the distances is done only once.
+ *
+ * <p>The distances are found by one breadth-first search (or, if edge weights are
+ * given, one Dijkstra search) per source vertex, run in parallel on the common
+ * fork-join pool over a <code>CompactGraph</code> copy of the graph.  They are
+ * stored in a single n x n array: hop counts as 16-bit values, weighted path
+ * lengths as <code>float</code>s (so weighted distances are rounded to
+ * <code>float</code> precision).  This takes 2n<sup>2</sup> or 4n<sup>2</sup> bytes;
+ * for graphs too large for that, <code>setLandmarks</code> switches to estimates
+ * through a few landmark vertices, which take O(n) space per landmark.
+ *
+ * <p>The distances are computed when first asked for, and recomputed on the next
+ * request after the graph changes.  If the graph is an <code>ObservableGraph</code>,
+ * this instance registers itself to hear about changes; otherwise, changes are
+ * detected by the vertex and edge counts, or <code>reset</code> may be called
+ * explicitly.
+ *
+ * @see UnweightedShortestPath
+ * @see DijkstraDistance
+ */
+public class AllPairsDistance<V,E> implements Distance<V>, GraphEventListener<V,E>
+{
+    /**
+     * Stored in place of a hop count when there is no path.
+     */
+    private static final short NO_PATH = -1;
+
+    /**
+     * Number of sources searched by each parallel task.
+     */
+    private static final int SOURCES_PER_TASK = 32;
+
+    private final Graph<V,E> graph;
+    private final Function<? super E, ? extends Number> edge_weights;
+    private int landmark_count;
+
+    // all null until computed, and again after a change to the graph
+    private CompactGraph<V,E> compact;
+    private short[] hops;             // unweighted, row-major; NO_PATH where unreachable
+    private float[] lengths;          // weighted, row-major; infinite where unreachable
+    private int[] landmarks;          // landmark ids, in landmark mode
+    private float[] to_landmark;      // [l * n + v]: distance from v to landmark l
+    private float[] from_landmark;    // [l * n + v]: distance from landmark l to v
+
+    /**
+     * Creates an instance for the unweighted distances (hop counts) of <code>g</code>.
+     * @param g the graph on which distances are to be calculated
+     */
+    public AllPairsDistance(Graph<V,E> g)
+    {
+        this(g, null);
+    }
+
+    /**
+     * Creates an instance for the distances of <code>g</code> under the specified
+     * edge weights, which must be non-negative.
+     * @param g the graph on which distances are to be calculated
+     * @param edge_weights the weight (length) of each edge, or null for hop counts
+     */
+    @SuppressWarnings("unchecked")
+    public AllPairsDistance(Graph<V,E> g, Function<? super E, ? extends Number> edge_weights)
+    {
+        this.graph = g;
+        this.edge_weights = edge_weights;
+        if (g instanceof ObservableGraph)
+            ((ObservableGraph<V,E>) g).addGraphEventListener(this);
+    }
+
+    /**
+     * Specifies that distances should be estimated through <code>count</code> landmark
+     * vertices (the vertices of highest degree) instead of computed for every pair.
+     * The estimate of the distance from u to v is the least, over landmarks l, of
+     * d(u,l) + d(l,v); it is never shorter than the true distance, and is exact
+     * whenever some shortest path passes through a landmark.  If no landmark is on
+     * any path from u to v, v is reported as unreachable from u.  Pass 0 (the default)
+     * to compute exact distances.
+     * @param count the number of landmarks to use, or 0 for exact distances
+     */
+    public synchronized void setLandmarks(int count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Landmark count must be >= 0: " + count);
+        this.landmark_count = count;
+        reset();
+    }
+
+    /**
+     * @return the graph on which distances are calculated
+     */
+    public Graph<V,E> getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * Discards the distances, so that they are computed again on the next request.
+     */
+    public synchronized void reset()
+    {
+        compact = null;
+        hops = null;
+        lengths = null;
+        landmarks = null;
+        to_landmark = null;
+        from_landmark = null;
+    }
+
+    /**
+     * Discards the distances whenever a vertex or edge is added or removed.
+     */
+    public void handleGraphEvent(GraphEvent<V,E> evt)
+    {
+        reset();
+    }
+
+    /**
+     * Returns the distance from the <code>source</code> vertex to the
+     * <code>target</code> vertex: an <code>Integer</code> hop count if there are
+     * no edge weights, otherwise a <code>Double</code>.  Returns null if
+     * <code>target</code> is not reachable from <code>source</code>.
+     */
+    public synchronized Number getDistance(V source, V target)
+    {
+        computeIfNeeded();
+        double distance = distance(checkedIndex(source), checkedIndex(target));
+        if (distance == Double.POSITIVE_INFINITY)
+            return null;
+        return box(distance);
+    }
+
+    /**
+     * Returns a <code>LinkedHashMap</code> from each vertex reachable from
+     * <code>source</code> (including <code>source</code>) to its distance, in
+     * order of increasing distance.
+     */
+    public synchronized Map<V, Number> getDistanceMap(V source)
+    {
+        computeIfNeeded();
+        final int s = checkedIndex(source);
+        int n = compact.getVertexCount();
+        Integer[] reached = new Integer[reachableCount(s)];
+        final double[] distances = new double[n];
+        int count = 0;
+        for (int t = 0; t < n; t++)
+        {
+            distances[t] = distance(s, t);
+            if (distances[t] != Double.POSITIVE_INFINITY)
+                reached[count++] = t;
+        }
+        Arrays.sort(reached, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Double.compare(distances[a], distances[b]);
+            }
+        });
+        Map<V, Number> map = new LinkedHashMap<V, Number>();
+        for (int t : reached)
+            map.put(compact.getVertex(t), box(distances[t]));
+        return map;
+    }
+
+    /**
+     * Returns the index of <code>v</code> for use with <code>getDistanceByIndex</code>.
+     * Indices are valid until the graph changes.
+     * @param v the vertex whose index is to be returned
+     * @return the index of v, or -1 if v is not in the graph
+     */
+    public synchronized int indexOf(V v)
+    {
+        computeIfNeeded();
+        return compact.getVertexId(v);
+    }
+
+    /**
+     * Returns the distance between the vertices with the given indices, as
+     * returned by <code>indexOf</code>.
+     * @param source the index of the vertex from which distance is measured
+     * @param target the index of the vertex to which distance is measured
+     * @return the distance, or <code>Double.POSITIVE_INFINITY</code> if there is no path
+     */
+    public synchronized double getDistanceByIndex(int source, int target)
+    {
+        computeIfNeeded();
+        return distance(source, target);
+    }
+
+    private double distance(int source, int target)
+    {
+        int n = compact.getVertexCount();
+        if (landmarks != null)
+        {
+            if (source == target)
+                return 0;
+            double estimate = Double.POSITIVE_INFINITY;
+            for (int l = 0; l < landmarks.length; l++)
+                estimate = Math.min(estimate,
+                        (double) to_landmark[l * n + source] + from_landmark[l * n + target]);
+            return estimate;
+        }
+        int k = source * n + target;
+        if (hops != null)
+            return hops[k] == NO_PATH ? Double.POSITIVE_INFINITY : hops[k] & 0xFFFF;
+        return lengths[k];
+    }
+
+    /**
+     * @param source the vertex from which distances are measured
+     * @return the number of vertices reachable from source, including source itself
+     */
+    public synchronized int getReachableCount(V source)
+    {
+        computeIfNeeded();
+        return reachableCount(checkedIndex(source));
+    }
+
+    /**
+     * @param source the vertex from which distances are measured
+     * @return the sum of the distances from source to each vertex reachable from it
+     */
+    public synchronized double getDistanceSum(V source)
+    {
+        computeIfNeeded();
+        int s = checkedIndex(source);
+        double sum = 0;
+        for (int t = 0; t < compact.getVertexCount(); t++)
+        {
+            double distance = distance(s, t);
+            if (distance != Double.POSITIVE_INFINITY)
+                sum += distance;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the longest distance between two distinct vertices.  If some vertex
+     * is not reachable from another, returns the longest distance between connected
+     * vertices if <code>use_max</code> is true, and
+     * <code>Double.POSITIVE_INFINITY</code> otherwise.
+     * @param use_max whether to ignore pairs that are not connected
+     * @return the diameter of the graph
+     * @see DistanceStatistics#diameter(edu.uci.ics.jung.graph.Hypergraph, Distance, boolean)
+     */
+    public synchronized double getDiameter(boolean use_max)
+    {
+        computeIfNeeded();
+        int n = compact.getVertexCount();
+        double diameter = 0;
+        for (int s = 0; s < n; s++)
+        {
+            for (int t = 0; t < n; t++)
+            {
+                if (s == t)
+                    continue;
+                double distance = distance(s, t);
+                if (distance == Double.POSITIVE_INFINITY)
+                {
+                    if (!use_max)
+                        return Double.POSITIVE_INFINITY;
+                }
+                else
+                    diameter = Math.max(diameter, distance);
+            }
+        }
+        return diameter;
+    }
+
+    private int reachableCount(int s)
+    {
+        int count = 0;
+        for (int t = 0; t < compact.getVertexCount(); t++)
+            if (distance(s, t) != Double.POSITIVE_INFINITY)
+                count++;
+        return count;
+    }
+
+    private int checkedIndex(V v)
+    {
+        int index = compact.getVertexId(v);
+        if (index < 0)
+            throw new IllegalArgumentException("Vertex " + v + " is not an element of the graph");
+        return index;
+    }
+
+    private Number box(double distance)
+    {
+        if (edge_weights == null)
+            return (int) distance;
+        return distance;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void computeIfNeeded()
+    {
+        if (compact != null && compact.getVertexCount() == graph.getVertexCount()
+                && compact.getEdgeCount() == graph.getEdgeCount())
+            return;
+        reset();
+        CompactGraph<V,E> compact = graph instanceof CompactGraph ?
+                (CompactGraph<V,E>) graph : CompactGraph.copyOf(graph);
+        int n = compact.getVertexCount();
+
+        double[] out_weights = null;
+        double[] in_weights = null;
+        if (edge_weights != null)
+        {
+            out_weights = readWeights(compact, compact.getOutEdgeIds());
+            in_weights = readWeights(compact, compact.getInEdgeIds());
+        }
+
+        if (landmark_count > 0 && landmark_count < n)
+        {
+            landmarks = chooseLandmarks(compact, landmark_count);
+            to_landmark = new float[landmarks.length * n];
+            from_landmark = new float[landmarks.length * n];
+            new SearchTask(compact.getInOffsets(), compact.getInSources(), in_weights,
+                    landmarks, 0, landmarks.length, to_landmark, null).searchAll();
+            new SearchTask(compact.getOutOffsets(), compact.getOutTargets(), out_weights,
+                    landmarks, 0, landmarks.length, from_landmark, null).searchAll();
+        }
+        else
+        {
+            if ((long) n * n > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Too many vertices (" + n
+                        + ") for an all-pairs distance matrix; use setLandmarks()");
+            int[] sources = new int[n];
+            for (int i = 0; i < n; i++)
+                sources[i] = i;
+            if (edge_weights == null)
+            {
+                hops = new short[n * n];
+                new SearchTask(compact.getOutOffsets(), compact.getOutTargets(), null,
+                        sources, 0, n, null, hops).searchAll();
+            }
+            else
+            {
+                lengths = new float[n * n];
+                new SearchTask(compact.getOutOffsets(), compact.getOutTargets(), out_weights,
+                        sources, 0, n, lengths, null).searchAll();
+            }
+        }
+        this.compact = compact;
+    }
+
+    private double[] readWeights(CompactGraph<V,E> compact, int[] edges)
+    {
+        double[] weights = new double[edges.length];
+        for (int k = 0; k < edges.length; k++)
+        {
+            weights[k] = edge_weights.apply(compact.getEdge(edges[k])).doubleValue();
+            if (weights[k] < 0)
+                throw new IllegalArgumentException("Edges weights must be non-negative");
+        }
+        return weights;
+    }
+
+    /**
+     * @return the ids of the <code>count</code> vertices of highest degree
+     */
+    private static int[] chooseLandmarks(CompactGraph<?,?> compact, int count)
+    {
+        final int[] offsets = compact.getIncidentOffsets();
+        Integer[] ids = new Integer[compact.getVertexCount()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = i;
+        Arrays.sort(ids, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Integer.compare(offsets[b + 1] - offsets[b], offsets[a + 1] - offsets[a]);
+            }
+        });
+        int[] landmarks = new int[count];
+        for (int l = 0; l < count; l++)
+            landmarks[l] = ids[l];
+        return landmarks;
+    }
+
+    /**
+     * Searches from sources[from..to), writing the distances from sources[i] into row
+     * i of whichever of <code>lengths</code> and <code>hops</code> is not null.
+     */
+    @SuppressWarnings("serial")
+    private static class SearchTask extends RecursiveAction
+    {
+        private final int[] offsets;
+        private final int[] ends;
+        private final double[] weights;
+        private final int[] sources;
+        private final int from;
+        private final int to;
+        private final float[] lengths;
+        private final short[] hops;
+
+        SearchTask(int[] offsets, int[] ends, double[] weights, int[] sources,
+                int from, int to, float[] lengths, short[] hops)
+        {
+            this.offsets = offsets;
+            this.ends = ends;
+            this.weights = weights;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+            this.lengths = lengths;
+            this.hops = hops;
+        }
+
+        void searchAll()
+        {
+            if (to - from <= SOURCES_PER_TASK)
+                compute();
+            else
+                ForkJoinPool.commonPool().invoke(this);
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > SOURCES_PER_TASK)
+            {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SearchTask(offsets, ends, weights, sources, from, mid, lengths, hops),
+                        new SearchTask(offsets, ends, weights, sources, mid, to, lengths, hops));
+                return;
+            }
+            int n = offsets.length - 1;
+            if (weights == null)
+            {
+                int[] distance = new int[n];
+                int[] queue = new int[n];
+                for (int i = from; i < to; i++)
+                {
+                    breadthFirst(sources[i], distance, queue);
+                    int row = i * n;
+                    for (int v = 0; v < n; v++)
+                    {
+                        if (hops != null)
+                            hops[row + v] = distance[v] < 0 ? NO_PATH : (short) distance[v];
+                        else
+                            lengths[row + v] = distance[v] < 0 ? Float.POSITIVE_INFINITY : distance[v];
+                    }
+                }
+            }
+            else
+            {
+                double[] distance = new double[n];
+                PathHeap heap = new PathHeap();
+                for (int i = from; i < to; i++)
+                {
+                    dijkstra(sources[i], distance, heap);
+                    int row = i * n;
+                    for (int v = 0; v < n; v++)
+                        lengths[row + v] = (float) distance[v];
+                }
+            }
+        }
+
+        private void breadthFirst(int source, int[] distance, int[] queue)
+        {
+            Arrays.fill(distance, -1);
+            distance[source] = 0;
+            queue[0] = source;
+            int tail = 1;
+            for (int head = 0; head < tail; head++)
+            {
+                int w = queue[head];
+                for (int k = offsets[w]; k < offsets[w + 1]; k++)
+                {
+                    int x = ends[k];
+                    if (distance[x] < 0)
+                    {
+                        distance[x] = distance[w] + 1;
+                        queue[tail++] = x;
+                    }
+                }
+            }
+        }
+
+        private void dijkstra(int source, double[] distance, PathHeap heap)
+        {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            distance[source] = 0;
+            heap.add(0, source);
+            while (!heap.isEmpty())
+            {
+                double d = heap.peekDistance();
+                int w = heap.poll();
+                if (d > distance[w])
+                    continue;	// superseded by a shorter path found later
+                for (int k = offsets[w]; k < offsets[w + 1]; k++)
+                {
+                    int x = ends[k];
+                    double new_distance = d + weights[k];
+                    if (new_distance < distance[x])
+                    {
+                        distance[x] = new_distance;
+                        heap.add(new_distance, x);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A binary min-heap of (distance, vertex) entries.  A vertex may be added more
+     * than once; stale entries are skipped by the caller.
+     */
+    private static class PathHeap
+    {
+        private double[] distances = new double[64];
+        private int[] vertices = new int[64];
+        private int size;
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        double peekDistance()
+        {
+            return distances[0];
+        }
+
+        void add(double distance, int vertex)
+        {
+            if (size == distances.length)
+            {
+                distances = Arrays.copyOf(distances, size * 2);
+                vertices = Arrays.copyOf(vertices, size * 2);
+            }
+            int i = size++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] <= distance)
+                    break;
+                distances[i] = distances[parent];
+                vertices[i] = vertices[parent];
+                i = parent;
+            }
+            distances[i] = distance;
+            vertices[i] = vertex;
+        }
+
+        int poll()
+        {
+            int top = vertices[0];
+            size--;
+            double distance = distances[size];
+            int vertex = vertices[size];
+            int i = 0;
+            while (true)
+            {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && distances[child + 1] < distances[child])
+                    child++;
+                if (distance <= distances[child])
+                    break;
+                distances[i] = distances[child];
+                vertices[i] = vertices[child];
+                i = child;
+            }
+            distances[i] = distance;
+            vertices[i] = vertex;
+            return top;
+        }
+    }
+}
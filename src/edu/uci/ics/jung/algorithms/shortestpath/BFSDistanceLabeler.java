@@ -10,6 +10,7 @@
 package edu.uci.ics.jung.algorithms.shortestpath;
 
 
+import edu.uci.ics.jung.graph.CompactGraph;
 import edu.uci.ics.jung.graph.Hypergraph;
 
 import java.util.*;
@@ -110,6 +111,11 @@ public class BFSDistanceLabeler<V, E> {
 
         initialize(graph,rootSet);
 
+        if (graph instanceof CompactGraph) {
+            labelDistances((CompactGraph<V,E>) graph);
+            return;
+        }
+
         int distance = 1;
         while (true) {
             List<V> newList = new ArrayList<V>();
@@ -130,6 +136,52 @@ public class BFSDistanceLabeler<V, E> {
         }
     }
 
+    /**
+     * Breadth-first search over the successor rows of a compact graph, using
+     * vertex ids in place of the hash lookups of the general case. Visits
+     * vertices and records predecessors in the same order.
+     */
+    private void labelDistances(CompactGraph<V,E> graph) {
+        int[] offsets = graph.getSuccessorOffsets();
+        int[] successors = graph.getSuccessorIds();
+        int n = graph.getVertexCount();
+        int[] distances = new int[n];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[n];
+        int tail = 0;
+        for (V v : mCurrentList) {
+            int id = graph.getVertexId(v);
+            if (id >= 0 && distances[id] < 0) {
+                distances[id] = 0;
+                queue[tail++] = id;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int current = queue[head];
+            V currentVertex = graph.getVertex(current);
+            int distance = distances[current] + 1;
+            for (int k = offsets[current]; k < offsets[current + 1]; k++) {
+                int next = successors[k];
+                if (distances[next] < 0) {
+                    distances[next] = distance;
+                    queue[tail++] = next;
+                    V nextVertex = graph.getVertex(next);
+                    distanceDecorator.put(nextVertex, Integer.valueOf(distance));
+                    mVerticesInOrderVisited.add(nextVertex);
+                    mUnvisitedVertices.remove(nextVertex);
+                }
+                if (distances[next] == distance) {
+                    addPredecessor(currentVertex, graph.getVertex(next));
+                }
+            }
+        }
+
+        for(V v : mUnvisitedVertices) {
+            distanceDecorator.put(v,Integer.valueOf(-1));
+        }
+    }
+
     /**
      * Computes the distances of all the node from the specified root node. Also keeps track
      * of the predecessors of each node traversed as well as the order of nodes traversed.
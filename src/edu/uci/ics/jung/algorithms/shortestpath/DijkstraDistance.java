@@ -15,6 +15,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import edu.uci.ics.jung.algorithms.util.BasicMapEntry;
 import edu.uci.ics.jung.algorithms.util.MapBinaryHeap;
+import edu.uci.ics.jung.graph.CompactGraph;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.Hypergraph;
 
@@ -162,6 +163,9 @@ public class DijkstraDistance<V,E> implements Distance<V>
             return sd.distances;
         }
         
+        @SuppressWarnings("unchecked")
+        CompactGraph<V,E> compact = g instanceof CompactGraph ? (CompactGraph<V,E>) g : null;
+        
         while (!sd.unknownVertices.isEmpty() && (sd.distances.size() < numDests || !to_get.isEmpty()))
         {
             Map.Entry<V,Number> p = sd.getNextVertex();
@@ -184,32 +188,53 @@ public class DijkstraDistance<V,E> implements Distance<V>
                 break;
             }
             
-            for (E e : getEdgesToCheck(v) )
+            if (compact != null)
+            {
+                // walk the out-edge row directly; the far end of each entry is
+                // the only incident vertex not already in sd.distances
+                int[] offsets = compact.getOutOffsets();
+                int[] edges = compact.getOutEdgeIds();
+                int[] ends = compact.getOutTargets();
+                int v_id = compact.getVertexId(v);
+                for (int k = offsets[v_id]; k < offsets[v_id + 1]; k++)
+                    relax(sd, v_dist, compact.getEdge(edges[k]), compact.getVertex(ends[k]));
+            }
+            else
             {
-                for (V w : g.getIncidentVertices(e))
+                for (E e : getEdgesToCheck(v) )
                 {
-                    if (!sd.distances.containsKey(w))
-                    {
-                        double edge_weight = nev.apply(e).doubleValue();
-                        if (edge_weight < 0)
-                            throw new IllegalArgumentException("Edges weights must be non-negative");
-                        double new_dist = v_dist + edge_weight;
-                        if (!sd.estimatedDistances.containsKey(w))
-                        {
-                            sd.createRecord(w, e, new_dist);
-                        }
-                        else
-                        {
-                            double w_dist = sd.estimatedDistances.get(w).doubleValue();
-                            if (new_dist < w_dist) // update tentative distance & path for w
-                                sd.update(w, e, new_dist);
-                        }
-                    }
+                    for (V w : g.getIncidentVertices(e))
+                        relax(sd, v_dist, e, w);
                 }
             }
         }
         return sd.distances;
     }
+    
+    /**
+     * Updates the tentative distance to <code>w</code> if reaching it over <code>e</code>
+     * from a vertex at distance <code>v_dist</code> is shorter.
+     */
+    private void relax(SourceData sd, double v_dist, E e, V w)
+    {
+        if (!sd.distances.containsKey(w))
+        {
+            double edge_weight = nev.apply(e).doubleValue();
+            if (edge_weight < 0)
+                throw new IllegalArgumentException("Edges weights must be non-negative");
+            double new_dist = v_dist + edge_weight;
+            if (!sd.estimatedDistances.containsKey(w))
+            {
+                sd.createRecord(w, e, new_dist);
+            }
+            else
+            {
+                double w_dist = sd.estimatedDistances.get(w).doubleValue();
+                if (new_dist < w_dist) // update tentative distance & path for w
+                    sd.update(w, e, new_dist);
+            }
+        }
+    }
 
     protected SourceData getSourceData(V source)
     {
@@ -223,7 +248,8 @@ public class DijkstraDistance<V,E> implements Distance<V>
      * Returns the set of edges incident to <code>v</code> that should be tested.
      * By default, this is the set of outgoing edges for instances of <code>Graph</code>,
      * the set of incident edges for instances of <code>Hypergraph</code>,
-     * and is otherwise undefined.
+     * and is otherwise undefined.  Not consulted for instances of 
+     * <code>CompactGraph</code>, whose out-edge rows are read directly.
      * @param v the vertex whose edges are to be checked
      * @return the set of edges incident to {@code v} that should be tested
      */
@@ -108,6 +108,9 @@ public class DistanceStatistics
      */
     public static <V, E> double diameter(Hypergraph<V,E> g, Distance<V> d, boolean use_max)
     {
+        if (d instanceof AllPairsDistance && ((AllPairsDistance<?,?>) d).getGraph() == g)
+            return ((AllPairsDistance<?,?>) d).getDiameter(use_max);
+        
         double diameter = 0;
         Collection<V> vertices = g.getVertices();
         for(V v : vertices) {
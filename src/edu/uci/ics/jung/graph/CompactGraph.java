@@ -0,0 +1,886 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.graph;
+
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+import java.util.*;
+
+/**
+ * An immutable <code>Graph</code> that stores its structure in flat integer arrays.
+ *
+ * <p>Each vertex and edge is assigned an integer id (in the iteration order of the
+ * graph it was copied from), and the in-, out- and incident edges of every vertex are
+ * stored in compressed sparse row form: the edges of vertex <code>v</code> occupy
+ * positions <code>offsets[v]</code> (inclusive) to <code>offsets[v+1]</code> (exclusive)
+ * of the corresponding edge id and neighbor id arrays.  Within a row, entries are
+ * sorted by neighbor id.
+ *
+ * <p>Besides the usual <code>Graph</code> methods, which return lightweight views over
+ * these arrays, the arrays themselves are exposed so that algorithms can walk the
+ * graph without hashing or allocating per visited edge.  They are shared, not copied,
+ * and must not be modified.
+ *
+ * <p>Like <code>SparseGraph</code>, directed and undirected edges may be mixed; an
+ * undirected edge is both an in-edge and an out-edge of each of its endpoints.
+ * Parallel edges are permitted.  All mutators throw
+ * <code>UnsupportedOperationException</code>; create a new instance with
+ * {@link #copyOf(Graph)} when the source graph changes.  Graphs which are
+ * read or generated in bulk can be built directly from their endpoint arrays
+ * with {@link #of(List, List, int[], int[], boolean[], EdgeType)}.
+ */
+@SuppressWarnings("serial")
+public class CompactGraph<V,E>
+    extends AbstractGraph<V,E>
+    implements Graph<V,E>
+{
+    private final Object[] vertices;
+    private final Object[] edges;
+    private final Map<V,Integer> vertex_ids;
+    private final Map<E,Integer> edge_ids;
+
+    private final int[] edge_source;
+    private final int[] edge_dest;
+    private final boolean[] edge_directed;
+    private final int directed_count;
+    private final EdgeType default_edge_type;
+
+    // rows of edge ids, and the vertex at the other end of each
+    private final int[] out_offsets, out_edges, out_targets;
+    private final int[] in_offsets, in_edges, in_sources;
+    private final int[] incident_offsets, incident_edges, opposites;
+
+    // the same rows with repeated neighbors removed; these share the arrays
+    // above when the graph has no parallel edges
+    private final int[] successor_offsets, successors;
+    private final int[] predecessor_offsets, predecessors;
+    private final int[] neighbor_offsets, neighbors;
+
+    /**
+     * Returns a compact copy of <code>graph</code>.  The copy implements
+     * <code>DirectedGraph</code> or <code>UndirectedGraph</code> if <code>graph</code> does.
+     *
+     * @param <V> the vertex type
+     * @param <E> the edge type
+     * @param graph the graph to copy
+     * @return an immutable compact copy of {@code graph}
+     */
+    public static <V,E> CompactGraph<V,E> copyOf(Graph<V,E> graph)
+    {
+        if (graph instanceof DirectedGraph)
+            return new Directed<V,E>(graph);
+        if (graph instanceof UndirectedGraph)
+            return new Undirected<V,E>(graph);
+        return new CompactGraph<V,E>(graph);
+    }
+
+    /**
+     * Returns a graph with the specified vertices, and an edge
+     * <code>edges.get(i)</code> from <code>vertices.get(sources[i])</code> to
+     * <code>vertices.get(dests[i])</code> for each <code>i</code>, without
+     * building an intermediate graph.  Vertex and edge ids are the list indices.
+     * The result implements <code>DirectedGraph</code> (or
+     * <code>UndirectedGraph</code>) if every edge has that type and it is the
+     * default edge type.
+     *
+     * @param <V> the vertex type
+     * @param <E> the edge type
+     * @param vertices the vertices of the graph
+     * @param edges the edges of the graph
+     * @param sources the index in {@code vertices} of the source (first endpoint) of each edge
+     * @param dests the index in {@code vertices} of the destination (second endpoint) of each edge
+     * @param directed whether each edge is directed
+     * @param default_edge_type the default edge type of the graph
+     * @return an immutable compact graph with the specified structure
+     * @throws IllegalArgumentException if a vertex or edge appears twice, or an
+     * endpoint index is out of range
+     */
+    public static <V,E> CompactGraph<V,E> of(List<? extends V> vertices, List<? extends E> edges,
+            int[] sources, int[] dests, boolean[] directed, EdgeType default_edge_type)
+    {
+        int n = vertices.size();
+        int m = edges.size();
+        if (sources.length < m || dests.length < m || directed.length < m)
+            throw new IllegalArgumentException("Endpoint arrays must have an entry for each edge");
+
+        Object[] vertex_array = vertices.toArray();
+        Map<V,Integer> vertex_ids = new HashMap<V,Integer>(n * 2);
+        for (int i = 0; i < n; i++)
+            if (vertex_ids.put(vertices.get(i), i) != null)
+                throw new IllegalArgumentException("Duplicate vertex: " + vertices.get(i));
+
+        Object[] edge_array = edges.toArray();
+        Map<E,Integer> edge_ids = new HashMap<E,Integer>(m * 2);
+        int directed_count = 0;
+        for (int i = 0; i < m; i++)
+        {
+            if (edge_ids.put(edges.get(i), i) != null)
+                throw new IllegalArgumentException("Duplicate edge: " + edges.get(i));
+            if (sources[i] < 0 || sources[i] >= n || dests[i] < 0 || dests[i] >= n)
+                throw new IllegalArgumentException("Endpoint of edge " + edges.get(i) +
+                        " is not a vertex index: " + sources[i] + ", " + dests[i]);
+            if (directed[i])
+                directed_count++;
+        }
+        int[] edge_source = Arrays.copyOf(sources, m);
+        int[] edge_dest = Arrays.copyOf(dests, m);
+        boolean[] edge_directed = Arrays.copyOf(directed, m);
+
+        if (default_edge_type == EdgeType.DIRECTED && directed_count == m)
+            return new Directed<V,E>(vertex_array, vertex_ids, edge_array, edge_ids,
+                    edge_source, edge_dest, edge_directed, default_edge_type);
+        if (default_edge_type == EdgeType.UNDIRECTED && directed_count == 0)
+            return new Undirected<V,E>(vertex_array, vertex_ids, edge_array, edge_ids,
+                    edge_source, edge_dest, edge_directed, default_edge_type);
+        return new CompactGraph<V,E>(vertex_array, vertex_ids, edge_array, edge_ids,
+                edge_source, edge_dest, edge_directed, default_edge_type);
+    }
+
+    /**
+     * Creates a compact copy of <code>graph</code>.
+     *
+     * @param graph the graph to copy
+     * @see #copyOf(Graph)
+     */
+    public CompactGraph(Graph<V,E> graph)
+    {
+        this(new Snapshot<V,E>(graph));
+    }
+
+    private CompactGraph(Snapshot<V,E> snapshot)
+    {
+        this(snapshot.vertices, snapshot.vertex_ids, snapshot.edges, snapshot.edge_ids,
+                snapshot.edge_source, snapshot.edge_dest, snapshot.edge_directed,
+                snapshot.default_edge_type);
+    }
+
+    private CompactGraph(Object[] vertices, Map<V,Integer> vertex_ids,
+            Object[] edges, Map<E,Integer> edge_ids,
+            int[] edge_source, int[] edge_dest, boolean[] edge_directed,
+            EdgeType default_edge_type)
+    {
+        int n = vertices.length;
+        int m = edges.length;
+        this.vertices = vertices;
+        this.vertex_ids = vertex_ids;
+        this.edges = edges;
+        this.edge_ids = edge_ids;
+        this.edge_source = edge_source;
+        this.edge_dest = edge_dest;
+        this.edge_directed = edge_directed;
+        int directed = 0;
+        for (int e = 0; e < m; e++)
+            if (edge_directed[e])
+                directed++;
+        this.directed_count = directed;
+        this.default_edge_type = default_edge_type;
+
+        // count the row lengths...
+        out_offsets = new int[n + 1];
+        in_offsets = new int[n + 1];
+        incident_offsets = new int[n + 1];
+        for (int e = 0; e < m; e++)
+        {
+            int s = edge_source[e];
+            int d = edge_dest[e];
+            out_offsets[s + 1]++;
+            in_offsets[d + 1]++;
+            incident_offsets[s + 1]++;
+            if (s != d)
+            {
+                incident_offsets[d + 1]++;
+                if (!edge_directed[e])
+                {
+                    out_offsets[d + 1]++;
+                    in_offsets[s + 1]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++)
+        {
+            out_offsets[v + 1] += out_offsets[v];
+            in_offsets[v + 1] += in_offsets[v];
+            incident_offsets[v + 1] += incident_offsets[v];
+        }
+
+        // ...then fill them in, packing (neighbor, edge) so each row can be sorted in place
+        long[] out = new long[out_offsets[n]];
+        long[] in = new long[in_offsets[n]];
+        long[] incident = new long[incident_offsets[n]];
+        int[] out_fill = Arrays.copyOf(out_offsets, n);
+        int[] in_fill = Arrays.copyOf(in_offsets, n);
+        int[] incident_fill = Arrays.copyOf(incident_offsets, n);
+        for (int e = 0; e < m; e++)
+        {
+            int s = edge_source[e];
+            int d = edge_dest[e];
+            out[out_fill[s]++] = pack(d, e);
+            in[in_fill[d]++] = pack(s, e);
+            incident[incident_fill[s]++] = pack(d, e);
+            if (s != d)
+            {
+                incident[incident_fill[d]++] = pack(s, e);
+                if (!edge_directed[e])
+                {
+                    out[out_fill[d]++] = pack(s, e);
+                    in[in_fill[s]++] = pack(d, e);
+                }
+            }
+        }
+
+        out_edges = new int[out.length];
+        out_targets = new int[out.length];
+        unpack(out, out_offsets, out_targets, out_edges);
+        in_edges = new int[in.length];
+        in_sources = new int[in.length];
+        unpack(in, in_offsets, in_sources, in_edges);
+        incident_edges = new int[incident.length];
+        opposites = new int[incident.length];
+        unpack(incident, incident_offsets, opposites, incident_edges);
+
+        int[][] distinct = distinct(out_offsets, out_targets);
+        successor_offsets = distinct[0];
+        successors = distinct[1];
+        distinct = distinct(in_offsets, in_sources);
+        predecessor_offsets = distinct[0];
+        predecessors = distinct[1];
+        distinct = distinct(incident_offsets, opposites);
+        neighbor_offsets = distinct[0];
+        neighbors = distinct[1];
+    }
+
+    /**
+     * The arrays of a <code>CompactGraph</code>, read from another graph.
+     */
+    private static class Snapshot<V,E>
+    {
+        final Object[] vertices;
+        final Map<V,Integer> vertex_ids;
+        final Object[] edges;
+        final Map<E,Integer> edge_ids;
+        final int[] edge_source;
+        final int[] edge_dest;
+        final boolean[] edge_directed;
+        final EdgeType default_edge_type;
+
+        Snapshot(Graph<V,E> graph)
+        {
+            int n = graph.getVertexCount();
+            int m = graph.getEdgeCount();
+
+            vertices = new Object[n];
+            vertex_ids = new HashMap<V,Integer>(n * 2);
+            int i = 0;
+            for (V v : graph.getVertices())
+            {
+                vertices[i] = v;
+                vertex_ids.put(v, i++);
+            }
+
+            edges = new Object[m];
+            edge_ids = new HashMap<E,Integer>(m * 2);
+            edge_source = new int[m];
+            edge_dest = new int[m];
+            edge_directed = new boolean[m];
+            i = 0;
+            for (E e : graph.getEdges())
+            {
+                Pair<V> endpoints = graph.getEndpoints(e);
+                edges[i] = e;
+                edge_ids.put(e, i);
+                edge_source[i] = vertex_ids.get(endpoints.getFirst());
+                edge_dest[i] = vertex_ids.get(endpoints.getSecond());
+                edge_directed[i] = graph.getEdgeType(e) == EdgeType.DIRECTED;
+                i++;
+            }
+            default_edge_type = graph.getDefaultEdgeType();
+        }
+    }
+
+    private static long pack(int neighbor, int edge)
+    {
+        return ((long) neighbor << 32) | edge;
+    }
+
+    private static void unpack(long[] packed, int[] offsets, int[] neighbor_ids, int[] edge_ids)
+    {
+        for (int v = 0; v < offsets.length - 1; v++)
+            Arrays.sort(packed, offsets[v], offsets[v + 1]);
+        for (int k = 0; k < packed.length; k++)
+        {
+            neighbor_ids[k] = (int) (packed[k] >>> 32);
+            edge_ids[k] = (int) packed[k];
+        }
+    }
+
+    /**
+     * Removes repeated neighbors from each (sorted) row, returning the input
+     * arrays themselves if there are none.
+     */
+    private static int[][] distinct(int[] offsets, int[] neighbor_ids)
+    {
+        int n = offsets.length - 1;
+        int[] distinct_offsets = new int[n + 1];
+        for (int v = 0; v < n; v++)
+        {
+            int count = 0;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++)
+                if (k == offsets[v] || neighbor_ids[k] != neighbor_ids[k - 1])
+                    count++;
+            distinct_offsets[v + 1] = distinct_offsets[v] + count;
+        }
+        if (distinct_offsets[n] == neighbor_ids.length)
+            return new int[][] { offsets, neighbor_ids };
+
+        int[] distinct_ids = new int[distinct_offsets[n]];
+        int j = 0;
+        for (int v = 0; v < n; v++)
+            for (int k = offsets[v]; k < offsets[v + 1]; k++)
+                if (k == offsets[v] || neighbor_ids[k] != neighbor_ids[k - 1])
+                    distinct_ids[j++] = neighbor_ids[k];
+        return new int[][] { distinct_offsets, distinct_ids };
+    }
+
+    /**
+     * @param vertex the vertex whose id is to be returned
+     * @return the id of {@code vertex}, or -1 if it is not in this graph
+     */
+    public int getVertexId(V vertex)
+    {
+        Integer id = vertex_ids.get(vertex);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id a vertex id in the range [0, getVertexCount())
+     * @return the vertex with that id
+     */
+    @SuppressWarnings("unchecked")
+    public V getVertex(int id)
+    {
+        return (V) vertices[id];
+    }
+
+    /**
+     * @param edge the edge whose id is to be returned
+     * @return the id of {@code edge}, or -1 if it is not in this graph
+     */
+    public int getEdgeId(E edge)
+    {
+        Integer id = edge_ids.get(edge);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id an edge id in the range [0, getEdgeCount())
+     * @return the edge with that id
+     */
+    @SuppressWarnings("unchecked")
+    public E getEdge(int id)
+    {
+        return (E) edges[id];
+    }
+
+    /**
+     * @return the row offsets of the out-edges, indexed by vertex id (length n+1)
+     */
+    public int[] getOutOffsets()
+    {
+        return out_offsets;
+    }
+
+    /**
+     * @return the ids of the out-edges of each vertex, in rows given by {@link #getOutOffsets()}
+     */
+    public int[] getOutEdgeIds()
+    {
+        return out_edges;
+    }
+
+    /**
+     * @return the vertex at the other end of each entry of {@link #getOutEdgeIds()}
+     */
+    public int[] getOutTargets()
+    {
+        return out_targets;
+    }
+
+    /**
+     * @return the row offsets of the in-edges, indexed by vertex id (length n+1)
+     */
+    public int[] getInOffsets()
+    {
+        return in_offsets;
+    }
+
+    /**
+     * @return the ids of the in-edges of each vertex, in rows given by {@link #getInOffsets()}
+     */
+    public int[] getInEdgeIds()
+    {
+        return in_edges;
+    }
+
+    /**
+     * @return the vertex at the other end of each entry of {@link #getInEdgeIds()}
+     */
+    public int[] getInSources()
+    {
+        return in_sources;
+    }
+
+    /**
+     * @return the row offsets of the incident edges, indexed by vertex id (length n+1)
+     */
+    public int[] getIncidentOffsets()
+    {
+        return incident_offsets;
+    }
+
+    /**
+     * @return the ids of the incident edges of each vertex, in rows given by
+     * {@link #getIncidentOffsets()}; self-loops appear once
+     */
+    public int[] getIncidentEdgeIds()
+    {
+        return incident_edges;
+    }
+
+    /**
+     * @return the vertex at the other end of each entry of {@link #getIncidentEdgeIds()}
+     */
+    public int[] getOpposites()
+    {
+        return opposites;
+    }
+
+    /**
+     * @return the row offsets of {@link #getSuccessorIds()}, indexed by vertex id
+     */
+    public int[] getSuccessorOffsets()
+    {
+        return successor_offsets;
+    }
+
+    /**
+     * @return the distinct successors of each vertex, in increasing id order
+     */
+    public int[] getSuccessorIds()
+    {
+        return successors;
+    }
+
+    /**
+     * @return the row offsets of {@link #getPredecessorIds()}, indexed by vertex id
+     */
+    public int[] getPredecessorOffsets()
+    {
+        return predecessor_offsets;
+    }
+
+    /**
+     * @return the distinct predecessors of each vertex, in increasing id order
+     */
+    public int[] getPredecessorIds()
+    {
+        return predecessors;
+    }
+
+    /**
+     * @param edge_id an edge id
+     * @return the id of the first endpoint of the edge (its source, if directed)
+     */
+    public int getSourceId(int edge_id)
+    {
+        return edge_source[edge_id];
+    }
+
+    /**
+     * @param edge_id an edge id
+     * @return the id of the second endpoint of the edge (its destination, if directed)
+     */
+    public int getDestId(int edge_id)
+    {
+        return edge_dest[edge_id];
+    }
+
+    /**
+     * @param edge_id an edge id
+     * @return {@code true} if the edge is directed
+     */
+    public boolean isDirected(int edge_id)
+    {
+        return edge_directed[edge_id];
+    }
+
+    private int id(V vertex)
+    {
+        Integer id = vertex_ids.get(vertex);
+        return id == null ? -1 : id;
+    }
+
+    private int checkedId(V vertex)
+    {
+        int v = id(vertex);
+        if (v < 0)
+            throw new IllegalArgumentException(vertex + " is not a vertex in this graph");
+        return v;
+    }
+
+    private Collection<V> vertexRow(int[] offsets, int[] ids, V vertex)
+    {
+        int v = id(vertex);
+        if (v < 0)
+            return null;
+        return new Row<V>(vertices, ids, offsets[v], offsets[v + 1]);
+    }
+
+    private Collection<E> edgeRow(int[] offsets, int[] ids, V vertex)
+    {
+        int v = id(vertex);
+        if (v < 0)
+            return null;
+        return new Row<E>(edges, ids, offsets[v], offsets[v + 1]);
+    }
+
+    public Collection<E> getInEdges(V vertex)
+    {
+        return edgeRow(in_offsets, in_edges, vertex);
+    }
+
+    public Collection<E> getOutEdges(V vertex)
+    {
+        return edgeRow(out_offsets, out_edges, vertex);
+    }
+
+    public Collection<V> getPredecessors(V vertex)
+    {
+        return vertexRow(predecessor_offsets, predecessors, vertex);
+    }
+
+    public Collection<V> getSuccessors(V vertex)
+    {
+        return vertexRow(successor_offsets, successors, vertex);
+    }
+
+    public Collection<V> getNeighbors(V vertex)
+    {
+        return vertexRow(neighbor_offsets, neighbors, vertex);
+    }
+
+    public Collection<E> getIncidentEdges(V vertex)
+    {
+        return edgeRow(incident_offsets, incident_edges, vertex);
+    }
+
+    @Override
+    public int inDegree(V vertex)
+    {
+        int v = checkedId(vertex);
+        return in_offsets[v + 1] - in_offsets[v];
+    }
+
+    @Override
+    public int outDegree(V vertex)
+    {
+        int v = checkedId(vertex);
+        return out_offsets[v + 1] - out_offsets[v];
+    }
+
+    @Override
+    public int getPredecessorCount(V vertex)
+    {
+        int v = checkedId(vertex);
+        return predecessor_offsets[v + 1] - predecessor_offsets[v];
+    }
+
+    @Override
+    public int getSuccessorCount(V vertex)
+    {
+        int v = checkedId(vertex);
+        return successor_offsets[v + 1] - successor_offsets[v];
+    }
+
+    @Override
+    public int getNeighborCount(V vertex)
+    {
+        int v = checkedId(vertex);
+        return neighbor_offsets[v + 1] - neighbor_offsets[v];
+    }
+
+    @Override
+    public int degree(V vertex)
+    {
+        int v = checkedId(vertex);
+        return incident_offsets[v + 1] - incident_offsets[v];
+    }
+
+    @Override
+    public E findEdge(V v1, V v2)
+    {
+        int s = id(v1);
+        int d = id(v2);
+        if (s < 0 || d < 0)
+            return null;
+        int k = Arrays.binarySearch(out_targets, out_offsets[s], out_offsets[s + 1], d);
+        return k < 0 ? null : getEdge(out_edges[k]);
+    }
+
+    @Override
+    public Collection<E> findEdgeSet(V v1, V v2)
+    {
+        int s = id(v1);
+        int d = id(v2);
+        if (s < 0 || d < 0)
+            return null;
+        Collection<E> found = new ArrayList<E>(2);
+        for (int k = out_offsets[s]; k < out_offsets[s + 1] && out_targets[k] <= d; k++)
+            if (out_targets[k] == d)
+                found.add(getEdge(out_edges[k]));
+        return Collections.unmodifiableCollection(found);
+    }
+
+    public Pair<V> getEndpoints(E edge)
+    {
+        Integer e = edge_ids.get(edge);
+        if (e == null)
+            return null;
+        return new Pair<V>(getVertex(edge_source[e]), getVertex(edge_dest[e]));
+    }
+
+    @Override
+    public V getOpposite(V vertex, E edge)
+    {
+        Integer e = edge_ids.get(edge);
+        int v = id(vertex);
+        if (e != null && v >= 0)
+        {
+            if (edge_source[e] == v)
+                return getVertex(edge_dest[e]);
+            if (edge_dest[e] == v)
+                return getVertex(edge_source[e]);
+        }
+        throw new IllegalArgumentException(vertex + " is not incident to " + edge + " in this graph");
+    }
+
+    public EdgeType getEdgeType(E edge)
+    {
+        Integer e = edge_ids.get(edge);
+        if (e == null)
+            return null;
+        return edge_directed[e] ? EdgeType.DIRECTED : EdgeType.UNDIRECTED;
+    }
+
+    public V getSource(E directed_edge)
+    {
+        Integer e = edge_ids.get(directed_edge);
+        if (e == null || !edge_directed[e])
+            return null;
+        return getVertex(edge_source[e]);
+    }
+
+    public V getDest(E directed_edge)
+    {
+        Integer e = edge_ids.get(directed_edge);
+        if (e == null || !edge_directed[e])
+            return null;
+        return getVertex(edge_dest[e]);
+    }
+
+    public boolean isSource(V vertex, E edge)
+    {
+        Integer e = edge_ids.get(edge);
+        int v = id(vertex);
+        return e != null && v >= 0 && edge_directed[e] && edge_source[e] == v;
+    }
+
+    public boolean isDest(V vertex, E edge)
+    {
+        Integer e = edge_ids.get(edge);
+        int v = id(vertex);
+        return e != null && v >= 0 && edge_directed[e] && edge_dest[e] == v;
+    }
+
+    public Collection<E> getEdges()
+    {
+        return new Elements<E>(edges, edge_ids);
+    }
+
+    public Collection<V> getVertices()
+    {
+        return new Elements<V>(vertices, vertex_ids);
+    }
+
+    public Collection<E> getEdges(EdgeType edgeType)
+    {
+        if (edgeType != EdgeType.DIRECTED && edgeType != EdgeType.UNDIRECTED)
+            return null;
+        boolean directed = edgeType == EdgeType.DIRECTED;
+        List<E> typed = new ArrayList<E>(directed ? directed_count : edges.length - directed_count);
+        for (int e = 0; e < edges.length; e++)
+            if (edge_directed[e] == directed)
+                typed.add(getEdge(e));
+        return Collections.unmodifiableList(typed);
+    }
+
+    public boolean containsVertex(V vertex)
+    {
+        return vertex_ids.containsKey(vertex);
+    }
+
+    public boolean containsEdge(E edge)
+    {
+        return edge_ids.containsKey(edge);
+    }
+
+    public int getEdgeCount()
+    {
+        return edges.length;
+    }
+
+    public int getVertexCount()
+    {
+        return vertices.length;
+    }
+
+    public int getEdgeCount(EdgeType edge_type)
+    {
+        if (edge_type == EdgeType.DIRECTED)
+            return directed_count;
+        if (edge_type == EdgeType.UNDIRECTED)
+            return edges.length - directed_count;
+        return 0;
+    }
+
+    public EdgeType getDefaultEdgeType()
+    {
+        return default_edge_type;
+    }
+
+    public boolean addVertex(V vertex)
+    {
+        throw new UnsupportedOperationException("CompactGraph is immutable");
+    }
+
+    @Override
+    public boolean addEdge(E edge, Pair<? extends V> endpoints, EdgeType edgeType)
+    {
+        throw new UnsupportedOperationException("CompactGraph is immutable");
+    }
+
+    public boolean removeVertex(V vertex)
+    {
+        throw new UnsupportedOperationException("CompactGraph is immutable");
+    }
+
+    public boolean removeEdge(E edge)
+    {
+        throw new UnsupportedOperationException("CompactGraph is immutable");
+    }
+
+    /**
+     * All of the vertices or edges of the graph, with constant-time <code>contains</code>.
+     */
+    private static class Elements<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final Object[] elements;
+        private final Map<T,Integer> ids;
+
+        Elements(Object[] elements, Map<T,Integer> ids)
+        {
+            this.elements = elements;
+            this.ids = ids;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index)
+        {
+            return (T) elements[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return elements.length;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            return ids.containsKey(o);
+        }
+    }
+
+    /**
+     * One row of an adjacency array, mapped back to vertices or edges.
+     */
+    private static class Row<T> extends AbstractList<T> implements RandomAccess
+    {
+        private final Object[] elements;
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        Row(Object[] elements, int[] ids, int from, int to)
+        {
+            this.elements = elements;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index)
+        {
+            if (index < 0 || index >= to - from)
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            return (T) elements[ids[from + index]];
+        }
+
+        @Override
+        public int size()
+        {
+            return to - from;
+        }
+    }
+
+    private static class Directed<V,E> extends CompactGraph<V,E> implements DirectedGraph<V,E>
+    {
+        Directed(Graph<V,E> graph)
+        {
+            super(graph);
+        }
+
+        Directed(Object[] vertices, Map<V,Integer> vertex_ids, Object[] edges, Map<E,Integer> edge_ids,
+                int[] edge_source, int[] edge_dest, boolean[] edge_directed, EdgeType default_edge_type)
+        {
+            super(vertices, vertex_ids, edges, edge_ids, edge_source, edge_dest, edge_directed,
+                    default_edge_type);
+        }
+    }
+
+    private static class Undirected<V,E> extends CompactGraph<V,E> implements UndirectedGraph<V,E>
+    {
+        Undirected(Graph<V,E> graph)
+        {
+            super(graph);
+        }
+
+        Undirected(Object[] vertices, Map<V,Integer> vertex_ids, Object[] edges, Map<E,Integer> edge_ids,
+                int[] edge_source, int[] edge_dest, boolean[] edge_directed, EdgeType default_edge_type)
+        {
+            super(vertices, vertex_ids, edges, edge_ids, edge_source, edge_dest, edge_directed,
+                    default_edge_type);
+        }
+    }
+}
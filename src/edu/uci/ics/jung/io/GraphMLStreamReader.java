@@ -0,0 +1,674 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.io;
+
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import edu.uci.ics.jung.graph.CompactGraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a graph from a GraphML file in a single streaming pass, and builds it
+ * in bulk as a {@link CompactGraph}.  Intended for large files: vertices and
+ * edges are collected into arrays (sized from the <code>parse.nodes</code> and
+ * <code>parse.edges</code> attributes of the <code>graph</code> element when
+ * present, or from {@link #setExpectedSize(int, int)}), and only the
+ * <code>data</code> whose keys have been requested with {@link #readData(String...)}
+ * is kept; everything else is skipped without being decoded.  Input which
+ * is gzip-compressed is recognized and decompressed automatically.
+ *
+ * <p>Supports directed and undirected edges (including mixed ones),
+ * node and edge IDs, and <code>key</code> defaults.  Only the first
+ * <code>graph</code> in the file is read.  Hyperedges, nested graphs and ports
+ * are not supported, and descriptions are ignored; see {@link GraphMLReader}
+ * and {@link edu.uci.ics.jung.io.graphml.GraphMLReader2} for these.
+ * Edges may refer to nodes which are defined after them.
+ *
+ * <p>If no vertex (edge) <code>Supplier</code> is given, the <code>id</code>
+ * strings themselves are used as the vertices (edges), as in
+ * <code>GraphMLReader</code>; every edge must then have an ID.
+ *
+ * @param <V> the vertex type
+ * @param <E> the edge type
+ * @see "http://graphml.graphdrawing.org/specification.html"
+ */
+public class GraphMLStreamReader<V,E>
+{
+    private static final int DEFAULT_SIZE = 1024;
+
+    protected Supplier<V> vertex_factory;
+    protected Supplier<E> edge_factory;
+    protected Set<String> data_keys = new HashSet<String>();
+    protected boolean read_all_data;
+    protected int expected_vertices = DEFAULT_SIZE;
+    protected int expected_edges = DEFAULT_SIZE;
+
+    // the state of the current (or last) load
+    private CompactGraph<V,E> graph;
+    private EdgeType default_edge_type;
+    private List<V> vertices;
+    private List<E> edges;
+    private List<String> vertex_id_list;
+    private List<String> edge_id_list;
+    private Map<String,Integer> vertex_index;
+    private int[] sources;
+    private int[] dests;
+    private boolean[] directed;
+    private List<PendingEdge> pending;
+    private Map<String,String> defaults;
+    private Map<String,String> graph_data;
+    private Map<String,String[]> vertex_data;
+    private Map<String,String[]> edge_data;
+
+    /**
+     * Creates an instance which uses the specified factories
+     * to create vertices and edges.
+     * @param vertex_factory the source of the vertices
+     * @param edge_factory the source of the edges
+     */
+    public GraphMLStreamReader(Supplier<V> vertex_factory, Supplier<E> edge_factory)
+    {
+        this.vertex_factory = vertex_factory;
+        this.edge_factory = edge_factory;
+    }
+
+    /**
+     * Creates an instance which uses the node and edge <code>id</code>
+     * strings as the vertices and edges.  This requires that
+     * every edge have an ID, and that the vertex and edge types be
+     * assignment-compatible with <code>String</code>.
+     */
+    public GraphMLStreamReader()
+    {
+        this(null, null);
+    }
+
+    /**
+     * Specifies <code>data</code> keys whose values are to be kept, for
+     * whichever elements they are attached to.  No data is kept by default.
+     * @param keys the IDs of the keys to read
+     */
+    public void readData(String... keys)
+    {
+        data_keys.addAll(Arrays.asList(keys));
+    }
+
+    /**
+     * Causes the values of all <code>data</code> keys to be kept.
+     */
+    public void readAllData()
+    {
+        read_all_data = true;
+    }
+
+    /**
+     * Specifies the number of vertices and edges to allocate space for,
+     * for files which do not declare them with <code>parse.nodes</code>
+     * and <code>parse.edges</code>.
+     * @param vertices the expected number of vertices
+     * @param edges the expected number of edges
+     */
+    public void setExpectedSize(int vertices, int edges)
+    {
+        this.expected_vertices = Math.max(vertices, 1);
+        this.expected_edges = Math.max(edges, 1);
+    }
+
+    /**
+     * Reads the graph from the specified file, which may be gzip-compressed.
+     * @param filename the name of the file to read
+     * @return the graph read from the file
+     * @throws GraphIOException if the file cannot be read or is not valid GraphML
+     */
+    public CompactGraph<V,E> load(String filename) throws GraphIOException
+    {
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(filename);
+            return load(in);
+        }
+        catch (IOException ioe)
+        {
+            throw new GraphIOException(ioe);
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+    /**
+     * Reads the graph from the specified stream, which may be gzip-compressed.
+     * The stream is not closed.
+     * @param in the source of the GraphML data
+     * @return the graph read from the stream
+     * @throws GraphIOException if the stream cannot be read or is not valid GraphML
+     */
+    public CompactGraph<V,E> load(InputStream in) throws GraphIOException
+    {
+        try
+        {
+            BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+            buffered.mark(2);
+            int b1 = buffered.read();
+            int b2 = buffered.read();
+            buffered.reset();
+            InputStream source = buffered;
+            if (b1 == 0x1f && b2 == 0x8b)
+                source = new GZIPInputStream(buffered, 1 << 16);
+            return parse(newInputFactory().createXMLStreamReader(source));
+        }
+        catch (IOException ioe)
+        {
+            throw new GraphIOException(ioe);
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new GraphIOException(xse);
+        }
+    }
+
+    /**
+     * Reads the graph from the specified reader, which is not closed.
+     * @param reader the source of the GraphML data
+     * @return the graph read from the reader
+     * @throws GraphIOException if the reader fails or its contents are not valid GraphML
+     */
+    public CompactGraph<V,E> load(Reader reader) throws GraphIOException
+    {
+        try
+        {
+            return parse(newInputFactory().createXMLStreamReader(reader));
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new GraphIOException(xse);
+        }
+    }
+
+    /**
+     * @return the graph produced by the last load
+     */
+    public CompactGraph<V,E> getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * @return a function from the vertices of the last graph loaded to their IDs
+     */
+    public Function<V,String> getVertexIDs()
+    {
+        final CompactGraph<V,E> g = graph;
+        final List<String> ids = vertex_id_list;
+        return new Function<V,String>()
+        {
+            public String apply(V v)
+            {
+                int id = g.getVertexId(v);
+                return id < 0 ? null : ids.get(id);
+            }
+        };
+    }
+
+    /**
+     * @return a function from the edges of the last graph loaded to their
+     * IDs, or to <code>null</code> for those that had none
+     */
+    public Function<E,String> getEdgeIDs()
+    {
+        final CompactGraph<V,E> g = graph;
+        final List<String> ids = edge_id_list;
+        return new Function<E,String>()
+        {
+            public String apply(E e)
+            {
+                int id = g.getEdgeId(e);
+                return id < 0 ? null : ids.get(id);
+            }
+        };
+    }
+
+    /**
+     * Returns the values of the specified key for the vertices of the last
+     * graph loaded.  Vertices without a value of their own are mapped to the
+     * key's default, or to <code>null</code> if it has none.
+     * @param key the ID of a key which was requested with <code>readData</code>
+     * @return a function from vertices to their values for <code>key</code>
+     */
+    public Function<V,String> getVertexData(String key)
+    {
+        final CompactGraph<V,E> g = graph;
+        final String[] values = vertex_data.get(key);
+        final String default_value = defaults.get(key);
+        return new Function<V,String>()
+        {
+            public String apply(V v)
+            {
+                int id = g.getVertexId(v);
+                if (id < 0)
+                    return null;
+                String value = values == null ? null : values[id];
+                return value == null ? default_value : value;
+            }
+        };
+    }
+
+    /**
+     * Returns the values of the specified key for the edges of the last
+     * graph loaded.  Edges without a value of their own are mapped to the
+     * key's default, or to <code>null</code> if it has none.
+     * @param key the ID of a key which was requested with <code>readData</code>
+     * @return a function from edges to their values for <code>key</code>
+     */
+    public Function<E,String> getEdgeData(String key)
+    {
+        final CompactGraph<V,E> g = graph;
+        final String[] values = edge_data.get(key);
+        final String default_value = defaults.get(key);
+        return new Function<E,String>()
+        {
+            public String apply(E e)
+            {
+                int id = g.getEdgeId(e);
+                if (id < 0)
+                    return null;
+                String value = values == null ? null : values[id];
+                return value == null ? default_value : value;
+            }
+        };
+    }
+
+    /**
+     * @param key the ID of a key which was requested with <code>readData</code>
+     * @return the value of <code>key</code> for the last graph loaded, or its
+     * default if the graph has no value for it
+     */
+    public String getGraphData(String key)
+    {
+        String value = graph_data.get(key);
+        return value == null ? defaults.get(key) : value;
+    }
+
+    private XMLInputFactory newInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private CompactGraph<V,E> parse(XMLStreamReader r) throws GraphIOException, XMLStreamException
+    {
+        reset();
+        boolean in_graph = false;
+        int current_vertex = -1;
+        int current_edge = -1;
+        try
+        {
+            while (r.hasNext())
+            {
+                int event = r.next();
+                if (event == XMLStreamConstants.END_ELEMENT)
+                {
+                    String name = r.getLocalName();
+                    if (name.equals("node"))
+                        current_vertex = -1;
+                    else if (name.equals("edge"))
+                        current_edge = -1;
+                    else if (name.equals("graph"))
+                        break;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+
+                String name = r.getLocalName();
+                if (name.equals("node"))
+                {
+                    requireGraph(in_graph, name);
+                    current_vertex = addVertex(r);
+                }
+                else if (name.equals("edge"))
+                {
+                    requireGraph(in_graph, name);
+                    current_edge = addEdge(r);
+                }
+                else if (name.equals("data"))
+                {
+                    String key = r.getAttributeValue(null, "key");
+                    if (key == null || key.length() == 0)
+                        throw new GraphIOException("'data' tag requires a key specification");
+                    if (read_all_data || data_keys.contains(key))
+                    {
+                        String text = readText(r);
+                        if (current_vertex >= 0)
+                            setValue(vertex_data, key, current_vertex, text, vertices.size());
+                        else if (current_edge >= 0)
+                            setValue(edge_data, key, current_edge, text, edges.size());
+                        else if (in_graph)
+                            graph_data.put(key, text);
+                    }
+                    else
+                        skipElement(r);
+                }
+                else if (name.equals("graph"))
+                {
+                    if (in_graph)
+                        throw new GraphIOException("Nested graphs are not supported");
+                    in_graph = true;
+                    startGraph(r);
+                }
+                else if (name.equals("key"))
+                    readKey(r);
+                else if (name.equals("hyperedge"))
+                    throw new GraphIOException("Hyperedges are not supported; use GraphMLReader");
+                else if (!name.equals("graphml"))
+                    skipElement(r);
+            }
+        }
+        finally
+        {
+            r.close();
+        }
+        if (!in_graph)
+            throw new GraphIOException("No graph element found");
+
+        resolvePending();
+        int m = edges.size();
+        try
+        {
+            graph = CompactGraph.of(vertices, edges, sources, dests, directed, default_edge_type);
+        }
+        catch (IllegalArgumentException iae)
+        {
+            throw new GraphIOException(iae.getMessage(), iae);
+        }
+        // trim the data columns to the final element counts
+        for (Map.Entry<String,String[]> entry : vertex_data.entrySet())
+            entry.setValue(Arrays.copyOf(entry.getValue(), vertices.size()));
+        for (Map.Entry<String,String[]> entry : edge_data.entrySet())
+            entry.setValue(Arrays.copyOf(entry.getValue(), m));
+        sources = dests = null;
+        directed = null;
+        vertex_index = null;
+        pending = null;
+        return graph;
+    }
+
+    private void reset()
+    {
+        graph = null;
+        default_edge_type = EdgeType.DIRECTED;
+        vertices = new ArrayList<V>(expected_vertices);
+        edges = new ArrayList<E>(expected_edges);
+        vertex_id_list = new ArrayList<String>(expected_vertices);
+        edge_id_list = new ArrayList<String>(expected_edges);
+        vertex_index = new HashMap<String,Integer>(expected_vertices * 2);
+        sources = new int[expected_edges];
+        dests = new int[expected_edges];
+        directed = new boolean[expected_edges];
+        pending = new ArrayList<PendingEdge>();
+        defaults = new HashMap<String,String>();
+        graph_data = new HashMap<String,String>();
+        vertex_data = new HashMap<String,String[]>();
+        edge_data = new HashMap<String,String[]>();
+    }
+
+    private void startGraph(XMLStreamReader r) throws GraphIOException
+    {
+        String edge_default = r.getAttributeValue(null, "edgedefault");
+        if (edge_default == null)
+            throw new GraphIOException("All graphs must specify a default edge direction");
+        if (edge_default.equals("directed"))
+            default_edge_type = EdgeType.DIRECTED;
+        else if (edge_default.equals("undirected"))
+            default_edge_type = EdgeType.UNDIRECTED;
+        else
+            throw new GraphIOException("Invalid or unrecognized default edge direction: " + edge_default);
+
+        // the GraphML parse extension declares the element counts up front
+        int n = parseCount(r.getAttributeValue(null, "parse.nodes"));
+        int m = parseCount(r.getAttributeValue(null, "parse.edges"));
+        if (n > 0 && vertices.isEmpty())
+        {
+            vertices = new ArrayList<V>(n);
+            vertex_id_list = new ArrayList<String>(n);
+            vertex_index = new HashMap<String,Integer>(n * 2);
+        }
+        if (m > 0 && edges.isEmpty())
+        {
+            edges = new ArrayList<E>(m);
+            edge_id_list = new ArrayList<String>(m);
+            sources = new int[m];
+            dests = new int[m];
+            directed = new boolean[m];
+        }
+    }
+
+    private int parseCount(String count)
+    {
+        if (count == null)
+            return -1;
+        try
+        {
+            return Integer.parseInt(count.trim());
+        }
+        catch (NumberFormatException nfe)
+        {
+            return -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int addVertex(XMLStreamReader r) throws GraphIOException
+    {
+        String id = r.getAttributeValue(null, "id");
+        if (id == null)
+            throw new GraphIOException("node attribute list missing 'id'");
+        int index = vertices.size();
+        if (vertex_index.put(id, index) != null)
+            throw new GraphIOException("Node id \"" + id + "\" is a duplicate of an existing node ID");
+        vertices.add(vertex_factory != null ? vertex_factory.get() : (V)id);
+        vertex_id_list.add(id);
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int addEdge(XMLStreamReader r) throws GraphIOException
+    {
+        String id = r.getAttributeValue(null, "id");
+        String source = r.getAttributeValue(null, "source");
+        String target = r.getAttributeValue(null, "target");
+        String direction = r.getAttributeValue(null, "directed");
+        if (source == null || target == null)
+            throw new GraphIOException("edge attribute list missing 'source' or 'target' (edge " + id + ")");
+
+        int index = edges.size();
+        if (edge_factory != null)
+            edges.add(edge_factory.get());
+        else if (id != null)
+            edges.add((E)id);
+        else
+            throw new GraphIOException("If no edge Supplier is supplied, edge id may not be null");
+        edge_id_list.add(id);
+
+        if (index == sources.length)
+        {
+            int length = 2 * index;
+            sources = Arrays.copyOf(sources, length);
+            dests = Arrays.copyOf(dests, length);
+            directed = Arrays.copyOf(directed, length);
+        }
+        if (direction == null)
+            directed[index] = default_edge_type == EdgeType.DIRECTED;
+        else if (direction.equals("true"))
+            directed[index] = true;
+        else if (direction.equals("false"))
+            directed[index] = false;
+        else
+            throw new GraphIOException("Unrecognized edge direction specifier 'directed=\"" +
+                    direction + "\"': source: " + source + ", target: " + target);
+
+        Integer s = vertex_index.get(source);
+        Integer d = vertex_index.get(target);
+        if (s == null || d == null)
+            pending.add(new PendingEdge(index, source, target));
+        else
+        {
+            sources[index] = s;
+            dests[index] = d;
+        }
+        return index;
+    }
+
+    private void resolvePending() throws GraphIOException
+    {
+        for (PendingEdge edge : pending)
+        {
+            Integer s = vertex_index.get(edge.source);
+            Integer d = vertex_index.get(edge.target);
+            if (s == null)
+                throw new GraphIOException("specified 'source' attribute \"" + edge.source +
+                        "\" does not match any node ID");
+            if (d == null)
+                throw new GraphIOException("specified 'target' attribute \"" + edge.target +
+                        "\" does not match any node ID");
+            sources[edge.index] = s;
+            dests[edge.index] = d;
+        }
+    }
+
+    private void readKey(XMLStreamReader r) throws XMLStreamException
+    {
+        String id = r.getAttributeValue(null, "id");
+        int depth = 1;
+        while (depth > 0)
+        {
+            int event = r.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                if (depth == 1 && r.getLocalName().equals("default"))
+                    defaults.put(id, readText(r));
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    private void setValue(Map<String,String[]> data, String key, int index, String value, int size)
+    {
+        String[] values = data.get(key);
+        if (values == null || index >= values.length)
+        {
+            int length = Math.max(size, values == null ? DEFAULT_SIZE : 2 * values.length);
+            values = values == null ? new String[length] : Arrays.copyOf(values, length);
+            data.put(key, values);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Returns the text inside the current element (including that of any
+     * nested elements), trimmed, and moves to its end.
+     */
+    private String readText(XMLStreamReader r) throws XMLStreamException
+    {
+        StringBuilder text = null;
+        String single = null;
+        int depth = 1;
+        while (depth > 0)
+        {
+            int event = r.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)
+            {
+                if (single == null && text == null)
+                    single = r.getText();
+                else
+                {
+                    if (text == null)
+                        text = new StringBuilder(single);
+                    text.append(r.getText());
+                }
+            }
+            else if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+        String value = text != null ? text.toString() : single;
+        return value == null ? "" : value.trim();
+    }
+
+    private void skipElement(XMLStreamReader r) throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0)
+        {
+            int event = r.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                depth--;
+        }
+    }
+
+    private void requireGraph(boolean in_graph, String element) throws GraphIOException
+    {
+        if (!in_graph)
+            throw new GraphIOException("Graph must be defined prior to elements: " + element);
+    }
+
+    private void close(InputStream in) throws GraphIOException
+    {
+        if (in == null)
+            return;
+        try
+        {
+            in.close();
+        }
+        catch (IOException ioe)
+        {
+            throw new GraphIOException(ioe);
+        }
+    }
+
+    /**
+     * An edge which refers to a node that had not yet been read.
+     */
+    private static class PendingEdge
+    {
+        final int index;
+        final String source;
+        final String target;
+
+        PendingEdge(int index, String source, String target)
+        {
+            this.index = index;
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.io;
+
+import com.google.common.base.Function;
+import edu.uci.ics.jung.graph.CompactGraph;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.Hypergraph;
+import edu.uci.ics.jung.graph.UndirectedGraph;
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes graphs out in GraphML format through a StAX <code>XMLStreamWriter</code>,
+ * which escapes IDs and values as required.  Output is configured exactly as for
+ * {@link GraphMLWriter}; in addition, graphs may be written to an
+ * <code>OutputStream</code> (as UTF-8) or to a file, which is gzip-compressed
+ * (at the fastest compression level) if its name ends in <code>.gz</code>.
+ *
+ * <p>The vertex and edge counts are written as the <code>parse.nodes</code> and
+ * <code>parse.edges</code> attributes of the <code>graph</code> element, which
+ * {@link GraphMLStreamReader} uses to size its tables.  The IDs of the vertices
+ * of a {@link CompactGraph} are computed once each rather than once per
+ * incident edge.
+ *
+ * @param <V> the vertex type
+ * @param <E> the edge type
+ */
+public class GraphMLStreamWriter<V,E> extends GraphMLWriter<V,E>
+{
+    /**
+     * Writes {@code graph} out using {@code w}, which is closed afterwards.
+     * @param graph the graph to write out
+     * @param w the writer instance to which the graph data will be written out
+     * @throws IOException if writing the graph fails
+     */
+    @Override
+    public void save(Hypergraph<V,E> graph, Writer w) throws IOException
+    {
+        try
+        {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(
+                    new BufferedWriter(w, 1 << 16));
+            write(graph, xml, null);
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new IOException(xse);
+        }
+        finally
+        {
+            w.close();
+        }
+    }
+
+    /**
+     * Writes {@code graph} out to {@code out} as UTF-8; the stream is closed afterwards.
+     * @param graph the graph to write out
+     * @param out the stream to which the graph data will be written out
+     * @throws IOException if writing the graph fails
+     */
+    public void save(Hypergraph<V,E> graph, OutputStream out) throws IOException
+    {
+        try
+        {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(
+                    new BufferedOutputStream(out, 1 << 16), "UTF-8");
+            write(graph, xml, "UTF-8");
+        }
+        catch (XMLStreamException xse)
+        {
+            throw new IOException(xse);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes {@code graph} out to the specified file, compressing it with
+     * gzip if {@code filename} ends in <code>.gz</code>.
+     * @param graph the graph to write out
+     * @param filename the name of the file to write
+     * @throws IOException if writing the graph fails
+     */
+    public void save(Hypergraph<V,E> graph, String filename) throws IOException
+    {
+        OutputStream out = new FileOutputStream(filename);
+        if (filename.endsWith(".gz"))
+        {
+            // favor throughput: the default level costs several times as much CPU
+            // for a few percent smaller output
+            out = new GZIPOutputStream(out, 1 << 16)
+            {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+        save(graph, out);
+    }
+
+    private void write(Hypergraph<V,E> graph, XMLStreamWriter xml, String encoding)
+        throws XMLStreamException
+    {
+        if (encoding != null)
+            xml.writeStartDocument(encoding, "1.0");
+        else
+            xml.writeStartDocument("1.0");
+        xml.writeCharacters("\n");
+        xml.writeStartElement("graphml");
+        xml.writeDefaultNamespace("http://graphml.graphdrawing.org/xmlns/graphml");
+        xml.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+        xml.writeAttribute("xsi:schemaLocation", "http://graphml.graphdrawing.org/xmlns/graphml");
+        xml.writeCharacters("\n");
+
+        for (Map.Entry<String, GraphMLMetadata<Hypergraph<V,E>>> entry : graph_data.entrySet())
+            writeKey(xml, entry.getKey(), "graph", entry.getValue());
+        for (Map.Entry<String, GraphMLMetadata<V>> entry : vertex_data.entrySet())
+            writeKey(xml, entry.getKey(), "node", entry.getValue());
+        for (Map.Entry<String, GraphMLMetadata<E>> entry : edge_data.entrySet())
+            writeKey(xml, entry.getKey(), "edge", entry.getValue());
+
+        directed = !(graph instanceof UndirectedGraph);
+        xml.writeStartElement("graph");
+        xml.writeAttribute("edgedefault", directed ? "directed" : "undirected");
+        xml.writeAttribute("parse.nodes", Integer.toString(graph.getVertexCount()));
+        xml.writeAttribute("parse.edges", Integer.toString(graph.getEdgeCount()));
+        xml.writeCharacters("\n");
+        writeDescription(xml, graph_desc.apply(graph));
+        for (Map.Entry<String, GraphMLMetadata<Hypergraph<V,E>>> entry : graph_data.entrySet())
+        {
+            Object value = entry.getValue().transformer.apply(graph);
+            if (value != null)
+                writeData(xml, entry.getKey(), value);
+        }
+
+        writeVertices(graph, xml);
+        writeEdges(graph, xml);
+
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+        xml.writeEndDocument();
+        xml.flush();
+        xml.close();
+    }
+
+    private void writeVertices(Hypergraph<V,E> graph, XMLStreamWriter xml) throws XMLStreamException
+    {
+        List<String> keys = new ArrayList<String>();
+        List<Function<V,?>> values = new ArrayList<Function<V,?>>();
+        for (Map.Entry<String, GraphMLMetadata<V>> entry : vertex_data.entrySet())
+        {
+            if (entry.getValue().transformer != null)
+            {
+                keys.add(entry.getKey());
+                values.add(entry.getValue().transformer);
+            }
+        }
+
+        for (V v : graph.getVertices())
+        {
+            String desc = vertex_desc.apply(v);
+            Object[] data = new Object[keys.size()];
+            boolean empty = desc == null;
+            for (int i = 0; i < data.length; i++)
+            {
+                data[i] = values.get(i).apply(v);
+                empty &= data[i] == null;
+            }
+
+            if (empty)
+                xml.writeEmptyElement("node");
+            else
+                xml.writeStartElement("node");
+            xml.writeAttribute("id", vertex_ids.apply(v));
+            if (!empty)
+            {
+                xml.writeCharacters("\n");
+                writeDescription(xml, desc);
+                for (int i = 0; i < data.length; i++)
+                    if (data[i] != null)
+                        writeData(xml, keys.get(i), data[i]);
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeEdges(Hypergraph<V,E> graph, XMLStreamWriter xml) throws XMLStreamException
+    {
+        List<String> keys = new ArrayList<String>();
+        List<Function<E,?>> values = new ArrayList<Function<E,?>>();
+        for (Map.Entry<String, GraphMLMetadata<E>> entry : edge_data.entrySet())
+        {
+            keys.add(entry.getKey());
+            values.add(entry.getValue().transformer);
+        }
+
+        // the ids of the vertices of a compact graph, by vertex id
+        CompactGraph<V,E> compact = null;
+        String[] compact_ids = null;
+        if (graph instanceof CompactGraph)
+        {
+            compact = (CompactGraph<V,E>)graph;
+            compact_ids = new String[compact.getVertexCount()];
+            for (int i = 0; i < compact_ids.length; i++)
+                compact_ids[i] = vertex_ids.apply(compact.getVertex(i));
+        }
+
+        boolean is_hyperedge = !(graph instanceof Graph);
+        for (E e : graph.getEdges())
+        {
+            String id = edge_ids.apply(e);
+            String desc = edge_desc.apply(e);
+            Object[] data = new Object[keys.size()];
+            boolean empty = desc == null && !is_hyperedge;
+            for (int i = 0; i < data.length; i++)
+            {
+                data[i] = values.get(i).apply(e);
+                empty &= data[i] == null;
+            }
+
+            if (empty)
+                xml.writeEmptyElement(is_hyperedge ? "hyperedge" : "edge");
+            else
+                xml.writeStartElement(is_hyperedge ? "hyperedge" : "edge");
+            if (id != null)
+                xml.writeAttribute("id", id);
+            if (!is_hyperedge)
+            {
+                EdgeType edge_type = graph.getEdgeType(e);
+                if (directed && edge_type == EdgeType.UNDIRECTED)
+                    xml.writeAttribute("directed", "false");
+                if (!directed && edge_type == EdgeType.DIRECTED)
+                    xml.writeAttribute("directed", "true");
+                if (compact != null)
+                {
+                    int edge_id = compact.getEdgeId(e);
+                    xml.writeAttribute("source", compact_ids[compact.getSourceId(edge_id)]);
+                    xml.writeAttribute("target", compact_ids[compact.getDestId(edge_id)]);
+                }
+                else
+                {
+                    Pair<V> endpoints = ((Graph<V,E>)graph).getEndpoints(e);
+                    xml.writeAttribute("source", vertex_ids.apply(endpoints.getFirst()));
+                    xml.writeAttribute("target", vertex_ids.apply(endpoints.getSecond()));
+                }
+            }
+            if (!empty)
+            {
+                xml.writeCharacters("\n");
+                writeDescription(xml, desc);
+                for (int i = 0; i < data.length; i++)
+                    if (data[i] != null)
+                        writeData(xml, keys.get(i), data[i]);
+                if (is_hyperedge)
+                {
+                    for (V v : graph.getIncidentVertices(e))
+                    {
+                        xml.writeEmptyElement("endpoint");
+                        xml.writeAttribute("node", vertex_ids.apply(v));
+                        xml.writeCharacters("\n");
+                    }
+                }
+                xml.writeEndElement();
+            }
+            xml.writeCharacters("\n");
+        }
+    }
+
+    private void writeKey(XMLStreamWriter xml, String key, String type, GraphMLMetadata<?> ds)
+        throws XMLStreamException
+    {
+        boolean empty = ds.description == null && ds.default_value == null;
+        if (empty)
+            xml.writeEmptyElement("key");
+        else
+            xml.writeStartElement("key");
+        xml.writeAttribute("id", key);
+        xml.writeAttribute("for", type);
+        if (!empty)
+        {
+            xml.writeCharacters("\n");
+            writeDescription(xml, ds.description);
+            if (ds.default_value != null)
+            {
+                xml.writeStartElement("default");
+                xml.writeCharacters(ds.default_value);
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+            xml.writeEndElement();
+        }
+        xml.writeCharacters("\n");
+    }
+
+    private void writeDescription(XMLStreamWriter xml, String desc) throws XMLStreamException
+    {
+        if (desc == null)
+            return;
+        xml.writeStartElement("desc");
+        xml.writeCharacters(desc);
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    private void writeData(XMLStreamWriter xml, String key, Object value) throws XMLStreamException
+    {
+        xml.writeStartElement("data");
+        xml.writeAttribute("key", key);
+        xml.writeCharacters(value.toString());
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+}
@@ -35,6 +35,7 @@ import edu.uci.ics.jung.visualization.control.ScalingControl;
 import edu.uci.ics.jung.visualization.decorators.*;
 import edu.uci.ics.jung.visualization.picking.PickedInfo;
 import edu.uci.ics.jung.visualization.picking.PickedState;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
 import edu.uci.ics.jung.visualization.renderers.Renderer;
 import edu.uci.ics.jung.visualization.renderers.*;
 import edu.uci.ics.jung.visualization.renderers.Renderer.VertexLabel.Position;
@@ -635,14 +636,17 @@ public class PluggableRendererDemo extends JApplet implements ActionListener
         else if (source == v_shape)
         {
             vssa.useFunnyShapes(source.isSelected());
+            vertexShapesChanged();
         }
         else if (source == v_size)
         {
             vssa.setScaling(source.isSelected());
+            vertexShapesChanged();
         }
         else if (source == v_aspect)
         {
             vssa.setStretching(source.isSelected());
+            vertexShapesChanged();
         }
         else if (source == e_line) 
         {
@@ -719,6 +723,18 @@ public class PluggableRendererDemo extends JApplet implements ActionListener
         vv.repaint();
     }
     
+    /**
+     * Tells the pick support that <code>vssa</code> has changed the vertex
+     * shapes in place, so that it does not pick with the old ones.
+     */
+    private void vertexShapesChanged()
+    {
+        if (vv.getPickSupport() instanceof ShapePickSupport)
+        {
+            ((ShapePickSupport<?,?>)vv.getPickSupport()).invalidateSpatialIndex();
+        }
+    }
+    
     private final class SeedDrawColor<V> implements Function<V,Paint>
     {
         public Paint apply(V v)
@@ -4,6 +4,7 @@ import edu.uci.ics.jung.algorithms.layout.Layout;
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.util.Pair;
 import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.spatial.RectangleTree;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
@@ -18,6 +19,7 @@ public class BoundingRectangleCollector<V,E>  {
 	protected Graph<V,E> graph;
 	protected Layout<V,E> layout;
 	protected List<Rectangle2D> rectangles = new ArrayList<Rectangle2D>();
+	protected RectangleTree tree = new RectangleTree();
 	
 	public BoundingRectangleCollector(RenderContext<V, E> rc, Layout<V, E> layout) {
 		this.rc = rc;
@@ -33,6 +35,18 @@ public class BoundingRectangleCollector<V,E>  {
 		return rectangles;
 	}
 
+	/**
+	 * @param area a region in layout coordinates
+	 * @return the rectangles which intersect <code>area</code>
+	 */
+	public List<Rectangle2D> getRectangles(Rectangle2D area) {
+		List<Rectangle2D> found = new ArrayList<Rectangle2D>();
+		for(int i : tree.search(area)) {
+			found.add(rectangles.get(i));
+		}
+		return found;
+	}
+
 	public void compute() {
 		rectangles.clear();
 //		Graphics2D g2d = (Graphics2D)g;
@@ -82,5 +96,6 @@ public class BoundingRectangleCollector<V,E>  {
 			shape = xform.createTransformedShape(shape);
 			rectangles.add(shape.getBounds2D());
 		}
+		tree = new RectangleTree(rectangles.toArray(new Rectangle2D[rectangles.size()]));
 	}
 }
@@ -5,6 +5,7 @@ import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.visualization.Layer;
 import edu.uci.ics.jung.visualization.RenderContext;
 import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.transform.AffineTransformer;
 import edu.uci.ics.jung.visualization.util.ChangeEventSupport;
 
 import javax.swing.event.ChangeEvent;
@@ -19,6 +20,7 @@ public class BoundingRectanglePaintable<V,E> implements VisualizationServer.Pain
 	protected Graph<V,E> graph;
 	protected Layout<V,E> layout;
 	protected List<Rectangle2D> rectangles;
+	protected BoundingRectangleCollector<V,E> collector;
 	
 	public BoundingRectanglePaintable(RenderContext<V, E> rc, Layout<V, E> layout) {
 		super();
@@ -26,6 +28,7 @@ public class BoundingRectanglePaintable<V,E> implements VisualizationServer.Pain
 		this.layout = layout;
 		this.graph = layout.getGraph();
 		final BoundingRectangleCollector<V,E> brc = new BoundingRectangleCollector<V,E>(rc, layout);
+		this.collector = brc;
 		this.rectangles = brc.getRectangles();
 		if(layout instanceof ChangeEventSupport) {
 			((ChangeEventSupport)layout).addChangeListener(new ChangeListener() {
@@ -41,7 +44,14 @@ public class BoundingRectanglePaintable<V,E> implements VisualizationServer.Pain
 		Graphics2D g2d = (Graphics2D)g;
 		g.setColor(Color.cyan);
 		
-		for(Rectangle2D r : rectangles) {
+		// only draw the rectangles which reach the visible area
+		List<Rectangle2D> visible = rectangles;
+		Shape clip = g2d.getClip();
+		if(clip != null && rc.getMultiLayerTransformer().getTransformer(Layer.LAYOUT) instanceof AffineTransformer) {
+			clip = rc.getMultiLayerTransformer().inverseTransform(Layer.LAYOUT, clip);
+			visible = collector.getRectangles(clip.getBounds2D());
+		}
+		for(Rectangle2D r : visible) {
 			g2d.draw(rc.getMultiLayerTransformer().transform(Layer.LAYOUT, r));
 		}
 	}
@@ -20,6 +20,7 @@ import edu.uci.ics.jung.graph.util.Context;
 import edu.uci.ics.jung.graph.util.Pair;
 import edu.uci.ics.jung.visualization.Layer;
 import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.spatial.SpatialIndex;
 
 import java.awt.*;
 import java.awt.geom.*;
@@ -68,6 +69,12 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
      */
     protected Style style = Style.CENTERED;
     
+    /**
+     * The index of the vertex and edge bounds of the most recently
+     * picked layout, used to find the candidates for each pick.
+     */
+    protected SpatialIndex<V,E> spatialIndex;
+    
     /**
      * Creates a <code>ShapePickSupport</code> for the <code>vv</code>
      * VisualizationServer, with the specified pick footprint and
@@ -162,7 +169,7 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
 
         while(true) {
             try {
-                for(V v : getFilteredVertices(layout)) {
+                for(V v : getFilteredVertices(layout, new Rectangle2D.Double(x, y, 0, 0))) {
                 	
                     Shape shape = vv.getRenderContext().getVertexShapeTransformer().apply(v);
                     // get the vertex location
@@ -220,7 +227,7 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
 
         while(true) {
             try {
-                for(V v : getFilteredVertices(layout)) {
+                for(V v : getFilteredVertices(layout, shape.getBounds2D())) {
                     Point2D p = layout.apply(v);
                     if(p == null) continue;
 
@@ -259,7 +266,7 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
         double minDistance = Double.MAX_VALUE;
         while(true) {
             try {
-                for(E e : getFilteredEdges(layout)) {
+                for(E e : getFilteredEdges(layout, pickArea)) {
 
                     Shape edgeShape = getTransformedEdgeShape(layout, e);
                     if (edgeShape == null)
@@ -363,6 +370,32 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
     	}
     }
 
+    /**
+     * Returns the vertices which are rendered and whose shapes may intersect
+     * <code>area</code>, in the order of <code>getFilteredVertices(layout)</code>.
+     * Uses the spatial index of <code>layout</code> where it is available.
+     * @param layout the layout whose vertices are to be returned
+     * @param area a region in layout-transformed coordinates
+     * @return the candidate vertices for a pick in <code>area</code>
+     */
+    protected Collection<V> getFilteredVertices(Layout<V,E> layout, Rectangle2D area) {
+    	SpatialIndex<V,E> index = getSpatialIndex(layout);
+    	if(index == null) {
+    		return getFilteredVertices(layout);
+    	}
+    	Collection<V> candidates = index.getVertices(area);
+    	if(verticesAreFiltered()) {
+    		Collection<V> filtered = new ArrayList<V>();
+    		for(V v : candidates) {
+    			if(isVertexRendered(Context.getInstance(layout.getGraph(),v))) {
+    				filtered.add(v);
+    			}
+    		}
+    		return filtered;
+    	}
+    	return candidates;
+    }
+
     protected Collection<E> getFilteredEdges(Layout<V,E> layout) {
     	if(edgesAreFiltered()) {
     		Collection<E> unfiltered = layout.getGraph().getEdges();
@@ -378,6 +411,62 @@ public class ShapePickSupport<V, E> implements GraphElementAccessor<V,E> {
     	}
     }
     
+    /**
+     * Returns the edges which are rendered and whose shapes may intersect
+     * <code>area</code>, in the order of <code>getFilteredEdges(layout)</code>.
+     * Uses the spatial index of <code>layout</code> where it is available.
+     * @param layout the layout whose edges are to be returned
+     * @param area a region in layout-transformed coordinates
+     * @return the candidate edges for a pick in <code>area</code>
+     */
+    protected Collection<E> getFilteredEdges(Layout<V,E> layout, Rectangle2D area) {
+    	SpatialIndex<V,E> index = getSpatialIndex(layout);
+    	if(index == null) {
+    		return getFilteredEdges(layout);
+    	}
+    	Collection<E> candidates = index.getEdges(area);
+    	if(edgesAreFiltered()) {
+    		Collection<E> filtered = new ArrayList<E>();
+    		for(E e : candidates) {
+    			if(isEdgeRendered(Context.getInstance(layout.getGraph(),e))) {
+    				filtered.add(e);
+    			}
+    		}
+    		return filtered;
+    	}
+    	return candidates;
+    }
+
+    /**
+     * Discards the shape bounds cached for picking, so that they are
+     * recomputed at the next pick.  Layout and graph changes, and new shape
+     * functions set on the render context, are noticed without this; call
+     * it after a shape function has changed the shapes it returns in place
+     * (to show a new vertex size, for instance).
+     */
+    public synchronized void invalidateSpatialIndex() {
+    	if(spatialIndex != null) {
+    		spatialIndex.invalidate();
+    	}
+    }
+
+    /**
+     * Returns the spatial index of <code>layout</code>, creating it (and
+     * discarding the index of any other layout) if necessary.
+     * @param layout the layout whose index is to be returned
+     * @return the index, or <code>null</code> if <code>layout</code> cannot
+     * currently be indexed (in which case every element must be tested)
+     */
+    protected synchronized SpatialIndex<V,E> getSpatialIndex(Layout<V,E> layout) {
+    	if(spatialIndex == null || spatialIndex.getLayout() != layout) {
+    		if(spatialIndex != null) {
+    			spatialIndex.dispose();
+    		}
+    		spatialIndex = new SpatialIndex<V,E>(vv.getRenderContext(), layout);
+    	}
+    	return spatialIndex.isAvailable() ? spatialIndex : null;
+    }
+
     /**
      * Quick test to allow optimization of <code>getFilteredVertices()</code>.
      * @return <code>true</code> if there is an active vertex filtering
@@ -39,21 +39,40 @@ public class FastRenderingGraph<V, E> implements Graph<V, E> {
 	protected RenderContext<V,E> rc;
 	protected BasicVisualizationServer<V,E> vv;
 	protected Layout<V,E> layout;
+	protected SpatialIndex<V,E> index;
 	
 	public FastRenderingGraph(Graph<V,E> graph, Set<Rectangle2D> bounds, BasicVisualizationServer<V,E> vv) {
 		this.graph = graph;
 		this.bounds = bounds;
 		this.vv = vv;
 		this.rc = vv.getRenderContext();
+		this.layout = vv.getGraphLayout();
+		this.index = new SpatialIndex<V,E>(rc, layout);
 	}
 	
 	private void cleanUp() {
 		vertices.clear();
 		edges.clear();
-		for(V v : graph.getVertices()) {
+		Collection<V> vertexCandidates = graph.getVertices();
+		Collection<E> edgeCandidates = graph.getEdges();
+		if(index.isAvailable() && index.getLayout().getGraph() == graph) {
+			// only the elements near some rectangle need the exact test
+			vertexCandidates = new HashSet<V>();
+			for(Rectangle2D r : bounds) {
+				vertexCandidates.addAll(index.getVertices(r));
+			}
+			// orthogonal edges are routed outside of the bounds indexed for them
+			if(!(rc.getEdgeShapeTransformer() instanceof EdgeShape.Orthogonal)) {
+				edgeCandidates = new HashSet<E>();
+				for(Rectangle2D r : bounds) {
+					edgeCandidates.addAll(index.getEdges(r));
+				}
+			}
+		}
+		for(V v : vertexCandidates) {
 			checkVertex(v);
 		}
-		for(E e : graph.getEdges()) {
+		for(E e : edgeCandidates) {
 			checkEdge(e);
 		}
 	}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.visualization.spatial;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An R-tree over axis-aligned rectangles identified by small non-negative
+ * integer ids.  The tree is bulk loaded with the sort-tile-recursive
+ * packing; rectangles that are added, moved or removed afterwards are
+ * kept in a short overflow list (their stale tree entries are skipped)
+ * until there are enough of them that the tree is packed again.
+ *
+ * <p>Queries return ids in ascending order, so that callers that number
+ * their elements in iteration order can report matches in that order.
+ * Rectangles are closed: a zero-width rectangle (the bounds of a
+ * horizontal or vertical line) still intersects anything that touches it.
+ *
+ * <p>This class is not synchronized.
+ */
+public class RectangleTree {
+
+	/**
+	 * The number of children of each node.
+	 */
+	private static final int NODE_SIZE = 16;
+
+	/**
+	 * The smallest overflow list that triggers repacking; larger trees
+	 * allow an overflow of up to 1/8 of their entries.
+	 */
+	private static final int MIN_OVERFLOW = 64;
+
+	private double[] min_x = new double[0];
+	private double[] min_y = new double[0];
+	private double[] max_x = new double[0];
+	private double[] max_y = new double[0];
+	private boolean[] present = new boolean[0];
+	private int size;
+
+	/**
+	 * Whether the packed entry for an id (if any) still has its current bounds.
+	 */
+	private boolean[] packed = new boolean[0];
+	private int[] overflow = new int[16];
+	private int overflow_count;
+	private boolean[] in_overflow = new boolean[0];
+
+	/**
+	 * ids in leaf order; <code>levels[0]</code> holds the leaf boxes,
+	 * each higher level groups <code>NODE_SIZE</code> consecutive boxes
+	 * of the level below.  Each box is stored as four consecutive values.
+	 */
+	private int[] leaf_ids = new int[0];
+	private double[][] levels = new double[0][];
+
+	/**
+	 * Creates an empty tree.
+	 */
+	public RectangleTree() {
+	}
+
+	/**
+	 * Creates a tree holding <code>bounds[i]</code> with id <code>i</code>
+	 * for each non-null entry.
+	 * @param bounds the rectangles to index
+	 */
+	public RectangleTree(Rectangle2D[] bounds) {
+		ensureCapacity(bounds.length);
+		for (int i = 0; i < bounds.length; i++) {
+			Rectangle2D r = bounds[i];
+			if (r != null)
+				store(i, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+		}
+		pack();
+	}
+
+	/**
+	 * @return the number of rectangles in the tree
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all rectangles.
+	 */
+	public void clear() {
+		Arrays.fill(present, false);
+		Arrays.fill(packed, false);
+		Arrays.fill(in_overflow, false);
+		size = 0;
+		overflow_count = 0;
+		leaf_ids = new int[0];
+		levels = new double[0][];
+	}
+
+	/**
+	 * Adds the rectangle for <code>id</code>, or replaces its current one.
+	 * @param id the id of the rectangle
+	 * @param r the new bounds
+	 */
+	public void put(int id, Rectangle2D r) {
+		put(id, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+	}
+
+	/**
+	 * Adds the rectangle spanning [x1, x2] by [y1, y2] for <code>id</code>,
+	 * or replaces its current one.
+	 * @param id the id of the rectangle
+	 * @param x1 the smallest x coordinate
+	 * @param y1 the smallest y coordinate
+	 * @param x2 the largest x coordinate
+	 * @param y2 the largest y coordinate
+	 */
+	public void put(int id, double x1, double y1, double x2, double y2) {
+		ensureCapacity(id + 1);
+		store(id, x1, y1, x2, y2);
+		packed[id] = false;
+		addOverflow(id);
+	}
+
+	/**
+	 * Removes the rectangle for <code>id</code>, if any.
+	 * @param id the id of the rectangle to remove
+	 */
+	public void remove(int id) {
+		if (id >= present.length || !present[id])
+			return;
+		present[id] = false;
+		packed[id] = false;
+		size--;
+	}
+
+	/**
+	 * @param id the id of a rectangle
+	 * @return whether the tree has a rectangle for <code>id</code>
+	 */
+	public boolean contains(int id) {
+		return id < present.length && present[id];
+	}
+
+	/**
+	 * Returns the ids of the rectangles which intersect <code>area</code>,
+	 * in ascending order.
+	 * @param area the region to search
+	 * @return the ids of the matching rectangles
+	 */
+	public int[] search(Rectangle2D area) {
+		return search(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+	}
+
+	/**
+	 * Returns the ids of the rectangles which intersect [x1, x2] by [y1, y2],
+	 * in ascending order.
+	 * @param x1 the smallest x coordinate of the region
+	 * @param y1 the smallest y coordinate of the region
+	 * @param x2 the largest x coordinate of the region
+	 * @param y2 the largest y coordinate of the region
+	 * @return the ids of the matching rectangles
+	 */
+	public int[] search(double x1, double y1, double x2, double y2) {
+		if (overflow_count > Math.max(MIN_OVERFLOW, size / 8))
+			pack();
+
+		int[] found = new int[16];
+		int count = 0;
+
+		if (levels.length > 0) {
+			int top = levels.length - 1;
+			// pending (level, node) pairs
+			int[] stack = new int[2 * (top + 1) * NODE_SIZE];
+			int sp = 0;
+			for (int i = 0, n = levels[top].length / 4; i < n; i++) {
+				stack[sp++] = top;
+				stack[sp++] = i;
+			}
+			while (sp > 0) {
+				int node = stack[--sp];
+				int level = stack[--sp];
+				double[] boxes = levels[level];
+				int b = 4 * node;
+				if (boxes[b] > x2 || boxes[b + 2] < x1 || boxes[b + 1] > y2 || boxes[b + 3] < y1)
+					continue;
+				int from = node * NODE_SIZE;
+				if (level == 0) {
+					int to = Math.min(from + NODE_SIZE, leaf_ids.length);
+					for (int k = from; k < to; k++) {
+						int id = leaf_ids[k];
+						if (packed[id] && intersects(id, x1, y1, x2, y2)) {
+							if (count == found.length)
+								found = Arrays.copyOf(found, 2 * count);
+							found[count++] = id;
+						}
+					}
+				} else {
+					int to = Math.min(from + NODE_SIZE, levels[level - 1].length / 4);
+					for (int k = from; k < to; k++) {
+						stack[sp++] = level - 1;
+						stack[sp++] = k;
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < overflow_count; i++) {
+			int id = overflow[i];
+			if (present[id] && intersects(id, x1, y1, x2, y2)) {
+				if (count == found.length)
+					found = Arrays.copyOf(found, 2 * count);
+				found[count++] = id;
+			}
+		}
+
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * Rebuilds the tree from all current rectangles, emptying the overflow list.
+	 */
+	public void pack() {
+		int[] ids = new int[size];
+		int n = 0;
+		for (int id = 0; id < present.length; id++) {
+			if (present[id])
+				ids[n++] = id;
+			packed[id] = present[id];
+			in_overflow[id] = false;
+		}
+		overflow_count = 0;
+
+		// sort-tile-recursive: sort by x, cut into vertical slices of
+		// about sqrt(n / NODE_SIZE) leaves each, sort each slice by y
+		sortByCenter(ids, 0, n, true);
+		int leaves = (n + NODE_SIZE - 1) / NODE_SIZE;
+		int slice = NODE_SIZE * (int) Math.ceil(Math.sqrt(leaves));
+		for (int from = 0; from < n; from += slice)
+			sortByCenter(ids, from, Math.min(from + slice, n), false);
+		this.leaf_ids = ids;
+
+		if (n == 0) {
+			this.levels = new double[0][];
+			return;
+		}
+
+		List<double[]> built = new ArrayList<double[]>();
+		double[] boxes = new double[4 * leaves];
+		for (int leaf = 0; leaf < leaves; leaf++) {
+			int b = 4 * leaf;
+			boxes[b] = boxes[b + 1] = Double.POSITIVE_INFINITY;
+			boxes[b + 2] = boxes[b + 3] = Double.NEGATIVE_INFINITY;
+			for (int k = leaf * NODE_SIZE, to = Math.min(k + NODE_SIZE, n); k < to; k++) {
+				int id = ids[k];
+				boxes[b] = Math.min(boxes[b], min_x[id]);
+				boxes[b + 1] = Math.min(boxes[b + 1], min_y[id]);
+				boxes[b + 2] = Math.max(boxes[b + 2], max_x[id]);
+				boxes[b + 3] = Math.max(boxes[b + 3], max_y[id]);
+			}
+		}
+		built.add(boxes);
+		while (boxes.length / 4 > NODE_SIZE) {
+			int count = boxes.length / 4;
+			int parents = (count + NODE_SIZE - 1) / NODE_SIZE;
+			double[] upper = new double[4 * parents];
+			for (int p = 0; p < parents; p++) {
+				int b = 4 * p;
+				upper[b] = upper[b + 1] = Double.POSITIVE_INFINITY;
+				upper[b + 2] = upper[b + 3] = Double.NEGATIVE_INFINITY;
+				for (int k = p * NODE_SIZE, to = Math.min(k + NODE_SIZE, count); k < to; k++) {
+					upper[b] = Math.min(upper[b], boxes[4 * k]);
+					upper[b + 1] = Math.min(upper[b + 1], boxes[4 * k + 1]);
+					upper[b + 2] = Math.max(upper[b + 2], boxes[4 * k + 2]);
+					upper[b + 3] = Math.max(upper[b + 3], boxes[4 * k + 3]);
+				}
+			}
+			built.add(upper);
+			boxes = upper;
+		}
+		this.levels = built.toArray(new double[built.size()][]);
+	}
+
+	private boolean intersects(int id, double x1, double y1, double x2, double y2) {
+		return min_x[id] <= x2 && max_x[id] >= x1 && min_y[id] <= y2 && max_y[id] >= y1;
+	}
+
+	private void store(int id, double x1, double y1, double x2, double y2) {
+		if (!present[id]) {
+			present[id] = true;
+			size++;
+		}
+		min_x[id] = x1;
+		min_y[id] = y1;
+		max_x[id] = x2;
+		max_y[id] = y2;
+	}
+
+	private void addOverflow(int id) {
+		if (in_overflow[id])
+			return;
+		if (overflow_count == overflow.length)
+			overflow = Arrays.copyOf(overflow, 2 * overflow_count);
+		overflow[overflow_count++] = id;
+		in_overflow[id] = true;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= present.length)
+			return;
+		int length = Math.max(capacity, 2 * present.length);
+		min_x = Arrays.copyOf(min_x, length);
+		min_y = Arrays.copyOf(min_y, length);
+		max_x = Arrays.copyOf(max_x, length);
+		max_y = Arrays.copyOf(max_y, length);
+		present = Arrays.copyOf(present, length);
+		packed = Arrays.copyOf(packed, length);
+		in_overflow = Arrays.copyOf(in_overflow, length);
+	}
+
+	/**
+	 * Sorts <code>ids[from, to)</code> by the x (or y) coordinate of
+	 * the centers of their rectangles.
+	 */
+	private void sortByCenter(int[] ids, int from, int to, boolean by_x) {
+		int n = to - from;
+		if (n < 2)
+			return;
+		final double[] keys = new double[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			int id = ids[from + i];
+			keys[i] = by_x ? min_x[id] + max_x[id] : min_y[id] + max_y[id];
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(keys[a], keys[b]);
+			}
+		});
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++)
+			sorted[i] = ids[from + order[i]];
+		System.arraycopy(sorted, 0, ids, from, n);
+	}
+}
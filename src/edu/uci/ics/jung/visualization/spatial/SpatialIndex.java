@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2016, The JUNG Authors
+ *
+ * All rights reserved.
+ *
+ * This software is open-source under the BSD license; see either
+ * "license.txt" or
+ * https://github.com/jrtom/jung/blob/master/LICENSE for a description.
+ */
+package edu.uci.ics.jung.visualization.spatial;
+
+import com.google.common.base.Function;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.LayoutDecorator;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Pair;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.layout.LayoutChangeListener;
+import edu.uci.ics.jung.visualization.layout.LayoutEvent;
+import edu.uci.ics.jung.visualization.layout.LayoutEventSupport;
+import edu.uci.ics.jung.visualization.transform.AffineTransformer;
+import edu.uci.ics.jung.visualization.transform.MutableTransformer;
+import edu.uci.ics.jung.visualization.util.Caching;
+import edu.uci.ics.jung.visualization.util.ChangeEventSupport;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Maintains <code>RectangleTree</code>s of the bounds of the vertex and
+ * edge shapes of a layout, in layout-transformed coordinates (the coordinates
+ * in which <code>ShapePickSupport</code> tests shapes), so that the elements
+ * near a point or inside a viewport can be found without visiting every
+ * element of the graph.
+ *
+ * <p>The index listens to the layout: a vertex moved with
+ * <code>setLocation</code> updates the bounds of the vertex and its
+ * incident edges, while any other change (a <code>step</code> of an
+ * iterative layout, <code>initialize</code>, vertices or edges added or
+ * removed, new shape functions, or a layout transform which is not just a
+ * translation of the previous one) rebuilds the index the next time it is
+ * queried.  The vertex and edge shapes are assumed not to change in
+ * between; call <code>invalidate()</code> if they do (or
+ * <code>ShapePickSupport.invalidateSpatialIndex()</code>).
+ *
+ * <p>The index is only available for layouts which fire change events
+ * (such as <code>ObservableCachingLayout</code>) and layout transforms
+ * which are affine; see <code>isAvailable()</code>.
+ *
+ * @param <V> the vertex type
+ * @param <E> the edge type
+ */
+public class SpatialIndex<V,E> implements ChangeListener, LayoutChangeListener<V,E> {
+
+	/**
+	 * Added to each side of each bounding box, so that rounding in the
+	 * (float) shape computations of the renderers cannot leave an element
+	 * just outside of its box.
+	 */
+	private static final double MARGIN = 1;
+
+	protected RenderContext<V,E> rc;
+	protected Layout<V,E> layout;
+
+	/**
+	 * Where positions are read: past any per-paint location cache
+	 * of <code>layout</code>, which would otherwise hand the index
+	 * positions that were about to be replaced.
+	 */
+	private Layout<V,E> positions;
+
+	private RectangleTree vertex_tree = new RectangleTree();
+	private RectangleTree edge_tree = new RectangleTree();
+	private List<V> vertices = new ArrayList<V>();
+	private List<E> edges = new ArrayList<E>();
+	private Map<V,Integer> vertex_ids = new HashMap<V,Integer>();
+	private Map<E,Integer> edge_ids = new HashMap<E,Integer>();
+
+	/**
+	 * The state with which the trees were built.
+	 */
+	private AffineTransform built_transform;
+	private Graph<V,E> built_graph;
+	private int built_vertex_count;
+	private int built_edge_count;
+	private Function<? super V,Shape> built_vertex_shapes;
+	private Function<? super E,Shape> built_edge_shapes;
+
+	/**
+	 * The translation of the current layout transform relative
+	 * to <code>built_transform</code>.
+	 */
+	private double offset_x;
+	private double offset_y;
+
+	private boolean dirty = true;
+
+	/**
+	 * Set by a change event which made a clean index dirty, so that a layout
+	 * event following it (as <code>setLocation</code> fires both) can update
+	 * the one vertex instead.
+	 */
+	private boolean pending_move;
+
+	/**
+	 * Creates an index of the vertices and edges of <code>layout</code>,
+	 * whose shapes and transforms are taken from <code>rc</code>.
+	 * @param rc the source of the vertex and edge shapes and the layout transform
+	 * @param layout the source of the vertex positions
+	 */
+	@SuppressWarnings("unchecked")
+	public SpatialIndex(RenderContext<V,E> rc, Layout<V,E> layout) {
+		this.rc = rc;
+		this.layout = layout;
+		this.positions = layout;
+		if (layout instanceof Caching && layout instanceof LayoutDecorator) {
+			positions = ((LayoutDecorator<V,E>)layout).getDelegate();
+		}
+		if (layout instanceof ChangeEventSupport) {
+			((ChangeEventSupport)layout).addChangeListener(this);
+		}
+		if (layout instanceof LayoutEventSupport) {
+			((LayoutEventSupport<V,E>)layout).addLayoutChangeListener(this);
+		}
+	}
+
+	/**
+	 * @return the layout whose elements are indexed
+	 */
+	public Layout<V,E> getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Returns <code>true</code> if the index can be used: the layout
+	 * reports its changes, and the current layout transform is affine.
+	 * (A lens, for instance, replaces it with a non-affine transform.)
+	 * The queries may not be used when this returns <code>false</code>.
+	 * @return whether the index can currently be queried
+	 */
+	public boolean isAvailable() {
+		return layout instanceof ChangeEventSupport && getLayoutTransform() != null;
+	}
+
+	/**
+	 * Stops listening to the layout.
+	 */
+	@SuppressWarnings("unchecked")
+	public void dispose() {
+		if (layout instanceof ChangeEventSupport) {
+			((ChangeEventSupport)layout).removeChangeListener(this);
+		}
+		if (layout instanceof LayoutEventSupport) {
+			((LayoutEventSupport<V,E>)layout).removeLayoutChangeListener(this);
+		}
+	}
+
+	/**
+	 * Causes the index to be rebuilt before the next query.
+	 */
+	public synchronized void invalidate() {
+		dirty = true;
+		pending_move = false;
+	}
+
+	/**
+	 * Returns the vertices whose shapes may intersect <code>area</code>,
+	 * in the order in which the graph returns them.  The caller is
+	 * expected to test each one.
+	 * @param area a region in layout-transformed coordinates
+	 * @return the vertices whose shape bounds intersect <code>area</code>
+	 */
+	public synchronized List<V> getVertices(Rectangle2D area) {
+		validate();
+		int[] ids = vertex_tree.search(area.getMinX() - offset_x, area.getMinY() - offset_y,
+				area.getMaxX() - offset_x, area.getMaxY() - offset_y);
+		List<V> found = new ArrayList<V>(ids.length);
+		for (int id : ids) {
+			found.add(vertices.get(id));
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the edges whose shapes may intersect <code>area</code>,
+	 * in the order in which the graph returns them.  The caller is
+	 * expected to test each one.
+	 * @param area a region in layout-transformed coordinates
+	 * @return the edges whose shape bounds intersect <code>area</code>
+	 */
+	public synchronized List<E> getEdges(Rectangle2D area) {
+		validate();
+		int[] ids = edge_tree.search(area.getMinX() - offset_x, area.getMinY() - offset_y,
+				area.getMaxX() - offset_x, area.getMaxY() - offset_y);
+		List<E> found = new ArrayList<E>(ids.length);
+		for (int id : ids) {
+			found.add(edges.get(id));
+		}
+		return found;
+	}
+
+	public synchronized void stateChanged(ChangeEvent evt) {
+		pending_move = !dirty;
+		dirty = true;
+	}
+
+	public synchronized void layoutChanged(LayoutEvent<V,E> evt) {
+		if (!pending_move) {
+			return;
+		}
+		pending_move = false;
+		V v = evt.getVertex();
+		Graph<V,E> graph = layout.getGraph();
+		Integer id = vertex_ids.get(v);
+		if (id == null || graph != built_graph || !graph.containsVertex(v)) {
+			return;
+		}
+		List<Rectangle2D> edge_bounds = new ArrayList<Rectangle2D>();
+		for (E e : graph.getIncidentEdges(v)) {
+			if (!edge_ids.containsKey(e)) {
+				return;
+			}
+			edge_bounds.add(getEdgeBounds(graph, e, built_transform));
+		}
+		putBounds(vertex_tree, id, getVertexBounds(v, built_transform));
+		int i = 0;
+		for (E e : graph.getIncidentEdges(v)) {
+			putBounds(edge_tree, edge_ids.get(e), edge_bounds.get(i++));
+		}
+		dirty = false;
+	}
+
+	/**
+	 * Rebuilds the trees if anything but a translation of the layout
+	 * transform has changed since they were built.
+	 */
+	private void validate() {
+		AffineTransform current = getLayoutTransform();
+		Graph<V,E> graph = layout.getGraph();
+		if (dirty || built_transform == null
+				|| graph != built_graph
+				|| graph.getVertexCount() != built_vertex_count
+				|| graph.getEdgeCount() != built_edge_count
+				|| rc.getVertexShapeTransformer() != built_vertex_shapes
+				|| rc.getEdgeShapeTransformer() != built_edge_shapes
+				|| current.getScaleX() != built_transform.getScaleX()
+				|| current.getScaleY() != built_transform.getScaleY()
+				|| current.getShearX() != built_transform.getShearX()
+				|| current.getShearY() != built_transform.getShearY()) {
+			while (true) {
+				try {
+					build(graph, current);
+					break;
+				} catch(ConcurrentModificationException cme) {}
+			}
+		}
+		offset_x = current.getTranslateX() - built_transform.getTranslateX();
+		offset_y = current.getTranslateY() - built_transform.getTranslateY();
+	}
+
+	private void build(Graph<V,E> graph, AffineTransform transform) {
+		dirty = false;
+		pending_move = false;
+		built_transform = transform;
+		built_graph = graph;
+		built_vertex_shapes = rc.getVertexShapeTransformer();
+		built_edge_shapes = rc.getEdgeShapeTransformer();
+
+		vertices = new ArrayList<V>(graph.getVertices());
+		vertex_ids = new HashMap<V,Integer>();
+		Rectangle2D[] vertex_bounds = new Rectangle2D[vertices.size()];
+		for (int i = 0; i < vertex_bounds.length; i++) {
+			V v = vertices.get(i);
+			vertex_ids.put(v, i);
+			vertex_bounds[i] = getVertexBounds(v, transform);
+		}
+		edges = new ArrayList<E>(graph.getEdges());
+		edge_ids = new HashMap<E,Integer>();
+		Rectangle2D[] edge_bounds = new Rectangle2D[edges.size()];
+		for (int i = 0; i < edge_bounds.length; i++) {
+			E e = edges.get(i);
+			edge_ids.put(e, i);
+			edge_bounds[i] = getEdgeBounds(graph, e, transform);
+		}
+		built_vertex_count = vertices.size();
+		built_edge_count = edges.size();
+		vertex_tree = new RectangleTree(vertex_bounds);
+		edge_tree = new RectangleTree(edge_bounds);
+	}
+
+	private void putBounds(RectangleTree tree, int id, Rectangle2D bounds) {
+		if (bounds == null) {
+			tree.remove(id);
+		} else {
+			tree.put(id, bounds);
+		}
+	}
+
+	/**
+	 * @return the layout transform, if it is affine, or <code>null</code>
+	 */
+	private AffineTransform getLayoutTransform() {
+		MutableTransformer transformer = rc.getMultiLayerTransformer().getTransformer(Layer.LAYOUT);
+		if (transformer instanceof AffineTransformer) {
+			return new AffineTransform(((AffineTransformer)transformer).getTransform());
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the bounds of the shape of <code>v</code> at its transformed
+	 * position, extended to include the position itself (which is what
+	 * a region pick tests).
+	 */
+	private Rectangle2D getVertexBounds(V v, AffineTransform transform) {
+		Point2D p = positions.apply(v);
+		if (p == null) {
+			return null;
+		}
+		p = transform.transform(p, null);
+		Rectangle2D shape = rc.getVertexShapeTransformer().apply(v).getBounds2D();
+		Rectangle2D bounds = new Rectangle2D.Double(p.getX() + shape.getX(), p.getY() + shape.getY(),
+				shape.getWidth(), shape.getHeight());
+		bounds.add(p);
+		return pad(bounds);
+	}
+
+	/**
+	 * Returns the bounds of the edge shape as <code>ShapePickSupport</code>
+	 * and the edge renderers place it between its transformed endpoints.
+	 */
+	private Rectangle2D getEdgeBounds(Graph<V,E> graph, E e, AffineTransform transform) {
+		Pair<V> pair = graph.getEndpoints(e);
+		V v1 = pair.getFirst();
+		V v2 = pair.getSecond();
+		Point2D p1 = positions.apply(v1);
+		Point2D p2 = positions.apply(v2);
+		if (p1 == null || p2 == null) {
+			return null;
+		}
+		p1 = transform.transform(p1, null);
+		p2 = transform.transform(p2, null);
+		float x1 = (float) p1.getX();
+		float y1 = (float) p1.getY();
+		float x2 = (float) p2.getX();
+		float y2 = (float) p2.getY();
+
+		AffineTransform xform = AffineTransform.getTranslateInstance(x1, y1);
+		Shape edgeShape = rc.getEdgeShapeTransformer().apply(e);
+		if (v1.equals(v2)) {
+			Rectangle2D s2Bounds = rc.getVertexShapeTransformer().apply(v2).getBounds2D();
+			Rectangle2D loop = edgeShape.getBounds2D();
+			xform.scale(s2Bounds.getWidth(), s2Bounds.getHeight());
+			// the renderers center a loop by its width, picking by its height
+			AffineTransform by_width = new AffineTransform(xform);
+			by_width.translate(0, -loop.getWidth()/2);
+			xform.translate(0, -loop.getHeight()/2);
+			Rectangle2D bounds = xform.createTransformedShape(edgeShape).getBounds2D();
+			bounds.add(by_width.createTransformedShape(edgeShape).getBounds2D());
+			return pad(bounds);
+		} else {
+			float dx = x2 - x1;
+			float dy = y2 - y1;
+			xform.rotate(Math.atan2(dy, dx));
+			xform.scale(Math.sqrt(dx*dx + dy*dy), 1.0);
+		}
+		return pad(xform.createTransformedShape(edgeShape).getBounds2D());
+	}
+
+	private Rectangle2D pad(Rectangle2D bounds) {
+		bounds.setRect(bounds.getX() - MARGIN, bounds.getY() - MARGIN,
+				bounds.getWidth() + 2*MARGIN, bounds.getHeight() + 2*MARGIN);
+		return bounds;
+	}
+}
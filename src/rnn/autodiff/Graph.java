@@ -1,199 +1,277 @@
 package rnn.autodiff;
 
 import rnn.matrix.Matrix;
+import rnn.matrix.MatrixOps;
 import rnn.model.Nonlinearity;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 public class Graph {
 	boolean applyBackprop;
-	
-	List<Runnable> backprop = new ArrayList<>();
-	
+
+	//backprop tape, one entry per recorded op
+	private static final byte MUL = 0, ADD = 1, ADD3 = 2, SUB = 3, ELMUL = 4, SMUL = 5, NONLIN = 6, CONCAT = 7;
+	private byte[] ops = new byte[64];
+	private Matrix[] in1 = new Matrix[64];
+	private Matrix[] in2 = new Matrix[64];
+	private Matrix[] in3 = new Matrix[64];
+	private Matrix[] outs = new Matrix[64];
+	private Nonlinearity[] neurons = new Nonlinearity[64];
+	private double[] scalars = new double[64];
+	private int size = 0;
+
+	//activations recycled across reset() calls, in op order
+	private List<Matrix> workspace = new ArrayList<>();
+	private int cursor = 0;
+
 	public Graph() {
 		this.applyBackprop = true;
 	}
-	
+
 	public Graph(boolean applyBackprop) {
 		this.applyBackprop = applyBackprop;
 	}
-	
+
+	/**
+	 * Clears the tape so the graph can be reused for the next sequence. Activations of the
+	 * previous pass are recycled, so call this only after model.resetState() has dropped
+	 * any hidden state that still points into them.
+	 */
+	public void reset() {
+		Arrays.fill(in1, 0, size, null);
+		Arrays.fill(in2, 0, size, null);
+		Arrays.fill(in3, 0, size, null);
+		Arrays.fill(outs, 0, size, null);
+		Arrays.fill(neurons, 0, size, null);
+		size = 0;
+		cursor = 0;
+	}
+
 	public void backward() {
-		for (int i = backprop.size()-1; i >= 0; i--) {
-			backprop.get(i).run();
+		for (int t = size - 1; t >= 0; t--) {
+			Matrix m1 = in1[t];
+			Matrix m2 = in2[t];
+			Matrix out = outs[t];
+			int n = out.w.length;
+			switch (ops[t]) {
+				case MUL:
+					//dm1 += dout * m2^T, dm2 += m1^T * dout
+					MatrixOps.gemm(false, true, m1.rows, m1.cols, m2.cols, out.dw, m2.w, m1.dw, true);
+					MatrixOps.gemm(true, false, m1.cols, m2.cols, m1.rows, m1.w, out.dw, m2.dw, true);
+					break;
+				case ADD3:
+					MatrixOps.axpy(1.0, out.dw, m1.dw, n);
+					MatrixOps.axpy(1.0, out.dw, m2.dw, n);
+					MatrixOps.axpy(1.0, out.dw, in3[t].dw, n);
+					break;
+				case ADD:
+					MatrixOps.axpy(1.0, out.dw, m1.dw, n);
+					MatrixOps.axpy(1.0, out.dw, m2.dw, n);
+					break;
+				case SUB:
+					MatrixOps.axpy(1.0, out.dw, m1.dw, n);
+					MatrixOps.axpy(-1.0, out.dw, m2.dw, n);
+					break;
+				case ELMUL:
+					for (int i = 0; i < n; i++) {
+						m1.dw[i] += m2.w[i] * out.dw[i];
+						m2.dw[i] += m1.w[i] * out.dw[i];
+					}
+					break;
+				case SMUL:
+					MatrixOps.axpy(scalars[t], out.dw, m1.dw, n);
+					break;
+				case NONLIN:
+					Nonlinearity neuron = neurons[t];
+					for (int i = 0; i < n; i++) {
+						m1.dw[i] += neuron.backward(m1.w[i]) * out.dw[i];
+					}
+					break;
+				case CONCAT:
+					int n1 = m1.w.length;
+					int n2 = m2.w.length;
+					System.arraycopy(out.w, 0, m1.w, 0, n1);
+					System.arraycopy(out.dw, 0, m1.dw, 0, n1);
+					System.arraycopy(out.w, n1, m2.w, 0, n2);
+					System.arraycopy(out.dw, n1, m2.dw, 0, n2);
+					break;
+			}
+		}
+	}
+
+	private void record(byte op, Matrix m1, Matrix m2, Matrix m3, Matrix out, Nonlinearity neuron, double s) {
+		if (size == ops.length) {
+			int cap = size * 2;
+			ops = Arrays.copyOf(ops, cap);
+			in1 = Arrays.copyOf(in1, cap);
+			in2 = Arrays.copyOf(in2, cap);
+			in3 = Arrays.copyOf(in3, cap);
+			outs = Arrays.copyOf(outs, cap);
+			neurons = Arrays.copyOf(neurons, cap);
+			scalars = Arrays.copyOf(scalars, cap);
 		}
+		ops[size] = op;
+		in1[size] = m1;
+		in2[size] = m2;
+		in3[size] = m3;
+		outs[size] = out;
+		neurons[size] = neuron;
+		scalars[size] = s;
+		size++;
 	}
-	
+
+	/**
+	 * Output matrix for the next op. Inference graphs allocate bare activations; backprop
+	 * graphs hand out the matching matrix from the previous pass with its gradient zeroed.
+	 */
+	private Matrix alloc(int rows, int cols) {
+		if (!applyBackprop) {
+			return Matrix.activation(rows, cols, false);
+		}
+		if (cursor < workspace.size()) {
+			Matrix m = workspace.get(cursor);
+			if (m.rows == rows && m.cols == cols) {
+				m.resetDw();
+				cursor++;
+				return m;
+			}
+		}
+		Matrix m = Matrix.activation(rows, cols, true);
+		if (cursor < workspace.size()) {
+			workspace.set(cursor, m);
+		}
+		else {
+			workspace.add(m);
+		}
+		cursor++;
+		return m;
+	}
+
 	public Matrix concatVectors(final Matrix m1, final Matrix m2) throws Exception {
 		if (m1.cols > 1 || m2.cols > 1) {
 			throw new Exception("Expected column vectors");
 		}
-		final Matrix out = new Matrix(m1.rows + m2.rows);
-		int loc = 0;
-		for (int i = 0; i < m1.w.length; i++) {
-			out.w[loc] = m1.w[i];
-			out.dw[loc] = m1.dw[i];
-			out.stepCache[loc] = m1.stepCache[i];
-			loc++;
-		}
-		for (int i = 0; i < m2.w.length; i++) {
-			out.w[loc] = m2.w[i];
-			out.dw[loc] = m2.dw[i];
-			out.stepCache[loc] = m2.stepCache[i];
-			loc++;
-		}
+		final Matrix out = alloc(m1.rows + m2.rows, 1);
+		System.arraycopy(m1.w, 0, out.w, 0, m1.w.length);
+		System.arraycopy(m2.w, 0, out.w, m1.w.length, m2.w.length);
 		if (this.applyBackprop) {
-			Runnable bp = new Runnable() {
-				public void run() {
-					int loc = 0;
-					for (int i = 0; i < m1.w.length; i++) {
-						m1.w[i] = out.w[loc];
-						m1.dw[i] = out.dw[loc];
-						m1.stepCache[i] = out.stepCache[loc];
-						loc++;
-					}
-					for (int i = 0; i < m2.w.length; i++) {
-						m2.w[i] = out.w[loc];
-						m2.dw[i] = out.dw[loc];
-						m2.stepCache[i] = out.stepCache[loc];
-						loc++;
-					}
-				}
-			};
-			backprop.add(bp);
+			System.arraycopy(m1.dw, 0, out.dw, 0, m1.dw.length);
+			System.arraycopy(m2.dw, 0, out.dw, m1.dw.length, m2.dw.length);
+			record(CONCAT, m1, m2, null, out, null, 0);
 		}
 		return out;
 	}
-	
+
 	public Matrix nonlin(final Nonlinearity neuron, final Matrix m) throws Exception {
-		final Matrix out = new Matrix(m.rows, m.cols);
+		final Matrix out = alloc(m.rows, m.cols);
 		final int n = m.w.length;
 		for (int i = 0; i < n; i++) {
 			out.w[i] = neuron.forward(m.w[i]);
 		}
 		if (this.applyBackprop) {
-			Runnable bp = new Runnable() {
-				public void run() {
-					for (int i = 0; i < n; i++) {
-						m.dw[i] += neuron.backward(m.w[i]) * out.dw[i];
-					}
-				}
-			};
-			backprop.add(bp);
+			record(NONLIN, m, null, null, out, neuron, 0);
 		}
 		return out;
 	}
-	
+
 	public Matrix mul(final Matrix m1, final Matrix m2) throws Exception {
 		if (m1.cols != m2.rows) {
 			throw new Exception("matrix dimension mismatch");
 		}
-		
-		final int m1rows = m1.rows;
-		final int m1cols = m1.cols;
-		final int m2cols = m2.cols;
-		final Matrix out = new Matrix(m1rows, m2cols);
-		final int outcols = m2cols;
-		for (int i = 0; i < m1rows; i++) {
-			int m1col = m1cols*i;
-			for (int j = 0; j < m2cols; j++) {
-				double dot = 0;
-				for (int k = 0; k < m1cols; k++) {
-					dot +=  m1.w[m1col + k] * m2.w[m2cols*k + j];
-				}
-				out.w[outcols*i + j] = dot;
-			}
-		}
+		final Matrix out = alloc(m1.rows, m2.cols);
+		MatrixOps.gemm(false, false, m1.rows, m2.cols, m1.cols, m1.w, m2.w, out.w, false);
 		if (this.applyBackprop) {
-			Runnable bp = new Runnable() {
-				public void run() {
-					for (int i = 0; i < m1.rows; i++) {
-						int outcol = outcols*i;
-						for (int j = 0; j < m2.cols; j++) {
-							double b = out.dw[outcol + j];
-							for (int k = 0; k < m1.cols; k++) {
-								m1.dw[m1cols*i + k] += m2.w[m2cols*k + j] * b;
-								m2.dw[m2cols*k + j] += m1.w[m1cols*i + k] * b;
-							}
-						}
-					}
-				}
-			};
-			backprop.add(bp);
+			record(MUL, m1, m2, null, out, null, 0);
 		}
 		return out;
 	}
-	
+
 	public Matrix add(final Matrix m1, final Matrix m2) throws Exception {
 		if (m1.rows != m2.rows || m1.cols != m2.cols) {
 			throw new Exception("matrix dimension mismatch");
 		}
-		final Matrix out = new Matrix(m1.rows, m1.cols);
-		for (int i = 0; i < m1.w.length; i++) {
-			out.w[i] = m1.w[i] + m2.w[i];
+		final Matrix out = alloc(m1.rows, m1.cols);
+		MatrixOps.add(m1.w, m2.w, null, out.w, out.w.length);
+		if (this.applyBackprop) {
+			record(ADD, m1, m2, null, out, null, 0);
 		}
+		return out;
+	}
+
+	/**
+	 * Fused m1 + m2 + m3, the shape of every gate pre-activation (Wx*x + Wh*h + b).
+	 */
+	public Matrix add(final Matrix m1, final Matrix m2, final Matrix m3) throws Exception {
+		if (m1.rows != m2.rows || m1.cols != m2.cols || m1.rows != m3.rows || m1.cols != m3.cols) {
+			throw new Exception("matrix dimension mismatch");
+		}
+		final Matrix out = alloc(m1.rows, m1.cols);
+		MatrixOps.add(m1.w, m2.w, m3.w, out.w, out.w.length);
 		if (this.applyBackprop) {
-			Runnable bp = new Runnable() {
-				public void run() {
-					for (int i = 0; i < m1.w.length; i++) {
-						m1.dw[i] += out.dw[i];
-						m2.dw[i] += out.dw[i];
-					}
-				}
-			};
-			backprop.add(bp);
+			record(ADD3, m1, m2, m3, out, null, 0);
 		}
 		return out;
 	}
-	
+
 	public Matrix oneMinus(final Matrix m) throws Exception {
-		Matrix ones = Matrix.ones(m.rows, m.cols);
-		Matrix out = sub(ones, m);
+		final Matrix out = alloc(m.rows, m.cols);
+		for (int i = 0; i < out.w.length; i++) {
+			out.w[i] = 1.0 - m.w[i];
+		}
+		if (this.applyBackprop) {
+			record(SMUL, m, null, null, out, null, -1.0);
+		}
 		return out;
 	}
-	
+
 	public Matrix sub(final Matrix m1, final Matrix m2) throws Exception {
-		Matrix out = add(m1, neg(m2));
+		if (m1.rows != m2.rows || m1.cols != m2.cols) {
+			throw new Exception("matrix dimension mismatch");
+		}
+		final Matrix out = alloc(m1.rows, m1.cols);
+		for (int i = 0; i < out.w.length; i++) {
+			out.w[i] = m1.w[i] - m2.w[i];
+		}
+		if (this.applyBackprop) {
+			record(SUB, m1, m2, null, out, null, 0);
+		}
 		return out;
 	}
-	
+
 	public Matrix smul(final Matrix m, final double s) throws Exception {
-		Matrix m2 = Matrix.uniform(m.rows, m.cols, s);
-		Matrix out = elmul(m, m2);
+		final Matrix out = alloc(m.rows, m.cols);
+		for (int i = 0; i < out.w.length; i++) {
+			out.w[i] = s * m.w[i];
+		}
+		if (this.applyBackprop) {
+			record(SMUL, m, null, null, out, null, s);
+		}
 		return out;
 	}
-	
+
 	public Matrix smul(final double s, final Matrix m) throws Exception {
 		Matrix out = smul(m, s);
 		return out;
 	}
-	
+
 	public Matrix neg(final Matrix m) throws Exception {
-		Matrix negones = Matrix.negones(m.rows, m.cols);
-		Matrix out = elmul(negones, m);
+		Matrix out = smul(m, -1.0);
 		return out;
 	}
-	
+
 	public Matrix elmul(final Matrix m1, final Matrix m2) throws Exception {
 		if (m1.rows != m2.rows || m1.cols != m2.cols) {
 			throw new Exception("matrix dimension mismatch");
 		}
-		final Matrix out = new Matrix(m1.rows, m1.cols);
+		final Matrix out = alloc(m1.rows, m1.cols);
 		for (int i = 0; i < m1.w.length; i++) {
 			out.w[i] = m1.w[i] * m2.w[i];
 		}
 		if (this.applyBackprop) {
-			Runnable bp = new Runnable() {
-				public void run() {
-					for (int i = 0; i < m1.w.length; i++) {
-						m1.dw[i] += m2.w[i] * out.dw[i];
-						m2.dw[i] += m1.w[i] * out.dw[i];
-					}
-				}
-			};
-			backprop.add(bp);
+			record(ELMUL, m1, m2, null, out, null, 0);
 		}
 		return out;
 	}
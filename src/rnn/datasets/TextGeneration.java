@@ -1,15 +1,13 @@
 package rnn.datasets;
 
-import rnn.autodiff.Graph;
 import rnn.datastructs.DataSequence;
 import rnn.datastructs.DataSet;
 import rnn.datastructs.DataStep;
 import rnn.loss.LossSoftmax;
-import rnn.matrix.Matrix;
+import rnn.model.FrozenNetwork;
 import rnn.model.LinearUnit;
 import rnn.model.Model;
 import rnn.model.Nonlinearity;
-import rnn.util.Util;
 
 import java.io.File;
 import java.nio.charset.Charset;
@@ -29,47 +27,24 @@ public class TextGeneration extends DataSet {
 
     public static List<String> generateText(Model model, int steps, boolean argmax, double temperature, Random rng) throws Exception {
         List<String> lines = new ArrayList<>();
-        Matrix start = new Matrix(dimension);
-        start.w[START_END_TOKEN_INDEX] = 1.0;
-        model.resetState();
-        Graph g = new Graph(false);
-        Matrix input = start.clone();
-        String line = "";
+        FrozenNetwork net = FrozenNetwork.freeze(model, 1);
+        int[] token = {START_END_TOKEN_INDEX};
+        int[] next = new int[1];
+        StringBuilder line = new StringBuilder();
         for (int s = 0; s < steps; s++) {
-            Matrix logprobs = model.forward(input, g);
-            Matrix probs = LossSoftmax.getSoftmaxProbs(logprobs, temperature);
-
-
-            int indxChosen = -1;
-            if (argmax) {
-                double high = Double.NEGATIVE_INFINITY;
-                for (int i = 0; i < probs.w.length; i++) {
-                    if (probs.w[i] > high) {
-                        high = probs.w[i];
-                        indxChosen = i;
-                    }
-                }
-            } else {
-                indxChosen = Util.pickIndexFromRandomVector(probs, rng);
-            }
-            if (indxChosen == START_END_TOKEN_INDEX) {
-                lines.add(line);
-                line = "";
-                input = start.clone();
-                g = new Graph(false);
-                model.resetState();
-                input = start.clone();
+            net.sample(token, next, temperature, argmax, rng);
+            if (next[0] == START_END_TOKEN_INDEX) {
+                lines.add(line.toString());
+                line.setLength(0);
+                net.resetState();
+                token[0] = START_END_TOKEN_INDEX;
             } else {
-                String ch = indexToChar.get(indxChosen);
-                line += ch;
-                for (int i = 0; i < input.w.length; i++) {
-                    input.w[i] = 0;
-                }
-                input.w[indxChosen] = 1.0;
+                line.append(indexToChar.get(next[0]));
+                token[0] = next[0];
             }
         }
-        if (line.equals("") == false) {
-            lines.add(line);
+        if (line.length() > 0) {
+            lines.add(line.toString());
         }
         return lines;
     }
@@ -63,7 +63,7 @@ public class LossSoftmax implements Loss {
 	}
 	
 	public static Matrix getSoftmaxProbs(Matrix logprobs, double temperature) throws Exception {
-		Matrix probs = new Matrix(logprobs.w.length);
+		Matrix probs = Matrix.activation(logprobs.w.length, 1, false);
 		if (temperature != 1.0) {
 			for (int i = 0; i < logprobs.w.length; i++) {
 				logprobs.w[i] /= temperature;
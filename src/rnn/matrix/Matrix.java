@@ -1,5 +1,6 @@
 package rnn.matrix;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Random;
 
 
@@ -10,6 +11,7 @@ public class Matrix implements Serializable {
 	public int cols;
 	public double[] w;
 	public double[] dw;
+	// RMSProp state, created by Trainer for the parameters it updates
 	public double[] stepCache;
 	
 	@Override
@@ -26,26 +28,36 @@ public class Matrix implements Serializable {
 	
 	public Matrix clone() {
 		Matrix result = new Matrix(rows, cols);
-		for (int i = 0; i < w.length; i++) {
-			result.w[i] = w[i];
-			result.dw[i] = dw[i];
-			result.stepCache[i] = stepCache[i];
+		System.arraycopy(w, 0, result.w, 0, w.length);
+		if (dw != null) {
+			System.arraycopy(dw, 0, result.dw, 0, dw.length);
+		}
+		if (stepCache != null) {
+			result.stepCache = stepCache.clone();
 		}
 		return result;
 	}
 
 	public void resetDw() {
-		for (int i = 0; i < dw.length; i++) {
-			dw[i] = 0;
+		if (dw != null) {
+			Arrays.fill(dw, 0);
 		}
 	}
 	
 	public void resetStepCache() {
-		for (int i = 0; i < stepCache.length; i++) {
-			stepCache[i] = 0;
+		if (stepCache != null) {
+			Arrays.fill(stepCache, 0);
 		}
 	}
 	
+	/**
+	 * Intermediate result of a Graph op. Activations never carry a step cache,
+	 * and only carry gradients when the graph backpropagates.
+	 */
+	public static Matrix activation(int rows, int cols, boolean withGradient) {
+		return new Matrix(rows, cols, withGradient);
+	}
+	
 	public static Matrix transpose(Matrix m) {
 		Matrix result = new Matrix(m.cols, m.rows);
 		for (int r = 0; r < m.rows; r++) {
@@ -93,7 +105,6 @@ public class Matrix implements Serializable {
 		this.cols = 1;
 		this.w = new double[rows * cols];
 		this.dw = new double[rows * cols];
-		this.stepCache = new double[rows * cols];
 	}
 	
 	public Matrix(int rows, int cols) {
@@ -101,7 +112,13 @@ public class Matrix implements Serializable {
 		this.cols = cols;
 		this.w = new double[rows * cols];
 		this.dw = new double[rows * cols];
-		this.stepCache = new double[rows * cols];
+	}
+	
+	private Matrix(int rows, int cols, boolean withGradient) {
+		this.rows = rows;
+		this.cols = cols;
+		this.w = new double[rows * cols];
+		this.dw = withGradient ? new double[rows * cols] : null;
 	}
 	
 	public Matrix(double[] vector) {
@@ -109,7 +126,6 @@ public class Matrix implements Serializable {
 		this.cols = 1;
 		this.w = vector;
 		this.dw = new double[vector.length];
-		this.stepCache = new double[vector.length];
 	}
 	
 	private int index(int row, int col) {
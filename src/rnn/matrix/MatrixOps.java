@@ -0,0 +1,189 @@
+package rnn.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dense kernels over row-major double arrays.
+ *
+ * gemm computes C = op(A) * op(B) (or C += ... when accumulating), where op(A) is m x k
+ * and op(B) is k x n. A transposed operand is read in place, never copied. Work is
+ * blocked over k so the touched rows of B stay in cache, and large products are split
+ * by output rows across the common ForkJoin pool.
+ */
+public class MatrixOps {
+
+	/** multiply-adds below which a product is computed on the calling thread */
+	public static int parallelThreshold = 1 << 18;
+	private static final int BLOCK_K = 128;
+
+	public static void gemm(boolean transA, boolean transB, int m, int n, int k, double[] a, double[] b, double[] c, boolean accumulate) {
+		if (!accumulate) {
+			Arrays.fill(c, 0, m * n, 0);
+		}
+		if ((long) m * n * k < parallelThreshold || m < 2) {
+			gemmRows(transA, transB, 0, m, m, n, k, a, b, c);
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(new GemmTask(transA, transB, 0, m, m, n, k, a, b, c));
+		}
+	}
+
+	/**
+	 * y = A * x (+ y), A is m x n.
+	 */
+	public static void gemv(int m, int n, double[] a, double[] x, double[] y, boolean accumulate) {
+		gemm(false, false, m, 1, n, a, x, y, accumulate);
+	}
+
+	private static void gemmRows(boolean transA, boolean transB, int i0, int i1, int m, int n, int k, double[] a, double[] b, double[] c) {
+		if (n == 1) {
+			//matrix-vector, the common case for per-timestep rnn ops
+			if (transA) {
+				for (int p = 0; p < k; p++) {
+					double bv = b[p];
+					if (bv == 0) {
+						continue;
+					}
+					int ap = p * m;
+					for (int i = i0; i < i1; i++) {
+						c[i] += a[ap + i] * bv;
+					}
+				}
+			}
+			else {
+				int k4 = k & ~3;
+				for (int i = i0; i < i1; i++) {
+					int ai = i * k;
+					//four independent sums keep the multiply pipeline busy
+					double d0 = 0, d1 = 0, d2 = 0, d3 = 0;
+					int p = 0;
+					for (; p < k4; p += 4) {
+						d0 += a[ai + p] * b[p];
+						d1 += a[ai + p + 1] * b[p + 1];
+						d2 += a[ai + p + 2] * b[p + 2];
+						d3 += a[ai + p + 3] * b[p + 3];
+					}
+					for (; p < k; p++) {
+						d0 += a[ai + p] * b[p];
+					}
+					c[i] += (d0 + d1) + (d2 + d3);
+				}
+			}
+		}
+		else if (transA && !transB) {
+			//A is stored k x m, walk it row by row so both operands stream contiguously
+			for (int p = 0; p < k; p++) {
+				int ap = p * m;
+				int bp = p * n;
+				for (int i = i0; i < i1; i++) {
+					double av = a[ap + i];
+					if (av == 0) {
+						continue;
+					}
+					int ci = i * n;
+					for (int j = 0; j < n; j++) {
+						c[ci + j] += av * b[bp + j];
+					}
+				}
+			}
+		}
+		else if (!transB) {
+			for (int p0 = 0; p0 < k; p0 += BLOCK_K) {
+				int p1 = Math.min(k, p0 + BLOCK_K);
+				for (int i = i0; i < i1; i++) {
+					int ci = i * n;
+					for (int p = p0; p < p1; p++) {
+						double av = a[i * k + p];
+						if (av == 0) {
+							continue;
+						}
+						int bp = p * n;
+						for (int j = 0; j < n; j++) {
+							c[ci + j] += av * b[bp + j];
+						}
+					}
+				}
+			}
+		}
+		else {
+			//B is stored n x k, so each output is a dot of two contiguous rows when A is not transposed
+			for (int i = i0; i < i1; i++) {
+				int ci = i * n;
+				for (int j = 0; j < n; j++) {
+					int bj = j * k;
+					double dot = 0;
+					if (transA) {
+						for (int p = 0; p < k; p++) {
+							dot += a[p * m + i] * b[bj + p];
+						}
+					}
+					else {
+						int ai = i * k;
+						for (int p = 0; p < k; p++) {
+							dot += a[ai + p] * b[bj + p];
+						}
+					}
+					c[ci + j] += dot;
+				}
+			}
+		}
+	}
+
+	private static class GemmTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final boolean transA, transB;
+		final int i0, i1, m, n, k;
+		final double[] a, b, c;
+
+		GemmTask(boolean transA, boolean transB, int i0, int i1, int m, int n, int k, double[] a, double[] b, double[] c) {
+			this.transA = transA;
+			this.transB = transB;
+			this.i0 = i0;
+			this.i1 = i1;
+			this.m = m;
+			this.n = n;
+			this.k = k;
+			this.a = a;
+			this.b = b;
+			this.c = c;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long) (i1 - i0) * n * k < parallelThreshold || i1 - i0 < 2) {
+				gemmRows(transA, transB, i0, i1, m, n, k, a, b, c);
+				return;
+			}
+			int mid = (i0 + i1) >>> 1;
+			invokeAll(new GemmTask(transA, transB, i0, mid, m, n, k, a, b, c),
+					new GemmTask(transA, transB, mid, i1, m, n, k, a, b, c));
+		}
+	}
+
+	/**
+	 * out = a + b (+ c when c is not null).
+	 */
+	public static void add(double[] a, double[] b, double[] c, double[] out, int len) {
+		if (c == null) {
+			for (int i = 0; i < len; i++) {
+				out[i] = a[i] + b[i];
+			}
+		}
+		else {
+			for (int i = 0; i < len; i++) {
+				out[i] = a[i] + b[i] + c[i];
+			}
+		}
+	}
+
+	/**
+	 * y += s * x
+	 */
+	public static void axpy(double s, double[] x, double[] y, int len) {
+		for (int i = 0; i < len; i++) {
+			y[i] += s * x[i];
+		}
+	}
+}
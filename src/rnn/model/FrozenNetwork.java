@@ -0,0 +1,515 @@
+package rnn.model;
+
+import rnn.matrix.Matrix;
+import rnn.matrix.MatrixOps;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inference-only copy of a trained model.
+ *
+ * Weights are copied out of the Matrix parameters once, gate weights are packed so each
+ * layer does one product per operand, and every activation and state buffer is
+ * preallocated for a fixed number of parallel sequences. Stepping and sampling do not
+ * allocate. Buffers are laid out row-major as (dim x batch), so column b of every
+ * buffer belongs to sequence b.
+ *
+ * Models can be stored in a compact binary form (float32 weights) with save/load
+ * instead of Java serialization.
+ */
+public class FrozenNetwork {
+
+	private static final int MAGIC = 0x524E4E57; //"RNNW"
+	private static final int VERSION = 1;
+	private static final byte FEEDFORWARD = 0, LSTM = 1, GRU = 2, RNN = 3;
+	private static final byte LINEAR = 0, SIGMOID = 1, TANH = 2, RELU = 3, SINE = 4;
+
+	public final int batch;
+	public final int inputDimension;
+	public final int outputDimension;
+	private final Layer[] layers;
+	private final double[] input;
+	private final double[] probs;
+
+	private FrozenNetwork(Layer[] layers, int batch) {
+		this.layers = layers;
+		this.batch = batch;
+		this.inputDimension = layers[0].in;
+		this.outputDimension = layers[layers.length - 1].out;
+		this.input = new double[inputDimension * batch];
+		this.probs = new double[outputDimension];
+		for (Layer layer : layers) {
+			layer.allocate(batch);
+		}
+	}
+
+	public static FrozenNetwork freeze(Model model, int batch) throws Exception {
+		List<Model> models = model instanceof NeuralNetwork ? ((NeuralNetwork) model).layers : Collections.singletonList(model);
+		Layer[] layers = new Layer[models.size()];
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = freezeLayer(models.get(i));
+		}
+		return new FrozenNetwork(layers, batch);
+	}
+
+	private static Layer freezeLayer(Model m) throws Exception {
+		if (m instanceof LstmLayer) {
+			LstmLayer l = (LstmLayer) m;
+			return new Lstm(l.inputDimension, l.outputDimension,
+					stack(l.Wix, l.Wfx, l.Wox, l.Wcx), stack(l.Wih, l.Wfh, l.Woh, l.Wch), stack(l.bi, l.bf, l.bo, l.bc));
+		}
+		if (m instanceof GruLayer) {
+			GruLayer l = (GruLayer) m;
+			return new Gru(l.inputDimension, l.outputDimension,
+					stack(l.IHmix, l.IHreset, l.IHnew), stack(l.HHmix, l.HHreset), l.HHnew.w.clone(), stack(l.Bmix, l.Breset, l.Bnew));
+		}
+		if (m instanceof FeedForwardLayer) {
+			FeedForwardLayer l = (FeedForwardLayer) m;
+			return new FeedForward(l.W.cols, l.W.rows, l.W.w.clone(), l.b.w.clone(), l.f);
+		}
+		if (m instanceof LinearLayer) {
+			LinearLayer l = (LinearLayer) m;
+			return new FeedForward(l.W.cols, l.W.rows, l.W.w.clone(), new double[l.W.rows], new LinearUnit());
+		}
+		if (m instanceof RnnLayer) {
+			RnnLayer l = (RnnLayer) m;
+			return new Rnn(l.inputDimension, l.outputDimension, l.W.w.clone(), l.b.w.clone(), l.f);
+		}
+		throw new Exception("cannot freeze " + m.getClass().getSimpleName());
+	}
+
+	private static double[] stack(Matrix... ms) {
+		int len = 0;
+		for (Matrix m : ms) {
+			len += m.w.length;
+		}
+		double[] result = new double[len];
+		int loc = 0;
+		for (Matrix m : ms) {
+			System.arraycopy(m.w, 0, result, loc, m.w.length);
+			loc += m.w.length;
+		}
+		return result;
+	}
+
+	public void resetState() {
+		for (Layer layer : layers) {
+			layer.reset();
+		}
+	}
+
+	/**
+	 * Clears the recurrent state of one sequence, leaving the others running.
+	 */
+	public void resetState(int b) {
+		for (Layer layer : layers) {
+			layer.reset(b);
+		}
+	}
+
+	/**
+	 * Advances all sequences by one step. x is (inputDimension x batch); the returned
+	 * (outputDimension x batch) buffer is reused by the next call.
+	 */
+	public double[] step(double[] x) {
+		double[] prev = x;
+		for (Layer layer : layers) {
+			layer.step(prev, batch);
+			prev = layer.output;
+		}
+		return prev;
+	}
+
+	/**
+	 * Feeds tokens[b] as a one-hot input to sequence b and samples the next token of every
+	 * sequence into next[b]. With argmax the most likely token is chosen instead.
+	 */
+	public void sample(int[] tokens, int[] next, double temperature, boolean argmax, Random rng) {
+		Arrays.fill(input, 0);
+		for (int b = 0; b < batch; b++) {
+			input[tokens[b] * batch + b] = 1.0;
+		}
+		double[] logprobs = step(input);
+		for (int b = 0; b < batch; b++) {
+			next[b] = pick(logprobs, b, temperature, argmax, rng);
+		}
+	}
+
+	private int pick(double[] logprobs, int b, double temperature, boolean argmax, Random rng) {
+		int n = outputDimension;
+		double maxval = Double.NEGATIVE_INFINITY;
+		int best = 0;
+		for (int i = 0; i < n; i++) {
+			double v = logprobs[i * batch + b];
+			if (v > maxval) {
+				maxval = v;
+				best = i;
+			}
+		}
+		if (argmax) {
+			return best;
+		}
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			probs[i] = Math.exp((logprobs[i * batch + b] - maxval) / temperature);
+			sum += probs[i];
+		}
+		double r = rng.nextDouble() * sum;
+		for (int i = 0; i < n; i++) {
+			r -= probs[i];
+			if (r < 0) {
+				return i;
+			}
+		}
+		return n - 1;
+	}
+
+	public void save(String path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(layers.length);
+			for (Layer layer : layers) {
+				out.writeByte(layer.type());
+				out.writeInt(layer.in);
+				out.writeInt(layer.out);
+				layer.write(out);
+			}
+		}
+	}
+
+	public static FrozenNetwork load(String path, int batch) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("not a frozen network: " + path);
+			}
+			Layer[] layers = new Layer[in.readInt()];
+			for (int i = 0; i < layers.length; i++) {
+				byte type = in.readByte();
+				int inDim = in.readInt();
+				int outDim = in.readInt();
+				switch (type) {
+					case LSTM:
+						layers[i] = new Lstm(inDim, outDim, readFloats(in), readFloats(in), readFloats(in));
+						break;
+					case GRU:
+						layers[i] = new Gru(inDim, outDim, readFloats(in), readFloats(in), readFloats(in), readFloats(in));
+						break;
+					case FEEDFORWARD:
+						Nonlinearity f = readNonlinearity(in);
+						layers[i] = new FeedForward(inDim, outDim, readFloats(in), readFloats(in), f);
+						break;
+					case RNN:
+						Nonlinearity g = readNonlinearity(in);
+						layers[i] = new Rnn(inDim, outDim, readFloats(in), readFloats(in), g);
+						break;
+					default:
+						throw new IOException("unknown layer type " + type);
+				}
+			}
+			return new FrozenNetwork(layers, batch);
+		}
+	}
+
+	private static void writeFloats(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for (double v : values) {
+			out.writeFloat((float) v);
+		}
+	}
+
+	private static double[] readFloats(DataInputStream in) throws IOException {
+		double[] values = new double[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readFloat();
+		}
+		return values;
+	}
+
+	private static void writeNonlinearity(DataOutputStream out, Nonlinearity f) throws IOException {
+		if (f instanceof LinearUnit) {
+			out.writeByte(LINEAR);
+		}
+		else if (f instanceof SigmoidUnit) {
+			out.writeByte(SIGMOID);
+		}
+		else if (f instanceof TanhUnit) {
+			out.writeByte(TANH);
+		}
+		else if (f instanceof RectifiedLinearUnit) {
+			out.writeByte(RELU);
+			out.writeDouble(((RectifiedLinearUnit) f).getSlope());
+		}
+		else if (f instanceof SineUnit) {
+			out.writeByte(SINE);
+		}
+		else {
+			throw new IOException("cannot save nonlinearity " + f.getClass().getSimpleName());
+		}
+	}
+
+	private static Nonlinearity readNonlinearity(DataInputStream in) throws IOException {
+		byte code = in.readByte();
+		switch (code) {
+			case LINEAR:
+				return new LinearUnit();
+			case SIGMOID:
+				return new SigmoidUnit();
+			case TANH:
+				return new TanhUnit();
+			case RELU:
+				return new RectifiedLinearUnit(in.readDouble());
+			case SINE:
+				return new SineUnit();
+			default:
+				throw new IOException("unknown nonlinearity " + code);
+		}
+	}
+
+	private static double sigmoid(double x) {
+		return 1 / (1 + Math.exp(-x));
+	}
+
+	private static abstract class Layer {
+		final int in, out;
+		double[] output;
+
+		Layer(int in, int out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		void allocate(int batch) {
+			output = new double[out * batch];
+		}
+
+		void reset() {
+			Arrays.fill(output, 0);
+		}
+
+		void reset(int b) {
+			int batch = output.length / out;
+			for (int u = 0; u < out; u++) {
+				output[u * batch + b] = 0;
+			}
+		}
+
+		abstract void step(double[] x, int batch);
+
+		abstract byte type();
+
+		abstract void write(DataOutputStream stream) throws IOException;
+	}
+
+	private static class FeedForward extends Layer {
+		final double[] W, b;
+		final Nonlinearity f;
+
+		FeedForward(int in, int out, double[] W, double[] b, Nonlinearity f) {
+			super(in, out);
+			this.W = W;
+			this.b = b;
+			this.f = f;
+		}
+
+		@Override
+		void step(double[] x, int batch) {
+			MatrixOps.gemm(false, false, out, batch, in, W, x, output, false);
+			for (int u = 0; u < out; u++) {
+				int row = u * batch;
+				for (int j = 0; j < batch; j++) {
+					output[row + j] = f.forward(output[row + j] + b[u]);
+				}
+			}
+		}
+
+		@Override
+		byte type() {
+			return FEEDFORWARD;
+		}
+
+		@Override
+		void write(DataOutputStream stream) throws IOException {
+			writeNonlinearity(stream, f);
+			writeFloats(stream, W);
+			writeFloats(stream, b);
+		}
+	}
+
+	private static class Rnn extends Layer {
+		final double[] W, b;
+		final Nonlinearity f;
+		double[] concat;
+
+		Rnn(int in, int out, double[] W, double[] b, Nonlinearity f) {
+			super(in, out);
+			this.W = W;
+			this.b = b;
+			this.f = f;
+		}
+
+		@Override
+		void allocate(int batch) {
+			super.allocate(batch);
+			concat = new double[(in + out) * batch];
+		}
+
+		@Override
+		void step(double[] x, int batch) {
+			System.arraycopy(x, 0, concat, 0, in * batch);
+			System.arraycopy(output, 0, concat, in * batch, out * batch);
+			MatrixOps.gemm(false, false, out, batch, in + out, W, concat, output, false);
+			for (int u = 0; u < out; u++) {
+				int row = u * batch;
+				for (int j = 0; j < batch; j++) {
+					output[row + j] = f.forward(output[row + j] + b[u]);
+				}
+			}
+		}
+
+		@Override
+		byte type() {
+			return RNN;
+		}
+
+		@Override
+		void write(DataOutputStream stream) throws IOException {
+			writeNonlinearity(stream, f);
+			writeFloats(stream, W);
+			writeFloats(stream, b);
+		}
+	}
+
+	/**
+	 * Gate rows are packed in the order input, forget, output, cell.
+	 */
+	private static class Lstm extends Layer {
+		final double[] Wx, Wh, bias;
+		double[] gates, cell;
+
+		Lstm(int in, int out, double[] Wx, double[] Wh, double[] bias) {
+			super(in, out);
+			this.Wx = Wx;
+			this.Wh = Wh;
+			this.bias = bias;
+		}
+
+		@Override
+		void allocate(int batch) {
+			super.allocate(batch);
+			gates = new double[4 * out * batch];
+			cell = new double[out * batch];
+		}
+
+		@Override
+		void reset() {
+			super.reset();
+			Arrays.fill(cell, 0);
+		}
+
+		@Override
+		void reset(int b) {
+			super.reset(b);
+			int batch = cell.length / out;
+			for (int u = 0; u < out; u++) {
+				cell[u * batch + b] = 0;
+			}
+		}
+
+		@Override
+		void step(double[] x, int batch) {
+			MatrixOps.gemm(false, false, 4 * out, batch, in, Wx, x, gates, false);
+			MatrixOps.gemm(false, false, 4 * out, batch, out, Wh, output, gates, true);
+			int stride = out * batch;
+			for (int u = 0; u < out; u++) {
+				for (int j = 0; j < batch; j++) {
+					int k = u * batch + j;
+					double inputGate = sigmoid(gates[k] + bias[u]);
+					double forgetGate = sigmoid(gates[stride + k] + bias[out + u]);
+					double outputGate = sigmoid(gates[2 * stride + k] + bias[2 * out + u]);
+					double cellInput = Math.tanh(gates[3 * stride + k] + bias[3 * out + u]);
+					cell[k] = forgetGate * cell[k] + inputGate * cellInput;
+					output[k] = outputGate * Math.tanh(cell[k]);
+				}
+			}
+		}
+
+		@Override
+		byte type() {
+			return LSTM;
+		}
+
+		@Override
+		void write(DataOutputStream stream) throws IOException {
+			writeFloats(stream, Wx);
+			writeFloats(stream, Wh);
+			writeFloats(stream, bias);
+		}
+	}
+
+	/**
+	 * Input rows are packed mix, reset, new; recurrent rows mix, reset, with the new-gate
+	 * recurrent weights kept apart because they act on the reset-gated state.
+	 */
+	private static class Gru extends Layer {
+		final double[] Wx, Wh, WhNew, bias;
+		double[] xGates, hGates, gated, hNew;
+
+		Gru(int in, int out, double[] Wx, double[] Wh, double[] WhNew, double[] bias) {
+			super(in, out);
+			this.Wx = Wx;
+			this.Wh = Wh;
+			this.WhNew = WhNew;
+			this.bias = bias;
+		}
+
+		@Override
+		void allocate(int batch) {
+			super.allocate(batch);
+			xGates = new double[3 * out * batch];
+			hGates = new double[2 * out * batch];
+			gated = new double[out * batch];
+			hNew = new double[out * batch];
+		}
+
+		@Override
+		void step(double[] x, int batch) {
+			MatrixOps.gemm(false, false, 3 * out, batch, in, Wx, x, xGates, false);
+			MatrixOps.gemm(false, false, 2 * out, batch, out, Wh, output, hGates, false);
+			int stride = out * batch;
+			for (int u = 0; u < out; u++) {
+				for (int j = 0; j < batch; j++) {
+					int k = u * batch + j;
+					double reset = sigmoid(xGates[stride + k] + hGates[stride + k] + bias[out + u]);
+					gated[k] = reset * output[k];
+				}
+			}
+			MatrixOps.gemm(false, false, out, batch, out, WhNew, gated, hNew, false);
+			for (int u = 0; u < out; u++) {
+				for (int j = 0; j < batch; j++) {
+					int k = u * batch + j;
+					double mix = sigmoid(xGates[k] + hGates[k] + bias[u]);
+					double candidate = Math.tanh(xGates[2 * stride + k] + hNew[k] + bias[2 * out + u]);
+					output[k] = mix * output[k] + (1 - mix) * candidate;
+				}
+			}
+		}
+
+		@Override
+		byte type() {
+			return GRU;
+		}
+
+		@Override
+		void write(DataOutputStream stream) throws IOException {
+			writeFloats(stream, Wx);
+			writeFloats(stream, Wh);
+			writeFloats(stream, WhNew);
+			writeFloats(stream, bias);
+		}
+	}
+}
@@ -51,22 +51,22 @@ public class LstmLayer implements Model {
 		//input gate
 		Matrix sum0 = g.mul(Wix, input);
 		Matrix sum1 = g.mul(Wih, hiddenContext);
-		Matrix inputGate = g.nonlin(fInputGate, g.add(g.add(sum0, sum1), bi));
+		Matrix inputGate = g.nonlin(fInputGate, g.add(sum0, sum1, bi));
 		
 		//forget gate
 		Matrix sum2 = g.mul(Wfx, input);
 		Matrix sum3 = g.mul(Wfh, hiddenContext);
-		Matrix forgetGate = g.nonlin(fForgetGate, g.add(g.add(sum2, sum3), bf));
+		Matrix forgetGate = g.nonlin(fForgetGate, g.add(sum2, sum3, bf));
 		
 		//output gate
 		Matrix sum4 = g.mul(Wox, input);
 		Matrix sum5 = g.mul(Woh, hiddenContext);
-		Matrix outputGate = g.nonlin(fOutputGate, g.add(g.add(sum4, sum5), bo));
+		Matrix outputGate = g.nonlin(fOutputGate, g.add(sum4, sum5, bo));
 
 		//write operation on cells
 		Matrix sum6 = g.mul(Wcx, input);
 		Matrix sum7 = g.mul(Wch, hiddenContext);
-		Matrix cellInput = g.nonlin(fCellInput, g.add(g.add(sum6, sum7), bc));
+		Matrix cellInput = g.nonlin(fCellInput, g.add(sum6, sum7, bc));
 		
 		//compute new cell activation
 		Matrix retainCell = g.elmul(forgetGate, cellContext);
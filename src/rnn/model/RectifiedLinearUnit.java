@@ -14,6 +14,10 @@ public class RectifiedLinearUnit implements Nonlinearity {
 		this.slope = slope;
 	}
 	
+	public double getSlope() {
+		return slope;
+	}
+	
 	@Override
 	public double forward(double x) {
 		if (x >= 0) {
@@ -12,6 +12,10 @@ import rnn.util.FileIO;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class Trainer {
 	
@@ -19,6 +23,11 @@ public class Trainer {
 	public static double smoothEpsilon = 1e-8;
 	public static double gradientClipValue = 5;
 	public static double regularization = 0.000001; // L2 regularization strength
+	public static int batchSize = 1; // sequences whose gradients are averaged into one update
+	public static int threads = 1; // data-parallel workers, each with a model replica and its own gradient buffers; batches are at least this large
+	
+	private static ExecutorService workerPool = null;
+	private static boolean warnedBatchSize = false;
 	
 	public static double train(int trainingEpochs, double learningRate, Model model, DataSet data, int reportEveryNthEpoch, Random rng) throws Exception {
 		return train(trainingEpochs, learningRate, model, data, reportEveryNthEpoch, false, false, null, rng);
@@ -72,7 +81,7 @@ public class Trainer {
 			}
 			
 			if (overwriteSaved) {
-				FileIO.serialize(savePath, model);
+				FileIO.serializeAsync(savePath, model);
 			}
 			
 			if (reportedLossTrain == 0 && reportedLossValidation == 0) {
@@ -81,17 +90,22 @@ public class Trainer {
 				break;
 			}
 		}
+		FileIO.awaitPendingWrite();
 		return result;
 	}
 	
 	public static double pass(double learningRate, Model model, List<DataSequence> sequences, boolean applyTraining, Loss lossTraining, Loss lossReporting) throws Exception {
+		if (batchSize > 1 || threads > 1) {
+			return passBatched(learningRate, model, sequences, applyTraining, lossTraining, lossReporting);
+		}
 		
 		double numerLoss = 0;
 		double denomLoss = 0;
 		
+		Graph g = new Graph(applyTraining);
 		for (DataSequence seq : sequences) {
 			model.resetState();
-			Graph g = new Graph(applyTraining);
+			g.reset();
 			for (DataStep step : seq.steps) {
 				Matrix output = model.forward(step.input, g);
 				if (step.targetOutput != null) {
@@ -116,8 +130,157 @@ public class Trainer {
 		return numerLoss/denomLoss;
 	}
 	
+	/**
+	 * Splits sequences into mini-batches of batchSize, or of threads sequences if that is
+	 * larger, so that every worker has a sequence per update. Each batch is sharded across worker
+	 * replicas that share the master weights but accumulate into private dw buffers; the
+	 * buffers are then summed into the master, averaged, and applied in one update.
+	 */
+	private static double passBatched(double learningRate, Model model, List<DataSequence> sequences, final boolean applyTraining, final Loss lossTraining, final Loss lossReporting) throws Exception {
+		int size = Math.max(1, batchSize);
+		if (applyTraining && threads > size) {
+			// a batch smaller than the worker count would leave workers idle
+			if (!warnedBatchSize) {
+				System.out.println("WARNING: batchSize " + batchSize + " < threads " + threads + ", training with batches of " + threads + " sequences.");
+				warnedBatchSize = true;
+			}
+			size = threads;
+		}
+		final int chunk = applyTraining ? size : sequences.size();
+		final int workers = Math.max(1, Math.min(threads, chunk));
+		final Model[] replicas = replicate(model, workers);
+		final Graph[] graphs = new Graph[workers];
+		for (int t = 0; t < workers; t++) {
+			graphs[t] = new Graph(applyTraining);
+		}
+		ExecutorService pool = workers > 1 ? getWorkerPool(workers - 1) : null;
+		
+		double numerLoss = 0;
+		double denomLoss = 0;
+		for (int start = 0; start < sequences.size(); start += chunk) {
+			final List<DataSequence> batch = sequences.subList(start, Math.min(sequences.size(), start + chunk));
+			final int shards = Math.min(workers, batch.size());
+			List<Future<double[]>> futures = new ArrayList<>();
+			for (int t = 1; t < shards; t++) {
+				final int shard = t;
+				futures.add(pool.submit(() -> passShard(replicas[shard], graphs[shard], batch, shard, shards, applyTraining, lossTraining, lossReporting)));
+			}
+			List<double[]> results = new ArrayList<>();
+			results.add(passShard(replicas[0], graphs[0], batch, 0, shards, applyTraining, lossTraining, lossReporting));
+			for (Future<double[]> f : futures) {
+				results.add(f.get());
+			}
+			for (double[] r : results) {
+				if (Double.isNaN(r[0]) || Double.isInfinite(r[0])) {
+					return r[0];
+				}
+				numerLoss += r[0];
+				denomLoss += r[1];
+			}
+			if (applyTraining) {
+				reduceGradients(replicas, shards, batch.size());
+				updateModelParams(model, learningRate);
+			}
+		}
+		return numerLoss/denomLoss;
+	}
+	
+	/**
+	 * Runs every shards-th sequence of the batch starting at shard, leaving the summed
+	 * gradients in the replica's dw. Returns {loss sum, loss count}.
+	 */
+	private static double[] passShard(Model replica, Graph g, List<DataSequence> batch, int shard, int shards, boolean applyTraining, Loss lossTraining, Loss lossReporting) throws Exception {
+		double numerLoss = 0;
+		double denomLoss = 0;
+		for (int i = shard; i < batch.size(); i += shards) {
+			replica.resetState();
+			g.reset();
+			for (DataStep step : batch.get(i).steps) {
+				Matrix output = replica.forward(step.input, g);
+				if (step.targetOutput != null) {
+					double loss = lossReporting.measure(output, step.targetOutput);
+					if (Double.isNaN(loss) || Double.isInfinite(loss)) {
+						return new double[] {loss, 1};
+					}
+					numerLoss += loss;
+					denomLoss++;
+					if (applyTraining) {
+						lossTraining.backward(output, step.targetOutput);
+					}
+				}
+			}
+			if (applyTraining) {
+				g.backward();
+			}
+		}
+		return new double[] {numerLoss, denomLoss};
+	}
+	
+	/**
+	 * Worker copies of the model. Index 0 is the model itself; the others share its
+	 * weight arrays, which are only written between batches, and own their dw.
+	 */
+	private static Model[] replicate(Model model, int count) throws Exception {
+		Model[] replicas = new Model[count];
+		replicas[0] = model;
+		if (count > 1) {
+			byte[] bytes = FileIO.toBytes(model);
+			List<Matrix> params = model.getParameters();
+			for (int r = 1; r < count; r++) {
+				Model replica = (Model) FileIO.fromBytes(bytes);
+				List<Matrix> replicaParams = replica.getParameters();
+				for (int i = 0; i < params.size(); i++) {
+					Matrix p = replicaParams.get(i);
+					p.w = params.get(i).w;
+					p.resetDw();
+					p.stepCache = null;
+				}
+				replicas[r] = replica;
+			}
+		}
+		return replicas;
+	}
+	
+	private static void reduceGradients(Model[] replicas, int shards, int batchCount) {
+		List<Matrix> master = replicas[0].getParameters();
+		for (int r = 1; r < shards; r++) {
+			List<Matrix> params = replicas[r].getParameters();
+			for (int i = 0; i < master.size(); i++) {
+				double[] dw = master.get(i).dw;
+				double[] rdw = params.get(i).dw;
+				for (int j = 0; j < dw.length; j++) {
+					dw[j] += rdw[j];
+					rdw[j] = 0;
+				}
+			}
+		}
+		double scale = 1.0 / batchCount;
+		for (Matrix m : master) {
+			for (int j = 0; j < m.dw.length; j++) {
+				m.dw[j] *= scale;
+			}
+		}
+	}
+	
+	private static synchronized ExecutorService getWorkerPool(int size) {
+		if (workerPool == null || ((ThreadPoolExecutor) workerPool).getCorePoolSize() < size) {
+			if (workerPool != null) {
+				workerPool.shutdown();
+			}
+			workerPool = Executors.newFixedThreadPool(size, r -> {
+				Thread t = new Thread(r, "rnn-trainer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return workerPool;
+	}
+	
 	public static void updateModelParams(Model model, double stepSize) throws Exception {
 		for (Matrix m : model.getParameters()) {
+			if (m.stepCache == null) {
+				m.stepCache = new double[m.w.length];
+			}
 			for (int i = 0; i < m.w.length; i++) {
 				
 				// rmsprop adaptive learning rate
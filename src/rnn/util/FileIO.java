@@ -1,13 +1,29 @@
 package rnn.util;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class FileIO {
 
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "rnn-checkpoint");
+		t.setDaemon(true);
+		return t;
+	});
+	private static Future<?> pendingWrite = null;
+
 	public static void serialize(String path, Object obj) throws Exception {
 		FileOutputStream fileOut = new FileOutputStream(path);
 		ObjectOutputStream out = new ObjectOutputStream(fileOut);
@@ -16,6 +32,54 @@ public class FileIO {
 		fileOut.close();
 	}
 	
+	/**
+	 * Snapshots obj on the calling thread, then writes the bytes to path in the background.
+	 * Waits for the previous checkpoint first, so at most one write is ever in flight.
+	 * The bytes go to a partial_ file next to path that is renamed over it once written,
+	 * so a crash mid-write leaves the previous checkpoint intact.
+	 */
+	public static synchronized Future<?> serializeAsync(final String path, Object obj) throws Exception {
+		final byte[] bytes = toBytes(obj);
+		awaitPendingWrite();
+		pendingWrite = writer.submit(() -> {
+			File target = new File(path).getAbsoluteFile();
+			File partial = new File(target.getParentFile(), "partial_" + target.getName());
+			try (FileOutputStream fileOut = new FileOutputStream(partial)) {
+				fileOut.write(bytes);
+				fileOut.getFD().sync();
+			}
+			try {
+				Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return null;
+		});
+		return pendingWrite;
+	}
+	
+	public static synchronized void awaitPendingWrite() throws Exception {
+		if (pendingWrite != null) {
+			pendingWrite.get();
+			pendingWrite = null;
+		}
+	}
+	
+	public static byte[] toBytes(Object obj) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(obj);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	public static Object fromBytes(byte[] bytes) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		Object result = in.readObject();
+		in.close();
+		return result;
+	}
+	
 	public static Object deserialize(String path) throws Exception {
 		FileInputStream fileIn = new FileInputStream(path);
 		ObjectInputStream in = new ObjectInputStream(fileIn);